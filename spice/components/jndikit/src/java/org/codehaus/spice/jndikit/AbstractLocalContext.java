@@ -25,15 +25,36 @@ import javax.naming.Referenceable;
  * provide a particular type of Context. These contexts are assumed to be
  * on the same machine.
  *
+ * <p>If the environment property {@link #CACHE_RESOLVED_PROPERTY} is
+ * "true" the objects created by object factories on lookup are cached,
+ * so looking up the same name again returns the same instance rather
+ * than running the factories again. A cached object is only returned
+ * while the name is still bound to the object it was created from.
+ * Rebinding or unbinding the name drops the cached object. The cache
+ * is shared by a context and the copies of it returned by lookup.</p>
+ *
  * @author Peter Donald
  * @version $Revision: 1.3 $
  */
 public abstract class AbstractLocalContext
     extends AbstractContext
 {
+    /**
+     * The environment property that enables caching of objects
+     * created by object factories when set to "true".
+     */
+    public static final String CACHE_RESOLVED_PROPERTY =
+        "org.codehaus.spice.jndikit.cacheResolved";
+
     private Context m_parent;
     private Namespace m_namespace;
 
+    /**
+     * The cache of name->ResolvedEntry for objects created by
+     * object factories. Shared with copies of this context.
+     */
+    private Hashtable m_resolved = new Hashtable();
+
     public AbstractLocalContext( final Namespace namespace,
                                  final Hashtable environment,
                                  final Context parent )
@@ -115,6 +136,7 @@ public abstract class AbstractLocalContext
                 object = m_namespace.getStateToBind( object, atom, this, getRawEnvironment() );
 
                 doLocalBind( name, object );
+                m_resolved.remove( name.get( 0 ) );
             }
         }
         else
@@ -179,6 +201,7 @@ public abstract class AbstractLocalContext
             checkUnbindContext( name, object );
 
             doLocalUnbind( name );
+            m_resolved.remove( name.get( 0 ) );
         }
         else
         {
@@ -293,7 +316,7 @@ public abstract class AbstractLocalContext
         //if it refers to base context return a copy of it.
         if( isSelf( name ) )
         {
-            return cloneContext();
+            return copyContext( this );
         }
 
         if( 1 == name.size() )
@@ -301,13 +324,19 @@ public abstract class AbstractLocalContext
             Object obj = localLookup( name );
             if (obj instanceof AbstractLocalContext)
             {
-                return ((AbstractLocalContext) obj).cloneContext();
+                return copyContext( (AbstractLocalContext)obj );
             }
 
             return obj;
         }
         else
         {
+            final AbstractLocalContext parent = walk( name, name.size() - 1 );
+            if( null != parent )
+            {
+                return parent.lookup( getLeafName( name ) );
+            }
+
             final Context context = lookupSubContext( getPathName( name ) );
 
             return context.lookup( getLeafName( name ) );
@@ -326,11 +355,22 @@ public abstract class AbstractLocalContext
     {
         final Object value = doLocalLookup( name );
 
+        final boolean cacheResolved = isCacheResolved();
+        if( cacheResolved )
+        {
+            final ResolvedEntry entry = (ResolvedEntry)m_resolved.get( name.get( 0 ) );
+            if( null != entry && entry.m_value == value )
+            {
+                return entry.m_resolved;
+            }
+        }
+
         // Call getObjectInstance for using any object factories
+        final Object resolved;
         try
         {
             final Name atom = name.getPrefix( 1 );
-            return m_namespace.getObjectInstance( value, atom, this, getRawEnvironment() );
+            resolved = m_namespace.getObjectInstance( value, atom, this, getRawEnvironment() );
         }
         catch( final Exception e )
         {
@@ -338,6 +378,48 @@ public abstract class AbstractLocalContext
             ne.setRootCause( e );
             throw ne;
         }
+
+        if( cacheResolved && resolved != value )
+        {
+            m_resolved.put( name.get( 0 ), new ResolvedEntry( value, resolved ) );
+        }
+        return resolved;
+    }
+
+    /**
+     * Return true if objects created by object
+     * factories should be cached.
+     *
+     * @return true if objects should be cached
+     */
+    private boolean isCacheResolved()
+    {
+        final Hashtable environment = getRawEnvironment();
+        if( null == environment )
+        {
+            return false;
+        }
+        final Object value = environment.get( CACHE_RESOLVED_PROPERTY );
+        return "true".equals( String.valueOf( value ) );
+    }
+
+    /**
+     * Return a copy of context that shares its cache
+     * of objects created by object factories.
+     *
+     * @param context the context
+     * @return the copy
+     * @throws NamingException if unable to copy context
+     */
+    private Context copyContext( final AbstractLocalContext context )
+        throws NamingException
+    {
+        final Context copy = context.cloneContext();
+        if( copy instanceof AbstractLocalContext )
+        {
+            ( (AbstractLocalContext)copy ).m_resolved = context.m_resolved;
+        }
+        return copy;
     }
 
     /**
@@ -362,6 +444,12 @@ public abstract class AbstractLocalContext
     protected Context lookupSubContext( final Name name )
         throws NamingException
     {
+        final AbstractLocalContext subContext = walk( name, name.size() );
+        if( null != subContext )
+        {
+            return subContext;
+        }
+
         final Name atom = name.getPrefix( 1 );
         Object object = localLookup( atom );
 
@@ -384,6 +472,46 @@ public abstract class AbstractLocalContext
         return (Context)object;
     }
 
+    /**
+     * Return the subcontext bound to a single name component in this
+     * context if it can be walked into directly when resolving a path.
+     * Walking bypasses object factories and does not copy contexts or
+     * create names for each component, so it should only return
+     * subcontexts created by this type of context. Return null to
+     * resolve the component with {@link #localLookup(Name)} instead.
+     * The default returns null.
+     *
+     * @param component the name component
+     * @return the subcontext or null
+     * @throws javax.naming.NamingException if an error occurs
+     */
+    protected AbstractLocalContext getLocalSubcontext( final String component )
+        throws NamingException
+    {
+        return null;
+    }
+
+    /**
+     * Walk the first count components of name through the
+     * subcontexts returned by {@link #getLocalSubcontext(String)}.
+     *
+     * @param name the name
+     * @param count the number of components to walk
+     * @return the context reached or null if a component
+     *         could not be walked
+     * @throws javax.naming.NamingException if an error occurs
+     */
+    private AbstractLocalContext walk( final Name name, final int count )
+        throws NamingException
+    {
+        AbstractLocalContext context = this;
+        for( int i = 0; i < count && null != context; i++ )
+        {
+            context = context.getLocalSubcontext( name.get( i ) );
+        }
+        return context;
+    }
+
     /**
      * Unbind a object from a name.
      *
@@ -400,6 +528,7 @@ public abstract class AbstractLocalContext
         else if( 1 == name.size() )
         {
             doLocalUnbind( name );
+            m_resolved.remove( name.get( 0 ) );
         }
         else
         {
@@ -416,4 +545,20 @@ public abstract class AbstractLocalContext
      */
     protected abstract void doLocalUnbind( Name name )
         throws NamingException;
+
+    /**
+     * An object created by object factories and
+     * the bound object it was created from.
+     */
+    private static final class ResolvedEntry
+    {
+        final Object m_value;
+        final Object m_resolved;
+
+        ResolvedEntry( final Object value, final Object resolved )
+        {
+            m_value = value;
+            m_resolved = resolved;
+        }
+    }
 }
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.jndikit;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.naming.Name;
+import javax.naming.NamingException;
+
+/**
+ * A {@link DefaultNameParser} that remembers the names it has parsed,
+ * so that the names looked up over and over again by an application
+ * are only parsed once. Pass one instance to a {@link Namespace} and
+ * all the contexts in that namespace share the cache.
+ *
+ * <p>The names returned can not be modified and throw
+ * UnsupportedOperationException if a caller tries to; clone a name
+ * to get a copy that can be modified. The cache holds at most the
+ * given number of names, dropping the least recently used first. It
+ * is split into stripes that are locked separately so threads parsing
+ * different names rarely wait for each other.</p>
+ */
+public class CachingNameParser
+    extends DefaultNameParser
+{
+    /**
+     * The default number of names held.
+     */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /**
+     * The number of separately locked stripes.
+     */
+    private static final int STRIPE_COUNT = 8;
+
+    /**
+     * The maximum number of names held in each stripe.
+     */
+    private final int m_stripeCapacity;
+
+    /**
+     * The stripes of the cache, rebuilt empty when deserialized.
+     */
+    private transient Stripe[] m_stripes;
+
+    /**
+     * Create parser that holds {@link #DEFAULT_CAPACITY} names.
+     */
+    public CachingNameParser()
+    {
+        this( DEFAULT_CAPACITY );
+    }
+
+    /**
+     * Create parser.
+     *
+     * @param capacity the maximum number of names held
+     */
+    public CachingNameParser( final int capacity )
+    {
+        if( capacity < 1 )
+        {
+            throw new IllegalArgumentException( "capacity" );
+        }
+        m_stripeCapacity = Math.max( 1, capacity / STRIPE_COUNT );
+        m_stripes = createStripes();
+    }
+
+    /**
+     * Return the parsed name, parsing it only if it
+     * is not already in the cache.
+     *
+     * @param name the name
+     * @return the parsed name, which can not be modified
+     * @throws NamingException if name is invalid
+     */
+    public Name parse( final String name )
+        throws NamingException
+    {
+        final Stripe stripe = m_stripes[ ( name.hashCode() & 0x7FFFFFFF ) % STRIPE_COUNT ];
+        synchronized( stripe )
+        {
+            final Name cached = (Name)stripe.get( name );
+            if( null != cached )
+            {
+                stripe.m_hitCount++;
+                return cached;
+            }
+            stripe.m_missCount++;
+        }
+
+        final Name parsed = new ImmutableCompoundName( name, c_syntax );
+        synchronized( stripe )
+        {
+            stripe.put( name, parsed );
+        }
+        return parsed;
+    }
+
+    /**
+     * Return the number of parses answered from the cache.
+     *
+     * @return the number of parses answered from the cache
+     */
+    public long getHitCount()
+    {
+        long count = 0;
+        for( int i = 0; i < m_stripes.length; i++ )
+        {
+            synchronized( m_stripes[ i ] )
+            {
+                count += m_stripes[ i ].m_hitCount;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Return the number of parses that were not in the cache.
+     *
+     * @return the number of parses that were not in the cache
+     */
+    public long getMissCount()
+    {
+        long count = 0;
+        for( int i = 0; i < m_stripes.length; i++ )
+        {
+            synchronized( m_stripes[ i ] )
+            {
+                count += m_stripes[ i ].m_missCount;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Return the number of names held.
+     *
+     * @return the number of names held
+     */
+    public int getSize()
+    {
+        int size = 0;
+        for( int i = 0; i < m_stripes.length; i++ )
+        {
+            synchronized( m_stripes[ i ] )
+            {
+                size += m_stripes[ i ].size();
+            }
+        }
+        return size;
+    }
+
+    private Stripe[] createStripes()
+    {
+        final Stripe[] stripes = new Stripe[ STRIPE_COUNT ];
+        for( int i = 0; i < stripes.length; i++ )
+        {
+            stripes[ i ] = new Stripe( m_stripeCapacity );
+        }
+        return stripes;
+    }
+
+    private void readObject( final ObjectInputStream input )
+        throws IOException, ClassNotFoundException
+    {
+        input.defaultReadObject();
+        m_stripes = createStripes();
+    }
+
+    /**
+     * A stripe of the cache, which drops the least
+     * recently used name when it is full.
+     */
+    private static final class Stripe
+        extends LinkedHashMap
+    {
+        private final int m_capacity;
+        private long m_hitCount;
+        private long m_missCount;
+
+        Stripe( final int capacity )
+        {
+            super( 16, 0.75f, true );
+            m_capacity = capacity;
+        }
+
+        protected boolean removeEldestEntry( final Map.Entry eldest )
+        {
+            return size() > m_capacity;
+        }
+    }
+}
@@ -24,7 +24,7 @@ import javax.naming.NamingException;
 public class DefaultNameParser
     implements Serializable, NameParser
 {
-    private static Properties c_syntax = new Properties();
+    static final Properties c_syntax = new Properties();
 
     static
     {
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.jndikit;
+
+import java.util.Properties;
+import javax.naming.CompoundName;
+import javax.naming.InvalidNameException;
+import javax.naming.Name;
+
+/**
+ * A CompoundName that can not be modified, so that one instance can
+ * be handed out to many callers by {@link CachingNameParser}. The
+ * names returned by {@link #clone()}, {@link #getPrefix(int)} and
+ * {@link #getSuffix(int)} are ordinary CompoundNames that can be
+ * modified.
+ */
+final class ImmutableCompoundName
+    extends CompoundName
+{
+    /**
+     * Parse name using syntax.
+     *
+     * @param name the name
+     * @param syntax the syntax
+     * @throws InvalidNameException if name is not valid in syntax
+     */
+    ImmutableCompoundName( final String name, final Properties syntax )
+        throws InvalidNameException
+    {
+        super( name, syntax );
+    }
+
+    public Name add( final String component )
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    public Name add( final int index, final String component )
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    public Name addAll( final Name name )
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    public Name addAll( final int index, final Name name )
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    public Object remove( final int index )
+    {
+        throw new UnsupportedOperationException();
+    }
+}
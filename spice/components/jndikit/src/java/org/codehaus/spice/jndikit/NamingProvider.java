@@ -31,6 +31,20 @@ public interface NamingProvider
     void rebind( Name name, String className, Object object )
         throws NamingException, Exception;
 
+    /**
+     * Bind several objects in one call. The arrays are parallel.
+     * Binding stops at the first failure, leaving the objects
+     * before it bound.
+     *
+     * @param names the names to bind
+     * @param classNames the class names of the objects
+     * @param objects the objects to bind
+     * @throws NamingException if a name can not be bound
+     * @throws Exception if a communication error occurs
+     */
+    void bindAll( Name[] names, String[] classNames, Object[] objects )
+        throws NamingException, Exception;
+
     Context createSubcontext( Name name )
         throws NamingException, Exception;
 
@@ -43,9 +57,60 @@ public interface NamingProvider
     Binding[] listBindings( Name name )
         throws NamingException, Exception;
 
+    /**
+     * Return one page of the bindings in the named context. Bindings
+     * are returned in order of name so the name of the last binding
+     * of one page can be passed as after to fetch the next page.
+     * A page shorter than count is the last page.
+     *
+     * @param name the name of the context
+     * @param after only bindings with names after this are returned,
+     *              or null to return the first page
+     * @param count the maximum number of bindings to return
+     * @return the bindings
+     * @throws NamingException if the context can not be listed
+     * @throws Exception if a communication error occurs
+     */
+    Binding[] listBindings( Name name, String after, int count )
+        throws NamingException, Exception;
+
     Object lookup( Name name )
         throws NamingException, Exception;
 
+    /**
+     * Lookup several objects in one call.
+     *
+     * @param names the names to lookup
+     * @return the objects, in the same order as names
+     * @throws NamingException if a name can not be looked up
+     * @throws Exception if a communication error occurs
+     */
+    Object[] lookupAll( Name[] names )
+        throws NamingException, Exception;
+
     void unbind( Name name )
         throws NamingException, Exception;
+
+    /**
+     * Return the version of the naming tree. The version changes
+     * each time a name is bound, rebound, unbound or a context is
+     * created or destroyed through this provider.
+     *
+     * @return the version
+     * @throws Exception if a communication error occurs
+     */
+    long getVersion()
+        throws NamingException, Exception;
+
+    /**
+     * Return the names changed since version. A changed name also
+     * stands for every name below it.
+     *
+     * @param version a version previously returned by {@link #getVersion()}
+     * @return the changed names, or null if the provider no longer
+     *         knows what changed since version
+     * @throws Exception if a communication error occurs
+     */
+    Name[] getChanges( long version )
+        throws NamingException, Exception;
 }
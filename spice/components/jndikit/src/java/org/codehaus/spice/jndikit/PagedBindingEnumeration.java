@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.jndikit;
+
+import java.util.NoSuchElementException;
+import javax.naming.Binding;
+import javax.naming.Name;
+import javax.naming.NamingException;
+
+/**
+ * Enumeration of the bindings in a {@link RemoteContext} that fetches
+ * the bindings from the provider a page at a time as it is read.
+ */
+final class PagedBindingEnumeration
+    extends AbstractNamingEnumeration
+{
+    private RemoteContext m_owner;
+    private final Name m_name;
+    private final int m_pageSize;
+    private Binding[] m_page;
+    private int m_index;
+
+    /**
+     * Create enumeration.
+     *
+     * @param owner the context being listed
+     * @param namespace the namespace of the context
+     * @param name the absolute name of the context
+     * @param pageSize the number of bindings fetched at a time
+     * @param page the first page of bindings
+     */
+    PagedBindingEnumeration( final RemoteContext owner,
+                             final Namespace namespace,
+                             final Name name,
+                             final int pageSize,
+                             final Binding[] page )
+    {
+        super( owner, namespace );
+        m_owner = owner;
+        m_name = name;
+        m_pageSize = pageSize;
+        m_page = page;
+    }
+
+    public boolean hasMore()
+        throws NamingException
+    {
+        if( m_index < m_page.length )
+        {
+            return true;
+        }
+        else if( m_page.length < m_pageSize || null == m_owner )
+        {
+            return false;
+        }
+
+        final String after = m_page[ m_page.length - 1 ].getName();
+        m_page = m_owner.listBindings( m_name, after, m_pageSize );
+        m_index = 0;
+        return m_page.length > 0;
+    }
+
+    public boolean hasMoreElements()
+    {
+        try
+        {
+            return hasMore();
+        }
+        catch( final NamingException ne )
+        {
+            throw new NoSuchElementException( ne.toString() );
+        }
+    }
+
+    public Object next()
+        throws NamingException
+    {
+        if( !hasMore() )
+        {
+            throw new NoSuchElementException();
+        }
+
+        final Binding binding = m_page[ m_index++ ];
+        final Object resolvedObject = resolve( binding.getName(), binding.getObject() );
+        binding.setObject( resolvedObject );
+        return binding;
+    }
+
+    public void close()
+    {
+        super.close();
+        m_owner = null;
+        m_page = new Binding[ 0 ];
+    }
+}
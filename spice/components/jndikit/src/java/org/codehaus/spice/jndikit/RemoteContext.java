@@ -39,6 +39,30 @@ public class RemoteContext
     public static final String NAMESPACE = "org.codehaus.spice.jndikit.Namespace";
     public static final String NAMING_PROVIDER = "org.codehaus.spice.jndikit.NamingProvider";
 
+    /**
+     * The environment property holding the number of bindings fetched
+     * from the provider at a time by {@link #listBindings(Name)}.
+     */
+    public static final String PAGE_SIZE = "org.codehaus.spice.jndikit.RemoteContext/PAGE_SIZE";
+
+    /**
+     * The number of bindings fetched at a time when {@link #PAGE_SIZE} is not set.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 100;
+
+    /**
+     * The environment property that turns on caching of looked up objects.
+     * Its value is the minimum time in milliseconds between asking the
+     * provider whether cached objects have changed. Contexts that share an
+     * environment, including the contexts looked up from them, share the cache.
+     */
+    public static final String CACHE_INTERVAL = "org.codehaus.spice.jndikit.RemoteContext/CACHE_INTERVAL";
+
+    /**
+     * The environment key the lookup cache is shared under.
+     */
+    private static final String LOOKUP_CACHE = "org.codehaus.spice.jndikit.RemoteContext/LOOKUP_CACHE";
+
     private transient NamingProvider m_provider;
     private transient NameParser m_nameParser;
     private transient Namespace m_namespace;
@@ -68,22 +92,120 @@ public class RemoteContext
             throw new InvalidNameException( "Failed to bind self" );
         }
 
-        String className = null;
+        final String[] className = new String[ 1 ];
+        object = getStateToBind( name, object, className, 0 );
+
+        try
+        {
+            final Name absoluteName = getAbsoluteName( name );
+            if( rebind )
+            {
+                getProvider().rebind( absoluteName, className[ 0 ], object );
+            }
+            else
+            {
+                getProvider().bind( absoluteName, className[ 0 ], object );
+            }
+            invalidate( absoluteName );
+        }
+        catch( final Exception e )
+        {
+            throw handleException( e );
+        }
+    }
+
+    /**
+     * Bind several objects in one call to the provider. The objects
+     * are bound in order and binding stops at the first failure,
+     * leaving the objects before it bound.
+     *
+     * @param names the names to bind
+     * @param objects the objects to bind, in the same order as names
+     * @throws NamingException if an object can not be bound
+     */
+    public void bindAll( final Name[] names, final Object[] objects )
+        throws NamingException
+    {
+        if( names.length != objects.length )
+        {
+            throw new IllegalArgumentException( "objects" );
+        }
+
+        final Name[] absoluteNames = new Name[ names.length ];
+        final String[] classNames = new String[ names.length ];
+        final Object[] states = new Object[ names.length ];
+        for( int i = 0; i < names.length; i++ )
+        {
+            if( isSelf( names[ i ] ) )
+            {
+                throw new InvalidNameException( "Failed to bind self" );
+            }
+            absoluteNames[ i ] = getAbsoluteName( names[ i ] );
+            states[ i ] = getStateToBind( names[ i ], objects[ i ], classNames, i );
+        }
+
+        try
+        {
+            getProvider().bindAll( absoluteNames, classNames, states );
+        }
+        catch( final Exception e )
+        {
+            throw handleException( e );
+        }
+        finally
+        {
+            //Some names may have been bound before a failure
+            for( int i = 0; i < absoluteNames.length; i++ )
+            {
+                invalidate( absoluteNames[ i ] );
+            }
+        }
+    }
+
+    /**
+     * Bind several objects in one call to the provider.
+     *
+     * @param names the names to bind
+     * @param objects the objects to bind, in the same order as names
+     * @throws NamingException if an object can not be bound
+     * @see #bindAll(Name[], Object[])
+     */
+    public void bindAll( final String[] names, final Object[] objects )
+        throws NamingException
+    {
+        bindAll( parse( names ), objects );
+    }
 
+    /**
+     * Return the state of object to send to the provider.
+     *
+     * @param name the name object is being bound to
+     * @param object the object
+     * @param classNames the array to store the class name of object in
+     * @param index the index to store the class name at
+     * @return the state to send to the provider
+     * @throws NamingException if object can not be bound
+     */
+    private Object getStateToBind( final Name name,
+                                   Object object,
+                                   final String[] classNames,
+                                   final int index )
+        throws NamingException
+    {
         object = getNamespace().getStateToBind( object, name, this, getRawEnvironment() );
 
         if( object instanceof Reference )
         {
-            className = ( (Reference)object ).getClassName();
+            classNames[ index ] = ( (Reference)object ).getClassName();
         }
         else if( object instanceof Referenceable )
         {
             object = ( (Referenceable)object ).getReference();
-            className = ( (Reference)object ).getClassName();
+            classNames[ index ] = ( (Reference)object ).getClassName();
         }
         else
         {
-            className = object.getClass().getName();
+            classNames[ index ] = object.getClass().getName();
 
             try
             {
@@ -97,21 +219,7 @@ public class RemoteContext
             }
         }
 
-        try
-        {
-            if( rebind )
-            {
-                getProvider().rebind( getAbsoluteName( name ), className, object );
-            }
-            else
-            {
-                getProvider().bind( getAbsoluteName( name ), className, object );
-            }
-        }
-        catch( final Exception e )
-        {
-            throw handleException( e );
-        }
+        return object;
     }
 
     /**
@@ -143,7 +251,9 @@ public class RemoteContext
         Context result = null;
         try
         {
-            result = getProvider().createSubcontext( getAbsoluteName( name ) );
+            final Name absoluteName = getAbsoluteName( name );
+            result = getProvider().createSubcontext( absoluteName );
+            invalidate( absoluteName );
         }
         catch( final Exception e )
         {
@@ -165,7 +275,9 @@ public class RemoteContext
 
         try
         {
-            getProvider().destroySubcontext( getAbsoluteName( name ) );
+            final Name absoluteName = getAbsoluteName( name );
+            getProvider().destroySubcontext( absoluteName );
+            invalidate( absoluteName );
         }
         catch( final Exception e )
         {
@@ -202,6 +314,8 @@ public class RemoteContext
 
     /**
      * Enumerates the names bound in the named context, along with the objects bound to them.
+     * The bindings are fetched from the provider in pages of {@link #PAGE_SIZE} as the
+     * enumeration is read, so large contexts are not transferred in one call.
      *
      * @param name the name of the context
      * @return the enumeration
@@ -209,10 +323,30 @@ public class RemoteContext
      */
     public NamingEnumeration listBindings( final Name name )
         throws NamingException
+    {
+        final Name absoluteName = getAbsoluteName( name );
+        final int pageSize = getPageSize();
+        final Binding[] page = listBindings( absoluteName, null, pageSize );
+        return new PagedBindingEnumeration( this, getNamespace(), absoluteName, pageSize, page );
+    }
+
+    /**
+     * Fetch a page of bindings from the provider.
+     *
+     * @param absoluteName the absolute name of the context
+     * @param after the name of the last binding of the previous page,
+     *              or null to fetch the first page
+     * @param count the maximum number of bindings to fetch
+     * @return the bindings
+     * @throws NamingException if an error occurs
+     * @see NamingProvider#listBindings(Name, String, int)
+     */
+    Binding[] listBindings( final Name absoluteName, final String after, final int count )
+        throws NamingException
     {
         try
         {
-            final Binding[] result = getProvider().listBindings( getAbsoluteName( name ) );
+            final Binding[] result = getProvider().listBindings( absoluteName, after, count );
 
             for( int i = 0; i < result.length; i++ )
             {
@@ -225,7 +359,7 @@ public class RemoteContext
                 }
             }
 
-            return new ArrayNamingEnumeration( this, getNamespace(), result );
+            return result;
         }
         catch( final Exception e )
         {
@@ -250,27 +384,104 @@ public class RemoteContext
         }
 
         //actually do a real-lookup
-        Object object = null;
         try
         {
-            object = getProvider().lookup( getAbsoluteName( name ) );
+            final Name absoluteName = getAbsoluteName( name );
+            final RemoteLookupCache cache = getLookupCache();
+            if( null == cache )
+            {
+                return resolve( name, getProvider().lookup( absoluteName ) );
+            }
 
-            if( object instanceof MarshalledObject )
+            final long version = cache.validate( getProvider() );
+            Object object = cache.get( absoluteName );
+            if( null == object )
             {
-                object = ( (MarshalledObject)object ).get();
+                object = getProvider().lookup( absoluteName );
+
+                //contexts are filled in by the caller so each lookup needs its own
+                if( !( object instanceof Context ) )
+                {
+                    cache.put( absoluteName, object, version );
+                }
             }
+            return resolve( name, object );
+        }
+        catch( final Exception e )
+        {
+            throw handleException( e );
+        }
+    }
 
-            object = getNamespace().getObjectInstance( object, name, this, getRawEnvironment() );
+    /**
+     * Get several objects in one call to the provider.
+     *
+     * @param names the names
+     * @return the objects, in the same order as names
+     * @throws NamingException if an error occurs
+     *         (ie an object name is invalid or unbound)
+     */
+    public Object[] lookupAll( final Name[] names )
+        throws NamingException
+    {
+        final Name[] absoluteNames = new Name[ names.length ];
+        for( int i = 0; i < names.length; i++ )
+        {
+            absoluteNames[ i ] = getAbsoluteName( names[ i ] );
+        }
 
-            if( object instanceof Context )
+        try
+        {
+            final Object[] objects = getProvider().lookupAll( absoluteNames );
+            for( int i = 0; i < objects.length; i++ )
             {
-                fillInContext( (Context)object );
+                objects[ i ] = resolve( names[ i ], objects[ i ] );
             }
+            return objects;
         }
         catch( final Exception e )
         {
             throw handleException( e );
         }
+    }
+
+    /**
+     * Get several objects in one call to the provider.
+     *
+     * @param names the names
+     * @return the objects, in the same order as names
+     * @throws NamingException if an error occurs
+     * @see #lookupAll(Name[])
+     */
+    public Object[] lookupAll( final String[] names )
+        throws NamingException
+    {
+        return lookupAll( parse( names ) );
+    }
+
+    /**
+     * Turn an object returned by the provider into the object
+     * returned to the caller.
+     *
+     * @param name the name the object was looked up with
+     * @param object the object returned by the provider
+     * @return the object
+     * @throws Exception if an error occurs
+     */
+    private Object resolve( final Name name, Object object )
+        throws Exception
+    {
+        if( object instanceof MarshalledObject )
+        {
+            object = ( (MarshalledObject)object ).get();
+        }
+
+        object = getNamespace().getObjectInstance( object, name, this, getRawEnvironment() );
+
+        if( object instanceof Context )
+        {
+            fillInContext( (Context)object );
+        }
 
         return object;
     }
@@ -291,7 +502,9 @@ public class RemoteContext
 
         try
         {
-            getProvider().unbind( getAbsoluteName( name ) );
+            final Name absoluteName = getAbsoluteName( name );
+            getProvider().unbind( absoluteName );
+            invalidate( absoluteName );
         }
         catch( final Exception e )
         {
@@ -372,6 +585,105 @@ public class RemoteContext
         return m_nameParser;
     }
 
+    private Name[] parse( final String[] names )
+        throws NamingException
+    {
+        final Name[] result = new Name[ names.length ];
+        for( int i = 0; i < names.length; i++ )
+        {
+            result[ i ] = getNameParser().parse( names[ i ] );
+        }
+        return result;
+    }
+
+    /**
+     * Return the lookup cache shared by contexts with this
+     * environment, creating it if {@link #CACHE_INTERVAL} is set.
+     *
+     * @return the cache or null if caching is not turned on
+     * @throws NamingException if {@link #CACHE_INTERVAL} is invalid
+     */
+    private RemoteLookupCache getLookupCache()
+        throws NamingException
+    {
+        final Hashtable environment = getRawEnvironment();
+        if( null == environment )
+        {
+            return null;
+        }
+
+        synchronized( environment )
+        {
+            final Object value = environment.get( CACHE_INTERVAL );
+            if( null == value )
+            {
+                return null;
+            }
+
+            RemoteLookupCache cache = (RemoteLookupCache)environment.get( LOOKUP_CACHE );
+            if( null == cache )
+            {
+                long interval = -1;
+                try
+                {
+                    interval = Long.parseLong( value.toString() );
+                }
+                catch( final NumberFormatException nfe )
+                {
+                    //handled below
+                }
+                if( interval < 0 )
+                {
+                    throw new ConfigurationException( "Invalid " + CACHE_INTERVAL + ": " + value );
+                }
+                cache = new RemoteLookupCache( interval );
+                environment.put( LOOKUP_CACHE, cache );
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Drop name and the names below it from the lookup cache, if any.
+     *
+     * @param absoluteName the absolute name
+     * @throws NamingException if {@link #CACHE_INTERVAL} is invalid
+     */
+    private void invalidate( final Name absoluteName )
+        throws NamingException
+    {
+        final RemoteLookupCache cache = getLookupCache();
+        if( null != cache )
+        {
+            cache.invalidate( absoluteName );
+        }
+    }
+
+    private int getPageSize()
+        throws NamingException
+    {
+        final Object value = getRawEnvironment().get( PAGE_SIZE );
+        if( null == value )
+        {
+            return DEFAULT_PAGE_SIZE;
+        }
+
+        int pageSize = 0;
+        try
+        {
+            pageSize = Integer.parseInt( value.toString() );
+        }
+        catch( final NumberFormatException nfe )
+        {
+            //handled below
+        }
+        if( pageSize < 1 )
+        {
+            throw new ConfigurationException( "Invalid " + PAGE_SIZE + ": " + value );
+        }
+        return pageSize;
+    }
+
     protected Name getAbsoluteName( final Name name )
         throws NamingException
     {
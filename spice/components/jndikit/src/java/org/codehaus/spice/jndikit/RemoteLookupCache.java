@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.jndikit;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import javax.naming.Name;
+
+/**
+ * Cache of the objects looked up by {@link RemoteContext}s that share
+ * a {@link NamingProvider}. The cache remembers the version of the
+ * naming tree it is valid for and at most once per interval asks the
+ * provider whether the version has changed. If it has, the names that
+ * changed and every name below them are dropped, so lookups between
+ * checks make no calls to the provider at all. Changes made through the
+ * contexts sharing the cache are dropped at once.
+ */
+final class RemoteLookupCache
+    implements Serializable
+{
+    /**
+     * The version before the provider has been asked.
+     */
+    private static final long UNKNOWN = -1;
+
+    /**
+     * The minimum time in milliseconds between checks with the provider.
+     */
+    private final long m_interval;
+
+    /**
+     * The cached objects, keyed by absolute name. Rebuilt empty when deserialized.
+     */
+    private transient Map m_entries;
+
+    private transient long m_version;
+    private transient long m_lastCheck;
+
+    /**
+     * Create cache.
+     *
+     * @param interval the minimum time in milliseconds between checks with the provider
+     */
+    RemoteLookupCache( final long interval )
+    {
+        if( interval < 0 )
+        {
+            throw new IllegalArgumentException( "interval" );
+        }
+        m_interval = interval;
+        m_entries = new HashMap();
+        m_version = UNKNOWN;
+    }
+
+    /**
+     * Drop the entries that have changed if the interval has passed
+     * since the provider was last asked, and return the version the
+     * cache is valid for. The version is passed to
+     * {@link #put(Name, Object, long)} when an object that was not in
+     * the cache is added.
+     *
+     * @param provider the provider
+     * @return the version of the naming tree the cache is valid for
+     * @throws Exception if the provider can not be asked
+     */
+    synchronized long validate( final NamingProvider provider )
+        throws Exception
+    {
+        final long now = System.currentTimeMillis();
+        if( UNKNOWN != m_version && now - m_lastCheck < m_interval )
+        {
+            return m_version;
+        }
+
+        final long version = provider.getVersion();
+        if( UNKNOWN != m_version && version != m_version )
+        {
+            final Name[] changes = provider.getChanges( m_version );
+            if( null == changes )
+            {
+                m_entries.clear();
+            }
+            else
+            {
+                for( int i = 0; i < changes.length; i++ )
+                {
+                    invalidate( changes[ i ] );
+                }
+            }
+        }
+        m_version = version;
+        m_lastCheck = now;
+        return m_version;
+    }
+
+    /**
+     * Return the object cached for name.
+     *
+     * @param name the absolute name
+     * @return the object or null if name is not cached
+     */
+    synchronized Object get( final Name name )
+    {
+        return m_entries.get( name );
+    }
+
+    /**
+     * Cache the object looked up for name. The object is only cached
+     * if no change has been seen since version, as it may have been
+     * looked up before that change.
+     *
+     * @param name the absolute name
+     * @param object the object returned by the provider
+     * @param version the version returned by {@link #validate(NamingProvider)}
+     *                before object was looked up
+     */
+    synchronized void put( final Name name, final Object object, final long version )
+    {
+        if( version == m_version )
+        {
+            m_entries.put( name, object );
+        }
+    }
+
+    /**
+     * Drop name and every name below it.
+     *
+     * @param name the absolute name
+     */
+    synchronized void invalidate( final Name name )
+    {
+        final Iterator names = m_entries.keySet().iterator();
+        while( names.hasNext() )
+        {
+            if( ( (Name)names.next() ).startsWith( name ) )
+            {
+                names.remove();
+            }
+        }
+    }
+
+    private void readObject( final ObjectInputStream input )
+        throws IOException, ClassNotFoundException
+    {
+        input.defaultReadObject();
+        m_entries = new HashMap();
+        m_version = UNKNOWN;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.jndikit.memory;
+
+import java.util.Hashtable;
+import javax.naming.Context;
+import javax.naming.Name;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import org.codehaus.spice.jndikit.AbstractLocalContext;
+import org.codehaus.spice.jndikit.Namespace;
+
+/**
+ * An in memory context implementation for trees that are looked up
+ * from many threads at once. Unlike {@link MemoryContext} lookups and
+ * listings never lock. Changes are serialized per context and copy its
+ * bindings so they are slower, which suits naming trees that are
+ * populated at startup and read on every request afterwards. Listings
+ * enumerate the bindings as they were when listing started and do not
+ * reflect later changes.
+ */
+public class ConcurrentMemoryContext
+    extends AbstractLocalContext
+{
+    private final CopyOnWriteBindings m_bindings;
+
+    private ConcurrentMemoryContext( final Namespace namespace,
+                                     final Hashtable environment,
+                                     final Context parent,
+                                     final CopyOnWriteBindings bindings )
+    {
+        super( namespace, environment, parent );
+        m_bindings = bindings;
+    }
+
+    public ConcurrentMemoryContext( final Namespace namespace,
+                                    final Hashtable environment,
+                                    final Context parent )
+    {
+        this( namespace, environment, parent, new CopyOnWriteBindings() );
+    }
+
+    protected Context newContext()
+        throws NamingException
+    {
+        return new ConcurrentMemoryContext( getNamespace(), getRawEnvironment(), getParent() );
+    }
+
+    protected Context cloneContext()
+        throws NamingException
+    {
+        return new ConcurrentMemoryContext( getNamespace(), getRawEnvironment(), getParent(), m_bindings );
+    }
+
+    protected void doLocalBind( final Name name, final Object object )
+        throws NamingException
+    {
+        m_bindings.put( name.get( 0 ), object );
+    }
+
+    protected NamingEnumeration doLocalList()
+        throws NamingException
+    {
+        return new MemoryNamingEnumeration( this, getNamespace(), m_bindings.getSnapshot(), false );
+    }
+
+    protected NamingEnumeration doLocalListBindings()
+        throws NamingException
+    {
+        return new MemoryNamingEnumeration( this, getNamespace(), m_bindings.getSnapshot(), true );
+    }
+
+    /**
+     * Actually lookup raw entry in local context.
+     * When overidding this it is not neccesary to resolve references etc.
+     *
+     * @param name the name in local context (size() == 1)
+     * @return the bound object
+     * @throws javax.naming.NamingException if an error occurs
+     */
+    protected Object doLocalLookup( final Name name )
+        throws NamingException
+    {
+        final Object object = m_bindings.get( name.get( 0 ) );
+        if( null == object )
+        {
+            throw new NameNotFoundException( name.get( 0 ) );
+        }
+        return object;
+    }
+
+    /**
+     * Return the subcontext bound to component so that paths are
+     * resolved by walking the binding tables directly.
+     *
+     * @param component the name component
+     * @return the subcontext or null if component is not bound
+     *         to a ConcurrentMemoryContext
+     */
+    protected AbstractLocalContext getLocalSubcontext( final String component )
+    {
+        final Object object = m_bindings.get( component );
+        if( object instanceof ConcurrentMemoryContext )
+        {
+            return (ConcurrentMemoryContext)object;
+        }
+        return null;
+    }
+
+    /**
+     * Actually unbind raw entry in local context.
+     *
+     * @param name the name in local context (size() == 1)
+     * @throws javax.naming.NamingException if an error occurs
+     */
+    protected void doLocalUnbind( final Name name )
+        throws NamingException
+    {
+        m_bindings.remove( name.get( 0 ) );
+    }
+}
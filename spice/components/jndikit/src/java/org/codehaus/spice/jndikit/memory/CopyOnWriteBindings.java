@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.jndikit.memory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The bindings of a {@link ConcurrentMemoryContext}. The bindings are
+ * held in a map that is never modified once published. Writers copy
+ * the map under a lock and publish the copy, so readers never lock
+ * and always see a complete map. Naming trees are read far more
+ * often than they are changed, which is what makes copying on each
+ * write cheaper than locking on each read.
+ */
+class CopyOnWriteBindings
+{
+    /**
+     * The current bindings. Replaced rather than modified.
+     */
+    private volatile Map m_bindings = Collections.EMPTY_MAP;
+
+    /**
+     * Return the object bound to name.
+     *
+     * @param name the name
+     * @return the object or null if name is not bound
+     */
+    Object get( final String name )
+    {
+        return m_bindings.get( name );
+    }
+
+    /**
+     * Bind an object to name.
+     *
+     * @param name the name
+     * @param object the object
+     */
+    synchronized void put( final String name, final Object object )
+    {
+        final Map bindings = new HashMap( m_bindings );
+        bindings.put( name, object );
+        m_bindings = bindings;
+    }
+
+    /**
+     * Remove the binding for name, if any.
+     *
+     * @param name the name
+     */
+    synchronized void remove( final String name )
+    {
+        if( m_bindings.containsKey( name ) )
+        {
+            final Map bindings = new HashMap( m_bindings );
+            bindings.remove( name );
+            m_bindings = bindings;
+        }
+    }
+
+    /**
+     * Return the current bindings. The map is not modified by later
+     * changes so it can be iterated without locking.
+     *
+     * @return the current bindings
+     */
+    Map getSnapshot()
+    {
+        return m_bindings;
+    }
+}
@@ -92,6 +92,24 @@ public class MemoryContext
         return object;
     }
 
+    /**
+     * Return the subcontext bound to component so that paths are
+     * resolved by walking the binding tables directly.
+     *
+     * @param component the name component
+     * @return the subcontext or null if component is not bound
+     *         to a MemoryContext
+     */
+    protected AbstractLocalContext getLocalSubcontext( final String component )
+    {
+        final Object object = m_bindings.get( component );
+        if( object instanceof MemoryContext )
+        {
+            return (MemoryContext)object;
+        }
+        return null;
+    }
+
     /**
      * Actually unbind raw entry in local context.
      *
@@ -42,18 +42,55 @@ import org.codehaus.spice.jndikit.DefaultNamespace;
  *       context.</li>
  * </ul>
  *
+ * <p>A {@link ConcurrentMemoryContext} is created rather than a
+ * {@link MemoryContext} if the environment property
+ * {@link #CONCURRENT_PROPERTY} is set to "true".</p>
+ *
  * @author Peter Donald
  * @version $Revision: 1.1 $
  */
 public class MemoryInitialContextFactory
     implements InitialContextFactory
 {
+    /**
+     * The property that selects a {@link ConcurrentMemoryContext}
+     * when set to "true".
+     */
+    public static final String CONCURRENT_PROPERTY =
+        "org.codehaus.spice.jndikit.memory.concurrent";
+
     public Context getInitialContext( final Hashtable environment )
         throws NamingException
     {
         final DefaultNameParser parser = new DefaultNameParser();
         final DefaultNamespace namespace = new DefaultNamespace( parser );
-        return new MemoryContext( namespace, environment, null );
+        final Object concurrent =
+            ( null == environment ) ? null : environment.get( CONCURRENT_PROPERTY );
+        return createContext( namespace,
+                              environment,
+                              "true".equals( concurrent ) );
+    }
+
+    /**
+     * Create a root memory context.
+     *
+     * @param namespace the namespace
+     * @param environment the environment
+     * @param concurrent true to create a {@link ConcurrentMemoryContext}
+     * @return the new context
+     */
+    static Context createContext( final DefaultNamespace namespace,
+                                  final Hashtable environment,
+                                  final boolean concurrent )
+    {
+        if( concurrent )
+        {
+            return new ConcurrentMemoryContext( namespace, environment, null );
+        }
+        else
+        {
+            return new MemoryContext( namespace, environment, null );
+        }
     }
 }
 
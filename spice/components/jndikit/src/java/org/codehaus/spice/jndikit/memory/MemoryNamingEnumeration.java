@@ -7,8 +7,8 @@
  */
 package org.codehaus.spice.jndikit.memory;
 
-import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import javax.naming.Binding;
 import javax.naming.Context;
@@ -26,13 +26,13 @@ import org.codehaus.spice.jndikit.Namespace;
 final class MemoryNamingEnumeration
     extends AbstractNamingEnumeration
 {
-    protected Hashtable m_bindings;
+    protected Map m_bindings;
     protected Iterator m_names;
     protected boolean m_returnBindings;
 
     public MemoryNamingEnumeration( final Context owner,
                                     final Namespace namespace,
-                                    final Hashtable bindings,
+                                    final Map bindings,
                                     final boolean returnBindings )
     {
         super( owner, namespace );
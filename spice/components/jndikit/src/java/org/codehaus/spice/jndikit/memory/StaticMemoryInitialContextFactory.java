@@ -18,7 +18,10 @@ import org.codehaus.spice.jndikit.DefaultNamespace;
  * Initial context factory for memorycontext. This factory will
  * retrieve the {@link MemoryContext} from a static variable.
  * Thus this factory will always return the same instance of
- * memory context.
+ * memory context. The context is a {@link ConcurrentMemoryContext}
+ * if the system property
+ * {@link MemoryInitialContextFactory#CONCURRENT_PROPERTY} is set
+ * to "true" when the class is loaded.
  *
  * @author Peter Donald
  * @version $Revision: 1.1 $
@@ -26,7 +29,7 @@ import org.codehaus.spice.jndikit.DefaultNamespace;
 public class StaticMemoryInitialContextFactory
     implements InitialContextFactory
 {
-    private static final MemoryContext MEMORY_CONTEXT = createMemoryContext();
+    private static final Context MEMORY_CONTEXT = createMemoryContext();
 
     public Context getInitialContext( final Hashtable environment )
         throws NamingException
@@ -35,16 +38,18 @@ public class StaticMemoryInitialContextFactory
     }
 
     /**
-     * Method to create the inital {@link MemoryContext}.
+     * Method to create the inital memory context.
      *
-     * @return the new {@link MemoryContext}.
+     * @return the new memory context.
      */
-    private static final MemoryContext createMemoryContext()
+    private static final Context createMemoryContext()
     {
         final DefaultNamespace namespace = new DefaultNamespace( new DefaultNameParser() );
-        return new MemoryContext( namespace,
-                                  new Hashtable(),
-                                  null );
+        final String concurrent =
+            System.getProperty( MemoryInitialContextFactory.CONCURRENT_PROPERTY );
+        return MemoryInitialContextFactory.createContext( namespace,
+                                                          new Hashtable(),
+                                                          "true".equals( concurrent ) );
     }
 }
 
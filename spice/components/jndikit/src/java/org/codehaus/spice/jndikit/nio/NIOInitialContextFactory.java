@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.jndikit.nio;
+
+import java.util.Hashtable;
+import javax.naming.ConfigurationException;
+import javax.naming.Context;
+import javax.naming.Name;
+import javax.naming.NamingException;
+import javax.naming.spi.InitialContextFactory;
+import org.codehaus.spice.jndikit.DefaultNamespace;
+import org.codehaus.spice.jndikit.Namespace;
+import org.codehaus.spice.jndikit.NamingProvider;
+import org.codehaus.spice.jndikit.RemoteContext;
+
+/**
+ * Initial context factory for contexts served by a {@link NIONamingServer}.
+ * The {@link Context#PROVIDER_URL} has the form
+ * <code>nio://host:port</code> and defaults to
+ * <code>nio://localhost:1978</code>.
+ *
+ * <p>The time to wait for the server to answer each call can be set
+ * with {@link #READ_TIMEOUT}.</p>
+ *
+ * <p>All contexts created for the same server share one
+ * {@link NIONamingProvider} and its connection. The connection is
+ * closed once every initial context created for it has been closed.</p>
+ */
+public class NIOInitialContextFactory
+    implements InitialContextFactory
+{
+    /**
+     * The port used when the provider url does not give one.
+     */
+    public static final int DEFAULT_PORT = 1978;
+
+    /**
+     * The environment property holding the time in milliseconds to wait
+     * for the server to answer a call, 0 to wait indefinitely.
+     */
+    public static final String READ_TIMEOUT =
+        "org.codehaus.spice.jndikit.nio.NIOInitialContextFactory/READ_TIMEOUT";
+
+    /**
+     * The time to wait for an answer when {@link #READ_TIMEOUT} is not set.
+     */
+    public static final long DEFAULT_READ_TIMEOUT = 60000;
+
+    private static final String SCHEME = "nio://";
+
+    public Context getInitialContext( final Hashtable environment )
+        throws NamingException
+    {
+        final NamingProvider provider = newNamingProvider( environment );
+        try
+        {
+            environment.put( RemoteContext.NAMING_PROVIDER, provider );
+
+            final Namespace namespace = newNamespace( environment );
+            environment.put( RemoteContext.NAMESPACE, namespace );
+
+            final Name baseName = namespace.getNameParser().parse( "" );
+            return new NIORemoteContext( environment, baseName, provider );
+        }
+        catch( final NamingException ne )
+        {
+            NIORemoteContext.release( provider );
+            throw ne;
+        }
+        catch( final RuntimeException re )
+        {
+            NIORemoteContext.release( provider );
+            throw re;
+        }
+    }
+
+    protected NamingProvider newNamingProvider( final Hashtable environment )
+        throws NamingException
+    {
+        final long readTimeout = getReadTimeout( environment );
+        final String url = (String)environment.get( Context.PROVIDER_URL );
+        if( null == url )
+        {
+            return newNamingProvider( "localhost", DEFAULT_PORT, readTimeout );
+        }
+        else if( !url.startsWith( SCHEME ) )
+        {
+            throw new ConfigurationException( "Malformed url - " + url );
+        }
+
+        final int index = url.indexOf( ':', SCHEME.length() );
+        if( -1 == index )
+        {
+            return newNamingProvider( url.substring( SCHEME.length() ), DEFAULT_PORT, readTimeout );
+        }
+
+        final int port;
+        try
+        {
+            port = Integer.parseInt( url.substring( index + 1 ) );
+        }
+        catch( final NumberFormatException nfe )
+        {
+            throw new ConfigurationException( "Malformed url - " + url );
+        }
+        return newNamingProvider( url.substring( SCHEME.length(), index ), port, readTimeout );
+    }
+
+    protected NamingProvider newNamingProvider( final String host,
+                                                final int port,
+                                                final long readTimeout )
+        throws NamingException
+    {
+        final NIONamingProvider provider = NIONamingProvider.acquire( host, port, readTimeout );
+
+        //Connect now so that an unreachable server is reported here
+        try
+        {
+            provider.connect();
+        }
+        catch( final NamingException ne )
+        {
+            provider.release();
+            throw ne;
+        }
+        return provider;
+    }
+
+    private long getReadTimeout( final Hashtable environment )
+        throws ConfigurationException
+    {
+        final Object value = environment.get( READ_TIMEOUT );
+        if( null == value )
+        {
+            return DEFAULT_READ_TIMEOUT;
+        }
+
+        long readTimeout = -1;
+        try
+        {
+            readTimeout = Long.parseLong( value.toString() );
+        }
+        catch( final NumberFormatException nfe )
+        {
+            //handled below
+        }
+        if( readTimeout < 0 )
+        {
+            throw new ConfigurationException( "Invalid " + READ_TIMEOUT + ": " + value );
+        }
+        return readTimeout;
+    }
+
+    protected Namespace newNamespace( final Hashtable environment )
+        throws NamingException
+    {
+        final NamingProvider provider =
+            (NamingProvider)environment.get( RemoteContext.NAMING_PROVIDER );
+        try
+        {
+            return new DefaultNamespace( provider.getNameParser() );
+        }
+        catch( final NamingException ne )
+        {
+            throw ne;
+        }
+        catch( final Exception e )
+        {
+            final ConfigurationException ce = new ConfigurationException( e.getMessage() );
+            ce.setRootCause( e );
+            throw ce;
+        }
+    }
+}
@@ -0,0 +1,706 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.jndikit.nio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Map;
+import javax.naming.Binding;
+import javax.naming.CommunicationException;
+import javax.naming.Context;
+import javax.naming.InterruptedNamingException;
+import javax.naming.Name;
+import javax.naming.NameClassPair;
+import javax.naming.NameParser;
+import javax.naming.NamingException;
+import org.codehaus.spice.jndikit.NamingProvider;
+
+/**
+ * Provider that talks to a {@link NIONamingServer} over one persistent
+ * connection. Calls from many threads share the connection: each call
+ * is written as soon as it is made, without waiting for the answers to
+ * earlier calls, and a reader thread hands each answer to the thread
+ * waiting for it. If the connection fails the calls waiting on it fail
+ * and the next call opens a new connection.
+ *
+ * <p>A call that is not answered within the read timeout fails with a
+ * CommunicationException, and a call whose thread is interrupted while
+ * waiting fails with an InterruptedNamingException, leaving the thread
+ * interrupted. Either way the connection stays open and a late answer
+ * is discarded.</p>
+ *
+ * <p>{@link NIOInitialContextFactory} shares one provider, and so one
+ * connection, among all the contexts it creates for the same server.
+ * The provider counts those contexts and closes the connection when the
+ * last of them is closed.</p>
+ */
+public class NIONamingProvider
+    implements NamingProvider, Serializable
+{
+    /**
+     * The providers shared by contexts, keyed by host, port and timeout.
+     */
+    private static final Map c_providers = new HashMap();
+
+    private final String m_host;
+    private final int m_port;
+    private final long m_readTimeout;
+
+    private transient Connection m_connection;
+    private transient NameParser m_parser;
+    private transient int m_references;
+    private transient boolean m_isReleased;
+
+    /**
+     * Create provider that waits indefinitely for answers.
+     * The connection is opened by the first call.
+     *
+     * @param host the host of the server
+     * @param port the port of the server
+     */
+    public NIONamingProvider( final String host, final int port )
+    {
+        this( host, port, 0 );
+    }
+
+    /**
+     * Create provider. The connection is opened by the first call.
+     *
+     * @param host the host of the server
+     * @param port the port of the server
+     * @param readTimeout the time in milliseconds to wait for the answer
+     *        to a call, 0 to wait indefinitely
+     */
+    public NIONamingProvider( final String host, final int port, final long readTimeout )
+    {
+        if( null == host )
+        {
+            throw new NullPointerException( "host" );
+        }
+        if( readTimeout < 0 )
+        {
+            throw new IllegalArgumentException( "readTimeout" );
+        }
+        m_host = host;
+        m_port = port;
+        m_readTimeout = readTimeout;
+    }
+
+    /**
+     * Return the provider shared by all contexts for a server,
+     * creating it if there is none. Each call must be matched by a call
+     * to {@link #release()}.
+     *
+     * @param host the host of the server
+     * @param port the port of the server
+     * @param readTimeout the time in milliseconds to wait for the answer
+     *        to a call, 0 to wait indefinitely
+     * @return the shared provider
+     */
+    static NIONamingProvider acquire( final String host, final int port, final long readTimeout )
+    {
+        final String key = host + ":" + port + "/" + readTimeout;
+        synchronized( c_providers )
+        {
+            NIONamingProvider provider = (NIONamingProvider)c_providers.get( key );
+            if( null == provider )
+            {
+                provider = new NIONamingProvider( host, port, readTimeout );
+                c_providers.put( key, provider );
+            }
+            provider.m_references++;
+            return provider;
+        }
+    }
+
+    /**
+     * Give up a provider returned by {@link #acquire}. When the last
+     * user gives it up the connection is closed and the provider
+     * refuses further calls.
+     */
+    void release()
+    {
+        synchronized( c_providers )
+        {
+            if( --m_references > 0 )
+            {
+                return;
+            }
+            final String key = m_host + ":" + m_port + "/" + m_readTimeout;
+            if( this == c_providers.get( key ) )
+            {
+                c_providers.remove( key );
+            }
+        }
+        synchronized( this )
+        {
+            m_isReleased = true;
+            close();
+        }
+    }
+
+    /**
+     * Open the connection to the server unless it is already open.
+     *
+     * @throws NamingException if the server can not be reached
+     */
+    void connect()
+        throws NamingException
+    {
+        getConnection();
+    }
+
+    /**
+     * Close the connection to the server. The next call opens a new one.
+     */
+    public synchronized void close()
+    {
+        if( null != m_connection )
+        {
+            m_connection.close( null );
+            m_connection = null;
+        }
+    }
+
+    public NameParser getNameParser()
+        throws NamingException
+    {
+        if( null == m_parser )
+        {
+            final DataInputStream input =
+                call( NamingProtocol.GET_NAME_PARSER, new ByteArrayOutputStream() );
+            m_parser = (NameParser)readObject( input );
+        }
+        return m_parser;
+    }
+
+    public void bind( final Name name, final String className, final Object object )
+        throws NamingException
+    {
+        bind( NamingProtocol.BIND, name, className, object );
+    }
+
+    public void rebind( final Name name, final String className, final Object object )
+        throws NamingException
+    {
+        bind( NamingProtocol.REBIND, name, className, object );
+    }
+
+    public void bindAll( final Name[] names, final String[] classNames, final Object[] objects )
+        throws NamingException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try
+        {
+            final DataOutputStream output = new DataOutputStream( bytes );
+            NamingProtocol.writeNames( output, names );
+            NamingProtocol.writeStrings( output, classNames );
+            NamingProtocol.writeObjects( output, objects );
+        }
+        catch( final IOException ioe )
+        {
+            throw toNamingException( ioe );
+        }
+        call( NamingProtocol.BIND_ALL, bytes );
+    }
+
+    public Context createSubcontext( final Name name )
+        throws NamingException
+    {
+        return (Context)readObject( call( NamingProtocol.CREATE_SUBCONTEXT, name ) );
+    }
+
+    public void destroySubcontext( final Name name )
+        throws NamingException
+    {
+        call( NamingProtocol.DESTROY_SUBCONTEXT, name );
+    }
+
+    public NameClassPair[] list( final Name name )
+        throws NamingException
+    {
+        final DataInputStream input = call( NamingProtocol.LIST, name );
+        try
+        {
+            return NamingProtocol.readNameClassPairs( input );
+        }
+        catch( final IOException ioe )
+        {
+            throw toNamingException( ioe );
+        }
+    }
+
+    public Binding[] listBindings( final Name name )
+        throws NamingException
+    {
+        return readBindings( call( NamingProtocol.LIST_BINDINGS, name ) );
+    }
+
+    public Binding[] listBindings( final Name name, final String after, final int count )
+        throws NamingException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try
+        {
+            final DataOutputStream output = new DataOutputStream( bytes );
+            NamingProtocol.writeName( output, name );
+            NamingProtocol.writeString( output, after );
+            output.writeInt( count );
+        }
+        catch( final IOException ioe )
+        {
+            throw toNamingException( ioe );
+        }
+        return readBindings( call( NamingProtocol.LIST_BINDINGS_PAGE, bytes ) );
+    }
+
+    public Object lookup( final Name name )
+        throws NamingException
+    {
+        return readObject( call( NamingProtocol.LOOKUP, name ) );
+    }
+
+    public Object[] lookupAll( final Name[] names )
+        throws NamingException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try
+        {
+            NamingProtocol.writeNames( new DataOutputStream( bytes ), names );
+            return NamingProtocol.readObjects( call( NamingProtocol.LOOKUP_ALL, bytes ) );
+        }
+        catch( final IOException ioe )
+        {
+            throw toNamingException( ioe );
+        }
+        catch( final ClassNotFoundException cnfe )
+        {
+            throw toNamingException( cnfe );
+        }
+    }
+
+    public void unbind( final Name name )
+        throws NamingException
+    {
+        call( NamingProtocol.UNBIND, name );
+    }
+
+    public long getVersion()
+        throws NamingException
+    {
+        try
+        {
+            return call( NamingProtocol.GET_VERSION, new ByteArrayOutputStream() ).readLong();
+        }
+        catch( final IOException ioe )
+        {
+            throw toNamingException( ioe );
+        }
+    }
+
+    public Name[] getChanges( final long version )
+        throws NamingException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try
+        {
+            new DataOutputStream( bytes ).writeLong( version );
+            final DataInputStream input = call( NamingProtocol.GET_CHANGES, bytes );
+            if( !input.readBoolean() )
+            {
+                return null;
+            }
+            return NamingProtocol.readNames( input, getNameParser() );
+        }
+        catch( final IOException ioe )
+        {
+            throw toNamingException( ioe );
+        }
+    }
+
+    private void bind( final byte operation,
+                       final Name name,
+                       final String className,
+                       final Object object )
+        throws NamingException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try
+        {
+            final DataOutputStream output = new DataOutputStream( bytes );
+            NamingProtocol.writeName( output, name );
+            NamingProtocol.writeString( output, className );
+            NamingProtocol.writeObject( output, object );
+        }
+        catch( final IOException ioe )
+        {
+            throw toNamingException( ioe );
+        }
+        call( operation, bytes );
+    }
+
+    private DataInputStream call( final byte operation, final Name name )
+        throws NamingException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try
+        {
+            NamingProtocol.writeName( new DataOutputStream( bytes ), name );
+        }
+        catch( final IOException ioe )
+        {
+            throw toNamingException( ioe );
+        }
+        return call( operation, bytes );
+    }
+
+    /**
+     * Send a request and wait for its response.
+     *
+     * @param operation the operation code
+     * @param request the arguments
+     * @return the result
+     * @throws NamingException if the server failed the request
+     *         or the connection failed
+     */
+    private DataInputStream call( final byte operation, final ByteArrayOutputStream request )
+        throws NamingException
+    {
+        final Connection connection = getConnection();
+        final Call call = connection.send( operation, request );
+        final byte[] response;
+        try
+        {
+            response = call.waitForResponse( m_readTimeout );
+        }
+        catch( final NamingException ne )
+        {
+            connection.remove( call );
+            throw ne;
+        }
+        final DataInputStream input = NamingProtocol.toInput( response );
+        if( NamingProtocol.OK == call.m_status )
+        {
+            return input;
+        }
+
+        final Object error = readObject( input );
+        if( error instanceof NamingException )
+        {
+            throw (NamingException)error;
+        }
+        final NamingException ne = new NamingException( String.valueOf( error ) );
+        if( error instanceof Exception )
+        {
+            ne.setRootCause( (Exception)error );
+        }
+        throw ne;
+    }
+
+    private synchronized Connection getConnection()
+        throws NamingException
+    {
+        if( m_isReleased )
+        {
+            throw new CommunicationException( "Provider released" );
+        }
+        if( null == m_connection || m_connection.isClosed() )
+        {
+            try
+            {
+                m_connection = new Connection( m_host, m_port );
+            }
+            catch( final IOException ioe )
+            {
+                throw toNamingException( ioe );
+            }
+        }
+        return m_connection;
+    }
+
+    private Object readObject( final DataInputStream input )
+        throws NamingException
+    {
+        try
+        {
+            return NamingProtocol.readObject( input );
+        }
+        catch( final IOException ioe )
+        {
+            throw toNamingException( ioe );
+        }
+        catch( final ClassNotFoundException cnfe )
+        {
+            throw toNamingException( cnfe );
+        }
+    }
+
+    private Binding[] readBindings( final DataInputStream input )
+        throws NamingException
+    {
+        try
+        {
+            return NamingProtocol.readBindings( input );
+        }
+        catch( final IOException ioe )
+        {
+            throw toNamingException( ioe );
+        }
+        catch( final ClassNotFoundException cnfe )
+        {
+            throw toNamingException( cnfe );
+        }
+    }
+
+    private static NamingException toNamingException( final Exception e )
+    {
+        final CommunicationException ce = new CommunicationException( e.toString() );
+        ce.setRootCause( e );
+        return ce;
+    }
+
+    /**
+     * A call waiting for its response.
+     */
+    private static final class Call
+    {
+        private final int m_id;
+        private byte m_status;
+        private byte[] m_response;
+        private IOException m_failure;
+        private boolean m_isDone;
+
+        Call( final int id )
+        {
+            m_id = id;
+        }
+
+        synchronized void complete( final byte status, final byte[] response )
+        {
+            m_status = status;
+            m_response = response;
+            m_isDone = true;
+            notifyAll();
+        }
+
+        synchronized void fail( final IOException failure )
+        {
+            m_failure = failure;
+            m_isDone = true;
+            notifyAll();
+        }
+
+        /**
+         * Wait for the response to call.
+         *
+         * @param timeout the time in milliseconds to wait, 0 to wait indefinitely
+         * @return the response
+         * @throws NamingException if the call failed, timed out or
+         *         the thread was interrupted
+         */
+        synchronized byte[] waitForResponse( final long timeout )
+            throws NamingException
+        {
+            final long end = System.currentTimeMillis() + timeout;
+            try
+            {
+                while( !m_isDone )
+                {
+                    final long remaining = end - System.currentTimeMillis();
+                    if( 0 != timeout && remaining <= 0 )
+                    {
+                        throw new CommunicationException( "Timed out waiting for response" );
+                    }
+                    wait( ( 0 == timeout ) ? 0 : remaining );
+                }
+            }
+            catch( final InterruptedException ie )
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedNamingException( "Interrupted waiting for response" );
+            }
+            if( null != m_failure )
+            {
+                throw toNamingException( m_failure );
+            }
+            return m_response;
+        }
+    }
+
+    /**
+     * A connection to the server and the thread reading its responses.
+     */
+    private static final class Connection
+        implements Runnable
+    {
+        private final SocketChannel m_channel;
+        private final Object m_writeLock = new Object();
+
+        /**
+         * The calls waiting for a response, keyed by request id.
+         */
+        private final Map m_calls = new HashMap();
+        private int m_nextId;
+        private boolean m_isClosed;
+
+        Connection( final String host, final int port )
+            throws IOException
+        {
+            m_channel = SocketChannel.open( new InetSocketAddress( host, port ) );
+            m_channel.socket().setTcpNoDelay( true );
+
+            final Thread reader = new Thread( this, "NIONamingProvider " + host + ":" + port );
+            reader.setDaemon( true );
+            reader.start();
+        }
+
+        Call send( final byte operation, final ByteArrayOutputStream request )
+            throws NamingException
+        {
+            final Call call;
+            synchronized( m_calls )
+            {
+                if( m_isClosed )
+                {
+                    throw new CommunicationException( "Connection closed" );
+                }
+                call = new Call( m_nextId++ );
+                m_calls.put( new Integer( call.m_id ), call );
+            }
+
+            final ByteBuffer frame = NamingProtocol.toFrame( call.m_id, operation, request );
+            try
+            {
+                synchronized( m_writeLock )
+                {
+                    while( frame.hasRemaining() )
+                    {
+                        m_channel.write( frame );
+                    }
+                }
+            }
+            catch( final IOException ioe )
+            {
+                close( ioe );
+            }
+            return call;
+        }
+
+        /**
+         * Stop waiting for the response to a call that has given up.
+         *
+         * @param call the call
+         */
+        void remove( final Call call )
+        {
+            synchronized( m_calls )
+            {
+                m_calls.remove( new Integer( call.m_id ) );
+            }
+        }
+
+        boolean isClosed()
+        {
+            synchronized( m_calls )
+            {
+                return m_isClosed;
+            }
+        }
+
+        public void run()
+        {
+            final ByteBuffer header = ByteBuffer.allocate( NamingProtocol.HEADER_SIZE );
+            try
+            {
+                while( true )
+                {
+                    header.clear();
+                    readFully( header );
+                    header.flip();
+                    final int size = header.getInt();
+                    final int id = header.getInt();
+                    final byte status = header.get();
+                    if( size < NamingProtocol.HEADER_SIZE - 4 || size > NamingProtocol.MAX_FRAME_SIZE )
+                    {
+                        throw new IOException( "Invalid frame size " + size );
+                    }
+
+                    final ByteBuffer body =
+                        ByteBuffer.allocate( size - ( NamingProtocol.HEADER_SIZE - 4 ) );
+                    readFully( body );
+
+                    final Call call;
+                    synchronized( m_calls )
+                    {
+                        call = (Call)m_calls.remove( new Integer( id ) );
+                    }
+                    if( null != call )
+                    {
+                        call.complete( status, body.array() );
+                    }
+                }
+            }
+            catch( final IOException ioe )
+            {
+                close( ioe );
+            }
+        }
+
+        /**
+         * Close the connection, failing the calls waiting on it.
+         *
+         * @param failure the cause, or null if closed deliberately
+         */
+        void close( final IOException failure )
+        {
+            final Call[] calls;
+            synchronized( m_calls )
+            {
+                m_isClosed = true;
+                calls = (Call[])m_calls.values().toArray( new Call[ m_calls.size() ] );
+                m_calls.clear();
+            }
+
+            try
+            {
+                m_channel.close();
+            }
+            catch( final IOException ioe )
+            {
+                //Ignored.
+            }
+
+            final IOException cause =
+                ( null != failure ) ? failure : new IOException( "Connection closed" );
+            for( int i = 0; i < calls.length; i++ )
+            {
+                calls[ i ].fail( cause );
+            }
+        }
+
+        private void readFully( final ByteBuffer buffer )
+            throws IOException
+        {
+            while( buffer.hasRemaining() )
+            {
+                if( m_channel.read( buffer ) < 0 )
+                {
+                    throw new EOFException();
+                }
+            }
+        }
+    }
+}
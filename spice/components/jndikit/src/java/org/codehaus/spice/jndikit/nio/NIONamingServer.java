@@ -0,0 +1,481 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.jndikit.nio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.LinkedList;
+import javax.naming.Context;
+import javax.naming.Name;
+import javax.naming.NameParser;
+import javax.naming.NamingException;
+import org.codehaus.spice.jndikit.DefaultNameParser;
+import org.codehaus.spice.jndikit.DefaultNamespace;
+import org.codehaus.spice.jndikit.NamingProvider;
+import org.codehaus.spice.jndikit.memory.MemoryContext;
+import org.codehaus.spice.jndikit.rmi.server.RMINamingProviderImpl;
+
+/**
+ * Name server that serves a naming tree to {@link NIONamingProvider}s
+ * over the binary protocol described in {@link NamingProtocol}. One
+ * thread serves all connections. Requests on a connection are answered
+ * in the order they arrive.
+ *
+ * <p>A client that sends requests without reading the responses is not
+ * read from again until its queued responses have been written, and a
+ * request that fails in any way closes only the connection it came
+ * from.</p>
+ *
+ * <p>The naming tree is held in the same way as the RMI name server,
+ * so both servers behave alike.</p>
+ */
+public class NIONamingServer
+    implements Runnable
+{
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The number of responses queued for a connection above which no
+     * more requests are read from it until the queue has been written.
+     */
+    private static final int MAX_QUEUED_RESPONSES = 16;
+
+    private final int m_port;
+    private final NamingProvider m_provider;
+    private NameParser m_parser;
+
+    private ServerSocketChannel m_serverChannel;
+    private Selector m_selector;
+    private volatile boolean m_isRunning;
+
+    /**
+     * Create server for a new, empty {@link MemoryContext}.
+     *
+     * @param port the port to listen on, or 0 to use any free port
+     */
+    public NIONamingServer( final int port )
+    {
+        this( new MemoryContext( new DefaultNamespace( new DefaultNameParser() ), null, null ),
+              port );
+    }
+
+    /**
+     * Create server.
+     *
+     * @param root the root of the naming tree
+     * @param port the port to listen on, or 0 to use any free port
+     */
+    public NIONamingServer( final Context root, final int port )
+    {
+        if( null == root )
+        {
+            throw new NullPointerException( "root" );
+        }
+        m_provider = new RMINamingProviderImpl( root );
+        m_port = port;
+    }
+
+    /**
+     * Start listening. Connections are served once {@link #run()} is called.
+     *
+     * @throws Exception if the port can not be listened on
+     */
+    public void start()
+        throws Exception
+    {
+        m_parser = m_provider.getNameParser();
+        m_selector = Selector.open();
+        m_serverChannel = ServerSocketChannel.open();
+        m_serverChannel.configureBlocking( false );
+        m_serverChannel.socket().bind( new InetSocketAddress( m_port ) );
+        m_serverChannel.register( m_selector, SelectionKey.OP_ACCEPT );
+        m_isRunning = true;
+    }
+
+    /**
+     * Stop serving, closing all connections.
+     */
+    public void stop()
+    {
+        m_isRunning = false;
+        final Selector selector = m_selector;
+        if( null != selector )
+        {
+            selector.wakeup();
+        }
+    }
+
+    public boolean isRunning()
+    {
+        return m_isRunning;
+    }
+
+    /**
+     * Return the port listened on.
+     *
+     * @return the port
+     */
+    public int getPort()
+    {
+        return m_serverChannel.socket().getLocalPort();
+    }
+
+    public void run()
+    {
+        try
+        {
+            while( m_isRunning )
+            {
+                m_selector.select();
+                final Iterator keys = m_selector.selectedKeys().iterator();
+                while( keys.hasNext() )
+                {
+                    final SelectionKey key = (SelectionKey)keys.next();
+                    keys.remove();
+                    if( !key.isValid() )
+                    {
+                        continue;
+                    }
+                    if( key.isAcceptable() )
+                    {
+                        accept();
+                        continue;
+                    }
+
+                    final Connection connection = (Connection)key.attachment();
+                    try
+                    {
+                        if( key.isReadable() )
+                        {
+                            connection.read();
+                        }
+                        if( key.isValid() && key.isWritable() )
+                        {
+                            connection.write();
+                        }
+                    }
+                    catch( final Throwable t )
+                    {
+                        //Whatever one client did, it must not stop the others being served
+                        connection.close();
+                    }
+                }
+            }
+        }
+        catch( final IOException ioe )
+        {
+            ioe.printStackTrace();
+        }
+        finally
+        {
+            m_isRunning = false;
+            close();
+        }
+    }
+
+    private void accept()
+        throws IOException
+    {
+        final SocketChannel channel = m_serverChannel.accept();
+        if( null != channel )
+        {
+            channel.configureBlocking( false );
+            channel.socket().setTcpNoDelay( true );
+            final SelectionKey key = channel.register( m_selector, SelectionKey.OP_READ );
+            key.attach( new Connection( key ) );
+        }
+    }
+
+    private void close()
+    {
+        final Iterator keys = m_selector.keys().iterator();
+        while( keys.hasNext() )
+        {
+            final SelectionKey key = (SelectionKey)keys.next();
+            try
+            {
+                key.channel().close();
+            }
+            catch( final IOException ioe )
+            {
+                //Ignored.
+            }
+        }
+        try
+        {
+            m_selector.close();
+        }
+        catch( final IOException ioe )
+        {
+            //Ignored.
+        }
+    }
+
+    /**
+     * Answer one request.
+     *
+     * @param id the request id
+     * @param operation the operation code
+     * @param request the arguments
+     * @return the response frame
+     */
+    private ByteBuffer process( final int id, final byte operation, final byte[] request )
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try
+        {
+            final DataOutputStream output = new DataOutputStream( bytes );
+            dispatch( operation, NamingProtocol.toInput( request ), output );
+            output.flush();
+            return NamingProtocol.toFrame( id, NamingProtocol.OK, bytes );
+        }
+        catch( final Exception e )
+        {
+            return NamingProtocol.toFrame( id, NamingProtocol.ERROR, toError( e ) );
+        }
+    }
+
+    private ByteArrayOutputStream toError( final Exception e )
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream( bytes );
+        try
+        {
+            NamingProtocol.writeObject( output, e );
+        }
+        catch( final IOException ioe )
+        {
+            //the exception or its root cause can not be sent as is
+            bytes.reset();
+            try
+            {
+                NamingProtocol.writeObject( output, new NamingException( e.toString() ) );
+            }
+            catch( final IOException nse )
+            {
+                throw new IllegalStateException( nse.toString() );
+            }
+        }
+        return bytes;
+    }
+
+    private void dispatch( final byte operation,
+                           final DataInputStream input,
+                           final DataOutputStream output )
+        throws Exception
+    {
+        switch( operation )
+        {
+            case NamingProtocol.GET_NAME_PARSER:
+                NamingProtocol.writeObject( output, m_parser );
+                break;
+
+            case NamingProtocol.BIND:
+                m_provider.bind( NamingProtocol.readName( input, m_parser ),
+                                 NamingProtocol.readString( input ),
+                                 NamingProtocol.readObject( input ) );
+                break;
+
+            case NamingProtocol.REBIND:
+                m_provider.rebind( NamingProtocol.readName( input, m_parser ),
+                                   NamingProtocol.readString( input ),
+                                   NamingProtocol.readObject( input ) );
+                break;
+
+            case NamingProtocol.BIND_ALL:
+                m_provider.bindAll( NamingProtocol.readNames( input, m_parser ),
+                                    NamingProtocol.readStrings( input ),
+                                    NamingProtocol.readObjects( input ) );
+                break;
+
+            case NamingProtocol.CREATE_SUBCONTEXT:
+                NamingProtocol.writeObject( output,
+                                            m_provider.createSubcontext( NamingProtocol.readName( input, m_parser ) ) );
+                break;
+
+            case NamingProtocol.DESTROY_SUBCONTEXT:
+                m_provider.destroySubcontext( NamingProtocol.readName( input, m_parser ) );
+                break;
+
+            case NamingProtocol.LIST:
+                NamingProtocol.writeNameClassPairs( output,
+                                                    m_provider.list( NamingProtocol.readName( input, m_parser ) ) );
+                break;
+
+            case NamingProtocol.LIST_BINDINGS:
+                NamingProtocol.writeBindings( output,
+                                              m_provider.listBindings( NamingProtocol.readName( input, m_parser ) ) );
+                break;
+
+            case NamingProtocol.LIST_BINDINGS_PAGE:
+            {
+                final Name name = NamingProtocol.readName( input, m_parser );
+                final String after = NamingProtocol.readString( input );
+                final int count = input.readInt();
+                NamingProtocol.writeBindings( output, m_provider.listBindings( name, after, count ) );
+                break;
+            }
+
+            case NamingProtocol.LOOKUP:
+                NamingProtocol.writeObject( output,
+                                            m_provider.lookup( NamingProtocol.readName( input, m_parser ) ) );
+                break;
+
+            case NamingProtocol.LOOKUP_ALL:
+                NamingProtocol.writeObjects( output,
+                                             m_provider.lookupAll( NamingProtocol.readNames( input, m_parser ) ) );
+                break;
+
+            case NamingProtocol.UNBIND:
+                m_provider.unbind( NamingProtocol.readName( input, m_parser ) );
+                break;
+
+            case NamingProtocol.GET_VERSION:
+                output.writeLong( m_provider.getVersion() );
+                break;
+
+            case NamingProtocol.GET_CHANGES:
+            {
+                final Name[] changes = m_provider.getChanges( input.readLong() );
+                output.writeBoolean( null != changes );
+                if( null != changes )
+                {
+                    NamingProtocol.writeNames( output, changes );
+                }
+                break;
+            }
+
+            default:
+                throw new NamingException( "Unknown operation " + operation );
+        }
+    }
+
+    /**
+     * The state of one client connection.
+     */
+    private final class Connection
+    {
+        private final SelectionKey m_key;
+        private final SocketChannel m_channel;
+        private ByteBuffer m_input = ByteBuffer.allocate( BUFFER_SIZE );
+        private final LinkedList m_output = new LinkedList();
+        private boolean m_isReadSuspended;
+
+        Connection( final SelectionKey key )
+        {
+            m_key = key;
+            m_channel = (SocketChannel)key.channel();
+        }
+
+        /**
+         * Read what has arrived and answer every complete request.
+         */
+        void read()
+            throws IOException
+        {
+            if( m_channel.read( m_input ) < 0 )
+            {
+                close();
+                return;
+            }
+
+            m_input.flip();
+            int needed = 0;
+            while( m_input.remaining() >= 4 )
+            {
+                final int size = m_input.getInt( m_input.position() );
+                if( size < NamingProtocol.HEADER_SIZE - 4 || size > NamingProtocol.MAX_FRAME_SIZE )
+                {
+                    throw new IOException( "Invalid frame size " + size );
+                }
+                if( m_input.remaining() < 4 + size )
+                {
+                    needed = 4 + size;
+                    break;
+                }
+
+                m_input.getInt();
+                final int id = m_input.getInt();
+                final byte operation = m_input.get();
+                final byte[] request = new byte[ size - ( NamingProtocol.HEADER_SIZE - 4 ) ];
+                m_input.get( request );
+                m_output.addLast( process( id, operation, request ) );
+            }
+            m_input.compact();
+
+            if( needed > m_input.capacity() )
+            {
+                final ByteBuffer input = ByteBuffer.allocate( needed );
+                m_input.flip();
+                input.put( m_input );
+                m_input = input;
+            }
+
+            write();
+        }
+
+        /**
+         * Write as much of the queued responses as the socket will take.
+         */
+        void write()
+            throws IOException
+        {
+            while( !m_output.isEmpty() )
+            {
+                final ByteBuffer frame = (ByteBuffer)m_output.getFirst();
+                m_channel.write( frame );
+                if( frame.hasRemaining() )
+                {
+                    break;
+                }
+                m_output.removeFirst();
+            }
+
+            if( m_output.isEmpty() )
+            {
+                m_isReadSuspended = false;
+            }
+            else if( m_output.size() > MAX_QUEUED_RESPONSES )
+            {
+                m_isReadSuspended = true;
+            }
+
+            if( m_key.isValid() )
+            {
+                int ops = m_isReadSuspended ? 0 : SelectionKey.OP_READ;
+                if( !m_output.isEmpty() )
+                {
+                    ops |= SelectionKey.OP_WRITE;
+                }
+                m_key.interestOps( ops );
+            }
+        }
+
+        void close()
+        {
+            m_key.cancel();
+            try
+            {
+                m_channel.close();
+            }
+            catch( final IOException ioe )
+            {
+                //Ignored.
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.jndikit.nio;
+
+import java.util.Hashtable;
+import javax.naming.Name;
+import javax.naming.NamingException;
+import org.codehaus.spice.jndikit.NamingProvider;
+import org.codehaus.spice.jndikit.RemoteContext;
+
+/**
+ * The initial context created by {@link NIOInitialContextFactory}.
+ * Closing it gives up its share of the provider, so the connection
+ * is closed once no initial context uses it.
+ */
+class NIORemoteContext
+    extends RemoteContext
+{
+    private transient NamingProvider m_sharedProvider;
+
+    NIORemoteContext( final Hashtable environment,
+                      final Name baseName,
+                      final NamingProvider provider )
+        throws NamingException
+    {
+        super( environment, baseName );
+        m_sharedProvider = provider;
+    }
+
+    public void close()
+    {
+        super.close();
+
+        final NamingProvider provider;
+        synchronized( this )
+        {
+            provider = m_sharedProvider;
+            m_sharedProvider = null;
+        }
+        release( provider );
+    }
+
+    /**
+     * Give up a provider created by {@link NIOInitialContextFactory}.
+     *
+     * @param provider the provider, may be null
+     */
+    static void release( final NamingProvider provider )
+    {
+        if( provider instanceof NIONamingProvider )
+        {
+            ( (NIONamingProvider)provider ).release();
+        }
+    }
+}
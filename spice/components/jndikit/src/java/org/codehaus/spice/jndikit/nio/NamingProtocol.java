@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.jndikit.nio;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import javax.naming.Binding;
+import javax.naming.Name;
+import javax.naming.NameClassPair;
+import javax.naming.NameParser;
+import javax.naming.NamingException;
+
+/**
+ * The binary protocol spoken between {@link NIONamingProvider} and
+ * {@link NIONamingServer}.
+ *
+ * <p>Each message is a frame made of the length of the rest of the
+ * frame as an int, the id of the request as an int and a code byte,
+ * followed by the arguments or result. Requests carry an operation code
+ * and responses a status code. A client may send many requests before
+ * reading any response. Responses are matched to requests by id.</p>
+ *
+ * <p>Names, class names and counts are written directly. Bound objects
+ * are opaque to the server and are written with Java serialization.</p>
+ */
+final class NamingProtocol
+{
+    /**
+     * The size of the length, id and code that start each frame.
+     */
+    static final int HEADER_SIZE = 9;
+
+    /**
+     * The largest frame accepted, not counting the length itself.
+     */
+    static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    static final byte GET_NAME_PARSER = 1;
+    static final byte BIND = 2;
+    static final byte REBIND = 3;
+    static final byte BIND_ALL = 4;
+    static final byte CREATE_SUBCONTEXT = 5;
+    static final byte DESTROY_SUBCONTEXT = 6;
+    static final byte LIST = 7;
+    static final byte LIST_BINDINGS = 8;
+    static final byte LIST_BINDINGS_PAGE = 9;
+    static final byte LOOKUP = 10;
+    static final byte LOOKUP_ALL = 11;
+    static final byte UNBIND = 12;
+    static final byte GET_VERSION = 13;
+    static final byte GET_CHANGES = 14;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    private NamingProtocol()
+    {
+    }
+
+    /**
+     * Create a frame ready to be written.
+     *
+     * @param id the request id
+     * @param code the operation or status code
+     * @param body the arguments or result
+     * @return the frame
+     */
+    static ByteBuffer toFrame( final int id,
+                               final byte code,
+                               final ByteArrayOutputStream body )
+    {
+        final ByteBuffer frame = ByteBuffer.allocate( HEADER_SIZE + body.size() );
+        frame.putInt( HEADER_SIZE - 4 + body.size() );
+        frame.putInt( id );
+        frame.put( code );
+        frame.put( body.toByteArray() );
+        frame.flip();
+        return frame;
+    }
+
+    static DataInputStream toInput( final byte[] body )
+    {
+        return new DataInputStream( new ByteArrayInputStream( body ) );
+    }
+
+    /**
+     * Read the number of entries that follow. Every entry takes at least
+     * one byte, so a count larger than what is left of the frame can only
+     * come from a corrupt or hostile frame and is rejected before any
+     * array is allocated for it.
+     *
+     * @param input the rest of the frame
+     * @return the count
+     * @throws IOException if the count is invalid
+     */
+    static int readCount( final DataInputStream input )
+        throws IOException
+    {
+        final int count = input.readInt();
+        if( count < 0 || count > input.available() )
+        {
+            throw new IOException( "Invalid count " + count );
+        }
+        return count;
+    }
+
+    static void writeString( final DataOutputStream output, final String value )
+        throws IOException
+    {
+        output.writeBoolean( null != value );
+        if( null != value )
+        {
+            output.writeUTF( value );
+        }
+    }
+
+    static String readString( final DataInputStream input )
+        throws IOException
+    {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    static void writeName( final DataOutputStream output, final Name name )
+        throws IOException
+    {
+        output.writeUTF( name.toString() );
+    }
+
+    static Name readName( final DataInputStream input, final NameParser parser )
+        throws IOException, NamingException
+    {
+        return parser.parse( input.readUTF() );
+    }
+
+    static void writeNames( final DataOutputStream output, final Name[] names )
+        throws IOException
+    {
+        output.writeInt( names.length );
+        for( int i = 0; i < names.length; i++ )
+        {
+            writeName( output, names[ i ] );
+        }
+    }
+
+    static Name[] readNames( final DataInputStream input, final NameParser parser )
+        throws IOException, NamingException
+    {
+        final Name[] names = new Name[ readCount( input ) ];
+        for( int i = 0; i < names.length; i++ )
+        {
+            names[ i ] = readName( input, parser );
+        }
+        return names;
+    }
+
+    static void writeObject( final DataOutputStream output, final Object object )
+        throws IOException
+    {
+        if( null == object )
+        {
+            output.writeInt( -1 );
+            return;
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream objects = new ObjectOutputStream( bytes );
+        objects.writeObject( object );
+        objects.close();
+
+        output.writeInt( bytes.size() );
+        bytes.writeTo( output );
+    }
+
+    static Object readObject( final DataInputStream input )
+        throws IOException, ClassNotFoundException
+    {
+        final int size = input.readInt();
+        if( -1 == size )
+        {
+            return null;
+        }
+        else if( size < 0 || size > input.available() )
+        {
+            throw new IOException( "Invalid object size " + size );
+        }
+
+        final byte[] bytes = new byte[ size ];
+        input.readFully( bytes );
+        final ObjectInputStream objects =
+            new ObjectInputStream( new ByteArrayInputStream( bytes ) );
+        return objects.readObject();
+    }
+
+    static void writeObjects( final DataOutputStream output, final Object[] objects )
+        throws IOException
+    {
+        output.writeInt( objects.length );
+        for( int i = 0; i < objects.length; i++ )
+        {
+            writeObject( output, objects[ i ] );
+        }
+    }
+
+    static Object[] readObjects( final DataInputStream input )
+        throws IOException, ClassNotFoundException
+    {
+        final Object[] objects = new Object[ readCount( input ) ];
+        for( int i = 0; i < objects.length; i++ )
+        {
+            objects[ i ] = readObject( input );
+        }
+        return objects;
+    }
+
+    static void writeStrings( final DataOutputStream output, final String[] strings )
+        throws IOException
+    {
+        output.writeInt( strings.length );
+        for( int i = 0; i < strings.length; i++ )
+        {
+            writeString( output, strings[ i ] );
+        }
+    }
+
+    static String[] readStrings( final DataInputStream input )
+        throws IOException
+    {
+        final String[] strings = new String[ readCount( input ) ];
+        for( int i = 0; i < strings.length; i++ )
+        {
+            strings[ i ] = readString( input );
+        }
+        return strings;
+    }
+
+    static void writeNameClassPairs( final DataOutputStream output,
+                                     final NameClassPair[] pairs )
+        throws IOException
+    {
+        output.writeInt( pairs.length );
+        for( int i = 0; i < pairs.length; i++ )
+        {
+            writeString( output, pairs[ i ].getName() );
+            writeString( output, pairs[ i ].getClassName() );
+        }
+    }
+
+    static NameClassPair[] readNameClassPairs( final DataInputStream input )
+        throws IOException
+    {
+        final NameClassPair[] pairs = new NameClassPair[ readCount( input ) ];
+        for( int i = 0; i < pairs.length; i++ )
+        {
+            pairs[ i ] = new NameClassPair( readString( input ), readString( input ) );
+        }
+        return pairs;
+    }
+
+    static void writeBindings( final DataOutputStream output, final Binding[] bindings )
+        throws IOException
+    {
+        output.writeInt( bindings.length );
+        for( int i = 0; i < bindings.length; i++ )
+        {
+            writeString( output, bindings[ i ].getName() );
+            writeString( output, bindings[ i ].getClassName() );
+            writeObject( output, bindings[ i ].getObject() );
+        }
+    }
+
+    static Binding[] readBindings( final DataInputStream input )
+        throws IOException, ClassNotFoundException
+    {
+        final Binding[] bindings = new Binding[ readCount( input ) ];
+        for( int i = 0; i < bindings.length; i++ )
+        {
+            final String name = readString( input );
+            final String className = readString( input );
+            bindings[ i ] = new Binding( name, className, readObject( input ) );
+        }
+        return bindings;
+    }
+}
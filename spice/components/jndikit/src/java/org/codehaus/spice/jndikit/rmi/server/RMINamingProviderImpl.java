@@ -9,6 +9,10 @@ package org.codehaus.spice.jndikit.rmi.server;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.TreeSet;
 import javax.naming.Binding;
 import javax.naming.CompositeName;
 import javax.naming.Context;
@@ -29,8 +33,23 @@ import org.codehaus.spice.jndikit.rmi.RMINamingProvider;
 public class RMINamingProviderImpl
     implements Serializable, RMINamingProvider
 {
+    /**
+     * The number of changed names remembered for {@link #getChanges(long)}.
+     */
+    private static final int MAX_CHANGES = 1000;
+
     private Context m_root;
 
+    /**
+     * The current version, incremented on each change.
+     */
+    private long m_version;
+
+    /**
+     * The names changed in the most recent versions, oldest first.
+     */
+    private final LinkedList m_changes = new LinkedList();
+
     public RMINamingProviderImpl( final Context root )
     {
         m_root = root;
@@ -47,6 +66,7 @@ public class RMINamingProviderImpl
     {
         final Binding binding = new Binding( name.toString(), className, object, true );
         m_root.bind( name, binding );
+        changed( name );
     }
 
     public void rebind( final Name name, final String className, final Object object )
@@ -54,12 +74,23 @@ public class RMINamingProviderImpl
     {
         final Binding binding = new Binding( name.toString(), className, object, true );
         m_root.rebind( name, binding );
+        changed( name );
+    }
+
+    public void bindAll( final Name[] names, final String[] classNames, final Object[] objects )
+        throws NamingException
+    {
+        for( int i = 0; i < names.length; i++ )
+        {
+            bind( names[ i ], classNames[ i ], objects[ i ] );
+        }
     }
 
     public Context createSubcontext( final Name name )
         throws NamingException
     {
         m_root.createSubcontext( name );
+        changed( name );
 
         final RemoteContext context = new RemoteContext( null, name );
         return context;
@@ -69,6 +100,7 @@ public class RMINamingProviderImpl
         throws NamingException
     {
         m_root.destroySubcontext( name );
+        changed( name );
     }
 
     public NameClassPair[] list( final Name name )
@@ -120,36 +152,48 @@ public class RMINamingProviderImpl
         while( enum.hasMore() )
         {
             final Binding binding = (Binding)enum.next();
-            Object object = binding.getObject();
-            String className = null;
+            bindings.add( toBinding( name, binding.getName(), binding.getObject() ) );
+        }
 
-            //check if it is an entry or a context
-            if( object instanceof Binding )
-            {
-                //must be an entry
-                final Binding entry = (Binding)binding.getObject();
-                object = entry.getObject();
-                className = object.getClass().getName();
-            }
-            else if( object instanceof Context )
-            {
-                //must be a context
-                className = RemoteContext.class.getName();
-                final Name bindingName = getNameParser().parse(binding.getName());
-                final Name baseName = m_root.composeName(bindingName, name);
-                object = new RemoteContext( null, baseName);
-            }
-            else
+        return (Binding[])bindings.toArray( new Binding[ 0 ] );
+    }
+
+    public Binding[] listBindings( final Name name, final String after, final int count )
+        throws NamingException
+    {
+        if( count < 1 )
+        {
+            throw new IllegalArgumentException( "count" );
+        }
+
+        //Only the names are listed so that just the
+        //entries returned in this page are looked up
+        final NamingEnumeration enum = m_root.list( name );
+        final TreeSet names = new TreeSet();
+
+        while( enum.hasMore() )
+        {
+            final String entryName = ( (NameClassPair)enum.next() ).getName();
+            if( null == after || entryName.compareTo( after ) > 0 )
             {
-                className = object.getClass().getName();
+                names.add( entryName );
+                if( names.size() > count )
+                {
+                    names.remove( names.last() );
+                }
             }
+        }
 
-            final Binding result =
-                new Binding( binding.getName(), className, object );
-            bindings.add( result );
+        final Binding[] bindings = new Binding[ names.size() ];
+        final Iterator iterator = names.iterator();
+        for( int i = 0; i < bindings.length; i++ )
+        {
+            final String entryName = (String)iterator.next();
+            final Name entry = m_root.composeName( getNameParser().parse( entryName ), name );
+            bindings[ i ] = toBinding( name, entryName, m_root.lookup( entry ) );
         }
 
-        return (Binding[])bindings.toArray( new Binding[ 0 ] );
+        return bindings;
     }
 
     public Object lookup( final Name name )
@@ -171,9 +215,91 @@ public class RMINamingProviderImpl
         return object;
     }
 
+    public Object[] lookupAll( final Name[] names )
+        throws NamingException
+    {
+        final Object[] objects = new Object[ names.length ];
+        for( int i = 0; i < names.length; i++ )
+        {
+            objects[ i ] = lookup( names[ i ] );
+        }
+        return objects;
+    }
+
     public void unbind( final Name name )
         throws NamingException
     {
         m_root.unbind( name );
+        changed( name );
+    }
+
+    public synchronized long getVersion()
+    {
+        return m_version;
+    }
+
+    public synchronized Name[] getChanges( final long version )
+    {
+        final long oldest = m_version - m_changes.size();
+        if( version < oldest || version > m_version )
+        {
+            return null;
+        }
+
+        final List changes = m_changes.subList( (int)( version - oldest ), m_changes.size() );
+        return (Name[])changes.toArray( new Name[ changes.size() ] );
+    }
+
+    /**
+     * Create the binding returned to clients for an entry.
+     *
+     * @param name the name of the context holding the entry
+     * @param entryName the name of the entry in that context
+     * @param object the object stored for the entry
+     * @return the binding
+     * @throws NamingException if the name of a context can not be parsed
+     */
+    private Binding toBinding( final Name name, final String entryName, Object object )
+        throws NamingException
+    {
+        String className = null;
+
+        //check if it is an entry or a context
+        if( object instanceof Binding )
+        {
+            //must be an entry
+            final Binding entry = (Binding)object;
+            object = entry.getObject();
+            className = object.getClass().getName();
+        }
+        else if( object instanceof Context )
+        {
+            //must be a context
+            className = RemoteContext.class.getName();
+            final Name bindingName = getNameParser().parse( entryName );
+            final Name baseName = m_root.composeName( bindingName, name );
+            object = new RemoteContext( null, baseName );
+        }
+        else
+        {
+            className = object.getClass().getName();
+        }
+
+        return new Binding( entryName, className, object );
+    }
+
+    /**
+     * Record that name has changed.
+     *
+     * @param name the name
+     */
+    private synchronized void changed( final Name name )
+    {
+        m_version++;
+        m_changes.addLast( name.clone() );
+        if( m_changes.size() > MAX_CHANGES )
+        {
+            m_changes.removeFirst();
+        }
     }
 }
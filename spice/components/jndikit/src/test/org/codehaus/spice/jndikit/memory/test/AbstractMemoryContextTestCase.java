@@ -7,7 +7,10 @@
  */
 package org.codehaus.spice.jndikit.memory.test;
 
+import javax.naming.Context;
+import javax.naming.NameNotFoundException;
 import javax.naming.NamingException;
+import javax.naming.NotContextException;
 import javax.naming.OperationNotSupportedException;
 
 import junit.framework.AssertionFailedError;
@@ -40,4 +43,44 @@ public abstract class AbstractMemoryContextTestCase
             throw new AssertionFailedError( ne.getMessage() );
         }
     }
+
+    public void testDeepLookup()
+        throws Exception
+    {
+        m_context.createSubcontext( "a" ).createSubcontext( "b" ).createSubcontext( "c" );
+        m_context.bind( "a/b/c/o1", O1 );
+        assertEquals( "Deep lookup", O1, m_context.lookup( "a/b/c/o1" ) );
+        final Context context = (Context)m_context.lookup( "a/b/c" );
+        assertEquals( "Lookup in deep context", O1, context.lookup( "o1" ) );
+
+        m_context.rebind( "a/b/c/o1", O2 );
+        assertEquals( "Deep lookup after rebind", O2, m_context.lookup( "a/b/c/o1" ) );
+        m_context.unbind( "a/b/c/o1" );
+        try
+        {
+            m_context.lookup( "a/b/c/o1" );
+            fail( "Expected lookup of unbound deep name to fail" );
+        }
+        catch( final NameNotFoundException expected )
+        {
+        }
+        try
+        {
+            m_context.lookup( "a/x/c" );
+            fail( "Expected lookup through missing context to fail" );
+        }
+        catch( final NameNotFoundException expected )
+        {
+        }
+
+        m_context.bind( "a/o2", O2 );
+        try
+        {
+            m_context.lookup( "a/o2/x" );
+            fail( "Expected lookup through object to fail" );
+        }
+        catch( final NotContextException expected )
+        {
+        }
+    }
 }
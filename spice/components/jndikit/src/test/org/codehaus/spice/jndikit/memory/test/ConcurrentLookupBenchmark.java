@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.jndikit.memory.test;
+
+import java.util.Hashtable;
+import javax.naming.Context;
+import javax.naming.Name;
+
+import org.codehaus.spice.jndikit.DefaultNameParser;
+import org.codehaus.spice.jndikit.Namespace;
+import org.codehaus.spice.jndikit.StandardNamespace;
+import org.codehaus.spice.jndikit.memory.ConcurrentMemoryContext;
+import org.codehaus.spice.jndikit.memory.MemoryContext;
+
+/**
+ * Compares the lookup throughput of a {@link MemoryContext}, whose
+ * bindings are held in a Hashtable that locks on every lookup, with
+ * that of a {@link ConcurrentMemoryContext}, whose copy-on-write
+ * bindings are read without locking. For each context the benchmark
+ * reports the number of lookups per second with 1, 4 and 16 threads
+ * looking up names, both on their own and while another thread
+ * rebinds a name every millisecond. Run from the command line with
+ * the test classpath:
+ *
+ * <pre>
+ * java org.codehaus.spice.jndikit.memory.test.ConcurrentLookupBenchmark [lookupsPerThread]
+ * </pre>
+ *
+ * <p>Names are parsed before the run starts so only the cost of
+ * resolving them in the context is measured.</p>
+ */
+public class ConcurrentLookupBenchmark
+{
+    /**
+     * The number of concurrent readers to measure.
+     */
+    private static final int[] READERS = new int[]{1, 4, 16};
+
+    /**
+     * The number of names bound in the context.
+     */
+    private static final int NAME_COUNT = 64;
+
+    private final int m_lookupsPerThread;
+
+    public ConcurrentLookupBenchmark( final int lookupsPerThread )
+    {
+        m_lookupsPerThread = lookupsPerThread;
+    }
+
+    public static void main( final String[] args )
+        throws Exception
+    {
+        final int lookupsPerThread = ( args.length > 0 ) ? Integer.parseInt( args[ 0 ] ) : 1000000;
+        final ConcurrentLookupBenchmark benchmark = new ConcurrentLookupBenchmark( lookupsPerThread );
+        final Namespace namespace = new StandardNamespace( new DefaultNameParser() );
+        for( int i = 0; i < READERS.length; i++ )
+        {
+            for( int j = 0; j < 2; j++ )
+            {
+                final boolean writer = ( 1 == j );
+                benchmark.run( "Hashtable",
+                               new MemoryContext( namespace, new Hashtable(), null ),
+                               READERS[ i ],
+                               writer );
+                benchmark.run( "copy-on-write",
+                               new ConcurrentMemoryContext( namespace, new Hashtable(), null ),
+                               READERS[ i ],
+                               writer );
+            }
+        }
+    }
+
+    /**
+     * Bind names in context, then run benchmark looking
+     * them up and print the result.
+     *
+     * @param label the label printed with the result
+     * @param context the context
+     * @param readers the number of threads looking up names
+     * @param writer true if another thread rebinds a name
+     *        while the readers run
+     */
+    public void run( final String label,
+                     final Context context,
+                     final int readers,
+                     final boolean writer )
+        throws Exception
+    {
+        final Name[] names = new Name[ NAME_COUNT ];
+        for( int i = 0; i < names.length; i++ )
+        {
+            names[ i ] = context.getNameParser( "" ).parse( "name" + i );
+            context.bind( names[ i ], "value" + i );
+        }
+
+        //Warm up
+        new Reader( context, names ).run();
+
+        final Writer rebinder = new Writer( context, names[ 0 ] );
+        if( writer )
+        {
+            rebinder.start();
+        }
+        final Reader[] threads = new Reader[ readers ];
+        for( int i = 0; i < threads.length; i++ )
+        {
+            threads[ i ] = new Reader( context, names );
+        }
+        final long start = System.currentTimeMillis();
+        for( int i = 0; i < threads.length; i++ )
+        {
+            threads[ i ].start();
+        }
+        for( int i = 0; i < threads.length; i++ )
+        {
+            threads[ i ].join();
+        }
+        final long elapsed = Math.max( 1, System.currentTimeMillis() - start );
+        rebinder.stopWriting();
+        rebinder.join();
+
+        for( int i = 0; i < threads.length; i++ )
+        {
+            if( null != threads[ i ].getFailure() )
+            {
+                throw threads[ i ].getFailure();
+            }
+        }
+
+        final long lookups = (long)readers * m_lookupsPerThread;
+        System.out.println( label + ", " + readers + " readers" +
+                            ( writer ? " and a writer" : "" ) + ": " +
+                            ( lookups * 1000 / elapsed ) + " lookups/s" );
+    }
+
+    /**
+     * A thread that looks up the names in turn.
+     */
+    private class Reader
+        extends Thread
+    {
+        private final Context m_context;
+        private final Name[] m_names;
+        private Exception m_failure;
+
+        Reader( final Context context, final Name[] names )
+        {
+            m_context = context;
+            m_names = names;
+        }
+
+        public void run()
+        {
+            try
+            {
+                for( int i = 0; i < m_lookupsPerThread; i++ )
+                {
+                    m_context.lookup( m_names[ i % m_names.length ] );
+                }
+            }
+            catch( final Exception e )
+            {
+                m_failure = e;
+            }
+        }
+
+        Exception getFailure()
+        {
+            return m_failure;
+        }
+    }
+
+    /**
+     * A thread that rebinds a name every millisecond until stopped.
+     */
+    private static class Writer
+        extends Thread
+    {
+        private final Context m_context;
+        private final Name m_name;
+        private boolean m_running = true;
+
+        Writer( final Context context, final Name name )
+        {
+            m_context = context;
+            m_name = name;
+        }
+
+        public void run()
+        {
+            try
+            {
+                for( int i = 0; isRunning(); i++ )
+                {
+                    m_context.rebind( m_name, "value" + i );
+                    Thread.sleep( 1 );
+                }
+            }
+            catch( final Exception e )
+            {
+                e.printStackTrace();
+            }
+        }
+
+        synchronized void stopWriting()
+        {
+            m_running = false;
+        }
+
+        private synchronized boolean isRunning()
+        {
+            return m_running;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.jndikit.memory.test;
+
+import java.util.Hashtable;
+import javax.naming.Context;
+import javax.naming.NameClassPair;
+import javax.naming.NamingEnumeration;
+
+import org.codehaus.spice.jndikit.DefaultNameParser;
+import org.codehaus.spice.jndikit.Namespace;
+import org.codehaus.spice.jndikit.StandardNamespace;
+import org.codehaus.spice.jndikit.memory.ConcurrentMemoryContext;
+import org.codehaus.spice.jndikit.memory.MemoryContext;
+import org.codehaus.spice.jndikit.memory.MemoryInitialContextFactory;
+import org.codehaus.spice.jndikit.test.TestStateFactory;
+
+/**
+ * Unit testing for {@link ConcurrentMemoryContext}.
+ */
+public class ConcurrentMemoryContextTestCase
+    extends AbstractMemoryContextTestCase
+{
+    protected Context getRoot() throws Exception
+    {
+        final DefaultNameParser parser = new DefaultNameParser();
+        final Namespace namespace = new StandardNamespace( parser );
+
+        Hashtable environment = new Hashtable();
+        environment.put( Context.STATE_FACTORIES,
+                         TestStateFactory.class.getName() );
+
+        return new ConcurrentMemoryContext( namespace, environment, null );
+    }
+
+    public void testListIsSnapshot()
+        throws Exception
+    {
+        m_context.bind( "O1", O1 );
+        m_context.bind( "O2", O2 );
+        final NamingEnumeration enumeration = m_context.list( "" );
+        m_context.unbind( "O1" );
+        m_context.bind( "O3", O3 );
+
+        int count = 0;
+        while( enumeration.hasMore() )
+        {
+            final NameClassPair pair = (NameClassPair)enumeration.next();
+            assertTrue( "Unexpected name " + pair.getName(),
+                        pair.getName().equals( "O1" ) || pair.getName().equals( "O2" ) );
+            count++;
+        }
+        assertEquals( "Listed bindings", 2, count );
+        assertEquals( "Lookup O3", O3, m_context.lookup( "O3" ) );
+    }
+
+    public void testConcurrentLookupDuringBind()
+        throws Exception
+    {
+        m_context.bind( "O1", O1 );
+        final Throwable[] failure = new Throwable[ 1 ];
+        final Thread[] readers = new Thread[ 4 ];
+        for( int i = 0; i < readers.length; i++ )
+        {
+            readers[ i ] = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        for( int j = 0; j < 2000; j++ )
+                        {
+                            assertEquals( O1, m_context.lookup( "O1" ) );
+                        }
+                    }
+                    catch( final Throwable t )
+                    {
+                        failure[ 0 ] = t;
+                    }
+                }
+            };
+            readers[ i ].start();
+        }
+        for( int i = 0; i < 200; i++ )
+        {
+            m_context.rebind( "X" + i, O2 );
+        }
+        for( int i = 0; i < readers.length; i++ )
+        {
+            readers[ i ].join();
+        }
+        assertNull( "Reader failed: " + failure[ 0 ], failure[ 0 ] );
+        assertEquals( "Lookup X199", O2, m_context.lookup( "X199" ) );
+    }
+
+    public void testLookupThroughOtherContextType()
+        throws Exception
+    {
+        final MemoryContext other =
+            new MemoryContext( new StandardNamespace( new DefaultNameParser() ), null, null );
+        other.createSubcontext( "b" ).bind( "o1", O1 );
+        m_context.bind( "a", other );
+        assertEquals( "Lookup through other context", O1, m_context.lookup( "a/b/o1" ) );
+        m_context.bind( "a/b/o2", O2 );
+        assertEquals( "Bind through other context", O2, other.lookup( "b/o2" ) );
+    }
+
+    public void testInitialContextFactorySelection()
+        throws Exception
+    {
+        final MemoryInitialContextFactory factory = new MemoryInitialContextFactory();
+        final Hashtable environment = new Hashtable();
+        assertTrue( "Default context",
+                    factory.getInitialContext( environment ) instanceof MemoryContext );
+        environment.put( MemoryInitialContextFactory.CONCURRENT_PROPERTY, "true" );
+        assertTrue( "Concurrent context",
+                    factory.getInitialContext( environment ) instanceof ConcurrentMemoryContext );
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.jndikit.memory.test;
+
+import java.util.Hashtable;
+import javax.naming.Context;
+import javax.naming.Name;
+import javax.naming.NamingException;
+
+import org.codehaus.spice.jndikit.AbstractLocalContext;
+import org.codehaus.spice.jndikit.DefaultNameParser;
+import org.codehaus.spice.jndikit.Namespace;
+import org.codehaus.spice.jndikit.StandardNamespace;
+import org.codehaus.spice.jndikit.memory.MemoryContext;
+
+/**
+ * Measures the time taken and the approximate number of bytes
+ * allocated by a lookup of a name several levels deep in a
+ * MemoryContext. Each depth is measured with a context that walks the
+ * path through its binding tables and with one that resolves a
+ * component at a time through lookupSubContext, as all lookups did
+ * before the walk was added. Run from the command line with the test
+ * classpath:
+ *
+ * <pre>
+ * java org.codehaus.spice.jndikit.memory.test.DeepLookupBenchmark [lookupsPerBatch] [batches]
+ * </pre>
+ *
+ * <p>The name is parsed once so only the cost of resolving it is
+ * measured. Allocation is estimated from the growth of used heap over
+ * a batch. Batches during which a garbage collection occured are
+ * discarded so the numbers are only approximate.</p>
+ */
+public class DeepLookupBenchmark
+{
+    /**
+     * The depths of the names looked up.
+     */
+    private static final int[] DEPTHS = new int[]{1, 2, 4, 8, 16};
+
+    private final int m_lookupsPerBatch;
+    private final int m_batches;
+
+    public DeepLookupBenchmark( final int lookupsPerBatch, final int batches )
+    {
+        m_lookupsPerBatch = lookupsPerBatch;
+        m_batches = batches;
+    }
+
+    public static void main( final String[] args )
+        throws Exception
+    {
+        final int lookupsPerBatch = ( args.length > 0 ) ? Integer.parseInt( args[ 0 ] ) : 2000;
+        final int batches = ( args.length > 1 ) ? Integer.parseInt( args[ 1 ] ) : 200;
+        final DeepLookupBenchmark benchmark = new DeepLookupBenchmark( lookupsPerBatch, batches );
+        final Namespace namespace = new StandardNamespace( new DefaultNameParser() );
+        for( int i = 0; i < DEPTHS.length; i++ )
+        {
+            benchmark.run( "walked", new MemoryContext( namespace, new Hashtable(), null ),
+                           DEPTHS[ i ] );
+            benchmark.run( "unwalked", new UnwalkedMemoryContext( namespace, new Hashtable(),
+                                                                   null, new Hashtable( 11 ) ),
+                           DEPTHS[ i ] );
+        }
+    }
+
+    /**
+     * Bind an object at specified depth below root, then run
+     * benchmark looking it up and print the result.
+     *
+     * @param label the label printed with the result
+     * @param root the root context
+     * @param depth the number of subcontexts above the object
+     */
+    public void run( final String label, final Context root, final int depth )
+        throws NamingException
+    {
+        final StringBuffer path = new StringBuffer();
+        Context context = root;
+        for( int i = 0; i < depth; i++ )
+        {
+            context = context.createSubcontext( "level" + i );
+            path.append( "level" ).append( i ).append( '/' );
+        }
+        context.bind( "leaf", "value" );
+        final Name name = root.getNameParser( "" ).parse( path + "leaf" );
+
+        //Warm up
+        runBatch( root, name );
+
+        final Runtime runtime = Runtime.getRuntime();
+        long allocated = 0;
+        int measured = 0;
+        long elapsed = 0;
+        for( int i = 0; i < m_batches; i++ )
+        {
+            final long before = runtime.totalMemory() - runtime.freeMemory();
+            final long start = System.currentTimeMillis();
+            runBatch( root, name );
+            elapsed += System.currentTimeMillis() - start;
+            final long after = runtime.totalMemory() - runtime.freeMemory();
+            if( after >= before )
+            {
+                allocated += after - before;
+                measured++;
+            }
+        }
+
+        final long lookups = (long)m_batches * m_lookupsPerBatch;
+        final long nanosPerLookup = elapsed * 1000000 / lookups;
+        final String prefix = label + " depth " + depth + ": " + nanosPerLookup + " ns/lookup";
+        if( 0 == measured )
+        {
+            System.out.println( prefix + ", no batch completed without a collection" );
+        }
+        else
+        {
+            final long perLookup = allocated / ( (long)measured * m_lookupsPerBatch );
+            System.out.println( prefix + ", ~" + perLookup + " bytes/lookup (" +
+                                measured + "/" + m_batches + " batches measured)" );
+        }
+    }
+
+    /**
+     * Look up name a batch of times.
+     *
+     * @param root the root context
+     * @param name the name
+     */
+    private void runBatch( final Context root, final Name name )
+        throws NamingException
+    {
+        for( int i = 0; i < m_lookupsPerBatch; i++ )
+        {
+            root.lookup( name );
+        }
+    }
+
+    /**
+     * A MemoryContext that can not be walked, so paths are resolved
+     * one component at a time through lookupSubContext.
+     */
+    private static class UnwalkedMemoryContext
+        extends MemoryContext
+    {
+        private final Hashtable m_bindings;
+
+        UnwalkedMemoryContext( final Namespace namespace,
+                               final Hashtable environment,
+                               final Context parent,
+                               final Hashtable bindings )
+        {
+            super( namespace, environment, parent, bindings );
+            m_bindings = bindings;
+        }
+
+        protected Context newContext()
+            throws NamingException
+        {
+            return new UnwalkedMemoryContext( getNamespace(), getRawEnvironment(),
+                                              getParent(), new Hashtable( 11 ) );
+        }
+
+        protected Context cloneContext()
+            throws NamingException
+        {
+            return new UnwalkedMemoryContext( getNamespace(), getRawEnvironment(),
+                                              getParent(), m_bindings );
+        }
+
+        protected AbstractLocalContext getLocalSubcontext( final String component )
+        {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.jndikit.memory.test;
+
+import javax.naming.Context;
+
+import org.codehaus.spice.jndikit.CachingNameParser;
+import org.codehaus.spice.jndikit.DefaultNamespace;
+import org.codehaus.spice.jndikit.memory.MemoryContext;
+import org.codehaus.spice.jndikit.test.TestObjectFactory;
+import org.codehaus.spice.jndikit.test.TestStateFactory;
+
+/**
+ * Runs the context tests with names parsed by a {@link CachingNameParser}.
+ */
+public class MemoryContextCachingParserTestCase
+    extends AbstractMemoryContextTestCase
+{
+    protected Context getRoot() throws Exception
+    {
+        final DefaultNamespace namespace = new DefaultNamespace( new CachingNameParser() );
+        namespace.addObjectFactory( new TestObjectFactory() );
+        namespace.addStateFactory( new TestStateFactory() );
+        return new MemoryContext( namespace, null, null );
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.jndikit.memory.test;
+
+import java.util.Hashtable;
+import javax.naming.Context;
+import javax.naming.NameNotFoundException;
+
+import org.codehaus.spice.jndikit.AbstractLocalContext;
+import org.codehaus.spice.jndikit.DefaultNameParser;
+import org.codehaus.spice.jndikit.DefaultNamespace;
+import org.codehaus.spice.jndikit.memory.MemoryContext;
+import org.codehaus.spice.jndikit.test.TestData;
+import org.codehaus.spice.jndikit.test.TestDataReferenceable;
+import org.codehaus.spice.jndikit.test.TestObjectFactory;
+import org.codehaus.spice.jndikit.test.TestStateFactory;
+
+/**
+ * Runs the context tests with objects created by object factories
+ * cached, and checks that the cache is used and invalidated.
+ */
+public class MemoryContextResolvedCacheTestCase
+    extends AbstractMemoryContextTestCase
+{
+    protected Context getRoot() throws Exception
+    {
+        final Hashtable environment = new Hashtable();
+        environment.put( AbstractLocalContext.CACHE_RESOLVED_PROPERTY, "true" );
+        return new MemoryContext( createNamespace(), environment, null );
+    }
+
+    public void testResolvedObjectIsCached()
+        throws Exception
+    {
+        m_context.bind( "o1", new TestDataReferenceable( "value1" ) );
+        final Object first = m_context.lookup( "o1" );
+        assertSame( "Cached object", first, m_context.lookup( "o1" ) );
+
+        m_context.rebind( "o1", new TestDataReferenceable( "value2" ) );
+        final Object second = m_context.lookup( "o1" );
+        assertNotSame( "Object after rebind", first, second );
+        assertEquals( "value2", ( (TestData)second ).getValue() );
+
+        m_context.unbind( "o1" );
+        try
+        {
+            m_context.lookup( "o1" );
+            fail( "Expected lookup of unbound name to fail" );
+        }
+        catch( final NameNotFoundException nnfe )
+        {
+        }
+    }
+
+    public void testCacheIsSharedWithCopies()
+        throws Exception
+    {
+        m_context.bind( "o1", new TestDataReferenceable( "value1" ) );
+        final Object first = m_context.lookup( "o1" );
+        final Context copy = (Context)m_context.lookup( "" );
+        assertSame( "Cached object in copy", first, copy.lookup( "o1" ) );
+
+        copy.rebind( "o1", new TestDataReferenceable( "value2" ) );
+        assertEquals( "value2", ( (TestData)m_context.lookup( "o1" ) ).getValue() );
+    }
+
+    public void testCacheIsDisabledByDefault()
+        throws Exception
+    {
+        final Context context = new MemoryContext( createNamespace(), new Hashtable(), null );
+        context.bind( "o1", new TestDataReferenceable( "value1" ) );
+        assertNotSame( "Uncached object", context.lookup( "o1" ), context.lookup( "o1" ) );
+    }
+
+    private DefaultNamespace createNamespace()
+    {
+        final DefaultNamespace namespace = new DefaultNamespace( new DefaultNameParser() );
+        namespace.addObjectFactory( new TestObjectFactory() );
+        namespace.addStateFactory( new TestStateFactory() );
+        return namespace;
+    }
+}
@@ -0,0 +1,438 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.jndikit.nio.test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Hashtable;
+import javax.naming.CommunicationException;
+import javax.naming.ConfigurationException;
+import javax.naming.Context;
+import javax.naming.InterruptedNamingException;
+import javax.naming.Name;
+import javax.naming.NamingException;
+
+import org.codehaus.spice.jndikit.Namespace;
+import org.codehaus.spice.jndikit.NamingProvider;
+import org.codehaus.spice.jndikit.RemoteContext;
+import org.codehaus.spice.jndikit.StandardNamespace;
+import org.codehaus.spice.jndikit.nio.NIOInitialContextFactory;
+import org.codehaus.spice.jndikit.nio.NIONamingProvider;
+import org.codehaus.spice.jndikit.nio.NIONamingServer;
+import org.codehaus.spice.jndikit.test.AbstractContextTestCase;
+import org.codehaus.spice.jndikit.test.TestStateFactory;
+
+/**
+ * Unit test for contexts served by {@link NIONamingServer}.
+ */
+public class NIOContextTestCase
+    extends AbstractContextTestCase
+{
+    private NIONamingServer m_server;
+
+    protected void setUp() throws Exception
+    {
+        m_server = new NIONamingServer( 0 );
+        m_server.start();
+        new Thread( m_server ).start();
+        super.setUp();
+    }
+
+    protected void tearDown() throws Exception
+    {
+        super.tearDown();
+        m_server.stop();
+    }
+
+    protected Context getRoot() throws Exception
+    {
+        return newRoot();
+    }
+
+    public void testGetNameInNamespace()
+        throws Exception
+    {
+        final Context sub4 = m_root.createSubcontext( "sub1" ).createSubcontext( "sub2" )
+            .createSubcontext( "sub3" ).createSubcontext( "sub4" );
+        assertEquals( "sub1/sub2/sub3/sub4", sub4.getNameInNamespace() );
+    }
+
+    public void testInvalidBind()
+    {
+        try
+        {
+            m_context.bind( "invalid", new Object() );
+            fail( "Expected bind of non-Serializable, non-Referenceable object to throw NamingException" );
+        }
+        catch( final NamingException expected )
+        {
+        }
+    }
+
+    public void testConcurrentCallsShareConnection()
+        throws Exception
+    {
+        m_context.bind( "O1", O1 );
+        final Throwable[] failure = new Throwable[ 1 ];
+        final Thread[] threads = new Thread[ 8 ];
+        for( int i = 0; i < threads.length; i++ )
+        {
+            final String name = "T" + i;
+            threads[ i ] = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        m_context.bind( name, name );
+                        for( int j = 0; j < 200; j++ )
+                        {
+                            assertEquals( O1, m_context.lookup( "O1" ) );
+                            assertEquals( name, m_context.lookup( name ) );
+                        }
+                    }
+                    catch( final Throwable t )
+                    {
+                        failure[ 0 ] = t;
+                    }
+                }
+            };
+            threads[ i ].start();
+        }
+        for( int i = 0; i < threads.length; i++ )
+        {
+            threads[ i ].join();
+        }
+        assertNull( "Thread failed: " + failure[ 0 ], failure[ 0 ] );
+    }
+
+    public void testLargeObject()
+        throws Exception
+    {
+        final StringBuffer buffer = new StringBuffer();
+        for( int i = 0; i < 100000; i++ )
+        {
+            buffer.append( (char)( 'a' + i % 26 ) );
+        }
+        final String large = buffer.toString();
+        m_context.bind( "large", large );
+        assertEquals( "Large object", large, m_context.lookup( "large" ) );
+    }
+
+    public void testReconnect()
+        throws Exception
+    {
+        m_context.bind( "O1", O1 );
+        final NIONamingProvider provider =
+            (NIONamingProvider)m_root.getEnvironment().get( RemoteContext.NAMING_PROVIDER );
+        provider.close();
+        assertEquals( "Lookup after close", O1, m_context.lookup( "O1" ) );
+    }
+
+    public void testProviderShared()
+        throws Exception
+    {
+        final Context other = newRoot();
+        try
+        {
+            assertSame( "Provider shared by contexts for one server",
+                        m_root.getEnvironment().get( RemoteContext.NAMING_PROVIDER ),
+                        other.getEnvironment().get( RemoteContext.NAMING_PROVIDER ) );
+        }
+        finally
+        {
+            other.close();
+        }
+
+        m_context.bind( "O1", O1 );
+        assertEquals( "Lookup after other context closed", O1, m_context.lookup( "O1" ) );
+    }
+
+    public void testProviderReleasedOnClose()
+        throws Exception
+    {
+        final Name name = m_context.getNameParser( "" ).parse( "O1" );
+        final NIONamingProvider provider =
+            (NIONamingProvider)m_root.getEnvironment().get( RemoteContext.NAMING_PROVIDER );
+        m_root.close();
+        m_root = null;
+        try
+        {
+            provider.lookup( name );
+            fail( "Expected CommunicationException" );
+        }
+        catch( final CommunicationException expected )
+        {
+        }
+
+        final Context root = newRoot();
+        try
+        {
+            assertNotSame( "New provider after release", provider,
+                           root.getEnvironment().get( RemoteContext.NAMING_PROVIDER ) );
+        }
+        finally
+        {
+            root.close();
+        }
+    }
+
+    public void testInvalidCountClosesOnlyThatConnection()
+        throws Exception
+    {
+        m_context.bind( "O1", O1 );
+
+        //A LOOKUP_ALL request claiming more names than could fit in any frame
+        final Socket socket = new Socket( "localhost", m_server.getPort() );
+        try
+        {
+            final DataOutputStream output = new DataOutputStream( socket.getOutputStream() );
+            output.writeInt( 9 );
+            output.writeInt( 1 );
+            output.writeByte( 11 );
+            output.writeInt( Integer.MAX_VALUE - 2 );
+            output.flush();
+            socket.getInputStream().read();
+        }
+        finally
+        {
+            socket.close();
+        }
+
+        assertTrue( "Server running", m_server.isRunning() );
+        assertEquals( "Lookup on open connection", O1, m_context.lookup( "O1" ) );
+        final NIONamingProvider provider = new NIONamingProvider( "localhost", m_server.getPort() );
+        try
+        {
+            assertNotNull( "New connection served", provider.getNameParser() );
+        }
+        finally
+        {
+            provider.close();
+        }
+    }
+
+    public void testPipelinedRequestsWithoutReading()
+        throws Exception
+    {
+        final StringBuffer buffer = new StringBuffer();
+        for( int i = 0; i < 100000; i++ )
+        {
+            buffer.append( 'a' );
+        }
+        m_root.bind( "large", buffer.toString() );
+
+        //LOOKUP requests for the large object sent without reading the responses
+        final int count = 200;
+        final Socket socket = new Socket( "localhost", m_server.getPort() );
+        try
+        {
+            final DataOutputStream output =
+                new DataOutputStream( new BufferedOutputStream( socket.getOutputStream() ) );
+            final Throwable[] failure = new Throwable[ 1 ];
+            final Thread writer = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        for( int i = 0; i < count; i++ )
+                        {
+                            output.writeInt( 12 );
+                            output.writeInt( i );
+                            output.writeByte( 10 );
+                            output.writeUTF( "large" );
+                        }
+                        output.flush();
+                    }
+                    catch( final Throwable t )
+                    {
+                        failure[ 0 ] = t;
+                    }
+                }
+            };
+            writer.start();
+            Thread.sleep( 200 );
+
+            final NIONamingProvider provider =
+                new NIONamingProvider( "localhost", m_server.getPort() );
+            try
+            {
+                assertNotNull( "Other clients served", provider.getNameParser() );
+            }
+            finally
+            {
+                provider.close();
+            }
+
+            final DataInputStream input =
+                new DataInputStream( new BufferedInputStream( socket.getInputStream() ) );
+            for( int i = 0; i < count; i++ )
+            {
+                final int size = input.readInt();
+                assertEquals( "Response id", i, input.readInt() );
+                assertEquals( "Status", 0, input.readByte() );
+                input.readFully( new byte[ size - 5 ] );
+            }
+            writer.join( 5000 );
+            assertNull( "Writer failed: " + failure[ 0 ], failure[ 0 ] );
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    public void testServerUnavailable()
+        throws Exception
+    {
+        final int port = m_server.getPort();
+        m_server.stop();
+        while( m_server.isRunning() )
+        {
+            Thread.yield();
+        }
+        Thread.sleep( 100 );
+
+        final Hashtable environment = new Hashtable();
+        environment.put( Context.PROVIDER_URL, "nio://localhost:" + port );
+        try
+        {
+            new NIOInitialContextFactory().getInitialContext( environment );
+            fail( "Expected NamingException" );
+        }
+        catch( final NamingException expected )
+        {
+        }
+    }
+
+    public void testMalformedUrl()
+        throws Exception
+    {
+        final Hashtable environment = new Hashtable();
+        environment.put( Context.PROVIDER_URL, "rmi://localhost:1978" );
+        try
+        {
+            new NIOInitialContextFactory().getInitialContext( environment );
+            fail( "Expected ConfigurationException" );
+        }
+        catch( final ConfigurationException expected )
+        {
+        }
+    }
+
+    public void testInvalidReadTimeout()
+        throws Exception
+    {
+        final Hashtable environment = new Hashtable();
+        environment.put( Context.PROVIDER_URL, "nio://localhost:" + m_server.getPort() );
+        environment.put( NIOInitialContextFactory.READ_TIMEOUT, "-1" );
+        try
+        {
+            new NIOInitialContextFactory().getInitialContext( environment );
+            fail( "Expected ConfigurationException" );
+        }
+        catch( final ConfigurationException expected )
+        {
+        }
+    }
+
+    public void testReadTimeout()
+        throws Exception
+    {
+        final ServerSocket silent = new ServerSocket( 0 );
+        try
+        {
+            final NIONamingProvider provider =
+                new NIONamingProvider( "localhost", silent.getLocalPort(), 200 );
+            try
+            {
+                provider.getNameParser();
+                fail( "Expected CommunicationException" );
+            }
+            catch( final CommunicationException expected )
+            {
+            }
+            finally
+            {
+                provider.close();
+            }
+        }
+        finally
+        {
+            silent.close();
+        }
+    }
+
+    public void testInterruptWhileWaiting()
+        throws Exception
+    {
+        final ServerSocket silent = new ServerSocket( 0 );
+        final NIONamingProvider provider =
+            new NIONamingProvider( "localhost", silent.getLocalPort() );
+        final Throwable[] failure = new Throwable[ 1 ];
+        final boolean[] interrupted = new boolean[ 1 ];
+        final Thread caller = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    provider.getNameParser();
+                }
+                catch( final Throwable t )
+                {
+                    failure[ 0 ] = t;
+                    interrupted[ 0 ] = Thread.currentThread().isInterrupted();
+                }
+            }
+        };
+        try
+        {
+            caller.start();
+            Thread.sleep( 200 );
+            caller.interrupt();
+            caller.join( 5000 );
+            assertFalse( "Caller still waiting", caller.isAlive() );
+            assertTrue( "Expected InterruptedNamingException: " + failure[ 0 ],
+                        failure[ 0 ] instanceof InterruptedNamingException );
+            assertTrue( "Interrupt status kept", interrupted[ 0 ] );
+        }
+        finally
+        {
+            provider.close();
+            silent.close();
+        }
+    }
+
+    private Context newRoot()
+        throws Exception
+    {
+        final Hashtable environment = new Hashtable();
+        environment.put( Context.PROVIDER_URL, "nio://localhost:" + m_server.getPort() );
+        environment.put( Context.STATE_FACTORIES,
+                         TestStateFactory.class.getName() );
+        return new StandardNamespaceICF().getInitialContext( environment );
+    }
+
+    static class StandardNamespaceICF
+        extends NIOInitialContextFactory
+    {
+        protected Namespace newNamespace( final Hashtable environment )
+            throws NamingException
+        {
+            final NamingProvider provider =
+                (NamingProvider)environment.get( RemoteContext.NAMING_PROVIDER );
+            return new StandardNamespace( ( (NIONamingProvider)provider ).getNameParser() );
+        }
+    }
+}
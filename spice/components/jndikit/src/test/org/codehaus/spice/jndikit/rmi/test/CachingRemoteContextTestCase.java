@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.jndikit.rmi.test;
+
+import java.util.Hashtable;
+import javax.naming.Context;
+import javax.naming.Name;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingException;
+
+import org.codehaus.spice.jndikit.DefaultNameParser;
+import org.codehaus.spice.jndikit.DefaultNamespace;
+import org.codehaus.spice.jndikit.RemoteContext;
+import org.codehaus.spice.jndikit.StandardNamespace;
+import org.codehaus.spice.jndikit.memory.MemoryContext;
+import org.codehaus.spice.jndikit.rmi.server.RMINamingProviderImpl;
+import org.codehaus.spice.jndikit.test.AbstractContextTestCase;
+import org.codehaus.spice.jndikit.test.TestStateFactory;
+
+/**
+ * Unit test for {@link RemoteContext} with {@link RemoteContext#CACHE_INTERVAL}
+ * set, talking to a {@link RMINamingProviderImpl} in the same JVM.
+ */
+public class CachingRemoteContextTestCase
+    extends AbstractContextTestCase
+{
+    private CountingProvider m_provider;
+
+    protected Context getRoot() throws Exception
+    {
+        final DefaultNameParser parser = new DefaultNameParser();
+        final MemoryContext root =
+            new MemoryContext( new DefaultNamespace( parser ), null, null );
+        m_provider = new CountingProvider( root );
+        return newContext( m_provider, 0 );
+    }
+
+    public void testCachedLookupSkipsProvider()
+        throws Exception
+    {
+        m_context.bind( "o1", O1 );
+        assertEquals( "First lookup", O1, m_context.lookup( "o1" ) );
+        final int lookups = m_provider.m_lookupCount;
+        assertEquals( "Cached lookup", O1, m_context.lookup( "o1" ) );
+        assertEquals( "Provider lookups", lookups, m_provider.m_lookupCount );
+    }
+
+    public void testOwnChangesInvalidate()
+        throws Exception
+    {
+        final Context context = newContext( m_provider, Long.MAX_VALUE );
+        context.bind( "o1", O1 );
+        assertEquals( "Lookup", O1, context.lookup( "o1" ) );
+        context.rebind( "o1", O2 );
+        assertEquals( "Lookup after rebind", O2, context.lookup( "o1" ) );
+        context.unbind( "o1" );
+        try
+        {
+            context.lookup( "o1" );
+            fail( "Expected NameNotFoundException" );
+        }
+        catch( final NameNotFoundException expected )
+        {
+        }
+    }
+
+    public void testOtherClientChangesInvalidate()
+        throws Exception
+    {
+        final Context other = newContext( m_provider, 0 );
+        m_context.bind( "o1", O1 );
+        m_context.createSubcontext( "x" ).bind( "o2", O2 );
+        assertEquals( "o1", O1, m_context.lookup( "o1" ) );
+        assertEquals( "x/o2", O2, m_context.lookup( "x/o2" ) );
+
+        other.rebind( m_context.getNameInNamespace() + "/o1", O3 );
+        other.unbind( m_context.getNameInNamespace() + "/x/o2" );
+        assertEquals( "o1 after rebind", O3, m_context.lookup( "o1" ) );
+        try
+        {
+            m_context.lookup( "x/o2" );
+            fail( "Expected NameNotFoundException" );
+        }
+        catch( final NameNotFoundException expected )
+        {
+        }
+    }
+
+    public void testIntervalLimitsPolls()
+        throws Exception
+    {
+        final Context context = newContext( m_provider, Long.MAX_VALUE );
+        context.bind( "o1", O1 );
+        context.lookup( "o1" );
+        final int polls = m_provider.m_versionCount;
+        final int lookups = m_provider.m_lookupCount;
+        for( int i = 0; i < 10; i++ )
+        {
+            assertEquals( "Lookup", O1, context.lookup( "o1" ) );
+        }
+        assertEquals( "Version polls", polls, m_provider.m_versionCount );
+        assertEquals( "Provider lookups", lookups, m_provider.m_lookupCount );
+    }
+
+    public void testChangesForgotten()
+        throws Exception
+    {
+        m_context.bind( "o1", O1 );
+        final long version = m_provider.getVersion();
+        for( int i = 0; i < 1001; i++ )
+        {
+            m_context.rebind( "o2", O2 );
+        }
+        assertNull( "Changes", m_provider.getChanges( version ) );
+        assertEquals( "Changes since current", 0,
+                      m_provider.getChanges( m_provider.getVersion() ).length );
+    }
+
+    public void testInvalidInterval()
+        throws Exception
+    {
+        m_context.bind( "o1", O1 );
+        try
+        {
+            newContext( m_provider, -1 ).lookup( "o1" );
+            fail( "Expected NamingException" );
+        }
+        catch( final NamingException expected )
+        {
+        }
+    }
+
+    private Context newContext( final CountingProvider provider, final long interval )
+        throws Exception
+    {
+        final Hashtable environment = new Hashtable();
+        environment.put( Context.STATE_FACTORIES,
+                         TestStateFactory.class.getName() );
+        environment.put( RemoteContext.NAMING_PROVIDER, provider );
+        environment.put( RemoteContext.NAMESPACE,
+                         new StandardNamespace( provider.getNameParser() ) );
+        environment.put( RemoteContext.CACHE_INTERVAL, String.valueOf( interval ) );
+        return new RemoteContext( environment, provider.getNameParser().parse( "" ) );
+    }
+
+    private static class CountingProvider
+        extends RMINamingProviderImpl
+    {
+        private int m_lookupCount;
+        private int m_versionCount;
+
+        CountingProvider( final Context root )
+        {
+            super( root );
+        }
+
+        public Object lookup( final Name name )
+            throws NamingException
+        {
+            m_lookupCount++;
+            return super.lookup( name );
+        }
+
+        public synchronized long getVersion()
+        {
+            m_versionCount++;
+            return super.getVersion();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.jndikit.rmi.test;
+
+import java.util.Hashtable;
+import javax.naming.Binding;
+import javax.naming.Context;
+import javax.naming.NameAlreadyBoundException;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+
+import org.codehaus.spice.jndikit.DefaultNameParser;
+import org.codehaus.spice.jndikit.DefaultNamespace;
+import org.codehaus.spice.jndikit.NamingProvider;
+import org.codehaus.spice.jndikit.RemoteContext;
+import org.codehaus.spice.jndikit.StandardNamespace;
+import org.codehaus.spice.jndikit.memory.MemoryContext;
+import org.codehaus.spice.jndikit.rmi.server.RMINamingProviderImpl;
+import org.codehaus.spice.jndikit.test.AbstractContextTestCase;
+import org.codehaus.spice.jndikit.test.TestStateFactory;
+
+/**
+ * Unit test for {@link RemoteContext} talking to a
+ * {@link RMINamingProviderImpl} in the same JVM, without RMI.
+ */
+public class LocalProviderContextTestCase
+    extends AbstractContextTestCase
+{
+    private static final int PAGE_SIZE = 2;
+
+    protected Context getRoot() throws Exception
+    {
+        final DefaultNameParser parser = new DefaultNameParser();
+        final MemoryContext root =
+            new MemoryContext( new DefaultNamespace( parser ), null, null );
+        final NamingProvider provider = new RMINamingProviderImpl( root );
+
+        final Hashtable environment = new Hashtable();
+        environment.put( Context.STATE_FACTORIES,
+                         TestStateFactory.class.getName() );
+        environment.put( RemoteContext.NAMING_PROVIDER, provider );
+        environment.put( RemoteContext.NAMESPACE,
+                         new StandardNamespace( provider.getNameParser() ) );
+        environment.put( RemoteContext.PAGE_SIZE, String.valueOf( PAGE_SIZE ) );
+        return new RemoteContext( environment, parser.parse( "" ) );
+    }
+
+    public void testListBindingsPages()
+        throws Exception
+    {
+        final String[] names = new String[]{"o1", "o2", "o3", "o4", "o5"};
+        for( int i = 0; i < names.length; i++ )
+        {
+            m_context.bind( names[ i ], names[ i ] );
+        }
+        m_context.createSubcontext( "sub" );
+
+        final NamingEnumeration bindings = m_context.listBindings( "" );
+        for( int i = 0; i < names.length; i++ )
+        {
+            assertTrue( "hasMore " + i, bindings.hasMore() );
+            final Binding binding = (Binding)bindings.next();
+            assertEquals( "Name", names[ i ], binding.getName() );
+            assertEquals( "Object", names[ i ], binding.getObject() );
+        }
+        assertTrue( "hasMore sub", bindings.hasMore() );
+        final Binding sub = (Binding)bindings.next();
+        assertEquals( "Name", "sub", sub.getName() );
+        assertTrue( "Context", sub.getObject() instanceof Context );
+        assertFalse( "hasMore at end", bindings.hasMore() );
+        bindings.close();
+    }
+
+    public void testListBindingsExactPage()
+        throws Exception
+    {
+        m_context.bind( "o1", O1 );
+        m_context.bind( "o2", O2 );
+
+        final NamingEnumeration bindings = m_context.listBindings( "" );
+        assertEquals( "o1", ( (Binding)bindings.next() ).getName() );
+        assertEquals( "o2", ( (Binding)bindings.next() ).getName() );
+        assertFalse( "hasMore at end", bindings.hasMore() );
+    }
+
+    public void testListBindingsNotFound()
+        throws Exception
+    {
+        try
+        {
+            m_context.listBindings( "missing" );
+            fail( "Expected NameNotFoundException" );
+        }
+        catch( final NameNotFoundException expected )
+        {
+        }
+    }
+
+    public void testLookupAll()
+        throws Exception
+    {
+        final RemoteContext context = (RemoteContext)m_context;
+        context.bind( "o1", O1 );
+        context.createSubcontext( "x" ).bind( "o2", O2 );
+
+        final Object[] objects = context.lookupAll( new String[]{"x/o2", "o1", "x"} );
+        assertEquals( "Objects", 3, objects.length );
+        assertEquals( "x/o2", O2, objects[ 0 ] );
+        assertEquals( "o1", O1, objects[ 1 ] );
+        assertEquals( "x/o2 through context", O2, ( (Context)objects[ 2 ] ).lookup( "o2" ) );
+
+        try
+        {
+            context.lookupAll( new String[]{"o1", "missing"} );
+            fail( "Expected NameNotFoundException" );
+        }
+        catch( final NameNotFoundException expected )
+        {
+        }
+    }
+
+    public void testBindAll()
+        throws Exception
+    {
+        final RemoteContext context = (RemoteContext)m_context;
+        context.createSubcontext( "x" );
+        context.bindAll( new String[]{"o1", "x/o2"}, new Object[]{O1, O2} );
+
+        assertEquals( "o1", O1, context.lookup( "o1" ) );
+        assertEquals( "x/o2", O2, context.lookup( "x/o2" ) );
+    }
+
+    public void testBindAllStopsAtFailure()
+        throws Exception
+    {
+        final RemoteContext context = (RemoteContext)m_context;
+        context.bind( "o2", O2 );
+        try
+        {
+            context.bindAll( new String[]{"o1", "o2", "o3"}, new Object[]{O1, O3, O3} );
+            fail( "Expected bind of existing name to fail" );
+        }
+        catch( final NameAlreadyBoundException expected )
+        {
+        }
+
+        assertEquals( "o1", O1, context.lookup( "o1" ) );
+        assertEquals( "o2", O2, context.lookup( "o2" ) );
+        try
+        {
+            context.lookup( "o3" );
+            fail( "Expected o3 not to be bound" );
+        }
+        catch( final NameNotFoundException expected )
+        {
+        }
+    }
+}
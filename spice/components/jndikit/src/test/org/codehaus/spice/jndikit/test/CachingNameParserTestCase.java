@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.jndikit.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import javax.naming.Name;
+
+import junit.framework.TestCase;
+import org.codehaus.spice.jndikit.CachingNameParser;
+import org.codehaus.spice.jndikit.DefaultNameParser;
+
+/**
+ * Unit testing for {@link CachingNameParser}.
+ */
+public class CachingNameParserTestCase
+    extends TestCase
+{
+    public void testNamesAreCached()
+        throws Exception
+    {
+        final CachingNameParser parser = new CachingNameParser();
+        final Name first = parser.parse( "a/b/c" );
+        final Name second = parser.parse( "a/b/c" );
+        assertSame( "Cached name", first, second );
+        assertEquals( "Parsed name", new DefaultNameParser().parse( "a/b/c" ), first );
+        assertEquals( "Parsed name reversed", first, new DefaultNameParser().parse( "a/b/c" ) );
+        assertEquals( "Size", 3, first.size() );
+        assertEquals( "Hits", 1, parser.getHitCount() );
+        assertEquals( "Misses", 1, parser.getMissCount() );
+    }
+
+    public void testNamesCanNotBeModified()
+        throws Exception
+    {
+        final CachingNameParser parser = new CachingNameParser();
+        final Name name = parser.parse( "a/b" );
+        try
+        {
+            name.add( "c" );
+            fail( "Expected add to fail" );
+        }
+        catch( final UnsupportedOperationException uoe )
+        {
+        }
+        try
+        {
+            name.remove( 0 );
+            fail( "Expected remove to fail" );
+        }
+        catch( final UnsupportedOperationException uoe )
+        {
+        }
+        assertEquals( "Unchanged", "a/b", parser.parse( "a/b" ).toString() );
+
+        final Name copy = (Name)name.clone();
+        copy.add( "c" );
+        assertEquals( "Copy", "a/b/c", copy.toString() );
+        final Name suffix = name.getSuffix( 1 );
+        suffix.add( "d" );
+        assertEquals( "Suffix", "b/d", suffix.toString() );
+    }
+
+    public void testCapacityIsBounded()
+        throws Exception
+    {
+        final CachingNameParser parser = new CachingNameParser( 16 );
+        for( int i = 0; i < 1000; i++ )
+        {
+            parser.parse( "name" + i );
+        }
+        assertTrue( "Size " + parser.getSize(), parser.getSize() <= 16 );
+        assertEquals( "Misses", 1000, parser.getMissCount() );
+    }
+
+    public void testSerialization()
+        throws Exception
+    {
+        final CachingNameParser parser = new CachingNameParser();
+        parser.parse( "a/b" );
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream output = new ObjectOutputStream( bytes );
+        output.writeObject( parser );
+        output.close();
+        final ObjectInputStream input =
+            new ObjectInputStream( new ByteArrayInputStream( bytes.toByteArray() ) );
+        final CachingNameParser copy = (CachingNameParser)input.readObject();
+
+        assertEquals( "Size after deserialization", 0, copy.getSize() );
+        assertEquals( "Parsed name", "a/b", copy.parse( "a/b" ).toString() );
+    }
+}
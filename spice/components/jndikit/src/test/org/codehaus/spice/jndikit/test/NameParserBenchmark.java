@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.jndikit.test;
+
+import javax.naming.NameParser;
+import javax.naming.NamingException;
+
+import org.codehaus.spice.jndikit.CachingNameParser;
+import org.codehaus.spice.jndikit.DefaultNameParser;
+
+/**
+ * Measures the time taken and the approximate number of bytes
+ * allocated per parse by a {@link DefaultNameParser} and by a
+ * {@link CachingNameParser}, both when the names parsed fit in the
+ * cache and when they do not. Run from the command line with the test
+ * classpath:
+ *
+ * <pre>
+ * java org.codehaus.spice.jndikit.test.NameParserBenchmark [parsesPerBatch] [batches]
+ * </pre>
+ *
+ * <p>Each batch parses a fixed set of names of the form
+ * java:comp/env/jdbc/dsN in turn. Allocation is estimated from the
+ * growth of used heap over a batch. Batches during which a garbage
+ * collection occured are discarded so the numbers are only
+ * approximate.</p>
+ */
+public class NameParserBenchmark
+{
+    /**
+     * The number of distinct names parsed, which fits in
+     * the default cache capacity.
+     */
+    private static final int NAME_COUNT = 64;
+
+    private final int m_parsesPerBatch;
+    private final int m_batches;
+    private final String[] m_names = new String[ NAME_COUNT ];
+
+    public NameParserBenchmark( final int parsesPerBatch, final int batches )
+    {
+        m_parsesPerBatch = parsesPerBatch;
+        m_batches = batches;
+        for( int i = 0; i < m_names.length; i++ )
+        {
+            m_names[ i ] = "java:comp/env/jdbc/ds" + i;
+        }
+    }
+
+    public static void main( final String[] args )
+        throws Exception
+    {
+        final int parsesPerBatch = ( args.length > 0 ) ? Integer.parseInt( args[ 0 ] ) : 100000;
+        final int batches = ( args.length > 1 ) ? Integer.parseInt( args[ 1 ] ) : 50;
+        final NameParserBenchmark benchmark = new NameParserBenchmark( parsesPerBatch, batches );
+        benchmark.run( "default", new DefaultNameParser() );
+        benchmark.run( "caching", new CachingNameParser() );
+        benchmark.run( "caching, names exceed capacity",
+                       new CachingNameParser( NAME_COUNT / 4 ) );
+    }
+
+    /**
+     * Run benchmark for specified parser and print the result.
+     *
+     * @param label the label printed with the result
+     * @param parser the parser
+     */
+    public void run( final String label, final NameParser parser )
+        throws NamingException
+    {
+        //Warm up
+        runBatch( parser );
+
+        final Runtime runtime = Runtime.getRuntime();
+        long allocated = 0;
+        int measured = 0;
+        long elapsed = 0;
+        for( int i = 0; i < m_batches; i++ )
+        {
+            final long before = runtime.totalMemory() - runtime.freeMemory();
+            final long start = System.currentTimeMillis();
+            runBatch( parser );
+            elapsed += System.currentTimeMillis() - start;
+            final long after = runtime.totalMemory() - runtime.freeMemory();
+            if( after >= before )
+            {
+                allocated += after - before;
+                measured++;
+            }
+        }
+
+        final long parses = (long)m_batches * m_parsesPerBatch;
+        final long nanosPerParse = elapsed * 1000000 / parses;
+        if( 0 == measured )
+        {
+            System.out.println( label + ": " + nanosPerParse + " ns/parse, " +
+                                "no batch completed without a collection" );
+        }
+        else
+        {
+            final long perParse = allocated / ( (long)measured * m_parsesPerBatch );
+            System.out.println( label + ": " + nanosPerParse + " ns/parse, ~" +
+                                perParse + " bytes/parse (" +
+                                measured + "/" + m_batches + " batches measured)" );
+        }
+    }
+
+    /**
+     * Parse a batch of names.
+     *
+     * @param parser the parser
+     */
+    private void runBatch( final NameParser parser )
+        throws NamingException
+    {
+        for( int i = 0; i < m_parsesPerBatch; i++ )
+        {
+            parser.parse( m_names[ i % m_names.length ] );
+        }
+    }
+}
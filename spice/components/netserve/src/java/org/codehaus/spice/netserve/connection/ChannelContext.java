@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * The context passed to a {@link ChannelHandler} for a single
+ * connection. It gives access to the channel, controls which
+ * events the handler is notified of and hands out pooled buffers.
+ */
+public interface ChannelContext
+{
+    /**
+     * Return the channel for connection. The channel is
+     * in non-blocking mode.
+     *
+     * @return the channel for connection
+     */
+    SocketChannel getChannel();
+
+    /**
+     * Read from the channel into buffer. Unlike reading from the
+     * channel directly, the bytes read are reported to the socket
+     * the connection was accepted as, so request handlers that
+     * decorate the ChannelRequestHandler can count them.
+     *
+     * @param buffer the buffer
+     * @return the number of bytes read, possibly 0, or -1 at end of stream
+     * @throws IOException if an error occurs reading channel
+     */
+    int read( ByteBuffer buffer )
+        throws IOException;
+
+    /**
+     * Write from buffer to the channel, reporting the bytes written
+     * in the same way as {@link #read(ByteBuffer)}.
+     *
+     * @param buffer the buffer
+     * @return the number of bytes written, possibly 0
+     * @throws IOException if an error occurs writing channel
+     */
+    int write( ByteBuffer buffer )
+        throws IOException;
+
+    /**
+     * Specify whether handler should be notified when
+     * channel is readable.
+     *
+     * @param interested true to be notified
+     */
+    void setReadInterest( boolean interested );
+
+    /**
+     * Specify whether handler should be notified when
+     * channel is writable.
+     *
+     * @param interested true to be notified
+     */
+    void setWriteInterest( boolean interested );
+
+    /**
+     * Acquire a cleared buffer from the pool. The buffer should be
+     * returned using {@link #releaseBuffer(ByteBuffer)} when the
+     * handler no longer needs it.
+     *
+     * @return the buffer
+     */
+    ByteBuffer acquireBuffer();
+
+    /**
+     * Return a buffer to the pool.
+     *
+     * @param buffer the buffer
+     */
+    void releaseBuffer( ByteBuffer buffer );
+
+    /**
+     * Return the object the handler associated with connection.
+     *
+     * @return the object the handler associated with connection
+     */
+    Object getAttachment();
+
+    /**
+     * Associate an object, typically the state of the protocol,
+     * with connection.
+     *
+     * @param attachment the object
+     */
+    void setAttachment( Object attachment );
+
+    /**
+     * Return true if the connection is still open.
+     *
+     * @return true if the connection is still open
+     */
+    boolean isOpen();
+
+    /**
+     * Close the connection. The handler will be notified
+     * through {@link ChannelHandler#channelClosed(ChannelContext)}.
+     */
+    void close();
+}
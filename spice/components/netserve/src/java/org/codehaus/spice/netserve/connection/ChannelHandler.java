@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection;
+
+import java.io.IOException;
+
+/**
+ * Implement this interface to process connections using non-blocking
+ * channels. Rather than being given a connection to service for its
+ * lifetime the handler is notified whenever the channel can be read
+ * from or written to. All notifications for a channel are made by the
+ * same selector thread and must not block, so a small number of
+ * threads can service a large number of connections.
+ *
+ * <p>If any of the notification methods throw an exception the
+ * channel is closed.</p>
+ */
+public interface ChannelHandler
+{
+    /**
+     * Notify handler that a channel has been opened. The channel
+     * is initially interested in reads only.
+     *
+     * @param context the context for channel
+     * @throws IOException if an error occurs
+     */
+    void channelOpened( ChannelContext context )
+        throws IOException;
+
+    /**
+     * Notify handler that the channel has data available to read
+     * or has reached end of stream.
+     *
+     * @param context the context for channel
+     * @throws IOException if an error occurs
+     */
+    void channelReadable( ChannelContext context )
+        throws IOException;
+
+    /**
+     * Notify handler that data can be written to the channel.
+     *
+     * @param context the context for channel
+     * @throws IOException if an error occurs
+     */
+    void channelWritable( ChannelContext context )
+        throws IOException;
+
+    /**
+     * Notify handler that the channel has been closed. The handler
+     * should release any buffers it holds for the channel.
+     *
+     * @param context the context for channel
+     */
+    void channelClosed( ChannelContext context );
+}
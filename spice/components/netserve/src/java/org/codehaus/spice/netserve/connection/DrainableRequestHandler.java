@@ -0,0 +1,26 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection;
+
+/**
+ * Implement this interface in handlers that hold connections open
+ * between requests, so that a drain of the acceptor passing them
+ * connections does not wait for connections that are merely idle.
+ */
+public interface DrainableRequestHandler
+    extends RequestHandler
+{
+    /**
+     * Notify handler that an acceptor passing it connections has
+     * stopped accepting and is waiting for the connections it accepted
+     * to be closed. The handler should close connections that are idle
+     * and close, rather than keep open, connections as their current
+     * request ends. Requests in progress should be allowed to finish.
+     */
+    void drainStarted();
+}
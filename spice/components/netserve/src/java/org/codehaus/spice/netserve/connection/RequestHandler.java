@@ -20,6 +20,14 @@ public interface RequestHandler
     /**
      * Processes connections as they occur.
      *
+     * <p>If the ServerSocket has an associated ServerSocketChannel this
+     * is invoked by a single selector thread that accepts connections
+     * for every such ServerSocket. Handlers of these connections must
+     * hand the socket off, for example to a thread pool or a selector,
+     * and return without blocking; while they block no connection is
+     * accepted on any channel. A RuntimeException thrown by the handler
+     * is reported to the acceptor's monitor and the socket closed.</p>
+     *
      * @param socket the socket
      */
     void handleConnection( Socket socket );
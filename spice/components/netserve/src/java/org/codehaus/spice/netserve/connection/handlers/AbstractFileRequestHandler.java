@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.handlers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Base class for request handlers that serve files or cached
+ * buffers. Subclasses parse the request in
+ * {@link #doPerformRequest(Socket)} and send the response body with
+ * {@link #sendFile(Socket, File, ByteRange)} or
+ * {@link #sendBuffers(Socket, ByteBuffer[])}, which use a
+ * {@link FileTransfer} to avoid copying data through the heap when
+ * the socket is channel-backed.
+ */
+public abstract class AbstractFileRequestHandler
+    extends AbstractRequestHandler
+{
+    /**
+     * The transfer used to send data.
+     */
+    private final FileTransfer m_transfer;
+
+    /**
+     * Create handler with a transfer using the default buffer size.
+     */
+    public AbstractFileRequestHandler()
+    {
+        this( new FileTransfer() );
+    }
+
+    /**
+     * Create handler.
+     *
+     * @param transfer the transfer used to send data
+     */
+    public AbstractFileRequestHandler( final FileTransfer transfer )
+    {
+        if( null == transfer )
+        {
+            throw new NullPointerException( "transfer" );
+        }
+        m_transfer = transfer;
+    }
+
+    /**
+     * Return the transfer used to send data, which
+     * records the bytes sent and time spent sending.
+     *
+     * @return the transfer
+     */
+    public FileTransfer getFileTransfer()
+    {
+        return m_transfer;
+    }
+
+    /**
+     * Send the whole of a file to socket.
+     *
+     * @param socket the socket
+     * @param file the file
+     * @return the number of bytes sent
+     * @throws IOException if an error occurs
+     */
+    protected long sendFile( final Socket socket, final File file )
+        throws IOException
+    {
+        return sendFile( socket, file, null );
+    }
+
+    /**
+     * Send a range of a file to socket. The caller should check
+     * the range is satisfiable before sending any response headers.
+     *
+     * @param socket the socket
+     * @param file the file
+     * @param range the range, or null to send the whole file
+     * @return the number of bytes sent
+     * @throws IOException if an error occurs
+     * @throws IllegalArgumentException if range is not satisfiable
+     */
+    protected long sendFile( final Socket socket,
+                             final File file,
+                             final ByteRange range )
+        throws IOException
+    {
+        if( null == file )
+        {
+            throw new NullPointerException( "file" );
+        }
+        final RandomAccessFile input = new RandomAccessFile( file, "r" );
+        try
+        {
+            final FileChannel channel = input.getChannel();
+            final long length = channel.size();
+            if( null == range )
+            {
+                return m_transfer.transfer( channel, 0, length, socket );
+            }
+            else if( !range.isSatisfiable( length ) )
+            {
+                throw new IllegalArgumentException( "range" );
+            }
+            else
+            {
+                return m_transfer.transfer( channel,
+                                            range.getOffset( length ),
+                                            range.getLength( length ),
+                                            socket );
+            }
+        }
+        finally
+        {
+            input.close();
+        }
+    }
+
+    /**
+     * Send the remaining bytes of buffers to socket. This can be used
+     * to send headers together with memory-mapped regions of files
+     * in a single gathering write.
+     *
+     * @param socket the socket
+     * @param buffers the buffers
+     * @return the number of bytes sent
+     * @throws IOException if an error occurs
+     */
+    protected long sendBuffers( final Socket socket, final ByteBuffer[] buffers )
+        throws IOException
+    {
+        return m_transfer.transfer( buffers, socket );
+    }
+}
@@ -9,8 +9,6 @@ package org.codehaus.spice.netserve.connection.handlers;
 
 import java.io.IOException;
 import java.net.Socket;
-import java.util.HashSet;
-import java.util.Set;
 import org.codehaus.spice.netserve.connection.RequestHandler;
 
 /**
@@ -23,9 +21,10 @@ public abstract class AbstractRequestHandler
     implements RequestHandler
 {
     /**
-     * The set of active requests.
+     * The registry of active requests, keyed by the
+     * thread handling each request.
      */
-    private final Set m_activeRequests = new HashSet();
+    private final ConnectionRegistry m_activeRequests = new ConnectionRegistry();
 
     /**
      * True if shutdown() has been called.
@@ -48,38 +47,37 @@ public abstract class AbstractRequestHandler
     public void shutdown( final long timeout )
     {
         markAsShutdown();
-        final Thread[] threads;
-        synchronized( this )
-        {
-            threads = (Thread[])m_activeRequests.
-                toArray( new Thread[ m_activeRequests.size() ] );
-        }
+        final Object[] threads = m_activeRequests.getKeys();
         for( int i = 0; i < threads.length; i++ )
         {
-            final Thread thread = threads[ i ];
+            final Thread thread = (Thread)threads[ i ];
             thread.interrupt();
         }
-        final long now = System.currentTimeMillis();
-        final long then = now + timeout;
+        m_activeRequests.waitUntilEmpty( timeout );
+    }
 
-        while( System.currentTimeMillis() < then || 0 == timeout )
-        {
-            synchronized( this )
-            {
-                if( 0 == m_activeRequests.size() )
-                {
-                    return;
-                }
-                try
-                {
-                    wait( timeout );
-                }
-                catch( final InterruptedException ie )
-                {
-                    //Ignore
-                }
-            }
-        }
+    /**
+     * Return the number of requests currently being handled.
+     *
+     * @return the number of requests currently being handled
+     */
+    public int getActiveRequestCount()
+    {
+        return m_activeRequests.size();
+    }
+
+    /**
+     * Return the sockets of requests currently being handled.
+     * Intended for diagnostics.
+     *
+     * @return the sockets of requests currently being handled
+     */
+    public Socket[] getActiveRequests()
+    {
+        final Object[] values = m_activeRequests.getValues();
+        final Socket[] sockets = new Socket[ values.length ];
+        System.arraycopy( values, 0, sockets, 0, values.length );
+        return sockets;
     }
 
     /**
@@ -108,10 +106,7 @@ public abstract class AbstractRequestHandler
      */
     protected void performRequest( final Socket socket )
     {
-        synchronized( this )
-        {
-            m_activeRequests.add( Thread.currentThread() );
-        }
+        m_activeRequests.register( Thread.currentThread(), socket );
         setupThreadName( socket );
         try
         {
@@ -124,11 +119,7 @@ public abstract class AbstractRequestHandler
         finally
         {
             endConnection( socket );
-            synchronized( this )
-            {
-                m_activeRequests.remove( Thread.currentThread() );
-                notifyAll();
-            }
+            m_activeRequests.unregister( Thread.currentThread() );
         }
     }
 
@@ -0,0 +1,492 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.handlers;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import org.codehaus.spice.netserve.connection.DrainableRequestHandler;
+import org.codehaus.spice.netserve.connection.RequestHandler;
+
+/**
+ * A handler that decides whether to admit each connection before
+ * passing it to the underlying handler. It should be placed in front
+ * of any handler that dispatches to other threads, such as
+ * {@link ThreadPerRequestHandler}, so rejected connections are closed
+ * in the acceptor thread without using a worker. Connections can be
+ * limited by
+ *
+ * <ul>
+ *   <li>the number of admitted connections that are still open.</li>
+ *   <li>the number of admitted connections from each remote address
+ *   that are still open.</li>
+ *   <li>the rate at which connections are admitted, using a token
+ *   bucket that allows short bursts.</li>
+ * </ul>
+ *
+ * <p>A limit of 0 disables that check. When the maximum number of
+ * connections are open a new connection can wait in the acceptor
+ * thread for a connection to close rather than be rejected. While it
+ * waits no further connections are accepted which pushes back on
+ * clients through the listen backlog. Connections accepted from a
+ * ServerSocket with an associated channel never wait: they are
+ * accepted by a selector thread shared by all such ServerSockets,
+ * which must not block, so they are rejected as if the wait had
+ * timed out.</p>
+ *
+ * <p>An admitted connection is counted as open until its socket is
+ * closed. The underlying handler is given a socket that passes all
+ * calls through to the accepted socket and notices when it is closed,
+ * so handlers must close sockets through the socket they were given
+ * and not through its channel, as {@link ChannelRequestHandler} does.</p>
+ */
+public class AdmissionControlHandler
+    implements DrainableRequestHandler
+{
+    private static final int ADMITTED = 0;
+    private static final int RATE_EXCEEDED = 1;
+    private static final int ADDRESS_EXCEEDED = 2;
+    private static final int LIMIT_EXCEEDED = 3;
+    private static final int SHUTDOWN = 4;
+
+    /**
+     * The handler admitted connections are passed to.
+     */
+    private final RequestHandler m_handler;
+
+    /**
+     * The monitor that receives admission events.
+     */
+    private final AdmissionMonitor m_monitor;
+
+    /**
+     * The maximum number of open connections.
+     */
+    private final int m_maxConnections;
+
+    /**
+     * The maximum number of open connections per remote address.
+     */
+    private final int m_maxPerAddress;
+
+    /**
+     * The number of connections admitted per second.
+     */
+    private final int m_ratePerSecond;
+
+    /**
+     * The number of connections that can be admitted in a burst.
+     */
+    private final int m_burst;
+
+    /**
+     * The time to wait for an open connection to close
+     * when the maximum number of connections are open.
+     */
+    private final long m_maxWait;
+
+    /**
+     * A map of InetAddress->int[1] holding the number of
+     * open connections from each address.
+     */
+    private final Map m_addressCounts = new HashMap();
+
+    /**
+     * The number of open connections.
+     */
+    private int m_activeCount;
+
+    /**
+     * The tokens remaining in the bucket.
+     */
+    private int m_tokens;
+
+    /**
+     * The time tokens were last added to the bucket.
+     */
+    private long m_lastRefill;
+
+    /**
+     * True if shutdown() has been called.
+     */
+    private boolean m_shutdown;
+
+    /**
+     * Create handler that limits the number of open connections
+     * in total and from each address.
+     *
+     * @param handler the handler admitted connections are passed to
+     * @param maxConnections the maximum number of open connections
+     * @param maxPerAddress the maximum number of open connections per address
+     */
+    public AdmissionControlHandler( final RequestHandler handler,
+                                    final int maxConnections,
+                                    final int maxPerAddress )
+    {
+        this( handler, NullAdmissionMonitor.MONITOR, maxConnections, maxPerAddress, 0, 0, 0 );
+    }
+
+    /**
+     * Create handler.
+     *
+     * @param handler the handler admitted connections are passed to
+     * @param monitor the monitor that receives admission events
+     * @param maxConnections the maximum number of open connections
+     * @param maxPerAddress the maximum number of open connections per address
+     * @param ratePerSecond the number of connections admitted per second
+     * @param burst the number of connections that can be admitted in a
+     *        burst, 0 for the same as ratePerSecond
+     * @param maxWait the time in milliseconds a connection waits to be
+     *        admitted when the maximum number of connections are open.
+     *        Connections with an associated channel do not wait.
+     */
+    public AdmissionControlHandler( final RequestHandler handler,
+                                    final AdmissionMonitor monitor,
+                                    final int maxConnections,
+                                    final int maxPerAddress,
+                                    final int ratePerSecond,
+                                    final int burst,
+                                    final long maxWait )
+    {
+        if( null == handler )
+        {
+            throw new NullPointerException( "handler" );
+        }
+        if( null == monitor )
+        {
+            throw new NullPointerException( "monitor" );
+        }
+        if( maxConnections < 0 )
+        {
+            throw new IllegalArgumentException( "maxConnections" );
+        }
+        if( maxPerAddress < 0 )
+        {
+            throw new IllegalArgumentException( "maxPerAddress" );
+        }
+        if( ratePerSecond < 0 || burst < 0 )
+        {
+            throw new IllegalArgumentException( "ratePerSecond=" + ratePerSecond +
+                                                " burst=" + burst );
+        }
+        if( maxWait < 0 )
+        {
+            throw new IllegalArgumentException( "maxWait" );
+        }
+        m_handler = handler;
+        m_monitor = monitor;
+        m_maxConnections = maxConnections;
+        m_maxPerAddress = maxPerAddress;
+        m_ratePerSecond = ratePerSecond;
+        m_burst = ( 0 == burst ) ? Math.max( 1, ratePerSecond ) : burst;
+        m_maxWait = maxWait;
+        m_tokens = m_burst;
+        m_lastRefill = System.currentTimeMillis();
+    }
+
+    /**
+     * Admit the connection and pass it to the underlying
+     * handler or close it.
+     *
+     * @param socket the socket
+     */
+    public void handleConnection( final Socket socket )
+    {
+        final InetAddress address = socket.getInetAddress();
+        //Channel sockets are handled by the shared selector thread
+        final int result = admit( address, null == socket.getChannel() );
+        if( ADMITTED == result )
+        {
+            final AdmittedSocket admitted = new AdmittedSocket( socket, address );
+            try
+            {
+                m_handler.handleConnection( admitted );
+            }
+            catch( final RuntimeException re )
+            {
+                closeSocket( admitted, address );
+                throw re;
+            }
+            return;
+        }
+
+        if( RATE_EXCEEDED == result )
+        {
+            m_monitor.rateLimitExceeded( address );
+        }
+        else if( ADDRESS_EXCEEDED == result )
+        {
+            m_monitor.addressLimitExceeded( address );
+        }
+        else if( LIMIT_EXCEEDED == result )
+        {
+            m_monitor.connectionLimitExceeded( address );
+        }
+        closeSocket( socket, address );
+    }
+
+    /**
+     * Stop admitting connections and shutdown the underlying handler.
+     *
+     * @param timeout the timeout
+     */
+    public void shutdown( final long timeout )
+    {
+        synchronized( this )
+        {
+            m_shutdown = true;
+            notifyAll();
+        }
+        m_handler.shutdown( timeout );
+    }
+
+    /**
+     * Pass the start of a drain on to the underlying handler.
+     */
+    public void drainStarted()
+    {
+        if( m_handler instanceof DrainableRequestHandler )
+        {
+            ( (DrainableRequestHandler)m_handler ).drainStarted();
+        }
+    }
+
+    /**
+     * Return the number of admitted connections that are still open.
+     *
+     * @return the number of admitted connections that are still open
+     */
+    public synchronized int getActiveCount()
+    {
+        return m_activeCount;
+    }
+
+    /**
+     * Return the number of admitted connections from an
+     * address that are still open.
+     *
+     * @param address the address
+     * @return the number of open connections from address
+     */
+    public synchronized int getActiveCount( final InetAddress address )
+    {
+        final int[] count = (int[])m_addressCounts.get( address );
+        return ( null == count ) ? 0 : count[ 0 ];
+    }
+
+    /**
+     * Decide whether to admit a connection and if so count it as open.
+     *
+     * @param address the remote address of connection
+     * @param mayWait true if the connection may wait for an
+     *        open connection to close
+     * @return the result
+     */
+    private int admit( final InetAddress address, final boolean mayWait )
+    {
+        boolean queued = false;
+        final int activeCount;
+        synchronized( this )
+        {
+            if( m_shutdown )
+            {
+                return SHUTDOWN;
+            }
+            if( !takeToken() )
+            {
+                return RATE_EXCEEDED;
+            }
+            int[] count = (int[])m_addressCounts.get( address );
+            if( 0 != m_maxPerAddress &&
+                null != count &&
+                count[ 0 ] >= m_maxPerAddress )
+            {
+                return ADDRESS_EXCEEDED;
+            }
+            if( 0 != m_maxConnections && m_activeCount >= m_maxConnections )
+            {
+                if( 0 == m_maxWait || !mayWait )
+                {
+                    return LIMIT_EXCEEDED;
+                }
+                queued = true;
+                if( !waitForSlot() )
+                {
+                    return m_shutdown ? SHUTDOWN : LIMIT_EXCEEDED;
+                }
+                //The address may have reached its limit while we waited
+                count = (int[])m_addressCounts.get( address );
+                if( 0 != m_maxPerAddress &&
+                    null != count &&
+                    count[ 0 ] >= m_maxPerAddress )
+                {
+                    return ADDRESS_EXCEEDED;
+                }
+            }
+
+            if( null != address )
+            {
+                if( null == count )
+                {
+                    count = new int[ 1 ];
+                    m_addressCounts.put( address, count );
+                }
+                count[ 0 ]++;
+            }
+            m_activeCount++;
+            activeCount = m_activeCount;
+        }
+        if( queued )
+        {
+            m_monitor.connectionQueued( address );
+        }
+        m_monitor.connectionAdmitted( address, activeCount );
+        return ADMITTED;
+    }
+
+    /**
+     * Wait for an open connection to close.
+     * Must be called while holding lock.
+     *
+     * @return true if a connection can be admitted
+     */
+    private boolean waitForSlot()
+    {
+        final long end = System.currentTimeMillis() + m_maxWait;
+        while( !m_shutdown && m_activeCount >= m_maxConnections )
+        {
+            final long remaining = end - System.currentTimeMillis();
+            if( remaining <= 0 )
+            {
+                return false;
+            }
+            try
+            {
+                wait( remaining );
+            }
+            catch( final InterruptedException ie )
+            {
+                return false;
+            }
+        }
+        return !m_shutdown;
+    }
+
+    /**
+     * Take a token from the bucket, adding the tokens
+     * accumulated since the last refill first.
+     * Must be called while holding lock.
+     *
+     * @return true if a token was available
+     */
+    private boolean takeToken()
+    {
+        if( 0 == m_ratePerSecond )
+        {
+            return true;
+        }
+        final long now = System.currentTimeMillis();
+        final long added = ( now - m_lastRefill ) * m_ratePerSecond / 1000;
+        if( added > 0 )
+        {
+            m_tokens = (int)Math.min( m_burst, m_tokens + added );
+            m_lastRefill = ( m_tokens == m_burst ) ?
+                now : m_lastRefill + added * 1000 / m_ratePerSecond;
+        }
+        if( m_tokens > 0 )
+        {
+            m_tokens--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Close a socket, reporting any error to the monitor.
+     *
+     * @param socket the socket
+     * @param address the remote address of socket
+     */
+    private void closeSocket( final Socket socket, final InetAddress address )
+    {
+        try
+        {
+            socket.close();
+        }
+        catch( final IOException ioe )
+        {
+            m_monitor.errorClosingConnection( address, ioe );
+        }
+    }
+
+    /**
+     * Count an admitted connection as closed.
+     *
+     * @param address the remote address of connection
+     */
+    private void release( final InetAddress address )
+    {
+        final int activeCount;
+        synchronized( this )
+        {
+            if( null != address )
+            {
+                final int[] count = (int[])m_addressCounts.get( address );
+                if( null != count && 0 == --count[ 0 ] )
+                {
+                    m_addressCounts.remove( address );
+                }
+            }
+            m_activeCount--;
+            activeCount = m_activeCount;
+            notifyAll();
+        }
+        m_monitor.connectionReleased( address, activeCount );
+    }
+
+    /**
+     * The socket passed to underlying handler that
+     * releases the connection when closed.
+     */
+    private class AdmittedSocket
+        extends DelegatingSocket
+    {
+        private final InetAddress m_address;
+        private boolean m_released;
+
+        AdmittedSocket( final Socket socket, final InetAddress address )
+        {
+            super( socket );
+            m_address = address;
+        }
+
+        public void close()
+            throws IOException
+        {
+            try
+            {
+                super.close();
+            }
+            finally
+            {
+                final boolean release;
+                synchronized( this )
+                {
+                    release = !m_released;
+                    m_released = true;
+                }
+                if( release )
+                {
+                    release( m_address );
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.handlers;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+/**
+ * Monitor used to monitor the admission of connections by
+ * an {@link AdmissionControlHandler}.
+ */
+public interface AdmissionMonitor
+{
+    /**
+     * A connection was admitted and passed to the underlying handler.
+     *
+     * @param address the remote address of connection
+     * @param activeCount the number of admitted connections including this one
+     */
+    void connectionAdmitted( InetAddress address, int activeCount );
+
+    /**
+     * An admitted connection was closed.
+     *
+     * @param address the remote address of connection
+     * @param activeCount the number of admitted connections remaining
+     */
+    void connectionReleased( InetAddress address, int activeCount );
+
+    /**
+     * A connection is waiting for another connection to close
+     * because the maximum number of connections are active.
+     *
+     * @param address the remote address of connection
+     */
+    void connectionQueued( InetAddress address );
+
+    /**
+     * A connection was rejected because the accept rate was exceeded.
+     *
+     * @param address the remote address of connection
+     */
+    void rateLimitExceeded( InetAddress address );
+
+    /**
+     * A connection was rejected because the maximum number of
+     * connections from its address are active.
+     *
+     * @param address the remote address of connection
+     */
+    void addressLimitExceeded( InetAddress address );
+
+    /**
+     * A connection was rejected because the maximum number of
+     * connections are active.
+     *
+     * @param address the remote address of connection
+     */
+    void connectionLimitExceeded( InetAddress address );
+
+    /**
+     * There was an error closing a rejected connection.
+     *
+     * @param address the remote address of connection
+     * @param ioe the exception
+     */
+    void errorClosingConnection( InetAddress address, IOException ioe );
+}
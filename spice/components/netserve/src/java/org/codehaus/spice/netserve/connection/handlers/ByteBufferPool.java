@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.handlers;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A pool of fixed size ByteBuffers. Direct buffers are expensive to
+ * allocate and are not reclaimed promptly by the garbage collector so
+ * handlers should reuse them rather than allocating a buffer for each
+ * read or write.
+ */
+public class ByteBufferPool
+{
+    /**
+     * The buffers available for reuse.
+     */
+    private final List m_buffers = new ArrayList();
+
+    /**
+     * The capacity of each buffer.
+     */
+    private final int m_bufferSize;
+
+    /**
+     * The maximum number of buffers held for reuse.
+     */
+    private final int m_maxPooled;
+
+    /**
+     * True if buffers are allocated as direct buffers.
+     */
+    private final boolean m_direct;
+
+    /**
+     * Create a pool.
+     *
+     * @param bufferSize the capacity of each buffer
+     * @param maxPooled the maximum number of buffers held for reuse
+     * @param direct true to allocate direct buffers
+     */
+    public ByteBufferPool( final int bufferSize,
+                           final int maxPooled,
+                           final boolean direct )
+    {
+        if( bufferSize < 1 )
+        {
+            throw new IllegalArgumentException( "bufferSize" );
+        }
+        if( maxPooled < 0 )
+        {
+            throw new IllegalArgumentException( "maxPooled" );
+        }
+        m_bufferSize = bufferSize;
+        m_maxPooled = maxPooled;
+        m_direct = direct;
+    }
+
+    /**
+     * Return the capacity of each buffer.
+     *
+     * @return the capacity of each buffer
+     */
+    public int getBufferSize()
+    {
+        return m_bufferSize;
+    }
+
+    /**
+     * Return the number of buffers currently available for reuse.
+     *
+     * @return the number of buffers currently available for reuse
+     */
+    public synchronized int getPooledCount()
+    {
+        return m_buffers.size();
+    }
+
+    /**
+     * Acquire a cleared buffer, reusing a pooled buffer if possible.
+     *
+     * @return the buffer
+     */
+    public ByteBuffer acquire()
+    {
+        synchronized( this )
+        {
+            final int size = m_buffers.size();
+            if( size > 0 )
+            {
+                final ByteBuffer buffer = (ByteBuffer)m_buffers.remove( size - 1 );
+                buffer.clear();
+                return buffer;
+            }
+        }
+        if( m_direct )
+        {
+            return ByteBuffer.allocateDirect( m_bufferSize );
+        }
+        else
+        {
+            return ByteBuffer.allocate( m_bufferSize );
+        }
+    }
+
+    /**
+     * Return a buffer to the pool. Buffers that were not created by
+     * a pool of the same size, or that arrive when the pool is full,
+     * are left for the garbage collector.
+     *
+     * @param buffer the buffer
+     */
+    public void release( final ByteBuffer buffer )
+    {
+        if( null == buffer )
+        {
+            throw new NullPointerException( "buffer" );
+        }
+        if( buffer.capacity() != m_bufferSize || buffer.isDirect() != m_direct )
+        {
+            return;
+        }
+        synchronized( this )
+        {
+            if( m_buffers.size() < m_maxPooled )
+            {
+                m_buffers.add( buffer );
+            }
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.handlers;
+
+/**
+ * A range of bytes requested from a resource whose length may not be
+ * known until the range is served. A range is either from a first
+ * byte to an optional last byte, inclusive, or the final bytes of the
+ * resource. This is the form used by the HTTP Range header, which can
+ * be parsed with {@link #parse(String)}.
+ */
+public final class ByteRange
+{
+    /**
+     * Value of last byte indicating range extends to end of resource.
+     */
+    private static final long TO_END = -1;
+
+    /**
+     * The first byte. Unused for a suffix range.
+     */
+    private final long m_first;
+
+    /**
+     * The last byte, -1 if the range extends to the end
+     * of resource, or the length of a suffix range.
+     */
+    private final long m_last;
+
+    /**
+     * True if range contains the final bytes of resource.
+     */
+    private final boolean m_suffix;
+
+    /**
+     * Create a range from first byte to end of resource.
+     *
+     * @param first the first byte
+     */
+    public ByteRange( final long first )
+    {
+        this( first, TO_END );
+    }
+
+    /**
+     * Create a range from first byte to last byte inclusive.
+     *
+     * @param first the first byte
+     * @param last the last byte
+     */
+    public ByteRange( final long first, final long last )
+    {
+        this( first, last, false );
+    }
+
+    /**
+     * Create a range.
+     *
+     * @param first the first byte
+     * @param last the last byte or length of suffix range
+     * @param suffix true if range contains the final bytes of resource
+     */
+    private ByteRange( final long first, final long last, final boolean suffix )
+    {
+        if( suffix )
+        {
+            if( last < 0 )
+            {
+                throw new IllegalArgumentException( "length" );
+            }
+        }
+        else
+        {
+            if( first < 0 )
+            {
+                throw new IllegalArgumentException( "first" );
+            }
+            if( TO_END != last && last < first )
+            {
+                throw new IllegalArgumentException( "last" );
+            }
+        }
+        m_first = first;
+        m_last = last;
+        m_suffix = suffix;
+    }
+
+    /**
+     * Create a range containing the final bytes of resource.
+     *
+     * @param length the number of bytes
+     * @return the range
+     */
+    public static ByteRange suffix( final long length )
+    {
+        return new ByteRange( 0, length, true );
+    }
+
+    /**
+     * Parse a range in the form "bytes=first-last", "bytes=first-"
+     * or "bytes=-length". Only a single range is supported.
+     *
+     * @param spec the range specification
+     * @return the range
+     * @throws IllegalArgumentException if spec is malformed
+     */
+    public static ByteRange parse( final String spec )
+    {
+        if( null == spec )
+        {
+            throw new NullPointerException( "spec" );
+        }
+        final String prefix = "bytes=";
+        final String value = spec.trim();
+        if( !value.startsWith( prefix ) || -1 != value.indexOf( ',' ) )
+        {
+            throw new IllegalArgumentException( spec );
+        }
+        final int dash = value.indexOf( '-', prefix.length() );
+        if( -1 == dash )
+        {
+            throw new IllegalArgumentException( spec );
+        }
+        final String first = value.substring( prefix.length(), dash ).trim();
+        final String last = value.substring( dash + 1 ).trim();
+        try
+        {
+            if( 0 == first.length() )
+            {
+                return suffix( Long.parseLong( last ) );
+            }
+            else if( 0 == last.length() )
+            {
+                return new ByteRange( Long.parseLong( first ) );
+            }
+            else
+            {
+                return new ByteRange( Long.parseLong( first ), Long.parseLong( last ) );
+            }
+        }
+        catch( final IllegalArgumentException iae )
+        {
+            throw new IllegalArgumentException( spec );
+        }
+    }
+
+    /**
+     * Return true if range contains any bytes of a
+     * resource with specified length.
+     *
+     * @param length the length of resource
+     * @return true if range is satisfiable
+     */
+    public boolean isSatisfiable( final long length )
+    {
+        if( m_suffix )
+        {
+            return m_last > 0 && length > 0;
+        }
+        else
+        {
+            return m_first < length;
+        }
+    }
+
+    /**
+     * Return the position of first byte in a resource with
+     * specified length. The range must be satisfiable.
+     *
+     * @param length the length of resource
+     * @return the position of first byte
+     */
+    public long getOffset( final long length )
+    {
+        if( m_suffix )
+        {
+            return Math.max( 0, length - m_last );
+        }
+        else
+        {
+            return m_first;
+        }
+    }
+
+    /**
+     * Return the number of bytes in range for a resource with
+     * specified length. The range must be satisfiable.
+     *
+     * @param length the length of resource
+     * @return the number of bytes
+     */
+    public long getLength( final long length )
+    {
+        if( m_suffix )
+        {
+            return Math.min( m_last, length );
+        }
+        else if( TO_END == m_last || m_last >= length )
+        {
+            return length - m_first;
+        }
+        else
+        {
+            return m_last - m_first + 1;
+        }
+    }
+
+    /**
+     * Return the range for a resource with specified length
+     * in the form used by the HTTP Content-Range header.
+     *
+     * @param length the length of resource
+     * @return the range description
+     */
+    public String toContentRange( final long length )
+    {
+        if( !isSatisfiable( length ) )
+        {
+            return "bytes */" + length;
+        }
+        final long offset = getOffset( length );
+        return "bytes " + offset + "-" +
+            ( offset + getLength( length ) - 1 ) + "/" + length;
+    }
+
+    public String toString()
+    {
+        if( m_suffix )
+        {
+            return "bytes=-" + m_last;
+        }
+        else if( TO_END == m_last )
+        {
+            return "bytes=" + m_first + "-";
+        }
+        else
+        {
+            return "bytes=" + m_first + "-" + m_last;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.handlers;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import org.codehaus.spice.netserve.connection.ChannelHandler;
+import org.codehaus.spice.netserve.connection.RequestHandler;
+
+/**
+ * Adapts a {@link ChannelHandler} to the RequestHandler interface so
+ * that non-blocking handlers can be connected to a
+ * SocketAcceptorManager in the same way as blocking handlers such as
+ * subclasses of {@link AbstractRequestHandler}.
+ *
+ * <p>Each accepted connection is switched to non-blocking mode and
+ * registered with one of a fixed number of selector threads, chosen
+ * in turn, so the number of threads does not grow with the number
+ * of connections. Connections must be accepted from a ServerSocket
+ * that has an associated ServerSocketChannel, for example one created
+ * by {@link org.codehaus.spice.netserve.sockets.impl.ChannelServerSocketFactory}.
+ * Other connections are closed.</p>
+ *
+ * <p>When a connection ends the socket the handler was given is closed,
+ * not just its channel, so that handlers decorating this one, such as
+ * {@link AdmissionControlHandler}, see the connection close.</p>
+ */
+public class ChannelRequestHandler
+    implements RequestHandler
+{
+    /**
+     * The default size of pooled buffers.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /**
+     * The default maximum number of pooled buffers.
+     */
+    public static final int DEFAULT_MAX_POOLED_BUFFERS = 256;
+
+    /**
+     * The handler notified of channel events.
+     */
+    private final ChannelHandler m_handler;
+
+    /**
+     * The pool of buffers handed out to handler.
+     */
+    private final ByteBufferPool m_bufferPool;
+
+    /**
+     * The selector loops, created when first connection arrives.
+     */
+    private final SelectorLoop[] m_loops;
+
+    /**
+     * The index of loop next connection is registered with.
+     */
+    private int m_nextLoop;
+
+    /**
+     * True if shutdown() has been called.
+     */
+    private boolean m_shutdown;
+
+    /**
+     * Create handler with a single selector thread
+     * and a pool of direct buffers.
+     *
+     * @param handler the handler notified of channel events
+     */
+    public ChannelRequestHandler( final ChannelHandler handler )
+    {
+        this( handler,
+              1,
+              new ByteBufferPool( DEFAULT_BUFFER_SIZE, DEFAULT_MAX_POOLED_BUFFERS, true ) );
+    }
+
+    /**
+     * Create handler.
+     *
+     * @param handler the handler notified of channel events
+     * @param selectorCount the number of selector threads
+     * @param bufferPool the pool of buffers handed out to handler
+     */
+    public ChannelRequestHandler( final ChannelHandler handler,
+                                  final int selectorCount,
+                                  final ByteBufferPool bufferPool )
+    {
+        if( null == handler )
+        {
+            throw new NullPointerException( "handler" );
+        }
+        if( null == bufferPool )
+        {
+            throw new NullPointerException( "bufferPool" );
+        }
+        if( selectorCount < 1 )
+        {
+            throw new IllegalArgumentException( "selectorCount" );
+        }
+        m_handler = handler;
+        m_bufferPool = bufferPool;
+        m_loops = new SelectorLoop[ selectorCount ];
+    }
+
+    /**
+     * Register the channel for socket with a selector thread.
+     *
+     * @param socket the socket
+     */
+    public void handleConnection( final Socket socket )
+    {
+        final SocketChannel channel = socket.getChannel();
+        if( null == channel )
+        {
+            errorHandlingConnection( socket,
+                                     new IllegalArgumentException( "Socket has no channel" ) );
+            endConnection( socket );
+            return;
+        }
+        try
+        {
+            final SelectorLoop loop = nextLoop();
+            if( null == loop )
+            {
+                endConnection( socket );
+                return;
+            }
+            channel.configureBlocking( false );
+            if( !loop.register( socket, channel ) )
+            {
+                endConnection( socket );
+            }
+        }
+        catch( final IOException ioe )
+        {
+            errorHandlingConnection( socket, ioe );
+            endConnection( socket );
+        }
+    }
+
+    /**
+     * Stop the selector threads and close all connections.
+     *
+     * @param timeout the time to wait for each selector thread to stop
+     */
+    public void shutdown( final long timeout )
+    {
+        final SelectorLoop[] loops;
+        synchronized( this )
+        {
+            m_shutdown = true;
+            loops = (SelectorLoop[])m_loops.clone();
+        }
+        for( int i = 0; i < loops.length; i++ )
+        {
+            if( null != loops[ i ] )
+            {
+                loops[ i ].shutdown( timeout );
+            }
+        }
+    }
+
+    /**
+     * Return true if handler has been shutdown.
+     *
+     * @return true if handler has been shutdown.
+     */
+    protected synchronized boolean isShutdown()
+    {
+        return m_shutdown;
+    }
+
+    /**
+     * Return the handler notified of channel events.
+     *
+     * @return the handler notified of channel events
+     */
+    protected ChannelHandler getChannelHandler()
+    {
+        return m_handler;
+    }
+
+    /**
+     * Return the pool of buffers handed out to handler.
+     *
+     * @return the pool of buffers handed out to handler
+     */
+    protected ByteBufferPool getBufferPool()
+    {
+        return m_bufferPool;
+    }
+
+    /**
+     * Return the loop that next connection is registered with,
+     * starting it if required.
+     *
+     * @return the loop or null if handler has been shutdown
+     * @throws IOException if unable to create loop
+     */
+    private synchronized SelectorLoop nextLoop()
+        throws IOException
+    {
+        if( m_shutdown )
+        {
+            return null;
+        }
+        final int index = m_nextLoop;
+        m_nextLoop = ( m_nextLoop + 1 ) % m_loops.length;
+        if( null == m_loops[ index ] )
+        {
+            final SelectorLoop loop = new SelectorLoop( this );
+            loop.start( "ChannelRequestHandler[" + index + "]" );
+            m_loops[ index ] = loop;
+        }
+        return m_loops[ index ];
+    }
+
+    /**
+     * Close socket that could not be registered.
+     *
+     * @param socket the socket
+     */
+    protected void endConnection( final Socket socket )
+    {
+        try
+        {
+            socket.close();
+        }
+        catch( final IOException ioe )
+        {
+            errorHandlingConnection( socket, ioe );
+        }
+    }
+
+    /**
+     * Notify handler of an error handling socket.
+     *
+     * @param socket the socket
+     * @param t the error
+     */
+    protected void errorHandlingConnection( final Socket socket,
+                                            final Throwable t )
+    {
+    }
+
+    /**
+     * Notify handler of an error raised while handling a channel.
+     *
+     * @param channel the channel
+     * @param t the error
+     */
+    protected void errorHandlingChannel( final SocketChannel channel,
+                                         final Throwable t )
+    {
+        errorHandlingConnection( channel.socket(), t );
+    }
+
+    /**
+     * Notify handler of an error closing a channel.
+     *
+     * @param channel the channel
+     * @param t the error
+     */
+    protected void errorClosingChannel( final SocketChannel channel,
+                                        final Throwable t )
+    {
+        errorHandlingChannel( channel, t );
+    }
+
+    /**
+     * Notify handler of an error while selecting channels.
+     *
+     * @param ioe the error
+     */
+    protected void errorSelecting( final IOException ioe )
+    {
+    }
+}
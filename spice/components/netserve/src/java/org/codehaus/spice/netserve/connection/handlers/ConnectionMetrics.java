@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.handlers;
+
+import org.codehaus.spice.threadpool.impl.HistogramSnapshot;
+import org.codehaus.spice.threadpool.impl.StripedHistogram;
+
+/**
+ * The histograms recorded by an {@link InstrumentedRequestHandler}
+ * for the connections of one acceptor. Durations are in milliseconds.
+ * Values are recorded to within 1/8 of their size.
+ */
+public final class ConnectionMetrics
+{
+    /**
+     * The number of bits in the sub-bucket index of the histograms.
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /**
+     * The name of acceptor.
+     */
+    private final String m_name;
+
+    /**
+     * Time from connection being accepted until handler first
+     * used its streams.
+     */
+    private final StripedHistogram m_dispatchLatency = new StripedHistogram( SUB_BUCKET_BITS );
+
+    /**
+     * Time from dispatch until connection was closed.
+     */
+    private final StripedHistogram m_handlingTime = new StripedHistogram( SUB_BUCKET_BITS );
+
+    /**
+     * Bytes read from each connection.
+     */
+    private final StripedHistogram m_bytesIn = new StripedHistogram( SUB_BUCKET_BITS );
+
+    /**
+     * Bytes written to each connection.
+     */
+    private final StripedHistogram m_bytesOut = new StripedHistogram( SUB_BUCKET_BITS );
+
+    /**
+     * Create metrics for acceptor.
+     *
+     * @param name the name of acceptor
+     */
+    public ConnectionMetrics( final String name )
+    {
+        if( null == name )
+        {
+            throw new NullPointerException( "name" );
+        }
+        m_name = name;
+    }
+
+    /**
+     * Return the name of acceptor.
+     *
+     * @return the name of acceptor
+     */
+    public String getName()
+    {
+        return m_name;
+    }
+
+    /**
+     * Record a closed connection.
+     *
+     * @param dispatchLatency the time from accept until dispatch
+     * @param handlingTime the time from dispatch until close
+     * @param bytesIn the number of bytes read
+     * @param bytesOut the number of bytes written
+     */
+    public void record( final long dispatchLatency,
+                        final long handlingTime,
+                        final long bytesIn,
+                        final long bytesOut )
+    {
+        m_dispatchLatency.record( dispatchLatency );
+        m_handlingTime.record( handlingTime );
+        m_bytesIn.record( bytesIn );
+        m_bytesOut.record( bytesOut );
+    }
+
+    /**
+     * Return the number of closed connections.
+     *
+     * @return the number of closed connections
+     */
+    public long getConnectionCount()
+    {
+        return m_handlingTime.snapshot().getCount();
+    }
+
+    /**
+     * Return the time from connections being accepted
+     * until handler first used their streams.
+     *
+     * @return the dispatch latency
+     */
+    public HistogramSnapshot getDispatchLatency()
+    {
+        return m_dispatchLatency.snapshot();
+    }
+
+    /**
+     * Return the time from dispatch until connections were closed.
+     *
+     * @return the handling time
+     */
+    public HistogramSnapshot getHandlingTime()
+    {
+        return m_handlingTime.snapshot();
+    }
+
+    /**
+     * Return the number of bytes read from each connection.
+     *
+     * @return the bytes read
+     */
+    public HistogramSnapshot getBytesIn()
+    {
+        return m_bytesIn.snapshot();
+    }
+
+    /**
+     * Return the number of bytes written to each connection.
+     *
+     * @return the bytes written
+     */
+    public HistogramSnapshot getBytesOut()
+    {
+        return m_bytesOut.snapshot();
+    }
+
+    public String toString()
+    {
+        return "Connections on " + m_name + ":" +
+            " dispatch(ms) " + getDispatchLatency() +
+            ", handling(ms) " + getHandlingTime() +
+            ", in(bytes) " + getBytesIn() +
+            ", out(bytes) " + getBytesOut();
+    }
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.handlers;
+
+/**
+ * Receives the connection metrics recorded by an
+ * {@link InstrumentedRequestHandler} when they are reported.
+ * The logging AcceptorMonitor implementations are sinks that
+ * write the metrics to their logger.
+ */
+public interface ConnectionMetricsSink
+{
+    /**
+     * Connection metrics reported for an acceptor.
+     *
+     * @param metrics the metrics
+     */
+    void metricsReported( ConnectionMetrics metrics );
+}
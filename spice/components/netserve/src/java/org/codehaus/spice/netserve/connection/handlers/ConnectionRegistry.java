@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.handlers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A registry of the connections being handled, keyed by an object
+ * such as the Socket or the Thread handling it.
+ *
+ * <p>The registry is split into a number of stripes, each with its own
+ * lock, and keys are spread over the stripes by their identity hash so
+ * that connections starting and finishing at the same time rarely
+ * contend. Waiting for the registry to become empty uses a separate
+ * lock that is only taken when removing an entry if a thread is
+ * actually waiting.</p>
+ */
+public class ConnectionRegistry
+{
+    /**
+     * The stripes of registry.
+     */
+    private final Stripe[] m_stripes;
+
+    /**
+     * The lock used by threads waiting for the registry to empty.
+     */
+    private final Object m_drainLock = new Object();
+
+    /**
+     * The number of threads waiting for the registry to empty.
+     * Read without holding a lock when entries are removed.
+     */
+    private volatile int m_waiters;
+
+    /**
+     * Create a registry with stripes for the available processors.
+     */
+    public ConnectionRegistry()
+    {
+        this( stripeCount() );
+    }
+
+    /**
+     * Create a registry with at least the specified number of
+     * stripes. The number is rounded up to a power of two.
+     *
+     * @param stripes the number of stripes
+     */
+    public ConnectionRegistry( final int stripes )
+    {
+        if( stripes < 1 )
+        {
+            throw new IllegalArgumentException( "stripes" );
+        }
+        int count = 1;
+        while( count < stripes )
+        {
+            count <<= 1;
+        }
+        m_stripes = new Stripe[ count ];
+        for( int i = 0; i < m_stripes.length; i++ )
+        {
+            m_stripes[ i ] = new Stripe();
+        }
+    }
+
+    /**
+     * Add a connection to registry.
+     *
+     * @param key the key for connection
+     * @param value the object describing connection
+     */
+    public void register( final Object key, final Object value )
+    {
+        if( null == key )
+        {
+            throw new NullPointerException( "key" );
+        }
+        final Stripe stripe = getStripe( key );
+        synchronized( stripe )
+        {
+            stripe.m_entries.put( key, value );
+        }
+    }
+
+    /**
+     * Remove a connection from registry, waking any thread waiting
+     * for the registry to empty.
+     *
+     * @param key the key for connection
+     * @return the object describing connection, or null if not registered
+     */
+    public Object unregister( final Object key )
+    {
+        if( null == key )
+        {
+            throw new NullPointerException( "key" );
+        }
+        final Stripe stripe = getStripe( key );
+        final Object value;
+        synchronized( stripe )
+        {
+            value = stripe.m_entries.remove( key );
+        }
+        if( 0 != m_waiters )
+        {
+            synchronized( m_drainLock )
+            {
+                m_drainLock.notifyAll();
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Return the object describing a connection.
+     *
+     * @param key the key for connection
+     * @return the object describing connection, or null if not registered
+     */
+    public Object get( final Object key )
+    {
+        final Stripe stripe = getStripe( key );
+        synchronized( stripe )
+        {
+            return stripe.m_entries.get( key );
+        }
+    }
+
+    /**
+     * Return the number of registered connections.
+     *
+     * @return the number of registered connections
+     */
+    public int size()
+    {
+        int size = 0;
+        for( int i = 0; i < m_stripes.length; i++ )
+        {
+            final Stripe stripe = m_stripes[ i ];
+            synchronized( stripe )
+            {
+                size += stripe.m_entries.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Return the keys of registered connections.
+     *
+     * @return the keys of registered connections
+     */
+    public Object[] getKeys()
+    {
+        final List list = new ArrayList();
+        for( int i = 0; i < m_stripes.length; i++ )
+        {
+            final Stripe stripe = m_stripes[ i ];
+            synchronized( stripe )
+            {
+                list.addAll( stripe.m_entries.keySet() );
+            }
+        }
+        return list.toArray();
+    }
+
+    /**
+     * Return the objects describing registered connections.
+     *
+     * @return the objects describing registered connections
+     */
+    public Object[] getValues()
+    {
+        final List list = new ArrayList();
+        for( int i = 0; i < m_stripes.length; i++ )
+        {
+            final Stripe stripe = m_stripes[ i ];
+            synchronized( stripe )
+            {
+                final Iterator iterator = stripe.m_entries.values().iterator();
+                while( iterator.hasNext() )
+                {
+                    final Object value = iterator.next();
+                    if( null != value )
+                    {
+                        list.add( value );
+                    }
+                }
+            }
+        }
+        return list.toArray();
+    }
+
+    /**
+     * Wait until there are no registered connections.
+     *
+     * @param timeout the time to wait. 0 indicates an indefinite wait.
+     * @return true if the registry is empty
+     */
+    public boolean waitUntilEmpty( final long timeout )
+    {
+        final long end = System.currentTimeMillis() + timeout;
+        synchronized( m_drainLock )
+        {
+            m_waiters++;
+            try
+            {
+                while( 0 != size() )
+                {
+                    final long remaining = end - System.currentTimeMillis();
+                    if( 0 != timeout && remaining <= 0 )
+                    {
+                        return false;
+                    }
+                    try
+                    {
+                        m_drainLock.wait( ( 0 == timeout ) ? 0 : remaining );
+                    }
+                    catch( final InterruptedException ie )
+                    {
+                        //Ignore
+                    }
+                }
+                return true;
+            }
+            finally
+            {
+                m_waiters--;
+            }
+        }
+    }
+
+    /**
+     * Return the stripe a key belongs to.
+     *
+     * @param key the key
+     * @return the stripe
+     */
+    private Stripe getStripe( final Object key )
+    {
+        final int hash = System.identityHashCode( key );
+        return m_stripes[ ( hash ^ ( hash >>> 16 ) ) & ( m_stripes.length - 1 ) ];
+    }
+
+    /**
+     * Return the default number of stripes. This is the number
+     * of processors rounded up to a power of two.
+     *
+     * @return the number of stripes
+     */
+    static int stripeCount()
+    {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * A single stripe of registry.
+     */
+    private static final class Stripe
+    {
+        final Map m_entries = new HashMap();
+    }
+}
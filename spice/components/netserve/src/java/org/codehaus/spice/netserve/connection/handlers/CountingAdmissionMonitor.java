@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.handlers;
+
+import java.net.InetAddress;
+
+/**
+ * An AdmissionMonitor that counts admission events so they can be
+ * exposed through management interfaces or logged periodically.
+ */
+public class CountingAdmissionMonitor
+    extends NullAdmissionMonitor
+{
+    private int m_activeCount;
+    private int m_peakActiveCount;
+    private long m_admittedCount;
+    private long m_queuedCount;
+    private long m_rateRejectedCount;
+    private long m_addressRejectedCount;
+    private long m_limitRejectedCount;
+
+    /**
+     * @see AdmissionMonitor#connectionAdmitted
+     */
+    public synchronized void connectionAdmitted( final InetAddress address,
+                                                 final int activeCount )
+    {
+        m_admittedCount++;
+        m_activeCount = activeCount;
+        if( activeCount > m_peakActiveCount )
+        {
+            m_peakActiveCount = activeCount;
+        }
+    }
+
+    /**
+     * @see AdmissionMonitor#connectionReleased
+     */
+    public synchronized void connectionReleased( final InetAddress address,
+                                                 final int activeCount )
+    {
+        m_activeCount = activeCount;
+    }
+
+    /**
+     * @see AdmissionMonitor#connectionQueued
+     */
+    public synchronized void connectionQueued( final InetAddress address )
+    {
+        m_queuedCount++;
+    }
+
+    /**
+     * @see AdmissionMonitor#rateLimitExceeded
+     */
+    public synchronized void rateLimitExceeded( final InetAddress address )
+    {
+        m_rateRejectedCount++;
+    }
+
+    /**
+     * @see AdmissionMonitor#addressLimitExceeded
+     */
+    public synchronized void addressLimitExceeded( final InetAddress address )
+    {
+        m_addressRejectedCount++;
+    }
+
+    /**
+     * @see AdmissionMonitor#connectionLimitExceeded
+     */
+    public synchronized void connectionLimitExceeded( final InetAddress address )
+    {
+        m_limitRejectedCount++;
+    }
+
+    /**
+     * Return the number of admitted connections that are still open.
+     *
+     * @return the number of admitted connections that are still open
+     */
+    public synchronized int getActiveCount()
+    {
+        return m_activeCount;
+    }
+
+    /**
+     * Return the largest number of admitted connections open at once.
+     *
+     * @return the largest number of admitted connections open at once
+     */
+    public synchronized int getPeakActiveCount()
+    {
+        return m_peakActiveCount;
+    }
+
+    /**
+     * Return the number of connections admitted.
+     *
+     * @return the number of connections admitted
+     */
+    public synchronized long getAdmittedCount()
+    {
+        return m_admittedCount;
+    }
+
+    /**
+     * Return the number of connections that had to wait to be admitted.
+     *
+     * @return the number of connections that had to wait to be admitted
+     */
+    public synchronized long getQueuedCount()
+    {
+        return m_queuedCount;
+    }
+
+    /**
+     * Return the number of connections rejected because the
+     * accept rate was exceeded.
+     *
+     * @return the number of connections rejected by rate
+     */
+    public synchronized long getRateRejectedCount()
+    {
+        return m_rateRejectedCount;
+    }
+
+    /**
+     * Return the number of connections rejected because of
+     * the limit per address.
+     *
+     * @return the number of connections rejected by address
+     */
+    public synchronized long getAddressRejectedCount()
+    {
+        return m_addressRejectedCount;
+    }
+
+    /**
+     * Return the number of connections rejected because of
+     * the limit on active connections.
+     *
+     * @return the number of connections rejected by limit
+     */
+    public synchronized long getLimitRejectedCount()
+    {
+        return m_limitRejectedCount;
+    }
+
+    /**
+     * Return the total number of connections rejected.
+     *
+     * @return the total number of connections rejected
+     */
+    public synchronized long getRejectedCount()
+    {
+        return m_rateRejectedCount + m_addressRejectedCount + m_limitRejectedCount;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.handlers;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An InputStream that counts the bytes read through it. The count
+ * is not synchronized as a stream is read by one thread at a time.
+ */
+class CountingInputStream
+    extends FilterInputStream
+{
+    /**
+     * The number of bytes read.
+     */
+    private long m_count;
+
+    /**
+     * Create stream.
+     *
+     * @param input the underlying stream
+     */
+    CountingInputStream( final InputStream input )
+    {
+        super( input );
+    }
+
+    /**
+     * Return the number of bytes read.
+     *
+     * @return the number of bytes read
+     */
+    long getCount()
+    {
+        return m_count;
+    }
+
+    /**
+     * @see FilterInputStream#read()
+     */
+    public int read()
+        throws IOException
+    {
+        final int value = super.read();
+        if( -1 != value )
+        {
+            m_count++;
+        }
+        return value;
+    }
+
+    /**
+     * @see FilterInputStream#read(byte[], int, int)
+     */
+    public int read( final byte[] bytes, final int offset, final int length )
+        throws IOException
+    {
+        final int count = super.read( bytes, offset, length );
+        if( count > 0 )
+        {
+            m_count += count;
+        }
+        return count;
+    }
+
+    /**
+     * @see FilterInputStream#skip(long)
+     */
+    public long skip( final long count )
+        throws IOException
+    {
+        final long skipped = super.skip( count );
+        m_count += skipped;
+        return skipped;
+    }
+
+    /**
+     * Mark is not supported as it would make the count inaccurate.
+     *
+     * @return false
+     */
+    public boolean markSupported()
+    {
+        return false;
+    }
+}
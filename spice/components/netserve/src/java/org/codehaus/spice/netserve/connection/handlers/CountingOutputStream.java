@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.handlers;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An OutputStream that counts the bytes written through it. The count
+ * is not synchronized as a stream is written by one thread at a time.
+ */
+class CountingOutputStream
+    extends FilterOutputStream
+{
+    /**
+     * The number of bytes written.
+     */
+    private long m_count;
+
+    /**
+     * Create stream.
+     *
+     * @param output the underlying stream
+     */
+    CountingOutputStream( final OutputStream output )
+    {
+        super( output );
+    }
+
+    /**
+     * Return the number of bytes written.
+     *
+     * @return the number of bytes written
+     */
+    long getCount()
+    {
+        return m_count;
+    }
+
+    /**
+     * @see FilterOutputStream#write(int)
+     */
+    public void write( final int value )
+        throws IOException
+    {
+        out.write( value );
+        m_count++;
+    }
+
+    /**
+     * Write bytes to the underlying stream in a single call
+     * rather than one byte at a time.
+     *
+     * @see FilterOutputStream#write(byte[], int, int)
+     */
+    public void write( final byte[] bytes, final int offset, final int length )
+        throws IOException
+    {
+        out.write( bytes, offset, length );
+        m_count += length;
+    }
+}
@@ -8,6 +8,7 @@
 package org.codehaus.spice.netserve.connection.handlers;
 
 import java.net.Socket;
+import org.codehaus.spice.netserve.connection.DrainableRequestHandler;
 import org.codehaus.spice.netserve.connection.RequestHandler;
 
 /**
@@ -18,6 +19,7 @@ import org.codehaus.spice.netserve.connection.RequestHandler;
  */
 public class DelegatingRequestHandler
     extends AbstractRequestHandler
+    implements DrainableRequestHandler
 {
     /**
      * The underlying handler to delegate to.
@@ -58,4 +60,15 @@ public class DelegatingRequestHandler
         m_handler.shutdown( timeout );
         super.shutdown( timeout );
     }
+
+    /**
+     * @see DrainableRequestHandler#drainStarted
+     */
+    public void drainStarted()
+    {
+        if( m_handler instanceof DrainableRequestHandler )
+        {
+            ( (DrainableRequestHandler)m_handler ).drainStarted();
+        }
+    }
 }
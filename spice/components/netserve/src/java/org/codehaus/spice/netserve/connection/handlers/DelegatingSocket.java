@@ -0,0 +1,442 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.handlers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A Socket that passes all calls through to another Socket. Request
+ * handlers that decorate other handlers can subclass it to find out
+ * when a connection is closed, or to wrap its streams, without
+ * depending on the decorated handler.
+ *
+ * <p>Note that a handler that uses the channel of the socket bypasses
+ * the wrapper. {@link FileTransfer} reports the bytes it writes to the
+ * channel through {@link #channelWritten(long)}, and a
+ * {@link ChannelRequestHandler} reports the bytes its handler reads and
+ * writes through the ChannelContext through {@link #channelRead(long)}
+ * and {@link #channelWritten(long)}.</p>
+ */
+public class DelegatingSocket
+    extends Socket
+{
+    /**
+     * The socket calls are passed to.
+     */
+    private final Socket m_socket;
+
+    /**
+     * Create a socket that passes calls to specified socket.
+     *
+     * @param socket the socket
+     */
+    public DelegatingSocket( final Socket socket )
+    {
+        if( null == socket )
+        {
+            throw new NullPointerException( "socket" );
+        }
+        m_socket = socket;
+    }
+
+    /**
+     * Return the socket calls are passed to.
+     *
+     * @return the socket calls are passed to
+     */
+    public Socket getSocket()
+    {
+        return m_socket;
+    }
+
+    /**
+     * Close the underlying socket.
+     *
+     * @throws IOException if an error occurs closing socket
+     */
+    public void close()
+        throws IOException
+    {
+        m_socket.close();
+    }
+
+    /**
+     * @see Socket#connect
+     */
+    public void connect( final SocketAddress endpoint )
+        throws IOException
+    {
+        m_socket.connect( endpoint );
+    }
+
+    /**
+     * @see Socket#connect
+     */
+    public void connect( final SocketAddress endpoint, final int timeout )
+        throws IOException
+    {
+        m_socket.connect( endpoint, timeout );
+    }
+
+    /**
+     * @see Socket#bind
+     */
+    public void bind( final SocketAddress bindpoint )
+        throws IOException
+    {
+        m_socket.bind( bindpoint );
+    }
+
+    /**
+     * @see Socket#getInetAddress
+     */
+    public InetAddress getInetAddress()
+    {
+        return m_socket.getInetAddress();
+    }
+
+    /**
+     * @see Socket#getLocalAddress
+     */
+    public InetAddress getLocalAddress()
+    {
+        return m_socket.getLocalAddress();
+    }
+
+    /**
+     * @see Socket#getPort
+     */
+    public int getPort()
+    {
+        return m_socket.getPort();
+    }
+
+    /**
+     * @see Socket#getLocalPort
+     */
+    public int getLocalPort()
+    {
+        return m_socket.getLocalPort();
+    }
+
+    /**
+     * @see Socket#getRemoteSocketAddress
+     */
+    public SocketAddress getRemoteSocketAddress()
+    {
+        return m_socket.getRemoteSocketAddress();
+    }
+
+    /**
+     * @see Socket#getLocalSocketAddress
+     */
+    public SocketAddress getLocalSocketAddress()
+    {
+        return m_socket.getLocalSocketAddress();
+    }
+
+    /**
+     * Notification that bytes were read directly from the channel of
+     * socket rather than through its InputStream. The notification is
+     * passed on to the wrapped socket if it is also a DelegatingSocket.
+     *
+     * @param count the number of bytes read
+     */
+    protected void channelRead( final long count )
+    {
+        if( m_socket instanceof DelegatingSocket )
+        {
+            ( (DelegatingSocket)m_socket ).channelRead( count );
+        }
+    }
+
+    /**
+     * Notification that bytes were written directly to the channel of
+     * socket rather than through its OutputStream. The notification is
+     * passed on to the wrapped socket if it is also a DelegatingSocket.
+     *
+     * @param count the number of bytes written
+     */
+    protected void channelWritten( final long count )
+    {
+        if( m_socket instanceof DelegatingSocket )
+        {
+            ( (DelegatingSocket)m_socket ).channelWritten( count );
+        }
+    }
+
+    /**
+     * @see Socket#getChannel
+     */
+    public SocketChannel getChannel()
+    {
+        return m_socket.getChannel();
+    }
+
+    /**
+     * @see Socket#getInputStream
+     */
+    public InputStream getInputStream()
+        throws IOException
+    {
+        return m_socket.getInputStream();
+    }
+
+    /**
+     * @see Socket#getOutputStream
+     */
+    public OutputStream getOutputStream()
+        throws IOException
+    {
+        return m_socket.getOutputStream();
+    }
+
+    /**
+     * @see Socket#setTcpNoDelay
+     */
+    public void setTcpNoDelay( final boolean on )
+        throws SocketException
+    {
+        m_socket.setTcpNoDelay( on );
+    }
+
+    /**
+     * @see Socket#getTcpNoDelay
+     */
+    public boolean getTcpNoDelay()
+        throws SocketException
+    {
+        return m_socket.getTcpNoDelay();
+    }
+
+    /**
+     * @see Socket#setSoLinger
+     */
+    public void setSoLinger( final boolean on, final int linger )
+        throws SocketException
+    {
+        m_socket.setSoLinger( on, linger );
+    }
+
+    /**
+     * @see Socket#getSoLinger
+     */
+    public int getSoLinger()
+        throws SocketException
+    {
+        return m_socket.getSoLinger();
+    }
+
+    /**
+     * @see Socket#sendUrgentData
+     */
+    public void sendUrgentData( final int data )
+        throws IOException
+    {
+        m_socket.sendUrgentData( data );
+    }
+
+    /**
+     * @see Socket#setOOBInline
+     */
+    public void setOOBInline( final boolean on )
+        throws SocketException
+    {
+        m_socket.setOOBInline( on );
+    }
+
+    /**
+     * @see Socket#getOOBInline
+     */
+    public boolean getOOBInline()
+        throws SocketException
+    {
+        return m_socket.getOOBInline();
+    }
+
+    /**
+     * @see Socket#setSoTimeout
+     */
+    public void setSoTimeout( final int timeout )
+        throws SocketException
+    {
+        m_socket.setSoTimeout( timeout );
+    }
+
+    /**
+     * @see Socket#getSoTimeout
+     */
+    public int getSoTimeout()
+        throws SocketException
+    {
+        return m_socket.getSoTimeout();
+    }
+
+    /**
+     * @see Socket#setSendBufferSize
+     */
+    public void setSendBufferSize( final int size )
+        throws SocketException
+    {
+        m_socket.setSendBufferSize( size );
+    }
+
+    /**
+     * @see Socket#getSendBufferSize
+     */
+    public int getSendBufferSize()
+        throws SocketException
+    {
+        return m_socket.getSendBufferSize();
+    }
+
+    /**
+     * @see Socket#setReceiveBufferSize
+     */
+    public void setReceiveBufferSize( final int size )
+        throws SocketException
+    {
+        m_socket.setReceiveBufferSize( size );
+    }
+
+    /**
+     * @see Socket#getReceiveBufferSize
+     */
+    public int getReceiveBufferSize()
+        throws SocketException
+    {
+        return m_socket.getReceiveBufferSize();
+    }
+
+    /**
+     * @see Socket#setKeepAlive
+     */
+    public void setKeepAlive( final boolean on )
+        throws SocketException
+    {
+        m_socket.setKeepAlive( on );
+    }
+
+    /**
+     * @see Socket#getKeepAlive
+     */
+    public boolean getKeepAlive()
+        throws SocketException
+    {
+        return m_socket.getKeepAlive();
+    }
+
+    /**
+     * @see Socket#setTrafficClass
+     */
+    public void setTrafficClass( final int tc )
+        throws SocketException
+    {
+        m_socket.setTrafficClass( tc );
+    }
+
+    /**
+     * @see Socket#getTrafficClass
+     */
+    public int getTrafficClass()
+        throws SocketException
+    {
+        return m_socket.getTrafficClass();
+    }
+
+    /**
+     * @see Socket#setReuseAddress
+     */
+    public void setReuseAddress( final boolean on )
+        throws SocketException
+    {
+        m_socket.setReuseAddress( on );
+    }
+
+    /**
+     * @see Socket#getReuseAddress
+     */
+    public boolean getReuseAddress()
+        throws SocketException
+    {
+        return m_socket.getReuseAddress();
+    }
+
+    /**
+     * @see Socket#shutdownInput
+     */
+    public void shutdownInput()
+        throws IOException
+    {
+        m_socket.shutdownInput();
+    }
+
+    /**
+     * @see Socket#shutdownOutput
+     */
+    public void shutdownOutput()
+        throws IOException
+    {
+        m_socket.shutdownOutput();
+    }
+
+    /**
+     * @see Socket#toString
+     */
+    public String toString()
+    {
+        return m_socket.toString();
+    }
+
+    /**
+     * @see Socket#isConnected
+     */
+    public boolean isConnected()
+    {
+        return m_socket.isConnected();
+    }
+
+    /**
+     * @see Socket#isBound
+     */
+    public boolean isBound()
+    {
+        return m_socket.isBound();
+    }
+
+    /**
+     * @see Socket#isClosed
+     */
+    public boolean isClosed()
+    {
+        return m_socket.isClosed();
+    }
+
+    /**
+     * @see Socket#isInputShutdown
+     */
+    public boolean isInputShutdown()
+    {
+        return m_socket.isInputShutdown();
+    }
+
+    /**
+     * @see Socket#isOutputShutdown
+     */
+    public boolean isOutputShutdown()
+    {
+        return m_socket.isOutputShutdown();
+    }
+}
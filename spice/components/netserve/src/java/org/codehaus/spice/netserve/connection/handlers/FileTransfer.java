@@ -0,0 +1,412 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.handlers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Writes regions of files and buffers to sockets without copying them
+ * through the Java heap where possible.
+ *
+ * <p>If the socket has an associated SocketChannel, files are sent
+ * with {@link FileChannel#transferTo} and buffers, such as a header
+ * followed by a memory-mapped region of a file, with a single
+ * gathering write. Otherwise the data is copied to the socket's
+ * OutputStream through a heap buffer. The channel must be in blocking
+ * mode, as a transfer does not return until all the data is written,
+ * and any data buffered in streams wrapping the socket must be
+ * flushed before a transfer. Bytes written to the channel are reported
+ * to a socket that wraps it, such as one given to handlers by
+ * {@link InstrumentedRequestHandler}, as its streams do not see them.</p>
+ *
+ * <p>The transfer keeps counters of the bytes sent and of the time
+ * spent in calls writing to sockets, measured with the resolution of
+ * the system clock. Only transfers that complete are counted.</p>
+ */
+public class FileTransfer
+{
+    /**
+     * The default size of buffer used when copying.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /**
+     * The size of buffer used when copying.
+     */
+    private final int m_bufferSize;
+
+    /**
+     * The number of completed transfers.
+     */
+    private long m_transferCount;
+
+    /**
+     * The number of completed transfers that had to be copied.
+     */
+    private long m_copiedCount;
+
+    /**
+     * The number of bytes sent by completed transfers.
+     */
+    private long m_bytesSent;
+
+    /**
+     * The time in milliseconds spent in completed transfers.
+     */
+    private long m_transferTime;
+
+    /**
+     * Create a transfer with the default buffer size.
+     */
+    public FileTransfer()
+    {
+        this( DEFAULT_BUFFER_SIZE );
+    }
+
+    /**
+     * Create a transfer.
+     *
+     * @param bufferSize the size of buffer used when copying
+     */
+    public FileTransfer( final int bufferSize )
+    {
+        if( bufferSize < 1 )
+        {
+            throw new IllegalArgumentException( "bufferSize" );
+        }
+        m_bufferSize = bufferSize;
+    }
+
+    /**
+     * Write a region of a file to socket. Fewer bytes than requested
+     * are written if the end of file is reached.
+     *
+     * @param file the file
+     * @param position the position of first byte in file
+     * @param count the number of bytes to write
+     * @param socket the socket
+     * @return the number of bytes written
+     * @throws IllegalBlockingModeException if the socket has a channel
+     *         in non-blocking mode
+     * @throws IOException if an error occurs
+     */
+    public long transfer( final FileChannel file,
+                          final long position,
+                          final long count,
+                          final Socket socket )
+        throws IOException
+    {
+        if( null == file )
+        {
+            throw new NullPointerException( "file" );
+        }
+        if( null == socket )
+        {
+            throw new NullPointerException( "socket" );
+        }
+        if( position < 0 )
+        {
+            throw new IllegalArgumentException( "position" );
+        }
+        if( count < 0 )
+        {
+            throw new IllegalArgumentException( "count" );
+        }
+        final SocketChannel channel = getBlockingChannel( socket );
+        final long start = System.currentTimeMillis();
+        final long sent;
+        if( null != channel )
+        {
+            sent = transferTo( file, position, count, channel );
+            channelWritten( socket, sent );
+        }
+        else
+        {
+            sent = copy( file, position, count, socket.getOutputStream() );
+        }
+        record( sent, System.currentTimeMillis() - start, null == channel );
+        return sent;
+    }
+
+    /**
+     * Write the remaining bytes of buffers to socket.
+     * The position of each buffer is advanced to its limit.
+     *
+     * @param buffers the buffers
+     * @param socket the socket
+     * @return the number of bytes written
+     * @throws IllegalBlockingModeException if the socket has a channel
+     *         in non-blocking mode
+     * @throws IOException if an error occurs
+     */
+    public long transfer( final ByteBuffer[] buffers, final Socket socket )
+        throws IOException
+    {
+        if( null == buffers )
+        {
+            throw new NullPointerException( "buffers" );
+        }
+        if( null == socket )
+        {
+            throw new NullPointerException( "socket" );
+        }
+        final SocketChannel channel = getBlockingChannel( socket );
+        final long start = System.currentTimeMillis();
+        final long sent;
+        if( null != channel )
+        {
+            sent = write( buffers, channel );
+            channelWritten( socket, sent );
+        }
+        else
+        {
+            sent = copy( buffers, socket.getOutputStream() );
+        }
+        record( sent, System.currentTimeMillis() - start, null == channel );
+        return sent;
+    }
+
+    /**
+     * Return the number of completed transfers.
+     *
+     * @return the number of completed transfers
+     */
+    public synchronized long getTransferCount()
+    {
+        return m_transferCount;
+    }
+
+    /**
+     * Return the number of completed transfers that were copied
+     * because the socket did not have a channel.
+     *
+     * @return the number of copied transfers
+     */
+    public synchronized long getCopiedCount()
+    {
+        return m_copiedCount;
+    }
+
+    /**
+     * Return the number of bytes sent by completed transfers.
+     *
+     * @return the number of bytes sent
+     */
+    public synchronized long getBytesSent()
+    {
+        return m_bytesSent;
+    }
+
+    /**
+     * Return the time in milliseconds spent in completed transfers.
+     *
+     * @return the time spent in transfers
+     */
+    public synchronized long getTransferTime()
+    {
+        return m_transferTime;
+    }
+
+    /**
+     * Return the channel of socket, or null if it does not have one.
+     *
+     * @param socket the socket
+     * @return the channel
+     * @throws IllegalBlockingModeException if the channel is in
+     *         non-blocking mode
+     */
+    private SocketChannel getBlockingChannel( final Socket socket )
+    {
+        final SocketChannel channel = socket.getChannel();
+        if( null != channel && !channel.isBlocking() )
+        {
+            throw new IllegalBlockingModeException();
+        }
+        return channel;
+    }
+
+    /**
+     * Write a region of a file to channel with transferTo.
+     *
+     * @param file the file
+     * @param position the position of first byte in file
+     * @param count the number of bytes to write
+     * @param channel the channel
+     * @return the number of bytes written
+     * @throws IOException if an error occurs
+     */
+    private long transferTo( final FileChannel file,
+                             final long position,
+                             final long count,
+                             final SocketChannel channel )
+        throws IOException
+    {
+        long sent = 0;
+        while( sent < count )
+        {
+            final long written = file.transferTo( position + sent, count - sent, channel );
+            if( written <= 0 && position + sent >= file.size() )
+            {
+                break;
+            }
+            sent += written;
+        }
+        return sent;
+    }
+
+    /**
+     * Copy a region of a file to stream.
+     *
+     * @param file the file
+     * @param position the position of first byte in file
+     * @param count the number of bytes to write
+     * @param output the stream
+     * @return the number of bytes written
+     * @throws IOException if an error occurs
+     */
+    private long copy( final FileChannel file,
+                       final long position,
+                       final long count,
+                       final OutputStream output )
+        throws IOException
+    {
+        final byte[] bytes = new byte[ (int)Math.max( 1, Math.min( m_bufferSize, count ) ) ];
+        final ByteBuffer buffer = ByteBuffer.wrap( bytes );
+        long sent = 0;
+        while( sent < count )
+        {
+            buffer.clear();
+            buffer.limit( (int)Math.min( bytes.length, count - sent ) );
+            final int read = file.read( buffer, position + sent );
+            if( read <= 0 )
+            {
+                break;
+            }
+            output.write( bytes, 0, read );
+            sent += read;
+        }
+        return sent;
+    }
+
+    /**
+     * Write buffers to channel with gathering writes.
+     *
+     * @param buffers the buffers
+     * @param channel the channel
+     * @return the number of bytes written
+     * @throws IOException if an error occurs
+     */
+    private long write( final ByteBuffer[] buffers, final SocketChannel channel )
+        throws IOException
+    {
+        final long count = getRemaining( buffers );
+        long sent = 0;
+        while( sent < count )
+        {
+            sent += channel.write( buffers );
+        }
+        return sent;
+    }
+
+    /**
+     * Copy buffers to stream.
+     *
+     * @param buffers the buffers
+     * @param output the stream
+     * @return the number of bytes written
+     * @throws IOException if an error occurs
+     */
+    private long copy( final ByteBuffer[] buffers, final OutputStream output )
+        throws IOException
+    {
+        long sent = 0;
+        byte[] bytes = null;
+        for( int i = 0; i < buffers.length; i++ )
+        {
+            final ByteBuffer buffer = buffers[ i ];
+            final int remaining = buffer.remaining();
+            if( buffer.hasArray() )
+            {
+                output.write( buffer.array(), buffer.arrayOffset() + buffer.position(), remaining );
+                buffer.position( buffer.limit() );
+            }
+            else
+            {
+                if( null == bytes )
+                {
+                    bytes = new byte[ m_bufferSize ];
+                }
+                while( buffer.hasRemaining() )
+                {
+                    final int length = Math.min( bytes.length, buffer.remaining() );
+                    buffer.get( bytes, 0, length );
+                    output.write( bytes, 0, length );
+                }
+            }
+            sent += remaining;
+        }
+        return sent;
+    }
+
+    /**
+     * Return the number of bytes remaining in buffers.
+     *
+     * @param buffers the buffers
+     * @return the number of bytes remaining
+     */
+    private long getRemaining( final ByteBuffer[] buffers )
+    {
+        long remaining = 0;
+        for( int i = 0; i < buffers.length; i++ )
+        {
+            remaining += buffers[ i ].remaining();
+        }
+        return remaining;
+    }
+
+    /**
+     * Record a completed transfer.
+     *
+     * @param bytes the number of bytes sent
+     * @param time the time spent in transfer
+     * @param copied true if the transfer was copied
+     */
+    /**
+     * Tell a wrapping socket about bytes written to its channel
+     * that its streams did not see.
+     *
+     * @param socket the socket
+     * @param count the number of bytes written
+     */
+    private void channelWritten( final Socket socket, final long count )
+    {
+        if( socket instanceof DelegatingSocket )
+        {
+            ( (DelegatingSocket)socket ).channelWritten( count );
+        }
+    }
+
+    private synchronized void record( final long bytes,
+                                      final long time,
+                                      final boolean copied )
+    {
+        m_transferCount++;
+        if( copied )
+        {
+            m_copiedCount++;
+        }
+        m_bytesSent += bytes;
+        m_transferTime += time;
+    }
+}
@@ -0,0 +1,452 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.handlers;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * A thread that waits for parked connections of a
+ * {@link KeepAliveRequestHandler} to become readable and
+ * hands them back to the handler.
+ *
+ * <p>A channel can only be switched back to blocking mode once the
+ * selector has deregistered it, so readable connections are cancelled,
+ * the selector flushed and only then dispatched. Connections are kept
+ * in the order they were parked so that idle connections can be
+ * expired by looking at the oldest ones only.</p>
+ */
+class IdleConnectionSelector
+    implements Runnable
+{
+    /**
+     * The request handler that owns selector.
+     */
+    private final KeepAliveRequestHandler m_owner;
+
+    /**
+     * The time in milliseconds a connection may stay
+     * parked. 0 indicates no limit.
+     */
+    private final long m_idleTimeout;
+
+    /**
+     * The selector parked channels are registered with.
+     */
+    private final Selector m_selector;
+
+    /**
+     * Connections waiting to be registered.
+     */
+    private final List m_pending = new ArrayList();
+
+    /**
+     * Registered connections in the order they were parked, kept
+     * only if there is an idle timeout. Only accessed by selector thread.
+     */
+    private final LinkedList m_parked = new LinkedList();
+
+    /**
+     * The number of connections parked or waiting to be parked.
+     */
+    private int m_parkedCount;
+
+    /**
+     * Set to false when selector should stop.
+     */
+    private boolean m_running;
+
+    /**
+     * Set to true when a drain has started and no
+     * more connections should be parked.
+     */
+    private boolean m_draining;
+
+    /**
+     * Set to true when the parked connections should be closed.
+     */
+    private boolean m_closeParked;
+
+    /**
+     * The thread selecting channels.
+     */
+    private Thread m_thread;
+
+    /**
+     * Create a selector.
+     *
+     * @param owner the request handler that owns selector
+     * @param idleTimeout the time in milliseconds a connection
+     *        may stay parked. 0 indicates no limit.
+     * @throws IOException if unable to open selector
+     */
+    IdleConnectionSelector( final KeepAliveRequestHandler owner,
+                            final long idleTimeout )
+        throws IOException
+    {
+        m_owner = owner;
+        m_idleTimeout = idleTimeout;
+        m_selector = Selector.open();
+    }
+
+    /**
+     * Start the thread selecting channels.
+     *
+     * @param name the name of thread
+     */
+    synchronized void start( final String name )
+    {
+        m_running = true;
+        m_thread = new Thread( this, name );
+        m_thread.start();
+    }
+
+    /**
+     * Stop the selector and close all parked connections.
+     *
+     * @param timeout the time to wait for selector to stop.
+     *        0 indicates an indefinite wait.
+     */
+    void shutdown( final long timeout )
+    {
+        final Thread thread;
+        synchronized( this )
+        {
+            m_running = false;
+            thread = m_thread;
+        }
+        m_selector.wakeup();
+        if( null != thread && Thread.currentThread() != thread )
+        {
+            try
+            {
+                thread.join( timeout );
+            }
+            catch( final InterruptedException ie )
+            {
+                //Ignore
+            }
+        }
+    }
+
+    /**
+     * Queue a connection to be parked.
+     *
+     * @param socket the socket, which must have a channel
+     * @return false if selector has been shutdown or drained
+     */
+    boolean park( final Socket socket )
+    {
+        synchronized( this )
+        {
+            if( !m_running || m_draining )
+            {
+                return false;
+            }
+            m_pending.add( new ParkedConnection( socket ) );
+            m_parkedCount++;
+        }
+        m_selector.wakeup();
+        return true;
+    }
+
+    /**
+     * Close the connections currently parked or waiting to be
+     * parked and refuse to park any more, without stopping the
+     * selector.
+     */
+    void drain()
+    {
+        synchronized( this )
+        {
+            m_draining = true;
+            m_closeParked = true;
+        }
+        m_selector.wakeup();
+    }
+
+    /**
+     * Return the number of connections parked or waiting to be parked.
+     *
+     * @return the number of parked connections
+     */
+    synchronized int getParkedCount()
+    {
+        return m_parkedCount;
+    }
+
+    /**
+     * The main select loop.
+     */
+    public void run()
+    {
+        long timeout = 0;
+        while( registerPending() )
+        {
+            if( isCloseParkedRequested() )
+            {
+                closeAll();
+            }
+            try
+            {
+                m_selector.select( timeout );
+                resumeReadable();
+            }
+            catch( final IOException ioe )
+            {
+                m_owner.errorSelecting( ioe );
+            }
+            timeout = expireIdle();
+        }
+
+        closeAll();
+        try
+        {
+            m_selector.close();
+        }
+        catch( final IOException ioe )
+        {
+            //Ignore
+        }
+        synchronized( this )
+        {
+            m_thread = null;
+        }
+    }
+
+    /**
+     * Register the queued connections with selector.
+     *
+     * @return false if selector should stop
+     */
+    private boolean registerPending()
+    {
+        final ParkedConnection[] pending;
+        final boolean running;
+        synchronized( this )
+        {
+            pending = (ParkedConnection[])m_pending.toArray( new ParkedConnection[ m_pending.size() ] );
+            m_pending.clear();
+            running = m_running;
+        }
+        for( int i = 0; i < pending.length; i++ )
+        {
+            final ParkedConnection connection = pending[ i ];
+            if( 0 != m_idleTimeout )
+            {
+                m_parked.add( connection );
+            }
+            try
+            {
+                final SocketChannel channel = connection.getSocket().getChannel();
+                channel.configureBlocking( false );
+                connection.setKey( channel.register( m_selector, SelectionKey.OP_READ, connection ) );
+            }
+            catch( final Exception e )
+            {
+                m_owner.errorHandlingConnection( connection.getSocket(), e );
+                close( connection );
+            }
+        }
+        return running;
+    }
+
+    /**
+     * Return true if closing the parked connections has been
+     * requested since this was last called.
+     *
+     * @return true if parked connections should be closed
+     */
+    private synchronized boolean isCloseParkedRequested()
+    {
+        final boolean closeParked = m_closeParked;
+        m_closeParked = false;
+        return closeParked;
+    }
+
+    /**
+     * Close all the registered connections.
+     */
+    private void closeAll()
+    {
+        final Iterator iterator = m_selector.keys().iterator();
+        while( iterator.hasNext() )
+        {
+            final SelectionKey key = (SelectionKey)iterator.next();
+            close( (ParkedConnection)key.attachment() );
+        }
+        m_parked.clear();
+    }
+
+    /**
+     * Deregister readable connections and dispatch them to owner.
+     *
+     * @throws IOException if unable to flush cancelled keys
+     */
+    private void resumeReadable()
+        throws IOException
+    {
+        final List readable = new ArrayList();
+        while( cancelSelected( readable ) )
+        {
+            m_selector.selectNow();
+        }
+        for( int i = 0; i < readable.size(); i++ )
+        {
+            final ParkedConnection connection = (ParkedConnection)readable.get( i );
+            unpark( connection );
+            try
+            {
+                connection.getSocket().getChannel().configureBlocking( true );
+            }
+            catch( final Exception e )
+            {
+                m_owner.errorHandlingConnection( connection.getSocket(), e );
+                m_owner.closeConnection( connection.getSocket() );
+                continue;
+            }
+            m_owner.dispatch( connection.getSocket() );
+        }
+    }
+
+    /**
+     * Cancel the selected keys so their channels are
+     * deregistered by the next select.
+     *
+     * @param readable the list to add the connections of selected keys to
+     * @return true if any keys were selected
+     */
+    private boolean cancelSelected( final List readable )
+    {
+        final Iterator iterator = m_selector.selectedKeys().iterator();
+        if( !iterator.hasNext() )
+        {
+            return false;
+        }
+        while( iterator.hasNext() )
+        {
+            final SelectionKey key = (SelectionKey)iterator.next();
+            iterator.remove();
+            key.cancel();
+            readable.add( key.attachment() );
+        }
+        return true;
+    }
+
+    /**
+     * Close connections that have been parked for longer
+     * than the idle timeout.
+     *
+     * @return the time to wait before next connection expires,
+     *         0 if there is nothing to expire
+     */
+    private long expireIdle()
+    {
+        final long now = System.currentTimeMillis();
+        while( !m_parked.isEmpty() )
+        {
+            final ParkedConnection connection = (ParkedConnection)m_parked.getFirst();
+            if( connection.isResumed() )
+            {
+                m_parked.removeFirst();
+            }
+            else
+            {
+                final long remaining = connection.getParkedTime() + m_idleTimeout - now;
+                if( remaining > 0 )
+                {
+                    return remaining;
+                }
+                m_parked.removeFirst();
+                close( connection );
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Close a parked connection.
+     *
+     * @param connection the connection
+     */
+    private void close( final ParkedConnection connection )
+    {
+        if( connection.isResumed() )
+        {
+            return;
+        }
+        unpark( connection );
+        m_owner.closeConnection( connection.getSocket() );
+    }
+
+    /**
+     * Mark connection as no longer parked.
+     *
+     * @param connection the connection
+     */
+    private void unpark( final ParkedConnection connection )
+    {
+        connection.setResumed();
+        synchronized( this )
+        {
+            m_parkedCount--;
+        }
+    }
+
+    /**
+     * A connection parked on selector.
+     */
+    private static final class ParkedConnection
+    {
+        private final Socket m_socket;
+        private final long m_parkedTime = System.currentTimeMillis();
+        private SelectionKey m_key;
+        private boolean m_resumed;
+
+        ParkedConnection( final Socket socket )
+        {
+            m_socket = socket;
+        }
+
+        Socket getSocket()
+        {
+            return m_socket;
+        }
+
+        long getParkedTime()
+        {
+            return m_parkedTime;
+        }
+
+        void setKey( final SelectionKey key )
+        {
+            m_key = key;
+        }
+
+        boolean isResumed()
+        {
+            return m_resumed;
+        }
+
+        void setResumed()
+        {
+            m_resumed = true;
+            if( null != m_key )
+            {
+                m_key.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.handlers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Timer;
+import java.util.TimerTask;
+import org.codehaus.spice.netserve.connection.DrainableRequestHandler;
+import org.codehaus.spice.netserve.connection.RequestHandler;
+
+/**
+ * A handler that measures the connections passed to the underlying
+ * handler. It should be connected to an acceptor in front of any
+ * handler that dispatches to other threads so that it sees each
+ * connection as soon as it is accepted. For each connection it records
+ *
+ * <ul>
+ *   <li>the time from the connection being accepted until the
+ *   underlying handler first uses the socket's streams, which is
+ *   when a worker starts handling it.</li>
+ *   <li>the time from then until the socket is closed.</li>
+ *   <li>the bytes read from and written to the socket's streams.</li>
+ * </ul>
+ *
+ * <p>The values are recorded in {@link ConnectionMetrics} named after
+ * the acceptor, which are passed to a {@link ConnectionMetricsSink}
+ * periodically, when {@link #reportMetrics()} is called and when the
+ * handler is shutdown. Each connection costs a socket wrapper and
+ * two stream wrappers, and its values are recorded once when it is
+ * closed into histograms that rarely contend, so the handler can be
+ * left in place in production.</p>
+ *
+ * <p>The underlying handler must close the socket it was given for the
+ * connection to be recorded, as {@link ChannelRequestHandler} does for
+ * non-blocking connections. The socket passes its channel through so
+ * that handlers can still use zero-copy transfers and selectors. Bytes
+ * written to the channel by {@link FileTransfer}, and bytes read and
+ * written through the ChannelContext of a ChannelRequestHandler, are
+ * counted as they are reported to the socket. Bytes read from or
+ * written to the channel directly are not.</p>
+ */
+public class InstrumentedRequestHandler
+    implements DrainableRequestHandler
+{
+    /**
+     * The handler connections are passed to.
+     */
+    private final RequestHandler m_handler;
+
+    /**
+     * The metrics connections are recorded in.
+     */
+    private final ConnectionMetrics m_metrics;
+
+    /**
+     * The sink metrics are reported to.
+     */
+    private final ConnectionMetricsSink m_sink;
+
+    /**
+     * The timer that reports metrics periodically, if any.
+     */
+    private final Timer m_timer;
+
+    /**
+     * Create handler that only reports metrics when
+     * requested or on shutdown.
+     *
+     * @param name the name of acceptor handler is connected to
+     * @param handler the handler connections are passed to
+     * @param sink the sink metrics are reported to
+     */
+    public InstrumentedRequestHandler( final String name,
+                                       final RequestHandler handler,
+                                       final ConnectionMetricsSink sink )
+    {
+        this( name, handler, sink, 0 );
+    }
+
+    /**
+     * Create handler.
+     *
+     * @param name the name of acceptor handler is connected to
+     * @param handler the handler connections are passed to
+     * @param sink the sink metrics are reported to
+     * @param reportInterval the time in milliseconds between reports,
+     *        0 to only report when requested or on shutdown
+     */
+    public InstrumentedRequestHandler( final String name,
+                                       final RequestHandler handler,
+                                       final ConnectionMetricsSink sink,
+                                       final long reportInterval )
+    {
+        if( null == handler )
+        {
+            throw new NullPointerException( "handler" );
+        }
+        if( null == sink )
+        {
+            throw new NullPointerException( "sink" );
+        }
+        if( reportInterval < 0 )
+        {
+            throw new IllegalArgumentException( "reportInterval" );
+        }
+        m_metrics = new ConnectionMetrics( name );
+        m_handler = handler;
+        m_sink = sink;
+        if( 0 != reportInterval )
+        {
+            m_timer = new Timer( true );
+            m_timer.schedule( new TimerTask()
+            {
+                public void run()
+                {
+                    reportMetrics();
+                }
+            }, reportInterval, reportInterval );
+        }
+        else
+        {
+            m_timer = null;
+        }
+    }
+
+    /**
+     * Pass connection to the underlying handler
+     * wrapped in a socket that measures it.
+     *
+     * @param socket the socket
+     */
+    public void handleConnection( final Socket socket )
+    {
+        m_handler.handleConnection( new InstrumentedSocket( socket ) );
+    }
+
+    /**
+     * Shutdown the underlying handler and report the final metrics.
+     *
+     * @param timeout the timeout
+     */
+    public void shutdown( final long timeout )
+    {
+        if( null != m_timer )
+        {
+            m_timer.cancel();
+        }
+        m_handler.shutdown( timeout );
+        reportMetrics();
+    }
+
+    /**
+     * Tell the underlying handler that a drain
+     * has started if it wants to know.
+     */
+    public void drainStarted()
+    {
+        if( m_handler instanceof DrainableRequestHandler )
+        {
+            ( (DrainableRequestHandler)m_handler ).drainStarted();
+        }
+    }
+
+    /**
+     * Return the metrics connections are recorded in.
+     *
+     * @return the metrics
+     */
+    public ConnectionMetrics getMetrics()
+    {
+        return m_metrics;
+    }
+
+    /**
+     * Report the metrics to sink.
+     */
+    public void reportMetrics()
+    {
+        m_sink.metricsReported( m_metrics );
+    }
+
+    /**
+     * A socket that measures the connection and
+     * records it in metrics when closed.
+     */
+    private class InstrumentedSocket
+        extends DelegatingSocket
+    {
+        private final long m_acceptTime = System.currentTimeMillis();
+        private long m_dispatchTime;
+        private CountingInputStream m_input;
+        private CountingOutputStream m_output;
+        private long m_channelBytesIn;
+        private long m_channelBytesOut;
+        private boolean m_closed;
+
+        InstrumentedSocket( final Socket socket )
+        {
+            super( socket );
+        }
+
+        public synchronized InputStream getInputStream()
+            throws IOException
+        {
+            markDispatched();
+            if( null == m_input )
+            {
+                m_input = new CountingInputStream( super.getInputStream() );
+            }
+            return m_input;
+        }
+
+        public synchronized OutputStream getOutputStream()
+            throws IOException
+        {
+            markDispatched();
+            if( null == m_output )
+            {
+                m_output = new CountingOutputStream( super.getOutputStream() );
+            }
+            return m_output;
+        }
+
+        protected void channelRead( final long count )
+        {
+            synchronized( this )
+            {
+                markDispatched();
+                m_channelBytesIn += count;
+            }
+            super.channelRead( count );
+        }
+
+        protected void channelWritten( final long count )
+        {
+            synchronized( this )
+            {
+                markDispatched();
+                m_channelBytesOut += count;
+            }
+            super.channelWritten( count );
+        }
+
+        public void close()
+            throws IOException
+        {
+            try
+            {
+                super.close();
+            }
+            finally
+            {
+                record();
+            }
+        }
+
+        private void markDispatched()
+        {
+            if( 0 == m_dispatchTime )
+            {
+                m_dispatchTime = System.currentTimeMillis();
+            }
+        }
+
+        private void record()
+        {
+            final long now = System.currentTimeMillis();
+            final long dispatchTime;
+            final long bytesIn;
+            final long bytesOut;
+            synchronized( this )
+            {
+                if( m_closed )
+                {
+                    return;
+                }
+                m_closed = true;
+                markDispatched();
+                dispatchTime = m_dispatchTime;
+                bytesIn = m_channelBytesIn +
+                    ( ( null == m_input ) ? 0 : m_input.getCount() );
+                bytesOut = m_channelBytesOut +
+                    ( ( null == m_output ) ? 0 : m_output.getCount() );
+            }
+            m_metrics.record( dispatchTime - m_acceptTime,
+                              now - dispatchTime,
+                              bytesIn,
+                              bytesOut );
+        }
+    }
+}
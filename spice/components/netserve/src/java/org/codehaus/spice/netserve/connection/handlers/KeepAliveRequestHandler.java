@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.handlers;
+
+import java.io.IOException;
+import java.net.Socket;
+import org.codehaus.spice.netserve.connection.DrainableRequestHandler;
+import org.codehaus.spice.threadpool.ThreadPool;
+
+/**
+ * Base class for handlers of persistent connections that only hold a
+ * thread from the pool while a request is being handled.
+ *
+ * <p>When {@link #doPerformRequest} has finished a request and the
+ * client may send another, it calls {@link #keepAlive} rather than
+ * waiting to read the next request. Once doPerformRequest returns the
+ * socket is parked on a selector shared by all idle connections of the
+ * handler and the thread is returned to the pool. When data arrives on
+ * the connection it is dispatched to the pool again and
+ * doPerformRequest is called for the next request. This allows a small
+ * pool to serve a large number of mostly idle connections.</p>
+ *
+ * <p>Parking requires a socket that has an associated SocketChannel,
+ * for example one accepted from a ServerSocket created by
+ * {@link org.codehaus.spice.netserve.sockets.impl.ChannelServerSocketFactory}.
+ * Other sockets are dispatched to the pool again straight away, which
+ * behaves like handling every request on the same thread. As each
+ * request may be handled by a different thread, doPerformRequest must
+ * not keep data it has read ahead of the current request in a buffer
+ * that outlives the call.</p>
+ *
+ * <p>When an acceptor passing connections to the handler is drained
+ * the parked connections are closed and from then on connections are
+ * closed when their current request ends rather than parked, so the
+ * drain only waits for requests in progress.</p>
+ */
+public abstract class KeepAliveRequestHandler
+    extends AbstractRequestHandler
+    implements DrainableRequestHandler
+{
+    /**
+     * The thread pool used to handle requests.
+     */
+    private final ThreadPool m_threadPool;
+
+    /**
+     * The time in milliseconds a connection may stay parked before
+     * it is closed. 0 indicates no limit.
+     */
+    private final long m_idleTimeout;
+
+    /**
+     * The sockets that should be parked when the current request ends.
+     */
+    private final ConnectionRegistry m_keepAlive = new ConnectionRegistry();
+
+    /**
+     * The selector idle connections are parked on, created
+     * when first connection is parked.
+     */
+    private IdleConnectionSelector m_selector;
+
+    /**
+     * Set to true when a drain has started and
+     * connections should no longer be parked.
+     */
+    private boolean m_draining;
+
+    /**
+     * Create handler.
+     *
+     * @param threadPool the thread pool used to handle requests
+     * @param idleTimeout the time in milliseconds a connection may
+     *        stay parked before it is closed. 0 indicates no limit.
+     */
+    public KeepAliveRequestHandler( final ThreadPool threadPool,
+                                    final long idleTimeout )
+    {
+        if( null == threadPool )
+        {
+            throw new NullPointerException( "threadPool" );
+        }
+        if( idleTimeout < 0 )
+        {
+            throw new IllegalArgumentException( "idleTimeout" );
+        }
+        m_threadPool = threadPool;
+        m_idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Execute each request in a thread from the pool.
+     *
+     * @param socket the socket to handle
+     */
+    public void handleConnection( final Socket socket )
+    {
+        dispatch( socket );
+    }
+
+    /**
+     * Close parked connections and shutdown all requests.
+     *
+     * @param timeout the timeout
+     */
+    public void shutdown( final long timeout )
+    {
+        markAsShutdown();
+        final IdleConnectionSelector selector;
+        synchronized( this )
+        {
+            selector = m_selector;
+        }
+        if( null != selector )
+        {
+            selector.shutdown( timeout );
+        }
+        super.shutdown( timeout );
+    }
+
+    /**
+     * Close parked connections and stop parking connections
+     * when their current request ends.
+     */
+    public void drainStarted()
+    {
+        final IdleConnectionSelector selector;
+        synchronized( this )
+        {
+            m_draining = true;
+            selector = m_selector;
+        }
+        if( null != selector )
+        {
+            selector.drain();
+        }
+    }
+
+    /**
+     * Return the number of connections parked waiting for
+     * their next request.
+     *
+     * @return the number of parked connections
+     */
+    public int getParkedConnectionCount()
+    {
+        final IdleConnectionSelector selector;
+        synchronized( this )
+        {
+            selector = m_selector;
+        }
+        return ( null == selector ) ? 0 : selector.getParkedCount();
+    }
+
+    /**
+     * Request that socket be parked until the next request arrives
+     * rather than closed when the current request ends. Should only be
+     * called from {@link #doPerformRequest} for the socket it is
+     * handling. If doPerformRequest throws an exception after calling
+     * this method the connection is closed.
+     *
+     * @param socket the socket
+     */
+    protected void keepAlive( final Socket socket )
+    {
+        m_keepAlive.register( socket, socket );
+    }
+
+    /**
+     * Perform the request unless handler has been shutdown
+     * while it was waiting for a thread.
+     *
+     * @param socket the socket to handle
+     */
+    protected void performRequest( final Socket socket )
+    {
+        if( isShutdown() )
+        {
+            endConnection( socket );
+        }
+        else
+        {
+            super.performRequest( socket );
+        }
+    }
+
+    /**
+     * Park the connection if keepAlive was called
+     * for socket, otherwise close it.
+     *
+     * @param socket the socket
+     */
+    protected void endConnection( final Socket socket )
+    {
+        if( null != m_keepAlive.unregister( socket ) &&
+            !isShutdown() &&
+            !isDraining() &&
+            park( socket ) )
+        {
+            return;
+        }
+        super.endConnection( socket );
+    }
+
+    /**
+     * Forget any keepAlive request before notifying handler of error.
+     *
+     * @param socket the socket
+     * @param t the error
+     */
+    protected void errorHandlingConnection( final Socket socket,
+                                            final Throwable t )
+    {
+        m_keepAlive.unregister( socket );
+        super.errorHandlingConnection( socket, t );
+    }
+
+    /**
+     * Notify handler of an error selecting idle connections.
+     *
+     * @param ioe the error
+     */
+    protected void errorSelecting( final IOException ioe )
+    {
+    }
+
+    /**
+     * Execute the next request for socket in a thread from the pool.
+     *
+     * @param socket the socket
+     */
+    void dispatch( final Socket socket )
+    {
+        try
+        {
+            m_threadPool.execute( createRunnable( socket ) );
+        }
+        catch( final Throwable t )
+        {
+            errorHandlingConnection( socket, t );
+            closeConnection( socket );
+        }
+    }
+
+    /**
+     * Close a connection that is not being handled by a request.
+     *
+     * @param socket the socket
+     */
+    void closeConnection( final Socket socket )
+    {
+        super.endConnection( socket );
+    }
+
+    /**
+     * Return true if a drain has started.
+     *
+     * @return true if a drain has started
+     */
+    private synchronized boolean isDraining()
+    {
+        return m_draining;
+    }
+
+    /**
+     * Park socket on the selector until it is readable.
+     *
+     * @param socket the socket
+     * @return false if socket could not be parked
+     */
+    private boolean park( final Socket socket )
+    {
+        if( null == socket.getChannel() )
+        {
+            dispatch( socket );
+            return true;
+        }
+        final IdleConnectionSelector selector = getSelector();
+        return null != selector && selector.park( socket );
+    }
+
+    /**
+     * Return the selector idle connections are
+     * parked on, creating it if necessary.
+     *
+     * @return the selector or null if it could not be created
+     */
+    private synchronized IdleConnectionSelector getSelector()
+    {
+        if( null == m_selector && !isShutdown() && !m_draining )
+        {
+            try
+            {
+                m_selector = new IdleConnectionSelector( this, m_idleTimeout );
+                m_selector.start( "KeepAliveSelector" );
+            }
+            catch( final IOException ioe )
+            {
+                errorSelecting( ioe );
+            }
+        }
+        return m_selector;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.handlers;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+/**
+ * A noop monitor.
+ */
+public class NullAdmissionMonitor
+    implements AdmissionMonitor
+{
+    /**
+     * Add constant for instance of Null Monitor.
+     */
+    public static final NullAdmissionMonitor MONITOR = new NullAdmissionMonitor();
+
+    /**
+     * @see AdmissionMonitor#connectionAdmitted
+     */
+    public void connectionAdmitted( final InetAddress address,
+                                    final int activeCount )
+    {
+    }
+
+    /**
+     * @see AdmissionMonitor#connectionReleased
+     */
+    public void connectionReleased( final InetAddress address,
+                                    final int activeCount )
+    {
+    }
+
+    /**
+     * @see AdmissionMonitor#connectionQueued
+     */
+    public void connectionQueued( final InetAddress address )
+    {
+    }
+
+    /**
+     * @see AdmissionMonitor#rateLimitExceeded
+     */
+    public void rateLimitExceeded( final InetAddress address )
+    {
+    }
+
+    /**
+     * @see AdmissionMonitor#addressLimitExceeded
+     */
+    public void addressLimitExceeded( final InetAddress address )
+    {
+    }
+
+    /**
+     * @see AdmissionMonitor#connectionLimitExceeded
+     */
+    public void connectionLimitExceeded( final InetAddress address )
+    {
+    }
+
+    /**
+     * @see AdmissionMonitor#errorClosingConnection
+     */
+    public void errorClosingConnection( final InetAddress address,
+                                        final IOException ioe )
+    {
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.handlers;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import org.codehaus.spice.netserve.connection.ChannelContext;
+
+/**
+ * The ChannelContext for a channel registered with a
+ * {@link SelectorLoop}.
+ */
+class SelectorChannelContext
+    implements ChannelContext
+{
+    /**
+     * The socket passed to the request handler for connection.
+     */
+    private final Socket m_socket;
+
+    /**
+     * The channel for connection.
+     */
+    private final SocketChannel m_channel;
+
+    /**
+     * The loop the channel is registered with.
+     */
+    private final SelectorLoop m_loop;
+
+    /**
+     * The pool buffers are acquired from.
+     */
+    private final ByteBufferPool m_bufferPool;
+
+    /**
+     * The key for channel. Only accessed by the selector thread.
+     */
+    private SelectionKey m_key;
+
+    /**
+     * The operations the handler is interested in.
+     */
+    private int m_interestOps = SelectionKey.OP_READ;
+
+    /**
+     * The object the handler associated with connection.
+     */
+    private Object m_attachment;
+
+    /**
+     * Set to true when the connection has been closed.
+     */
+    private boolean m_closed;
+
+    /**
+     * Create a context.
+     *
+     * @param socket the socket passed to the request handler
+     * @param channel the channel of socket
+     * @param loop the loop the channel is registered with
+     * @param bufferPool the pool buffers are acquired from
+     */
+    SelectorChannelContext( final Socket socket,
+                            final SocketChannel channel,
+                            final SelectorLoop loop,
+                            final ByteBufferPool bufferPool )
+    {
+        m_socket = socket;
+        m_channel = channel;
+        m_loop = loop;
+        m_bufferPool = bufferPool;
+    }
+
+    /**
+     * @see ChannelContext#getChannel
+     */
+    public SocketChannel getChannel()
+    {
+        return m_channel;
+    }
+
+    /**
+     * @see ChannelContext#read
+     */
+    public int read( final ByteBuffer buffer )
+        throws IOException
+    {
+        final int count = m_channel.read( buffer );
+        if( count > 0 && m_socket instanceof DelegatingSocket )
+        {
+            ( (DelegatingSocket)m_socket ).channelRead( count );
+        }
+        return count;
+    }
+
+    /**
+     * @see ChannelContext#write
+     */
+    public int write( final ByteBuffer buffer )
+        throws IOException
+    {
+        final int count = m_channel.write( buffer );
+        if( count > 0 && m_socket instanceof DelegatingSocket )
+        {
+            ( (DelegatingSocket)m_socket ).channelWritten( count );
+        }
+        return count;
+    }
+
+    /**
+     * @see ChannelContext#setReadInterest
+     */
+    public void setReadInterest( final boolean interested )
+    {
+        setInterest( SelectionKey.OP_READ, interested );
+    }
+
+    /**
+     * @see ChannelContext#setWriteInterest
+     */
+    public void setWriteInterest( final boolean interested )
+    {
+        setInterest( SelectionKey.OP_WRITE, interested );
+    }
+
+    /**
+     * @see ChannelContext#acquireBuffer
+     */
+    public ByteBuffer acquireBuffer()
+    {
+        return m_bufferPool.acquire();
+    }
+
+    /**
+     * @see ChannelContext#releaseBuffer
+     */
+    public void releaseBuffer( final ByteBuffer buffer )
+    {
+        m_bufferPool.release( buffer );
+    }
+
+    /**
+     * @see ChannelContext#getAttachment
+     */
+    public synchronized Object getAttachment()
+    {
+        return m_attachment;
+    }
+
+    /**
+     * @see ChannelContext#setAttachment
+     */
+    public synchronized void setAttachment( final Object attachment )
+    {
+        m_attachment = attachment;
+    }
+
+    /**
+     * @see ChannelContext#isOpen
+     */
+    public synchronized boolean isOpen()
+    {
+        return !m_closed;
+    }
+
+    /**
+     * @see ChannelContext#close
+     */
+    public void close()
+    {
+        synchronized( this )
+        {
+            if( m_closed )
+            {
+                return;
+            }
+            m_closed = true;
+        }
+        m_loop.channelClosing( this );
+    }
+
+    /**
+     * Register channel with selector. Invoked by selector thread.
+     *
+     * @param selector the selector
+     * @throws IOException if unable to register channel
+     */
+    void register( final Selector selector )
+        throws IOException
+    {
+        m_key = m_channel.register( selector, getInterestOps(), this );
+    }
+
+    /**
+     * Update the operations the key is interested in to match those
+     * requested by handler. Invoked by selector thread.
+     */
+    void updateInterestOps()
+    {
+        if( null != m_key && m_key.isValid() )
+        {
+            m_key.interestOps( getInterestOps() );
+        }
+    }
+
+    /**
+     * Deregister the channel and close the socket it belongs to,
+     * which closes the channel. Closing the socket rather than the
+     * channel lets a socket that wraps the accepted socket see the
+     * connection close. May be called again once the channel is
+     * closed. Invoked by selector thread.
+     *
+     * @throws IOException if unable to close socket
+     */
+    void closeChannel()
+        throws IOException
+    {
+        synchronized( this )
+        {
+            m_closed = true;
+        }
+        if( null != m_key )
+        {
+            m_key.cancel();
+        }
+        m_socket.close();
+    }
+
+    /**
+     * Return the operations the handler is interested in.
+     *
+     * @return the operations the handler is interested in
+     */
+    synchronized int getInterestOps()
+    {
+        return m_interestOps;
+    }
+
+    /**
+     * Add or remove an operation from those handler is interested in.
+     *
+     * @param op the operation
+     * @param interested true to add operation
+     */
+    private void setInterest( final int op, final boolean interested )
+    {
+        synchronized( this )
+        {
+            final int ops = interested ? m_interestOps | op : m_interestOps & ~op;
+            if( ops == m_interestOps || m_closed )
+            {
+                return;
+            }
+            m_interestOps = ops;
+        }
+        m_loop.interestChanged( this );
+    }
+}
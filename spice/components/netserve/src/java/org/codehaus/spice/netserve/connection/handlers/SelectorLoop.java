@@ -0,0 +1,400 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.handlers;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.codehaus.spice.netserve.connection.ChannelHandler;
+
+/**
+ * A thread that selects on a set of channels and notifies a
+ * {@link ChannelHandler} when they are ready.
+ *
+ * <p>Registering channels, changing interest operations and closing
+ * channels can only be done without blocking by the thread that
+ * selects, so changes requested by other threads are queued and the
+ * selector woken up to process them.</p>
+ *
+ * <p>A failure of select() is reported to the owner, then the loop
+ * pauses briefly before selecting again rather than retrying in a
+ * tight loop.</p>
+ */
+class SelectorLoop
+    implements Runnable
+{
+    /**
+     * The time in milliseconds to pause after select() fails.
+     */
+    private static final long SELECT_FAILURE_DELAY = 100;
+
+    /**
+     * The request handler that owns loop.
+     */
+    private final ChannelRequestHandler m_owner;
+
+    /**
+     * The selector channels are registered with.
+     */
+    private final Selector m_selector;
+
+    /**
+     * Contexts waiting to be registered.
+     */
+    private final List m_registrations = new ArrayList();
+
+    /**
+     * Contexts whose interest operations have changed.
+     */
+    private final List m_changes = new ArrayList();
+
+    /**
+     * Contexts waiting to be closed.
+     */
+    private final List m_closes = new ArrayList();
+
+    /**
+     * Set to false when loop should stop.
+     */
+    private boolean m_running;
+
+    /**
+     * The thread selecting channels.
+     */
+    private Thread m_thread;
+
+    /**
+     * Create a loop.
+     *
+     * @param owner the request handler that owns loop
+     * @throws IOException if unable to open selector
+     */
+    SelectorLoop( final ChannelRequestHandler owner )
+        throws IOException
+    {
+        m_owner = owner;
+        m_selector = Selector.open();
+    }
+
+    /**
+     * Start the thread selecting channels.
+     *
+     * @param name the name of thread
+     */
+    synchronized void start( final String name )
+    {
+        m_running = true;
+        m_thread = new Thread( this, name );
+        m_thread.start();
+    }
+
+    /**
+     * Stop the loop and close all channels registered with it.
+     *
+     * @param timeout the time to wait for loop to stop.
+     *        0 indicates an indefinite wait.
+     */
+    void shutdown( final long timeout )
+    {
+        final Thread thread;
+        synchronized( this )
+        {
+            m_running = false;
+            thread = m_thread;
+            notifyAll();
+        }
+        m_selector.wakeup();
+        if( null != thread && Thread.currentThread() != thread )
+        {
+            try
+            {
+                thread.join( timeout );
+            }
+            catch( final InterruptedException ie )
+            {
+                //Ignore
+            }
+        }
+    }
+
+    /**
+     * Queue a channel for registration with loop.
+     *
+     * @param socket the socket passed to handler, closed with channel
+     * @param channel the channel of socket in non-blocking mode
+     * @return false if loop has been shutdown
+     */
+    boolean register( final Socket socket, final SocketChannel channel )
+    {
+        final SelectorChannelContext context =
+            new SelectorChannelContext( socket, channel, this, m_owner.getBufferPool() );
+        synchronized( this )
+        {
+            if( !m_running )
+            {
+                return false;
+            }
+            m_registrations.add( context );
+        }
+        m_selector.wakeup();
+        return true;
+    }
+
+    /**
+     * Notify loop that the interest operations of context changed.
+     *
+     * @param context the context
+     */
+    void interestChanged( final SelectorChannelContext context )
+    {
+        if( isLoopThread() )
+        {
+            context.updateInterestOps();
+        }
+        else
+        {
+            synchronized( this )
+            {
+                m_changes.add( context );
+            }
+            m_selector.wakeup();
+        }
+    }
+
+    /**
+     * Notify loop that the handler closed context.
+     *
+     * @param context the context
+     */
+    void channelClosing( final SelectorChannelContext context )
+    {
+        if( isLoopThread() )
+        {
+            closeContext( context );
+        }
+        else
+        {
+            synchronized( this )
+            {
+                m_closes.add( context );
+            }
+            m_selector.wakeup();
+        }
+    }
+
+    /**
+     * The main select loop.
+     */
+    public void run()
+    {
+        while( processChanges() )
+        {
+            try
+            {
+                m_selector.select();
+            }
+            catch( final IOException ioe )
+            {
+                m_owner.errorSelecting( ioe );
+                pauseAfterFailure();
+                continue;
+            }
+
+            final Iterator iterator = m_selector.selectedKeys().iterator();
+            while( iterator.hasNext() )
+            {
+                final SelectionKey key = (SelectionKey)iterator.next();
+                iterator.remove();
+                handleReady( key );
+            }
+        }
+
+        final Iterator iterator = m_selector.keys().iterator();
+        while( iterator.hasNext() )
+        {
+            final SelectionKey key = (SelectionKey)iterator.next();
+            closeContext( (SelectorChannelContext)key.attachment() );
+        }
+        try
+        {
+            m_selector.close();
+        }
+        catch( final IOException ioe )
+        {
+            //Ignore
+        }
+        synchronized( this )
+        {
+            m_thread = null;
+        }
+    }
+
+    /**
+     * Notify handler of the operations key is ready for.
+     *
+     * @param key the key
+     */
+    private void handleReady( final SelectionKey key )
+    {
+        final SelectorChannelContext context = (SelectorChannelContext)key.attachment();
+        final ChannelHandler handler = m_owner.getChannelHandler();
+        try
+        {
+            if( key.isValid() && key.isReadable() )
+            {
+                handler.channelReadable( context );
+            }
+            if( key.isValid() && key.isWritable() )
+            {
+                handler.channelWritable( context );
+            }
+        }
+        catch( final CancelledKeyException cke )
+        {
+            closeContext( context );
+        }
+        catch( final Throwable t )
+        {
+            m_owner.errorHandlingChannel( context.getChannel(), t );
+            closeContext( context );
+        }
+    }
+
+    /**
+     * Register, update and close the queued contexts.
+     *
+     * @return false if loop should stop
+     */
+    private boolean processChanges()
+    {
+        final SelectorChannelContext[] registrations;
+        final SelectorChannelContext[] changes;
+        final SelectorChannelContext[] closes;
+        final boolean running;
+        synchronized( this )
+        {
+            registrations = toArray( m_registrations );
+            changes = toArray( m_changes );
+            closes = toArray( m_closes );
+            running = m_running;
+        }
+        for( int i = 0; i < registrations.length; i++ )
+        {
+            openContext( registrations[ i ] );
+        }
+        for( int i = 0; i < changes.length; i++ )
+        {
+            changes[ i ].updateInterestOps();
+        }
+        for( int i = 0; i < closes.length; i++ )
+        {
+            closeContext( closes[ i ] );
+        }
+        return running;
+    }
+
+    /**
+     * Register context with selector and notify handler
+     * that channel has opened.
+     *
+     * @param context the context
+     */
+    private void openContext( final SelectorChannelContext context )
+    {
+        try
+        {
+            context.register( m_selector );
+            m_owner.getChannelHandler().channelOpened( context );
+        }
+        catch( final Throwable t )
+        {
+            m_owner.errorHandlingChannel( context.getChannel(), t );
+            closeContext( context );
+        }
+    }
+
+    /**
+     * Close the channel for context and notify handler.
+     *
+     * @param context the context
+     */
+    private void closeContext( final SelectorChannelContext context )
+    {
+        //The socket is still closed if handler closed the channel itself
+        final boolean open = context.getChannel().isOpen();
+        try
+        {
+            context.closeChannel();
+        }
+        catch( final IOException ioe )
+        {
+            m_owner.errorClosingChannel( context.getChannel(), ioe );
+        }
+        if( !open )
+        {
+            return;
+        }
+        try
+        {
+            m_owner.getChannelHandler().channelClosed( context );
+        }
+        catch( final Throwable t )
+        {
+            m_owner.errorHandlingChannel( context.getChannel(), t );
+        }
+    }
+
+    /**
+     * Pause after select() failed. The pause ends
+     * early if loop is shutdown.
+     */
+    private synchronized void pauseAfterFailure()
+    {
+        if( m_running )
+        {
+            try
+            {
+                wait( SELECT_FAILURE_DELAY );
+            }
+            catch( final InterruptedException ie )
+            {
+                //Ignore
+            }
+        }
+    }
+
+    /**
+     * Return true if the current thread is the loop thread.
+     *
+     * @return true if the current thread is the loop thread
+     */
+    private synchronized boolean isLoopThread()
+    {
+        return Thread.currentThread() == m_thread;
+    }
+
+    /**
+     * Copy and clear a list of contexts.
+     *
+     * @param list the list
+     * @return the contexts
+     */
+    private SelectorChannelContext[] toArray( final List list )
+    {
+        final SelectorChannelContext[] contexts =
+            (SelectorChannelContext[])list.toArray( new SelectorChannelContext[ list.size() ] );
+        list.clear();
+        return contexts;
+    }
+}
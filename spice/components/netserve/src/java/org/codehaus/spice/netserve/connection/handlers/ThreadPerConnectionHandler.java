@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.handlers;
+
+import java.net.Socket;
+import org.codehaus.spice.netserve.connection.RequestHandler;
+
+/**
+ * A Handler that starts a new thread with a small stack for each
+ * connection. Unlike {@link ThreadPerRequestHandler} no pooled
+ * worker is pinned while a connection sits idle in a blocking
+ * read, which makes this handler suited to servers with a large
+ * number of mostly idle connections. The stack size is only a
+ * hint and some virtual machines ignore it.
+ */
+public class ThreadPerConnectionHandler
+    extends DelegatingRequestHandler
+{
+    /**
+     * The default stack size of connection threads.
+     */
+    public static final long DEFAULT_STACK_SIZE = 64 * 1024;
+
+    /**
+     * A registry of Socket->Thread.
+     */
+    private final ConnectionRegistry m_threadMap = new ConnectionRegistry();
+
+    /**
+     * The thread group connection threads are created in.
+     */
+    private final ThreadGroup m_threadGroup;
+
+    /**
+     * The requested stack size of connection threads.
+     */
+    private final long m_stackSize;
+
+    /**
+     * Create handler using the default stack size.
+     *
+     * @param handler the underlying handler
+     */
+    public ThreadPerConnectionHandler( final RequestHandler handler )
+    {
+        this( handler, DEFAULT_STACK_SIZE );
+    }
+
+    /**
+     * Create handler.
+     *
+     * @param handler the underlying handler
+     * @param stackSize the requested stack size of connection
+     *        threads in bytes, 0 for the default of the virtual machine
+     */
+    public ThreadPerConnectionHandler( final RequestHandler handler,
+                                       final long stackSize )
+    {
+        super( handler );
+        if( stackSize < 0 )
+        {
+            throw new IllegalArgumentException( "stackSize" );
+        }
+        m_stackSize = stackSize;
+        m_threadGroup = Thread.currentThread().getThreadGroup();
+    }
+
+    /**
+     * Execute each request in a new thread.
+     *
+     * @param socket the socket to handle
+     */
+    public void handleConnection( final Socket socket )
+    {
+        if( isShutdown() )
+        {
+            endConnection( socket );
+            return;
+        }
+        final Runnable runnable = createRunnable( socket );
+        final Thread thread =
+            new Thread( m_threadGroup, runnable, getThreadName( socket ), m_stackSize );
+        m_threadMap.register( socket, thread );
+        thread.start();
+    }
+
+    /**
+     * Remove Thread from list of active threads.
+     *
+     * @param socket the socket
+     */
+    protected void endConnection( final Socket socket )
+    {
+        m_threadMap.unregister( socket );
+        super.endConnection( socket );
+    }
+
+    /**
+     * Shutdown all requests including those whose
+     * thread has not started handling the request yet.
+     *
+     * @param timeout the timeout
+     */
+    public void shutdown( final long timeout )
+    {
+        markAsShutdown();
+        final Object[] threads = m_threadMap.getValues();
+        for( int i = 0; i < threads.length; i++ )
+        {
+            ( (Thread)threads[ i ] ).interrupt();
+        }
+        super.shutdown( timeout );
+        for( int i = 0; i < threads.length; i++ )
+        {
+            try
+            {
+                ( (Thread)threads[ i ] ).join( timeout );
+            }
+            catch( final InterruptedException ie )
+            {
+                //Ignore
+            }
+        }
+    }
+}
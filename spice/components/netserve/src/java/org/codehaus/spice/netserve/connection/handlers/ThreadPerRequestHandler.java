@@ -8,9 +8,6 @@
 package org.codehaus.spice.netserve.connection.handlers;
 
 import java.net.Socket;
-import java.util.Map;
-import java.util.Hashtable;
-import java.util.Collection;
 import org.codehaus.spice.netserve.connection.RequestHandler;
 import org.codehaus.spice.threadpool.ThreadPool;
 import org.codehaus.spice.threadpool.ThreadControl;
@@ -25,9 +22,9 @@ public class ThreadPerRequestHandler
     extends DelegatingRequestHandler
 {
     /**
-     * A map of Socket->ThreadControl.
+     * A registry of Socket->ThreadControl.
      */
-    private final Map m_controlMap = new Hashtable();
+    private final ConnectionRegistry m_controlMap = new ConnectionRegistry();
 
     /**
      * the thread pool that used to handle requests.
@@ -60,7 +57,7 @@ public class ThreadPerRequestHandler
     {
         final Runnable runnable = createRunnable( socket );
         final ThreadControl control = m_threadPool.execute( runnable );
-        m_controlMap.put( socket, control );
+        m_controlMap.register( socket, control );
     }
 
     /**
@@ -70,7 +67,7 @@ public class ThreadPerRequestHandler
      */
     protected void endConnection( Socket socket )
     {
-        m_controlMap.remove( socket );
+        m_controlMap.unregister( socket );
         super.endConnection( socket );
     }
 
@@ -82,16 +79,10 @@ public class ThreadPerRequestHandler
     public void shutdown( final long timeout )
     {
         markAsShutdown();
-        final ThreadControl[] controls;
-        synchronized( m_controlMap )
-        {
-            final Collection collection = m_controlMap.values();
-            controls = (ThreadControl[])collection.
-                toArray( new ThreadControl[ collection.size() ] );
-        }
+        final Object[] controls = m_controlMap.getValues();
         for( int i = 0; i < controls.length; i++ )
         {
-            final ThreadControl control = controls[ i ];
+            final ThreadControl control = (ThreadControl)controls[ i ];
             if( !control.isFinished() )
             {
                 control.interrupt();
@@ -100,7 +91,7 @@ public class ThreadPerRequestHandler
         super.shutdown( timeout );
         for( int i = 0; i < controls.length; i++ )
         {
-            final ThreadControl control = controls[ i ];
+            final ThreadControl control = (ThreadControl)controls[ i ];
             if( !control.isFinished() )
             {
                 try
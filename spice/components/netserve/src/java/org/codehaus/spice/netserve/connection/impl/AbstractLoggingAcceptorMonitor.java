@@ -2,14 +2,18 @@ package org.codehaus.spice.netserve.connection.impl;
 
 import java.io.IOException;
 import java.net.ServerSocket;
+import org.codehaus.spice.netserve.connection.handlers.ConnectionMetrics;
+import org.codehaus.spice.netserve.connection.handlers.ConnectionMetricsSink;
 
 /**
  * An abstract monitor that writes out messages
  * for acceptor events. Need to subclass and implement
- * methods to write out log messages.
+ * methods to write out log messages. The monitor can also
+ * be used as a sink for connection metrics, which are written
+ * out as info messages.
  */
 public abstract class AbstractLoggingAcceptorMonitor
-   implements AcceptorMonitor
+   implements AcceptorMonitor, ConnectionMetricsSink
 {
    /**
     * @see AcceptorMonitor#acceptorCreated
@@ -66,6 +70,45 @@ public abstract class AbstractLoggingAcceptorMonitor
       warn( "Error Closing Server Socket " + name, ioe );
    }
 
+   /**
+    * @see AcceptorMonitor#acceptorDraining
+    */
+   public void acceptorDraining( final String name,
+                                 final int activeCount )
+   {
+      final String message =
+         "Draining Acceptor " + name + ", waiting for " +
+         activeCount + " connections to close.";
+      info( message );
+   }
+
+   /**
+    * @see AcceptorMonitor#acceptorDrained
+    */
+   public void acceptorDrained( final String name,
+                                final int activeCount )
+   {
+      if ( 0 == activeCount )
+      {
+         info( "Drained Acceptor " + name + "." );
+      }
+      else
+      {
+         final String message =
+            "Timed out draining Acceptor " + name + " with " +
+            activeCount + " connections still open.";
+         warn( message, null );
+      }
+   }
+
+   /**
+    * @see ConnectionMetricsSink#metricsReported
+    */
+   public void metricsReported( final ConnectionMetrics metrics )
+   {
+      info( metrics.toString() );
+   }
+
    /**
     * Return true if debug logging enabled.
     *
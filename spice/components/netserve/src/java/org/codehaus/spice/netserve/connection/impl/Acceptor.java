@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.impl;
+
+import org.codehaus.spice.netserve.connection.RequestHandler;
+
+/**
+ * An acceptor accepts connections from a single ServerSocket
+ * on behalf of the {@link DefaultAcceptorManager}.
+ */
+interface Acceptor
+{
+    /**
+     * Stop accepting connections and close the ServerSocket.
+     *
+     * @param timeout the time in milliseconds to wait for the acceptor
+     *        to shutdown. 0 indicates an indefinite wait.
+     */
+    void close( long timeout );
+
+    /**
+     * Return the connections accepted that have not yet been closed.
+     *
+     * @return the connections accepted that have not yet been closed
+     */
+    ActiveConnections getConnections();
+
+    /**
+     * Return the handler connections are passed to.
+     *
+     * @return the handler connections are passed to
+     */
+    RequestHandler getHandler();
+}
@@ -33,6 +33,11 @@ class AcceptorConfig
      */
     private final RequestHandler m_handler;
 
+    /**
+     * The connections accepted that have not yet been closed.
+     */
+    private final ActiveConnections m_connections = new ActiveConnections();
+
     /**
      * Create the acceptor.
      *
@@ -90,4 +95,14 @@ class AcceptorConfig
     {
         return m_handler;
     }
+
+    /**
+     * Return the connections accepted that have not yet been closed.
+     *
+     * @return the connections accepted that have not yet been closed.
+     */
+    ActiveConnections getConnections()
+    {
+        return m_connections;
+    }
 }
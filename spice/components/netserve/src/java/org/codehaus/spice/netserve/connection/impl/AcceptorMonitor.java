@@ -58,4 +58,23 @@ public interface AcceptorMonitor
      * @param ioe the exception
      */
     void errorClosingServerSocket( String name, IOException ioe );
+
+    /**
+     * Acceptor has stopped accepting connections and is waiting for
+     * the connections it accepted to be closed. Called when the drain
+     * starts and periodically while it continues.
+     *
+     * @param name the name of acceptor
+     * @param activeCount the number of connections still open
+     */
+    void acceptorDraining( String name, int activeCount );
+
+    /**
+     * Acceptor has finished draining.
+     *
+     * @param name the name of acceptor
+     * @param activeCount the number of connections still open,
+     *        which is not 0 if the drain timed out
+     */
+    void acceptorDrained( String name, int activeCount );
 }
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.impl;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A single thread that multiplexes the accept() calls for any number
+ * of {@link ChannelAcceptor} objects using a Selector.
+ *
+ * <p>Channels can only be registered with and deregistered from a
+ * Selector without blocking if it is done by the thread that selects,
+ * so requests to register or cancel acceptors are queued and the
+ * selector woken up to process them. Waking up the selector also
+ * means acceptors shutdown immediately rather than waiting for an
+ * accept() call to time out.</p>
+ *
+ * <p>If select() fails the error is reported to every registered
+ * acceptor and the thread waits briefly before selecting again, so
+ * a persistent failure does not leave it spinning.</p>
+ */
+class AcceptorSelector
+    implements Runnable
+{
+    /**
+     * The time in milliseconds to wait after select() fails.
+     */
+    private static final long SELECT_FAILURE_DELAY = 100;
+
+    /**
+     * The selector the channels are registered with.
+     */
+    private final Selector m_selector;
+
+    /**
+     * The acceptors waiting to be registered.
+     */
+    private final List m_registrations = new ArrayList();
+
+    /**
+     * The acceptors waiting to be cancelled.
+     */
+    private final List m_cancellations = new ArrayList();
+
+    /**
+     * Set to false when selector should stop.
+     */
+    private boolean m_running;
+
+    /**
+     * The thread selecting channels.
+     */
+    private Thread m_thread;
+
+    /**
+     * Create the selector.
+     *
+     * @throws IOException if unable to open the selector
+     */
+    AcceptorSelector()
+        throws IOException
+    {
+        m_selector = Selector.open();
+    }
+
+    /**
+     * Start the thread selecting channels.
+     *
+     * @param name the name of thread
+     */
+    synchronized void start( final String name )
+    {
+        m_running = true;
+        m_thread = new Thread( this, name );
+        m_thread.start();
+    }
+
+    /**
+     * Stop selecting channels. Any acceptors still registered
+     * are shutdown.
+     *
+     * @param timeout the time to wait for selector thread to exit.
+     *        0 indicates an indefinite wait.
+     */
+    void shutdown( final long timeout )
+    {
+        final Thread thread;
+        synchronized( this )
+        {
+            m_running = false;
+            thread = m_thread;
+            notifyAll();
+        }
+        m_selector.wakeup();
+        if( null != thread && Thread.currentThread() != thread )
+        {
+            try
+            {
+                thread.join( timeout );
+            }
+            catch( final InterruptedException ie )
+            {
+                //Ignore
+            }
+        }
+    }
+
+    /**
+     * Return true if the current thread is the selector thread.
+     *
+     * @return true if the current thread is the selector thread.
+     */
+    synchronized boolean isSelectorThread()
+    {
+        return Thread.currentThread() == m_thread;
+    }
+
+    /**
+     * Queue acceptor for registration with selector.
+     *
+     * @param acceptor the acceptor
+     * @throws IllegalStateException if selector has been shutdown
+     */
+    void register( final ChannelAcceptor acceptor )
+    {
+        synchronized( this )
+        {
+            if( !m_running )
+            {
+                throw new IllegalStateException( "Selector shutdown" );
+            }
+            m_registrations.add( acceptor );
+        }
+        m_selector.wakeup();
+    }
+
+    /**
+     * Queue acceptor for cancellation.
+     *
+     * @param acceptor the acceptor
+     */
+    void cancel( final ChannelAcceptor acceptor )
+    {
+        synchronized( this )
+        {
+            m_cancellations.add( acceptor );
+        }
+        m_selector.wakeup();
+    }
+
+    /**
+     * The main select loop.
+     */
+    public void run()
+    {
+        while( processChanges() )
+        {
+            try
+            {
+                m_selector.select();
+            }
+            catch( final IOException ioe )
+            {
+                selectFailed( ioe );
+                waitAfterFailure();
+                continue;
+            }
+
+            final Iterator iterator = m_selector.selectedKeys().iterator();
+            while( iterator.hasNext() )
+            {
+                final SelectionKey key = (SelectionKey)iterator.next();
+                iterator.remove();
+                try
+                {
+                    if( key.isValid() && key.isAcceptable() )
+                    {
+                        ( (ChannelAcceptor)key.attachment() ).acceptConnections();
+                    }
+                }
+                catch( final CancelledKeyException cke )
+                {
+                    //Acceptor closed by handler
+                }
+            }
+        }
+
+        final Iterator iterator = m_selector.keys().iterator();
+        while( iterator.hasNext() )
+        {
+            final SelectionKey key = (SelectionKey)iterator.next();
+            ( (ChannelAcceptor)key.attachment() ).shutdown();
+        }
+        try
+        {
+            m_selector.close();
+        }
+        catch( final IOException ioe )
+        {
+            //Ignore
+        }
+        synchronized( this )
+        {
+            m_thread = null;
+        }
+    }
+
+    /**
+     * Register and cancel the queued acceptors.
+     *
+     * @return false if selector should stop
+     */
+    private boolean processChanges()
+    {
+        final ChannelAcceptor[] registrations;
+        final ChannelAcceptor[] cancellations;
+        final boolean running;
+        synchronized( this )
+        {
+            registrations = (ChannelAcceptor[])m_registrations.
+                toArray( new ChannelAcceptor[ m_registrations.size() ] );
+            m_registrations.clear();
+            cancellations = (ChannelAcceptor[])m_cancellations.
+                toArray( new ChannelAcceptor[ m_cancellations.size() ] );
+            m_cancellations.clear();
+            running = m_running;
+        }
+        for( int i = 0; i < registrations.length; i++ )
+        {
+            registrations[ i ].register( m_selector );
+        }
+        for( int i = 0; i < cancellations.length; i++ )
+        {
+            cancellations[ i ].shutdown();
+        }
+        return running;
+    }
+
+    /**
+     * Report an error selecting to all the registered acceptors.
+     *
+     * @param ioe the error
+     */
+    private void selectFailed( final IOException ioe )
+    {
+        final Iterator iterator = m_selector.keys().iterator();
+        while( iterator.hasNext() )
+        {
+            final SelectionKey key = (SelectionKey)iterator.next();
+            ( (ChannelAcceptor)key.attachment() ).selectFailed( ioe );
+        }
+    }
+
+    /**
+     * Wait before selecting again after select() failed,
+     * returning early if selector is shutdown.
+     */
+    private synchronized void waitAfterFailure()
+    {
+        if( m_running )
+        {
+            try
+            {
+                wait( SELECT_FAILURE_DELAY );
+            }
+            catch( final InterruptedException ie )
+            {
+                //Ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.impl;
+
+import java.net.Socket;
+
+/**
+ * The connections accepted by an acceptor that have not yet been
+ * closed. Sockets are added as they are accepted and are dropped once
+ * the handler has closed them, which is detected by sweeping the
+ * sockets rather than by wrapping them so that handlers still see the
+ * sockets returned by accept(). A sweep happens when the number of
+ * sockets held has doubled since the last sweep, which keeps the cost
+ * of accepting constant, and whenever the count is requested.
+ */
+class ActiveConnections
+{
+    /**
+     * The smallest number of sockets held before a sweep.
+     */
+    private static final int MIN_SWEEP_SIZE = 16;
+
+    /**
+     * The sockets that were open at the last sweep
+     * followed by those accepted since.
+     */
+    private Socket[] m_sockets = new Socket[ MIN_SWEEP_SIZE ];
+
+    /**
+     * The number of sockets held.
+     */
+    private int m_size;
+
+    /**
+     * The number of sockets held at which the next sweep happens.
+     */
+    private int m_sweepSize = MIN_SWEEP_SIZE;
+
+    /**
+     * Add a socket that has just been accepted.
+     *
+     * @param socket the socket
+     */
+    synchronized void add( final Socket socket )
+    {
+        if( null == socket )
+        {
+            throw new NullPointerException( "socket" );
+        }
+        if( m_size == m_sweepSize )
+        {
+            sweep();
+            m_sweepSize = Math.max( MIN_SWEEP_SIZE, m_size * 2 );
+            if( m_sweepSize > m_sockets.length )
+            {
+                final Socket[] sockets = new Socket[ m_sweepSize ];
+                System.arraycopy( m_sockets, 0, sockets, 0, m_size );
+                m_sockets = sockets;
+            }
+        }
+        m_sockets[ m_size++ ] = socket;
+    }
+
+    /**
+     * Return the number of sockets that have not been closed.
+     *
+     * @return the number of sockets that have not been closed
+     */
+    synchronized int getActiveCount()
+    {
+        sweep();
+        return m_size;
+    }
+
+    /**
+     * Drop the sockets that have been closed.
+     */
+    private void sweep()
+    {
+        int size = 0;
+        for( int i = 0; i < m_size; i++ )
+        {
+            final Socket socket = m_sockets[ i ];
+            if( !socket.isClosed() )
+            {
+                m_sockets[ size++ ] = socket;
+            }
+        }
+        for( int i = size; i < m_size; i++ )
+        {
+            m_sockets[ i ] = null;
+        }
+        m_size = size;
+    }
+}
@@ -11,13 +11,17 @@ import org.apache.avalon.framework.logger.Logger;
 /**
  * An Avalon compliant implementation of AcceptorManager.
  *
- * <p>The component takes a single configuration parameter;
- * "shutdownTimeout". This specifies the amount of time to wait
- * while waiting for connections to shutdown gracefully. A
- * sample configuration follows;</p>
+ * <p>The component takes two configuration parameters;
+ * "shutdownTimeout" and "drainTimeout". The first specifies the
+ * amount of time to wait while waiting for connections to shutdown
+ * gracefully. The optional second specifies the amount of time to
+ * wait on disposal for accepted connections to be closed after
+ * acceptors stop accepting. A sample configuration follows;</p>
  * <pre>
  *  &lt;!-- wait 200ms for connections to gracefully shutdown --&gt;
  *  &lt;shutdownTimeout&gt;200&lt;/shutdownTimeout&gt;
+ *  &lt;!-- wait 5s for accepted connections to be closed --&gt;
+ *  &lt;drainTimeout&gt;5000&lt;/drainTimeout&gt;
  * </pre>
  *
  * @author Peter Donald
@@ -47,6 +51,7 @@ public class AvalonAcceptorManager
       throws ConfigurationException
    {
       setShutdownTimeout( configuration.getChild( "shutdownTimeout" ).getValueAsInteger( 0 ) );
+      setDrainTimeout( configuration.getChild( "drainTimeout" ).getValueAsInteger( 0 ) );
    }
 
    /**
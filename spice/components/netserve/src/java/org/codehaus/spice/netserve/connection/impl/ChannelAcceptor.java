@@ -0,0 +1,393 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.impl;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import org.codehaus.spice.netserve.connection.RequestHandler;
+
+/**
+ * Acceptor for a ServerSocket that has an associated
+ * ServerSocketChannel. Rather than blocking in accept() the channel
+ * is registered with an {@link AcceptorSelector} that is shared with
+ * other acceptors and connections are accepted when the channel
+ * becomes ready.
+ *
+ * <p>All methods except {@link #close(long)} and
+ * {@link #waitUntilRegistered()} are invoked by the selector
+ * thread.</p>
+ */
+class ChannelAcceptor
+    implements Acceptor
+{
+    /**
+     * The maximum number of connections accepted each time the
+     * channel is ready, so that one busy acceptor does not starve
+     * the other acceptors sharing the selector.
+     */
+    static final int BATCH_SIZE = 64;
+
+    /**
+     * The configuration for acceptor.
+     */
+    private final AcceptorConfig m_config;
+
+    /**
+     * The AcceptorMonitor for event notification.
+     */
+    private final AcceptorMonitor m_monitor;
+
+    /**
+     * The selector the channel is registered with.
+     */
+    private final AcceptorSelector m_selector;
+
+    /**
+     * The channel connections are accepted from.
+     */
+    private final ServerSocketChannel m_channel;
+
+    /**
+     * The key for channel when registered with selector.
+     */
+    private SelectionKey m_key;
+
+    /**
+     * Set to true when channel has been registered or
+     * registration failed.
+     */
+    private boolean m_registered;
+
+    /**
+     * The exception that caused registration to fail if any.
+     */
+    private IOException m_registerError;
+
+    /**
+     * Set to true when close has been requested.
+     */
+    private boolean m_closing;
+
+    /**
+     * Set to true when the channel has been deregistered
+     * and the ServerSocket closed.
+     */
+    private boolean m_closed;
+
+    /**
+     * Create the acceptor.
+     *
+     * @param config the config for acceptor
+     * @param monitor the monitor
+     * @param selector the selector to register with
+     */
+    ChannelAcceptor( final AcceptorConfig config,
+                     final AcceptorMonitor monitor,
+                     final AcceptorSelector selector )
+    {
+        if( null == config )
+        {
+            throw new NullPointerException( "config" );
+        }
+        if( null == monitor )
+        {
+            throw new NullPointerException( "monitor" );
+        }
+        if( null == selector )
+        {
+            throw new NullPointerException( "selector" );
+        }
+        final ServerSocketChannel channel = config.getServerSocket().getChannel();
+        if( null == channel )
+        {
+            final String message =
+                "ServerSocket for " + config.getName() + " has no channel";
+            throw new IllegalArgumentException( message );
+        }
+        m_config = config;
+        m_monitor = monitor;
+        m_selector = selector;
+        m_channel = channel;
+        m_monitor.acceptorCreated( m_config.getName(),
+                                   m_config.getServerSocket() );
+    }
+
+    /**
+     * Return the channel connections are accepted from.
+     *
+     * @return the channel connections are accepted from.
+     */
+    ServerSocketChannel getChannel()
+    {
+        return m_channel;
+    }
+
+    /**
+     * @see Acceptor#getConnections
+     */
+    public ActiveConnections getConnections()
+    {
+        return m_config.getConnections();
+    }
+
+    /**
+     * @see Acceptor#getHandler
+     */
+    public RequestHandler getHandler()
+    {
+        return m_config.getHandler();
+    }
+
+    /**
+     * Return the name acceptor registered under.
+     *
+     * @return the name acceptor registered under.
+     */
+    String getName()
+    {
+        return m_config.getName();
+    }
+
+    /**
+     * Wait until the selector has registered the channel.
+     *
+     * @throws IOException if the channel could not be registered
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized void waitUntilRegistered()
+        throws IOException, InterruptedException
+    {
+        while( !m_registered )
+        {
+            wait();
+        }
+        if( null != m_registerError )
+        {
+            throw m_registerError;
+        }
+    }
+
+    /**
+     * Shutdown the acceptor. If invoked from the selector thread, for
+     * example by a handler, the acceptor is shutdown immediately,
+     * otherwise this waits for the selector thread to shutdown the
+     * acceptor.
+     *
+     * @param timeout the time to wait for shutdown. 0 indicates an
+     *        indefinite wait.
+     */
+    public void close( final long timeout )
+    {
+        synchronized( this )
+        {
+            if( m_closing )
+            {
+                return;
+            }
+            m_closing = true;
+        }
+        m_monitor.acceptorClosing( m_config.getName(),
+                                   m_config.getServerSocket() );
+        if( m_selector.isSelectorThread() )
+        {
+            shutdown();
+            return;
+        }
+        m_selector.cancel( this );
+
+        final long end = System.currentTimeMillis() + timeout;
+        synchronized( this )
+        {
+            while( !m_closed )
+            {
+                final long remaining = end - System.currentTimeMillis();
+                if( 0 != timeout && remaining <= 0 )
+                {
+                    return;
+                }
+                try
+                {
+                    wait( ( 0 == timeout ) ? 0 : remaining );
+                }
+                catch( final InterruptedException ie )
+                {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Register the channel with selector.
+     *
+     * @param selector the selector
+     */
+    void register( final Selector selector )
+    {
+        IOException error = null;
+        try
+        {
+            m_channel.configureBlocking( false );
+            m_key = m_channel.register( selector, SelectionKey.OP_ACCEPT, this );
+        }
+        catch( final IOException ioe )
+        {
+            error = ioe;
+        }
+        synchronized( this )
+        {
+            m_registered = true;
+            m_registerError = error;
+            notifyAll();
+        }
+        if( null == error )
+        {
+            m_monitor.serverSocketListening( m_config.getName(),
+                                             m_config.getServerSocket() );
+        }
+        else
+        {
+            m_monitor.errorAcceptingConnection( m_config.getName(), error );
+        }
+    }
+
+    /**
+     * Accept pending connections, up to {@link #BATCH_SIZE} of them,
+     * and pass them to the handler.
+     */
+    void acceptConnections()
+    {
+        for( int i = 0; i < BATCH_SIZE && isRunning(); i++ )
+        {
+            final SocketChannel channel;
+            try
+            {
+                channel = m_channel.accept();
+            }
+            catch( final IOException ioe )
+            {
+                m_monitor.errorAcceptingConnection( m_config.getName(), ioe );
+                break;
+            }
+            if( null == channel )
+            {
+                break;
+            }
+
+            //Accepted channels are in blocking mode so the Socket can
+            //be used by handlers in the same way as a plain Socket.
+            final Socket socket = channel.socket();
+            if( isRunning() )
+            {
+                m_config.getConnections().add( socket );
+                handleConnection( socket );
+            }
+            else
+            {
+                closeSocket( socket );
+            }
+        }
+        if( isRunning() )
+        {
+            m_monitor.serverSocketListening( m_config.getName(),
+                                             m_config.getServerSocket() );
+        }
+    }
+
+    /**
+     * Pass connection to the handler. The selector thread is shared by
+     * all channel acceptors so an exception thrown by the handler is
+     * reported and the connection closed rather than allowed to stop
+     * the selector.
+     *
+     * @param socket the socket
+     */
+    private void handleConnection( final Socket socket )
+    {
+        try
+        {
+            m_config.getHandler().handleConnection( socket );
+        }
+        catch( final RuntimeException re )
+        {
+            final IOException ioe =
+                new IOException( "Error handling connection: " + re );
+            ioe.initCause( re );
+            m_monitor.errorAcceptingConnection( m_config.getName(), ioe );
+            closeSocket( socket );
+        }
+    }
+
+    /**
+     * Close a socket, ignoring any error.
+     *
+     * @param socket the socket
+     */
+    private void closeSocket( final Socket socket )
+    {
+        try
+        {
+            socket.close();
+        }
+        catch( final Exception e )
+        {
+            //Ignore
+        }
+    }
+
+    /**
+     * Report an error selecting channels.
+     *
+     * @param ioe the error
+     */
+    void selectFailed( final IOException ioe )
+    {
+        m_monitor.errorAcceptingConnection( m_config.getName(), ioe );
+    }
+
+    /**
+     * Deregister the channel and close the ServerSocket.
+     */
+    void shutdown()
+    {
+        if( null != m_key )
+        {
+            m_key.cancel();
+        }
+        final ServerSocket serverSocket = m_config.getServerSocket();
+        try
+        {
+            serverSocket.close();
+        }
+        catch( final IOException ioe )
+        {
+            m_monitor.errorClosingServerSocket( m_config.getName(), ioe );
+        }
+        synchronized( this )
+        {
+            m_closing = true;
+            m_closed = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Return true if the acceptor is currently running.
+     *
+     * @return true if the acceptor is currently running.
+     */
+    synchronized boolean isRunning()
+    {
+        return !m_closing;
+    }
+}
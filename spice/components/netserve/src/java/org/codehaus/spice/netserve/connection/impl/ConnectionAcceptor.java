@@ -10,6 +10,7 @@ package org.codehaus.spice.netserve.connection.impl;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.net.Socket;
+import org.codehaus.spice.netserve.connection.RequestHandler;
 
 import org.codehaus.spice.netserve.connection.impl.AcceptorConfig;
 import org.codehaus.spice.netserve.connection.impl.AcceptorMonitor;
@@ -21,7 +22,7 @@ import org.codehaus.spice.netserve.connection.impl.AcceptorMonitor;
  * @version $Revision: 1.2 $ $Date: 2004-03-21 23:42:59 $
  */
 class ConnectionAcceptor
-    implements Runnable
+    implements Acceptor, Runnable
 {
     /**
      * The configuration for acceptor.
@@ -77,10 +78,26 @@ class ConnectionAcceptor
         return m_started;
     }
 
+    /**
+     * @see Acceptor#getConnections
+     */
+    public ActiveConnections getConnections()
+    {
+        return m_config.getConnections();
+    }
+
+    /**
+     * @see Acceptor#getHandler
+     */
+    public RequestHandler getHandler()
+    {
+        return m_config.getHandler();
+    }
+
     /**
      * Shutdown the acceptor.
      */
-    void close( final long timeout )
+    public void close( final long timeout )
     {
         synchronized( this )
         {
@@ -120,6 +137,7 @@ class ConnectionAcceptor
                 final Socket socket = m_config.getServerSocket().accept();
                 if( isRunning() )
                 {
+                    m_config.getConnections().add( socket );
                     m_config.getHandler().handleConnection( socket );
                 }
                 else
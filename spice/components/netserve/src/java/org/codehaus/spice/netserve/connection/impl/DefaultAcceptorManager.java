@@ -9,7 +9,9 @@ package org.codehaus.spice.netserve.connection.impl;
 
 import java.net.ServerSocket;
 import java.util.Hashtable;
+import java.util.Iterator;
 import java.util.Map;
+import org.codehaus.spice.netserve.connection.DrainableRequestHandler;
 import org.codehaus.spice.netserve.connection.RequestHandler;
 import org.codehaus.spice.netserve.connection.SocketAcceptorManager;
 import org.codehaus.spice.netserve.connection.impl.AcceptorConfig;
@@ -17,14 +19,39 @@ import org.codehaus.spice.netserve.connection.impl.AcceptorMonitor;
 import org.codehaus.spice.netserve.connection.impl.ConnectionAcceptor;
 
 /**
- * Default implementation of SocketAcceptorManager that uses
- * a thread per acceptor approach.
+ * Default implementation of SocketAcceptorManager.
  *
- * <p>Note that on some OS/JVM combinations <tt>soTimeout</tt> must
- * be set to non-0 value or else the ServerSocket will never get out
- * of accept() system call and we wont be able to shutdown the server
- * socket properly. However it can introduce performance problems if
- * constantly timing out. </p>
+ * <p>ServerSockets that have an associated ServerSocketChannel, such
+ * as those created by
+ * {@link org.codehaus.spice.netserve.sockets.impl.ChannelServerSocketFactory},
+ * are accepted from by a single selector thread that is shared by all
+ * such acceptors. Connections are accepted in batches when the channel
+ * is ready and disconnecting wakes the selector so the ServerSocket is
+ * closed immediately. Handlers are invoked by the selector thread and
+ * should hand the connection off to another thread rather than
+ * servicing it directly.</p>
+ *
+ * <p>Other ServerSockets use a thread per acceptor approach. Note that
+ * on some OS/JVM combinations <tt>soTimeout</tt> must be set to non-0
+ * value or else the ServerSocket will never get out of accept() system
+ * call and we wont be able to shutdown the server socket properly.
+ * However it can introduce performance problems if constantly timing
+ * out. </p>
+ *
+ * <p>An acceptor can be drained rather than disconnected. It stops
+ * accepting connections immediately and then waits, up to a deadline,
+ * for the connections it accepted to be closed by the handler so that
+ * requests in progress are not cut off. Handlers that implement
+ * {@link DrainableRequestHandler} are told when the drain starts so
+ * that connections kept open between requests do not hold it up until
+ * the deadline. Progress is reported to the monitor. The acceptor is
+ * removed before the wait starts so the same name, or another, can be
+ * connected to a new ServerSocket during the drain and acceptance
+ * resumes on the new port without waiting. If a drain timeout is set
+ * {@link #shutdownAcceptors()} drains all the acceptors together.
+ * Handlers are not shutdown by the manager so any connections still
+ * open when the drain ends are closed when the owner of the handlers
+ * shuts them down.</p>
  *
  * @author Peter Donald
  * @author Mauro Talevi
@@ -33,6 +60,18 @@ import org.codehaus.spice.netserve.connection.impl.ConnectionAcceptor;
 public class DefaultAcceptorManager
     implements SocketAcceptorManager
 {
+    /**
+     * The time in milliseconds between checks for connections
+     * being closed while draining.
+     */
+    private static final long DRAIN_POLL_INTERVAL = 20;
+
+    /**
+     * The time in milliseconds between reports of
+     * progress to the monitor while draining.
+     */
+    private static final long DRAIN_REPORT_INTERVAL = 1000;
+
     /**
      * The map of name->acceptor.
      */
@@ -56,6 +95,21 @@ public class DefaultAcceptorManager
      */
     private int m_shutdownTimeout;
 
+    /**
+     * Set to the number of milliseconds that shutdownAcceptors
+     * will wait for accepted connections to be closed after the
+     * acceptors stop accepting. Defaults to 0 which indicates
+     * acceptors are disconnected without draining.
+     */
+    private int m_drainTimeout;
+
+    /**
+     * The selector shared by acceptors for channel based ServerSockets.
+     * Created when first needed and shutdown when the last of these
+     * acceptors is disconnected.
+     */
+    private AcceptorSelector m_selector;
+
     /**
      * Set the AcceptorMonitor that receives events when changes occur.
      *
@@ -89,6 +143,22 @@ public class DefaultAcceptorManager
         m_shutdownTimeout = shutdownTimeout;
     }
 
+    /**
+     * Set the time shutdownAcceptors waits for accepted connections to
+     * be closed. The timeout defaults to 0 which means acceptors are
+     * disconnected without draining.
+     *
+     * @param drainTimeout the timeout
+     */
+    public void setDrainTimeout( final int drainTimeout )
+    {
+        if( drainTimeout < 0 )
+        {
+            throw new IllegalArgumentException( "drainTimeout" );
+        }
+        m_drainTimeout = drainTimeout;
+    }
+
     /**
      * Return the shutdownTimeout.
      *
@@ -99,9 +169,20 @@ public class DefaultAcceptorManager
         return m_shutdownTimeout;
     }
 
+    /**
+     * Return the drainTimeout.
+     *
+     * @return the drainTimeout
+     */
+    protected int getDrainTimeout()
+    {
+        return m_drainTimeout;
+    }
+
     /**
      * Dispose the ConnectionManager which involves shutting down all
-     * the connected acceptors.
+     * the connected acceptors. If a drain timeout has been set the
+     * acceptors are drained rather than disconnected.
      */
     public void shutdownAcceptors()
     {
@@ -110,12 +191,113 @@ public class DefaultAcceptorManager
         {
             names = (String[])m_acceptors.keySet().toArray( new String[ 0 ] );
         }
+        if( 0 != m_drainTimeout )
+        {
+            drain( names, m_drainTimeout );
+            return;
+        }
         for( int i = 0; i < names.length; i++ )
         {
             disconnect( names[ i ] );
         }
     }
 
+    /**
+     * Stop accepting connections with the named acceptor and wait
+     * until the connections it accepted have been closed or the
+     * timeout expires. The name can be connected again as soon as
+     * the acceptor has stopped accepting.
+     *
+     * @param name the name of connection
+     * @param timeout the time in milliseconds to wait for connections
+     *        to be closed. 0 indicates an indefinite wait.
+     * @return the number of connections still open
+     * @throws java.lang.IllegalArgumentException if no connection with specified name
+     */
+    public int drain( final String name, final long timeout )
+    {
+        if( timeout < 0 )
+        {
+            throw new IllegalArgumentException( "timeout" );
+        }
+        return drain( new String[]{name}, timeout );
+    }
+
+    /**
+     * Stop accepting connections with all the named acceptors
+     * and then wait for their connections against one deadline.
+     *
+     * @param names the names of connections
+     * @param timeout the time to wait, 0 for an indefinite wait
+     * @return the number of connections still open
+     */
+    private int drain( final String[] names, final long timeout )
+    {
+        final Acceptor[] acceptors = new Acceptor[ names.length ];
+        for( int i = 0; i < names.length; i++ )
+        {
+            acceptors[ i ] = closeAcceptor( names[ i ] );
+        }
+        for( int i = 0; i < acceptors.length; i++ )
+        {
+            final RequestHandler handler = acceptors[ i ].getHandler();
+            if( handler instanceof DrainableRequestHandler )
+            {
+                ( (DrainableRequestHandler)handler ).drainStarted();
+            }
+        }
+
+        final long deadline =
+            ( 0 == timeout ) ? Long.MAX_VALUE : System.currentTimeMillis() + timeout;
+        int activeCount = 0;
+        for( int i = 0; i < names.length; i++ )
+        {
+            activeCount +=
+                waitForConnections( names[ i ], acceptors[ i ].getConnections(), deadline );
+        }
+        return activeCount;
+    }
+
+    /**
+     * Wait until the connections accepted by an acceptor have
+     * been closed or the deadline passes, reporting progress
+     * to the monitor.
+     *
+     * @param name the name of acceptor
+     * @param connections the connections accepted by acceptor
+     * @param deadline the time at which to stop waiting
+     * @return the number of connections still open
+     */
+    private int waitForConnections( final String name,
+                                    final ActiveConnections connections,
+                                    final long deadline )
+    {
+        int activeCount = connections.getActiveCount();
+        long reportTime = 0;
+        long now = System.currentTimeMillis();
+        while( 0 != activeCount && now < deadline )
+        {
+            if( now >= reportTime )
+            {
+                getMonitor().acceptorDraining( name, activeCount );
+                reportTime = now + DRAIN_REPORT_INTERVAL;
+            }
+            try
+            {
+                Thread.sleep( Math.min( DRAIN_POLL_INTERVAL, deadline - now ) );
+            }
+            catch( final InterruptedException ie )
+            {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            activeCount = connections.getActiveCount();
+            now = System.currentTimeMillis();
+        }
+        getMonitor().acceptorDrained( name, activeCount );
+        return activeCount;
+    }
+
     /**
      * Start accepting connections from a socket and passing connections
      * to specified handler.
@@ -145,6 +327,12 @@ public class DefaultAcceptorManager
             throw new NullPointerException( "handler" );
         }
 
+        if( null != socket.getChannel() )
+        {
+            connectChannel( name, socket, handler );
+            return;
+        }
+
         if( 0 == socket.getSoTimeout() )
         {
             socket.setSoTimeout( m_soTimeout );
@@ -174,6 +362,80 @@ public class DefaultAcceptorManager
         }
     }
 
+    /**
+     * Start accepting connections from a socket with an associated
+     * channel using the shared selector.
+     *
+     * @param name the name of connection
+     * @param socket the ServerSocket from which connections are accepted
+     * @param handler the handler for connections
+     * @throws Exception if unable to register channel with selector
+     */
+    private void connectChannel( final String name,
+                                 final ServerSocket socket,
+                                 final RequestHandler handler )
+        throws Exception
+    {
+        final ChannelAcceptor acceptor;
+        synchronized( m_acceptors )
+        {
+            if( isConnected( name ) )
+            {
+                final String message =
+                    "Connection already exists with name " + name;
+                throw new IllegalArgumentException( message );
+            }
+
+            if( null == m_selector )
+            {
+                m_selector = new AcceptorSelector();
+                m_selector.start( "AcceptorSelector" );
+            }
+            final AcceptorConfig config = new AcceptorConfig( name, socket, handler );
+            acceptor = new ChannelAcceptor( config, getMonitor(), m_selector );
+            m_acceptors.put( name, acceptor );
+            m_selector.register( acceptor );
+        }
+
+        try
+        {
+            acceptor.waitUntilRegistered();
+        }
+        catch( final Exception e )
+        {
+            m_acceptors.remove( name );
+            releaseSelector();
+            throw e;
+        }
+    }
+
+    /**
+     * Shutdown the shared selector if there are no longer
+     * any acceptors using it.
+     */
+    private void releaseSelector()
+    {
+        final AcceptorSelector selector;
+        synchronized( m_acceptors )
+        {
+            if( null == m_selector )
+            {
+                return;
+            }
+            final Iterator iterator = m_acceptors.values().iterator();
+            while( iterator.hasNext() )
+            {
+                if( iterator.next() instanceof ChannelAcceptor )
+                {
+                    return;
+                }
+            }
+            selector = m_selector;
+            m_selector = null;
+        }
+        selector.shutdown( getShutdownTimeout() );
+    }
+
     /**
      * Return true if acceptor with specified name exists.
      *
@@ -193,8 +455,19 @@ public class DefaultAcceptorManager
      */
     public void disconnect( final String name )
     {
-        final ConnectionAcceptor acceptor =
-            (ConnectionAcceptor)m_acceptors.remove( name );
+        closeAcceptor( name );
+    }
+
+    /**
+     * Remove the named acceptor and close it.
+     *
+     * @param name the name of connection
+     * @return the acceptor
+     * @throws java.lang.IllegalArgumentException if no connection with specified name
+     */
+    private Acceptor closeAcceptor( final String name )
+    {
+        final Acceptor acceptor = (Acceptor)m_acceptors.remove( name );
         if( null == acceptor )
         {
             final String message = "No connection with name " + name;
@@ -202,6 +475,11 @@ public class DefaultAcceptorManager
         }
 
         acceptor.close( getShutdownTimeout() );
+        if( acceptor instanceof ChannelAcceptor )
+        {
+            releaseSelector();
+        }
+        return acceptor;
     }
 
     /**
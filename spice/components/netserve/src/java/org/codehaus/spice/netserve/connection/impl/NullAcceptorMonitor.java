@@ -65,4 +65,20 @@ public class NullAcceptorMonitor
                                           final IOException ioe )
     {
     }
+
+    /**
+     * @see AcceptorMonitor#acceptorDraining
+     */
+    public void acceptorDraining( final String name,
+                                  final int activeCount )
+    {
+    }
+
+    /**
+     * @see AcceptorMonitor#acceptorDrained
+     */
+    public void acceptorDrained( final String name,
+                                 final int activeCount )
+    {
+    }
 }
@@ -55,5 +55,23 @@ public interface ServerSocketFactory
      */
     ServerSocket createServerSocket( int port, int backlog, InetAddress address )
         throws IOException;
+
+    /**
+     * Creates a socket on a particular network interface on specified port
+     * with a specified backlog, applying the options before the socket
+     * is bound.
+     *
+     * @param port the port (0 indicates any available port)
+     * @param backlog the backlog
+     * @param address the network interface to bind to, null for all interfaces
+     * @param options the options to apply, null to leave the defaults
+     * @return the created ServerSocket
+     * @throws IOException if unable to create socket
+     */
+    ServerSocket createServerSocket( int port,
+                                     int backlog,
+                                     InetAddress address,
+                                     ServerSocketOptions options )
+        throws IOException;
 }
 
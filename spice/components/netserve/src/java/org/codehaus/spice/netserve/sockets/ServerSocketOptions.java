@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.sockets;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * The options applied to a ServerSocket before it is bound. Some
+ * options, such as SO_REUSEADDR and SO_RCVBUF for large windows, only
+ * take effect if set before the socket is bound so they can not be
+ * applied to a socket returned by the other factory methods.
+ *
+ * <p>Note that the socket API does not expose SO_REUSEPORT so several
+ * sockets can not be bound to the same port. Use several accept loops
+ * over a single ServerSocket instead.</p>
+ */
+public class ServerSocketOptions
+{
+    /**
+     * The value of SO_REUSEADDR.
+     */
+    private boolean m_reuseAddress;
+
+    /**
+     * The value of SO_RCVBUF, 0 for the system default.
+     */
+    private int m_receiveBufferSize;
+
+    /**
+     * The value of SO_TIMEOUT, 0 for no timeout.
+     */
+    private int m_soTimeout;
+
+    /**
+     * Return the value of SO_REUSEADDR.
+     *
+     * @return the value of SO_REUSEADDR
+     */
+    public boolean isReuseAddress()
+    {
+        return m_reuseAddress;
+    }
+
+    /**
+     * Set the value of SO_REUSEADDR.
+     *
+     * @param reuseAddress the value of SO_REUSEADDR
+     */
+    public void setReuseAddress( final boolean reuseAddress )
+    {
+        m_reuseAddress = reuseAddress;
+    }
+
+    /**
+     * Return the value of SO_RCVBUF, 0 for the system default.
+     *
+     * @return the value of SO_RCVBUF
+     */
+    public int getReceiveBufferSize()
+    {
+        return m_receiveBufferSize;
+    }
+
+    /**
+     * Set the value of SO_RCVBUF, 0 for the system default.
+     *
+     * @param receiveBufferSize the value of SO_RCVBUF
+     */
+    public void setReceiveBufferSize( final int receiveBufferSize )
+    {
+        if( receiveBufferSize < 0 )
+        {
+            throw new IllegalArgumentException( "receiveBufferSize" );
+        }
+        m_receiveBufferSize = receiveBufferSize;
+    }
+
+    /**
+     * Return the value of SO_TIMEOUT, 0 for no timeout.
+     *
+     * @return the value of SO_TIMEOUT
+     */
+    public int getSoTimeout()
+    {
+        return m_soTimeout;
+    }
+
+    /**
+     * Set the value of SO_TIMEOUT, 0 for no timeout.
+     *
+     * @param soTimeout the value of SO_TIMEOUT
+     */
+    public void setSoTimeout( final int soTimeout )
+    {
+        if( soTimeout < 0 )
+        {
+            throw new IllegalArgumentException( "soTimeout" );
+        }
+        m_soTimeout = soTimeout;
+    }
+
+    /**
+     * Apply the options to an unbound ServerSocket.
+     *
+     * @param serverSocket the socket
+     * @throws IOException if unable to set an option
+     */
+    public void applyTo( final ServerSocket serverSocket )
+        throws IOException
+    {
+        serverSocket.setReuseAddress( m_reuseAddress );
+        if( 0 != m_receiveBufferSize )
+        {
+            serverSocket.setReceiveBufferSize( m_receiveBufferSize );
+        }
+        serverSocket.setSoTimeout( m_soTimeout );
+    }
+}
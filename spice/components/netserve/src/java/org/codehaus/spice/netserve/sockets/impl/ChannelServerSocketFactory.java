@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.sockets.impl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
+import org.codehaus.spice.netserve.sockets.ServerSocketFactory;
+import org.codehaus.spice.netserve.sockets.ServerSocketOptions;
+
+/**
+ * Factory implementation for TCP sockets that have an associated
+ * ServerSocketChannel. Sockets created by this factory can be
+ * multiplexed by a selector based acceptor.
+ *
+ * @dna.component
+ * @dna.service type="ServerSocketFactory"
+ */
+public class ChannelServerSocketFactory
+    implements ServerSocketFactory
+{
+    /**
+     * Creates a socket on specified port.
+     *
+     * @param port the port (0 indicates any available port)
+     * @return the created ServerSocket
+     * @throws IOException if unable to create socket
+     */
+    public ServerSocket createServerSocket( final int port )
+        throws IOException
+    {
+        return createServerSocket( port, 0 );
+    }
+
+    /**
+     * Creates a socket on specified port with a specified backlog.
+     *
+     * @param port the port (0 indicates any available port)
+     * @param backlog the backlog
+     * @return the created ServerSocket
+     * @throws IOException if unable to create socket
+     */
+    public ServerSocket createServerSocket( final int port, final int backlog )
+        throws IOException
+    {
+        return createServerSocket( port, backlog, null );
+    }
+
+    /**
+     * Creates a socket on a particular network interface on specified port
+     * with a specified backlog.
+     *
+     * @param port the port (0 indicates any available port)
+     * @param backlog the backlog
+     * @param address the network interface to bind to.
+     * @return the created ServerSocket
+     * @throws IOException if unable to create socket
+     */
+    public ServerSocket createServerSocket( final int port,
+                                            final int backlog,
+                                            final InetAddress address )
+        throws IOException
+    {
+        return createServerSocket( port, backlog, address, null );
+    }
+
+    /**
+     * Creates a socket on a particular network interface on specified port
+     * with a specified backlog, applying the options before the socket
+     * is bound.
+     *
+     * @param port the port (0 indicates any available port)
+     * @param backlog the backlog
+     * @param address the network interface to bind to, null for all interfaces
+     * @param options the options to apply, null to leave the defaults
+     * @return the created ServerSocket
+     * @throws IOException if unable to create socket
+     */
+    public ServerSocket createServerSocket( final int port,
+                                            final int backlog,
+                                            final InetAddress address,
+                                            final ServerSocketOptions options )
+        throws IOException
+    {
+        final ServerSocketChannel channel = ServerSocketChannel.open();
+        final ServerSocket serverSocket = channel.socket();
+        try
+        {
+            if( null != options )
+            {
+                options.applyTo( serverSocket );
+            }
+            serverSocket.bind( new InetSocketAddress( address, port ), backlog );
+        }
+        catch( final IOException ioe )
+        {
+            channel.close();
+            throw ioe;
+        }
+        return serverSocket;
+    }
+}
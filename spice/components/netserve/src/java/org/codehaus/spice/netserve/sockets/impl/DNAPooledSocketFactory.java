@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.sockets.impl;
+
+import org.codehaus.dna.Active;
+import org.codehaus.dna.Configurable;
+import org.codehaus.dna.Configuration;
+import org.codehaus.dna.ConfigurationException;
+
+/**
+ * A DNA compliant PooledSocketFactory.
+ *
+ * <p>The component takes the optional configuration parameters
+ * "maxIdle", "maxLifetime", "idleTimeout", "evictionInterval" and
+ * "validateOnBorrow", which default to the values used by
+ * {@link PooledSocketFactory}. Times are in milliseconds. A sample
+ * configuration follows;</p>
+ * <pre>
+ *  &lt;!-- keep up to 4 idle connections to each endpoint --&gt;
+ *  &lt;maxIdle&gt;4&lt;/maxIdle&gt;
+ *  &lt;!-- close connections after 10 minutes --&gt;
+ *  &lt;maxLifetime&gt;600000&lt;/maxLifetime&gt;
+ *  &lt;!-- close connections idle for 30 seconds --&gt;
+ *  &lt;idleTimeout&gt;30000&lt;/idleTimeout&gt;
+ * </pre>
+ *
+ * @dna.component
+ * @dna.service type="org.codehaus.spice.netserve.sockets.SocketFactory"
+ * @see PooledSocketFactory
+ */
+public class DNAPooledSocketFactory
+    extends PooledSocketFactory
+    implements Configurable, Active
+{
+    /**
+     * @dna.configuration type="http://relaxng.org/ns/structure/1.0"
+     *    location="PooledSocketFactory-schema.xml"
+     */
+    public void configure( final Configuration configuration )
+        throws ConfigurationException
+    {
+        setMaxIdle( configuration.getChild( "maxIdle" ).getValueAsInteger( DEFAULT_MAX_IDLE ) );
+        setMaxLifetime( configuration.getChild( "maxLifetime" ).getValueAsLong( 0 ) );
+        setIdleTimeout( configuration.getChild( "idleTimeout" ).getValueAsLong( DEFAULT_IDLE_TIMEOUT ) );
+        setEvictionInterval( configuration.getChild( "evictionInterval" )
+            .getValueAsLong( DEFAULT_EVICTION_INTERVAL ) );
+        setValidateOnBorrow( configuration.getChild( "validateOnBorrow" ).getValueAsBoolean( true ) );
+    }
+
+    /**
+     * Nothing to do to initialize the factory.
+     */
+    public void initialize()
+        throws Exception
+    {
+    }
+
+    /**
+     * Close all idle connections.
+     */
+    public void dispose()
+    {
+        shutdown();
+    }
+}
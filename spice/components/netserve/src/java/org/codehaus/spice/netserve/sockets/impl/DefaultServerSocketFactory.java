@@ -9,8 +9,10 @@ package org.codehaus.spice.netserve.sockets.impl;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import org.codehaus.spice.netserve.sockets.ServerSocketFactory;
+import org.codehaus.spice.netserve.sockets.ServerSocketOptions;
 
 /**
  * Factory implementation for vanilla TCP sockets.
@@ -65,5 +67,40 @@ public class DefaultServerSocketFactory
     {
         return new ServerSocket( port, backlog, address );
     }
+
+    /**
+     * Creates a socket on a particular network interface on specified port
+     * with a specified backlog, applying the options before the socket
+     * is bound.
+     *
+     * @param port the port (0 indicates any available port)
+     * @param backlog the backlog
+     * @param address the network interface to bind to, null for all interfaces
+     * @param options the options to apply, null to leave the defaults
+     * @return the created ServerSocket
+     * @throws IOException if unable to create socket
+     */
+    public ServerSocket createServerSocket( final int port,
+                                            final int backlog,
+                                            final InetAddress address,
+                                            final ServerSocketOptions options )
+        throws IOException
+    {
+        final ServerSocket serverSocket = new ServerSocket();
+        try
+        {
+            if( null != options )
+            {
+                options.applyTo( serverSocket );
+            }
+            serverSocket.bind( new InetSocketAddress( address, port ), backlog );
+        }
+        catch( final IOException ioe )
+        {
+            serverSocket.close();
+            throw ioe;
+        }
+        return serverSocket;
+    }
 }
 
@@ -0,0 +1,780 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.sockets.impl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import org.codehaus.spice.netserve.connection.handlers.DelegatingSocket;
+import org.codehaus.spice.netserve.sockets.SocketFactory;
+
+/**
+ * A SocketFactory that reuses connections. Closing a socket created
+ * by the factory returns the connection to an idle pool for its remote
+ * address rather than closing it, and the next request for a socket to
+ * that address is given the most recently returned idle connection.
+ *
+ * <p>Idle connections are closed when</p>
+ *
+ * <ul>
+ *   <li>there are already the maximum number of idle connections for
+ *   their address when they are returned.</li>
+ *   <li>they have been open for longer than the maximum lifetime.</li>
+ *   <li>they have been idle for longer than the idle timeout, which
+ *   is checked by a background evictor thread.</li>
+ *   <li>they fail validation when borrowed because the remote end
+ *   closed them or sent unexpected data.</li>
+ * </ul>
+ *
+ * <p>Callers must only close a socket when the connection is at a
+ * point where another caller can start a new exchange, and must close
+ * the socket rather than its streams. Sockets that specify a local
+ * port are not pooled. The factory keeps counts of pool hits, misses,
+ * evictions and failed validations.</p>
+ */
+public class PooledSocketFactory
+    implements SocketFactory
+{
+    /**
+     * The default maximum number of idle connections for each endpoint.
+     */
+    public static final int DEFAULT_MAX_IDLE = 8;
+
+    /**
+     * The default time in milliseconds a connection may be idle.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 60 * 1000;
+
+    /**
+     * The default time in milliseconds between evictor runs.
+     */
+    public static final long DEFAULT_EVICTION_INTERVAL = 30 * 1000;
+
+    /**
+     * The factory that creates new connections.
+     */
+    private final SocketFactory m_factory;
+
+    /**
+     * A map of endpoint key->LinkedList of idle connections,
+     * most recently returned last.
+     */
+    private final Map m_idle = new HashMap();
+
+    /**
+     * The maximum number of idle connections for each endpoint.
+     */
+    private int m_maxIdle = DEFAULT_MAX_IDLE;
+
+    /**
+     * The maximum time in milliseconds a connection may be
+     * open. 0 indicates no limit.
+     */
+    private long m_maxLifetime;
+
+    /**
+     * The time in milliseconds a connection may be idle
+     * before it is evicted. 0 indicates no limit.
+     */
+    private long m_idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    /**
+     * The time in milliseconds between evictor runs.
+     */
+    private long m_evictionInterval = DEFAULT_EVICTION_INTERVAL;
+
+    /**
+     * True if connections are validated when borrowed.
+     */
+    private boolean m_validateOnBorrow = true;
+
+    /**
+     * The number of requests given an idle connection.
+     */
+    private long m_hitCount;
+
+    /**
+     * The number of requests that created a new connection.
+     */
+    private long m_missCount;
+
+    /**
+     * The number of idle connections closed by the pool.
+     */
+    private long m_evictionCount;
+
+    /**
+     * The number of idle connections that failed validation.
+     */
+    private long m_validationFailureCount;
+
+    /**
+     * The thread evicting idle connections, if started.
+     */
+    private Thread m_evictor;
+
+    /**
+     * True if shutdown() has been called.
+     */
+    private boolean m_shutdown;
+
+    /**
+     * Create a factory that creates new connections
+     * with a DefaultSocketFactory.
+     */
+    public PooledSocketFactory()
+    {
+        this( new DefaultSocketFactory() );
+    }
+
+    /**
+     * Create a factory.
+     *
+     * @param factory the factory that creates new connections
+     */
+    public PooledSocketFactory( final SocketFactory factory )
+    {
+        if( null == factory )
+        {
+            throw new NullPointerException( "factory" );
+        }
+        m_factory = factory;
+    }
+
+    /**
+     * Set the maximum number of idle connections for each endpoint.
+     *
+     * @param maxIdle the maximum number of idle connections
+     */
+    public synchronized void setMaxIdle( final int maxIdle )
+    {
+        if( maxIdle < 0 )
+        {
+            throw new IllegalArgumentException( "maxIdle" );
+        }
+        m_maxIdle = maxIdle;
+    }
+
+    /**
+     * Set the maximum time a connection may be open.
+     *
+     * @param maxLifetime the time in milliseconds, 0 for no limit
+     */
+    public synchronized void setMaxLifetime( final long maxLifetime )
+    {
+        if( maxLifetime < 0 )
+        {
+            throw new IllegalArgumentException( "maxLifetime" );
+        }
+        m_maxLifetime = maxLifetime;
+    }
+
+    /**
+     * Set the time a connection may be idle before it is evicted.
+     *
+     * @param idleTimeout the time in milliseconds, 0 for no limit
+     */
+    public synchronized void setIdleTimeout( final long idleTimeout )
+    {
+        if( idleTimeout < 0 )
+        {
+            throw new IllegalArgumentException( "idleTimeout" );
+        }
+        m_idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Set the time between evictor runs.
+     *
+     * @param evictionInterval the time in milliseconds
+     */
+    public synchronized void setEvictionInterval( final long evictionInterval )
+    {
+        if( evictionInterval < 1 )
+        {
+            throw new IllegalArgumentException( "evictionInterval" );
+        }
+        m_evictionInterval = evictionInterval;
+        notifyAll();
+    }
+
+    /**
+     * Specify whether connections are validated when borrowed.
+     *
+     * @param validateOnBorrow true to validate connections
+     */
+    public synchronized void setValidateOnBorrow( final boolean validateOnBorrow )
+    {
+        m_validateOnBorrow = validateOnBorrow;
+    }
+
+    /**
+     * @see SocketFactory#createSocket(InetAddress, int)
+     */
+    public Socket createSocket( final InetAddress address, final int port )
+        throws IOException
+    {
+        final String key = getKey( address, port, null );
+        final IdleConnection connection = borrow( key );
+        if( null != connection )
+        {
+            return new PooledSocket( connection.getSocket(), key, connection.getCreationTime() );
+        }
+        return new PooledSocket( m_factory.createSocket( address, port ),
+                                 key,
+                                 System.currentTimeMillis() );
+    }
+
+    /**
+     * @see SocketFactory#createSocket(InetAddress, int, InetAddress, int)
+     */
+    public Socket createSocket( final InetAddress address,
+                                final int port,
+                                final InetAddress localAddress,
+                                final int localPort )
+        throws IOException
+    {
+        if( 0 != localPort )
+        {
+            return m_factory.createSocket( address, port, localAddress, localPort );
+        }
+        final String key = getKey( address, port, localAddress );
+        final IdleConnection connection = borrow( key );
+        if( null != connection )
+        {
+            return new PooledSocket( connection.getSocket(), key, connection.getCreationTime() );
+        }
+        return new PooledSocket( m_factory.createSocket( address, port, localAddress, 0 ),
+                                 key,
+                                 System.currentTimeMillis() );
+    }
+
+    /**
+     * Close all idle connections and stop the evictor. Sockets
+     * closed after this are not returned to the pool.
+     */
+    public void shutdown()
+    {
+        final List closing = new ArrayList();
+        final Thread evictor;
+        synchronized( this )
+        {
+            m_shutdown = true;
+            final Iterator iterator = m_idle.values().iterator();
+            while( iterator.hasNext() )
+            {
+                closing.addAll( (List)iterator.next() );
+            }
+            m_idle.clear();
+            evictor = m_evictor;
+            notifyAll();
+        }
+        closeAll( closing );
+        if( null != evictor && Thread.currentThread() != evictor )
+        {
+            try
+            {
+                evictor.join();
+            }
+            catch( final InterruptedException ie )
+            {
+                //Ignore
+            }
+        }
+    }
+
+    /**
+     * Return the number of requests given an idle connection.
+     *
+     * @return the number of pool hits
+     */
+    public synchronized long getHitCount()
+    {
+        return m_hitCount;
+    }
+
+    /**
+     * Return the number of requests that created a new connection.
+     *
+     * @return the number of pool misses
+     */
+    public synchronized long getMissCount()
+    {
+        return m_missCount;
+    }
+
+    /**
+     * Return the number of idle connections closed because of the
+     * idle limit, the maximum lifetime or the idle timeout.
+     *
+     * @return the number of evictions
+     */
+    public synchronized long getEvictionCount()
+    {
+        return m_evictionCount;
+    }
+
+    /**
+     * Return the number of idle connections that failed validation.
+     *
+     * @return the number of failed validations
+     */
+    public synchronized long getValidationFailureCount()
+    {
+        return m_validationFailureCount;
+    }
+
+    /**
+     * Return the number of idle connections.
+     *
+     * @return the number of idle connections
+     */
+    public synchronized int getIdleCount()
+    {
+        int count = 0;
+        final Iterator iterator = m_idle.values().iterator();
+        while( iterator.hasNext() )
+        {
+            count += ( (List)iterator.next() ).size();
+        }
+        return count;
+    }
+
+    /**
+     * Return a valid idle connection for endpoint.
+     *
+     * @param key the endpoint key
+     * @return the connection or null if there is none
+     */
+    private IdleConnection borrow( final String key )
+    {
+        while( true )
+        {
+            final IdleConnection connection;
+            final boolean validate;
+            synchronized( this )
+            {
+                connection = removeNewest( key );
+                if( null == connection )
+                {
+                    m_missCount++;
+                    return null;
+                }
+                validate = m_validateOnBorrow;
+            }
+
+            if( isExpired( connection, System.currentTimeMillis() ) )
+            {
+                evicted( connection );
+            }
+            else if( validate && !isValid( connection.getSocket() ) )
+            {
+                synchronized( this )
+                {
+                    m_validationFailureCount++;
+                }
+                close( connection.getSocket() );
+            }
+            else
+            {
+                synchronized( this )
+                {
+                    m_hitCount++;
+                }
+                return connection;
+            }
+        }
+    }
+
+    /**
+     * Return a connection to the idle pool for its endpoint.
+     *
+     * @param socket the underlying socket
+     * @param key the endpoint key
+     * @param creationTime the time connection was created
+     */
+    void release( final Socket socket, final String key, final long creationTime )
+    {
+        if( socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown() )
+        {
+            close( socket );
+            return;
+        }
+        final IdleConnection connection = new IdleConnection( socket, creationTime );
+        synchronized( this )
+        {
+            if( m_shutdown )
+            {
+                close( socket );
+                return;
+            }
+            final long now = System.currentTimeMillis();
+            final List idle = getIdle( key );
+            if( idle.size() < m_maxIdle && !isExpired( connection, now ) )
+            {
+                idle.add( connection );
+                startEvictor();
+                return;
+            }
+        }
+        evicted( connection );
+    }
+
+    /**
+     * Remove the most recently returned idle connection for endpoint.
+     *
+     * @param key the endpoint key
+     * @return the connection or null if there is none
+     */
+    private IdleConnection removeNewest( final String key )
+    {
+        final LinkedList idle = (LinkedList)m_idle.get( key );
+        if( null == idle )
+        {
+            return null;
+        }
+        final IdleConnection connection = (IdleConnection)idle.removeLast();
+        if( idle.isEmpty() )
+        {
+            m_idle.remove( key );
+        }
+        return connection;
+    }
+
+    /**
+     * Return the list of idle connections for endpoint, creating it if necessary.
+     *
+     * @param key the endpoint key
+     * @return the list of idle connections
+     */
+    private List getIdle( final String key )
+    {
+        LinkedList idle = (LinkedList)m_idle.get( key );
+        if( null == idle )
+        {
+            idle = new LinkedList();
+            m_idle.put( key, idle );
+        }
+        return idle;
+    }
+
+    /**
+     * Return true if connection has exceeded the maximum lifetime.
+     *
+     * @param connection the connection
+     * @param now the current time
+     * @return true if connection has expired
+     */
+    private synchronized boolean isExpired( final IdleConnection connection, final long now )
+    {
+        return 0 != m_maxLifetime && now - connection.getCreationTime() >= m_maxLifetime;
+    }
+
+    /**
+     * Return true if connection has been idle for
+     * longer than the idle timeout.
+     *
+     * @param connection the connection
+     * @param now the current time
+     * @return true if connection has been idle too long
+     */
+    private synchronized boolean isIdleTooLong( final IdleConnection connection, final long now )
+    {
+        return 0 != m_idleTimeout && now - connection.getIdleTime() >= m_idleTimeout;
+    }
+
+    /**
+     * Return true if connection is still open and the remote end has
+     * not closed it or sent data while it was idle. A socket with a
+     * channel is checked with a non-blocking read, otherwise with a
+     * read that times out after a millisecond.
+     *
+     * @param socket the socket
+     * @return true if connection can be used
+     */
+    private boolean isValid( final Socket socket )
+    {
+        if( socket.isClosed() || !socket.isConnected() ||
+            socket.isInputShutdown() || socket.isOutputShutdown() )
+        {
+            return false;
+        }
+        try
+        {
+            final SocketChannel channel = socket.getChannel();
+            if( null != channel )
+            {
+                channel.configureBlocking( false );
+                try
+                {
+                    return 0 == channel.read( ByteBuffer.allocate( 1 ) );
+                }
+                finally
+                {
+                    channel.configureBlocking( true );
+                }
+            }
+            if( socket.getInputStream().available() > 0 )
+            {
+                return false;
+            }
+            final int timeout = socket.getSoTimeout();
+            socket.setSoTimeout( 1 );
+            try
+            {
+                socket.getInputStream().read();
+                return false;
+            }
+            catch( final SocketTimeoutException ste )
+            {
+                return true;
+            }
+            finally
+            {
+                socket.setSoTimeout( timeout );
+            }
+        }
+        catch( final IOException ioe )
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Start the evictor thread if it is not running.
+     */
+    private void startEvictor()
+    {
+        if( null == m_evictor && ( 0 != m_idleTimeout || 0 != m_maxLifetime ) )
+        {
+            m_evictor = new Thread( new Runnable()
+            {
+                public void run()
+                {
+                    runEvictor();
+                }
+            }, "PooledSocketFactory Evictor" );
+            m_evictor.setDaemon( true );
+            m_evictor.start();
+        }
+    }
+
+    /**
+     * Evict idle connections until shutdown.
+     */
+    private void runEvictor()
+    {
+        while( waitForEviction() )
+        {
+            evictIdle();
+        }
+    }
+
+    /**
+     * Close idle connections that have expired or been idle too long.
+     */
+    void evictIdle()
+    {
+        final List evicted = new ArrayList();
+        synchronized( this )
+        {
+            final long now = System.currentTimeMillis();
+            final Iterator lists = m_idle.values().iterator();
+            while( lists.hasNext() )
+            {
+                final List idle = (List)lists.next();
+                final Iterator iterator = idle.iterator();
+                while( iterator.hasNext() )
+                {
+                    final IdleConnection connection = (IdleConnection)iterator.next();
+                    if( isExpired( connection, now ) || isIdleTooLong( connection, now ) )
+                    {
+                        iterator.remove();
+                        evicted.add( connection );
+                    }
+                }
+                if( idle.isEmpty() )
+                {
+                    lists.remove();
+                }
+            }
+            m_evictionCount += evicted.size();
+        }
+        closeAll( evicted );
+    }
+
+    /**
+     * Wait until it is time for the evictor to run.
+     *
+     * @return false if factory has been shutdown
+     */
+    private synchronized boolean waitForEviction()
+    {
+        final long end = System.currentTimeMillis() + m_evictionInterval;
+        while( !m_shutdown )
+        {
+            final long remaining = end - System.currentTimeMillis();
+            if( remaining <= 0 )
+            {
+                return true;
+            }
+            try
+            {
+                wait( remaining );
+            }
+            catch( final InterruptedException ie )
+            {
+                //Ignore
+            }
+        }
+        m_evictor = null;
+        return false;
+    }
+
+    /**
+     * Close a connection closed by the pool and count it as an eviction.
+     *
+     * @param connection the connection
+     */
+    private void evicted( final IdleConnection connection )
+    {
+        synchronized( this )
+        {
+            m_evictionCount++;
+        }
+        close( connection.getSocket() );
+    }
+
+    /**
+     * Close a list of IdleConnection objects.
+     *
+     * @param connections the connections
+     */
+    private void closeAll( final List connections )
+    {
+        for( int i = 0; i < connections.size(); i++ )
+        {
+            close( ( (IdleConnection)connections.get( i ) ).getSocket() );
+        }
+    }
+
+    /**
+     * Close a socket, ignoring errors.
+     *
+     * @param socket the socket
+     */
+    private void close( final Socket socket )
+    {
+        try
+        {
+            socket.close();
+        }
+        catch( final IOException ioe )
+        {
+            //Ignore
+        }
+    }
+
+    /**
+     * Return the key for an endpoint.
+     *
+     * @param address the remote address
+     * @param port the remote port
+     * @param localAddress the local address, may be null
+     * @return the key
+     */
+    private String getKey( final InetAddress address,
+                           final int port,
+                           final InetAddress localAddress )
+    {
+        if( null == address )
+        {
+            throw new NullPointerException( "address" );
+        }
+        final String local =
+            ( null == localAddress ) ? "" : "/" + localAddress.getHostAddress();
+        return address.getHostAddress() + ":" + port + local;
+    }
+
+    /**
+     * An idle connection and the times it was created and returned.
+     */
+    private static final class IdleConnection
+    {
+        private final Socket m_socket;
+        private final long m_creationTime;
+        private final long m_idleTime = System.currentTimeMillis();
+
+        IdleConnection( final Socket socket, final long creationTime )
+        {
+            m_socket = socket;
+            m_creationTime = creationTime;
+        }
+
+        Socket getSocket()
+        {
+            return m_socket;
+        }
+
+        long getCreationTime()
+        {
+            return m_creationTime;
+        }
+
+        long getIdleTime()
+        {
+            return m_idleTime;
+        }
+    }
+
+    /**
+     * The socket given to callers, which returns the
+     * connection to the pool when closed.
+     */
+    private class PooledSocket
+        extends DelegatingSocket
+    {
+        private final String m_key;
+        private final long m_creationTime;
+        private boolean m_released;
+
+        PooledSocket( final Socket socket, final String key, final long creationTime )
+        {
+            super( socket );
+            m_key = key;
+            m_creationTime = creationTime;
+        }
+
+        public void close()
+        {
+            synchronized( this )
+            {
+                if( m_released )
+                {
+                    return;
+                }
+                m_released = true;
+            }
+            release( getSocket(), m_key, m_creationTime );
+        }
+
+        public synchronized boolean isClosed()
+        {
+            return m_released || super.isClosed();
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.handlers;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+import org.codehaus.spice.netserve.connection.RequestHandler;
+
+/**
+ * TestCase for {@link AdmissionControlHandler}.
+ */
+public class AdmissionControlHandlerTestCase
+    extends TestCase
+{
+    private ServerSocket m_serverSocket;
+    private final List m_sockets = new ArrayList();
+
+    public AdmissionControlHandlerTestCase( final String name )
+    {
+        super( name );
+    }
+
+    public void testConnectionLimit()
+        throws Exception
+    {
+        final HoldingRequestHandler delegate = new HoldingRequestHandler();
+        final CountingAdmissionMonitor monitor = new CountingAdmissionMonitor();
+        final AdmissionControlHandler handler =
+            new AdmissionControlHandler( delegate, monitor, 2, 0, 0, 0, 0 );
+        handler.handleConnection( accept() );
+        handler.handleConnection( accept() );
+        final Socket rejected = accept();
+        handler.handleConnection( rejected );
+        assertTrue( "rejected closed", rejected.isClosed() );
+        assertEquals( "held", 2, delegate.getSockets().size() );
+        assertEquals( "active", 2, handler.getActiveCount() );
+        assertEquals( "limitRejected", 1, monitor.getLimitRejectedCount() );
+
+        ( (Socket)delegate.getSockets().get( 0 ) ).close();
+        ( (Socket)delegate.getSockets().get( 0 ) ).close();
+        assertEquals( "active after close", 1, handler.getActiveCount() );
+        assertEquals( "monitor active", 1, monitor.getActiveCount() );
+        handler.handleConnection( accept() );
+        assertEquals( "held", 3, delegate.getSockets().size() );
+        assertEquals( "admitted", 3, monitor.getAdmittedCount() );
+        assertEquals( "peak", 2, monitor.getPeakActiveCount() );
+    }
+
+    public void testAddressLimit()
+        throws Exception
+    {
+        final HoldingRequestHandler delegate = new HoldingRequestHandler();
+        final CountingAdmissionMonitor monitor = new CountingAdmissionMonitor();
+        final AdmissionControlHandler handler =
+            new AdmissionControlHandler( delegate, monitor, 10, 1, 0, 0, 0 );
+        final Socket first = accept();
+        handler.handleConnection( first );
+        final Socket rejected = accept();
+        handler.handleConnection( rejected );
+        assertTrue( "rejected closed", rejected.isClosed() );
+        assertEquals( "addressRejected", 1, monitor.getAddressRejectedCount() );
+        assertEquals( "address count", 1, handler.getActiveCount( first.getInetAddress() ) );
+
+        ( (Socket)delegate.getSockets().get( 0 ) ).close();
+        assertEquals( "address count after close", 0, handler.getActiveCount( first.getInetAddress() ) );
+        handler.handleConnection( accept() );
+        assertEquals( "held", 2, delegate.getSockets().size() );
+    }
+
+    public void testRateLimit()
+        throws Exception
+    {
+        final HoldingRequestHandler delegate = new HoldingRequestHandler();
+        final CountingAdmissionMonitor monitor = new CountingAdmissionMonitor();
+        final AdmissionControlHandler handler =
+            new AdmissionControlHandler( delegate, monitor, 0, 0, 10, 2, 0 );
+        handler.handleConnection( accept() );
+        handler.handleConnection( accept() );
+        final Socket rejected = accept();
+        handler.handleConnection( rejected );
+        assertTrue( "rejected closed", rejected.isClosed() );
+        assertEquals( "rateRejected", 1, monitor.getRateRejectedCount() );
+
+        Thread.sleep( 250 );
+        handler.handleConnection( accept() );
+        assertEquals( "held", 3, delegate.getSockets().size() );
+    }
+
+    public void testQueuedUntilConnectionCloses()
+        throws Exception
+    {
+        final HoldingRequestHandler delegate = new HoldingRequestHandler();
+        final CountingAdmissionMonitor monitor = new CountingAdmissionMonitor();
+        final AdmissionControlHandler handler =
+            new AdmissionControlHandler( delegate, monitor, 1, 0, 0, 0, 5000 );
+        handler.handleConnection( accept() );
+        final Socket held = (Socket)delegate.getSockets().get( 0 );
+        final Thread closer = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep( 100 );
+                    held.close();
+                }
+                catch( final Exception e )
+                {
+                }
+            }
+        };
+        closer.start();
+        handler.handleConnection( accept() );
+        closer.join();
+        assertEquals( "held", 2, delegate.getSockets().size() );
+        assertEquals( "queued", 1, monitor.getQueuedCount() );
+        assertEquals( "rejected", 0, monitor.getRejectedCount() );
+    }
+
+    public void testChannelConnectionNotQueued()
+        throws Exception
+    {
+        final HoldingRequestHandler delegate = new HoldingRequestHandler();
+        final CountingAdmissionMonitor monitor = new CountingAdmissionMonitor();
+        final AdmissionControlHandler handler =
+            new AdmissionControlHandler( delegate, monitor, 1, 0, 0, 0, 5000 );
+        final ServerSocketChannel channel = ServerSocketChannel.open();
+        try
+        {
+            channel.socket().bind( new InetSocketAddress( 0 ) );
+            handler.handleConnection( accept( channel ) );
+
+            final Socket rejected = accept( channel );
+            final long start = System.currentTimeMillis();
+            handler.handleConnection( rejected );
+            final long elapsed = System.currentTimeMillis() - start;
+            assertTrue( "waited " + elapsed + "ms", elapsed < 2000 );
+            assertTrue( "rejected closed", rejected.isClosed() );
+            assertEquals( "queued", 0, monitor.getQueuedCount() );
+            assertEquals( "limitRejected", 1, monitor.getLimitRejectedCount() );
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    public void testShutdownRejects()
+        throws Exception
+    {
+        final HoldingRequestHandler delegate = new HoldingRequestHandler();
+        final AdmissionControlHandler handler = new AdmissionControlHandler( delegate, 1, 1 );
+        handler.shutdown( 100 );
+        assertTrue( "delegate shutdown", delegate.isShutdown() );
+        final Socket socket = accept();
+        handler.handleConnection( socket );
+        assertTrue( "closed", socket.isClosed() );
+        assertEquals( "held", 0, delegate.getSockets().size() );
+    }
+
+    protected void setUp()
+        throws Exception
+    {
+        m_serverSocket = new ServerSocket( 0 );
+    }
+
+    protected void tearDown()
+        throws Exception
+    {
+        for( int i = 0; i < m_sockets.size(); i++ )
+        {
+            ( (Socket)m_sockets.get( i ) ).close();
+        }
+        m_serverSocket.close();
+    }
+
+    private Socket accept()
+        throws Exception
+    {
+        final Socket client =
+            new Socket( InetAddress.getLocalHost(), m_serverSocket.getLocalPort() );
+        m_sockets.add( client );
+        final Socket socket = m_serverSocket.accept();
+        m_sockets.add( socket );
+        return socket;
+    }
+
+    private Socket accept( final ServerSocketChannel channel )
+        throws Exception
+    {
+        final Socket client =
+            new Socket( InetAddress.getLocalHost(), channel.socket().getLocalPort() );
+        m_sockets.add( client );
+        final Socket socket = channel.accept().socket();
+        m_sockets.add( socket );
+        return socket;
+    }
+
+    /**
+     * Handler that holds on to sockets in the same way as a
+     * handler that passes them to other threads.
+     */
+    private static class HoldingRequestHandler
+        implements RequestHandler
+    {
+        private final List m_held = new ArrayList();
+        private boolean m_shutdown;
+
+        public synchronized void handleConnection( final Socket socket )
+        {
+            m_held.add( socket );
+        }
+
+        public synchronized void shutdown( final long timeout )
+        {
+            m_shutdown = true;
+        }
+
+        synchronized List getSockets()
+        {
+            return m_held;
+        }
+
+        synchronized boolean isShutdown()
+        {
+            return m_shutdown;
+        }
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.handlers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import junit.framework.TestCase;
+import org.codehaus.spice.netserve.connection.ChannelContext;
+import org.codehaus.spice.netserve.connection.ChannelHandler;
+import org.codehaus.spice.netserve.connection.impl.DefaultAcceptorManager;
+import org.codehaus.spice.netserve.sockets.impl.ChannelServerSocketFactory;
+
+/**
+ * TestCase for {@link ChannelRequestHandler} and {@link ByteBufferPool}.
+ */
+public class ChannelRequestHandlerTestCase
+    extends TestCase
+{
+    public ChannelRequestHandlerTestCase( final String name )
+    {
+        super( name );
+    }
+
+    public void testBufferPool()
+        throws Exception
+    {
+        final ByteBufferPool pool = new ByteBufferPool( 16, 1, false );
+        final ByteBuffer buffer = pool.acquire();
+        assertEquals( "capacity", 16, buffer.capacity() );
+        buffer.put( (byte)1 );
+        pool.release( buffer );
+        pool.release( ByteBuffer.allocate( 16 ) );
+        pool.release( ByteBuffer.allocate( 8 ) );
+        assertEquals( "pooled", 1, pool.getPooledCount() );
+        final ByteBuffer reused = pool.acquire();
+        assertSame( "reused", buffer, reused );
+        assertEquals( "position", 0, reused.position() );
+        assertEquals( "pooled", 0, pool.getPooledCount() );
+    }
+
+    public void testChannelAndBlockingHandlersShareManager()
+        throws Exception
+    {
+        final ChannelServerSocketFactory factory = new ChannelServerSocketFactory();
+        final DefaultAcceptorManager manager = new DefaultAcceptorManager();
+        final EchoChannelHandler echo = new EchoChannelHandler();
+        final ByteBufferPool pool = new ByteBufferPool( 64, 8, true );
+        final ChannelRequestHandler channelHandler =
+            new ChannelRequestHandler( echo, 2, pool );
+        final ThreadPerConnectionHandler blockingHandler =
+            new ThreadPerConnectionHandler( new EchoRequestHandler() );
+        final ServerSocket channelSocket = factory.createServerSocket( 0 );
+        final ServerSocket blockingSocket = factory.createServerSocket( 0 );
+        try
+        {
+            manager.connect( "channel", channelSocket, channelHandler );
+            manager.connect( "blocking", blockingSocket, blockingHandler );
+
+            final Socket[] clients = new Socket[ 4 ];
+            for( int i = 0; i < clients.length; i++ )
+            {
+                clients[ i ] =
+                    new Socket( InetAddress.getLocalHost(), channelSocket.getLocalPort() );
+            }
+            for( int i = 0; i < clients.length; i++ )
+            {
+                assertEquals( "channel echo " + i, i, roundTrip( clients[ i ], i ) );
+            }
+            final Socket blockingClient =
+                new Socket( InetAddress.getLocalHost(), blockingSocket.getLocalPort() );
+            assertEquals( "blocking echo", 42, roundTrip( blockingClient, 42 ) );
+            blockingClient.close();
+
+            clients[ 0 ].close();
+            waitForClosed( echo, 1 );
+            assertEquals( "closed after client close", 1, echo.getClosedCount() );
+
+            manager.shutdownAcceptors();
+            channelHandler.shutdown( 2000 );
+            assertEquals( "opened", clients.length, echo.getOpenedCount() );
+            assertEquals( "closed after shutdown", clients.length, echo.getClosedCount() );
+            assertTrue( "buffers returned", pool.getPooledCount() > 0 );
+            for( int i = 1; i < clients.length; i++ )
+            {
+                assertEquals( "end of stream " + i, -1, clients[ i ].getInputStream().read() );
+                clients[ i ].close();
+            }
+        }
+        finally
+        {
+            manager.shutdownAcceptors();
+            channelHandler.shutdown( 2000 );
+            blockingHandler.shutdown( 2000 );
+        }
+    }
+
+    public void testAdmissionReleasedWhenChannelCloses()
+        throws Exception
+    {
+        final ChannelServerSocketFactory factory = new ChannelServerSocketFactory();
+        final DefaultAcceptorManager manager = new DefaultAcceptorManager();
+        final EchoChannelHandler echo = new EchoChannelHandler();
+        final AdmissionControlHandler handler =
+            new AdmissionControlHandler( new ChannelRequestHandler( echo ), 10, 0 );
+        final ServerSocket serverSocket = factory.createServerSocket( 0 );
+        try
+        {
+            manager.connect( "channel", serverSocket, handler );
+            for( int i = 0; i < 3; i++ )
+            {
+                final Socket client =
+                    new Socket( InetAddress.getLocalHost(), serverSocket.getLocalPort() );
+                assertEquals( "echo " + i, i, roundTrip( client, i ) );
+                client.close();
+            }
+            waitForClosed( echo, 3 );
+            assertEquals( "closed", 3, echo.getClosedCount() );
+            assertEquals( "active", 0, handler.getActiveCount() );
+            assertEquals( "active for address",
+                          0, handler.getActiveCount( InetAddress.getLocalHost() ) );
+        }
+        finally
+        {
+            manager.shutdownAcceptors();
+            handler.shutdown( 2000 );
+        }
+    }
+
+    public void testInstrumentedChannelConnectionsRecorded()
+        throws Exception
+    {
+        final ChannelServerSocketFactory factory = new ChannelServerSocketFactory();
+        final DefaultAcceptorManager manager = new DefaultAcceptorManager();
+        final EchoChannelHandler echo = new EchoChannelHandler();
+        final InstrumentedRequestHandler handler =
+            new InstrumentedRequestHandler( "channel",
+                                            new ChannelRequestHandler( echo ),
+                                            new ConnectionMetricsSink()
+                                            {
+                                                public void metricsReported( final ConnectionMetrics metrics )
+                                                {
+                                                }
+                                            } );
+        final ServerSocket serverSocket = factory.createServerSocket( 0 );
+        try
+        {
+            manager.connect( "channel", serverSocket, handler );
+            for( int i = 0; i < 3; i++ )
+            {
+                final Socket client =
+                    new Socket( InetAddress.getLocalHost(), serverSocket.getLocalPort() );
+                assertEquals( "echo " + i, i, roundTrip( client, i ) );
+                client.close();
+            }
+            waitForClosed( echo, 3 );
+
+            final ConnectionMetrics metrics = handler.getMetrics();
+            assertEquals( "connections", 3, metrics.getConnectionCount() );
+            assertEquals( "bytes in", 3, metrics.getBytesIn().getTotal() );
+            assertEquals( "bytes out", 3, metrics.getBytesOut().getTotal() );
+        }
+        finally
+        {
+            manager.shutdownAcceptors();
+            handler.shutdown( 2000 );
+        }
+    }
+
+    public void testSocketWithoutChannelIsClosed()
+        throws Exception
+    {
+        final ChannelRequestHandler handler =
+            new ChannelRequestHandler( new EchoChannelHandler() );
+        final Socket socket = new Socket();
+        handler.handleConnection( socket );
+        assertTrue( "closed", socket.isClosed() );
+        handler.shutdown( 1000 );
+    }
+
+    private int roundTrip( final Socket socket, final int value )
+        throws IOException
+    {
+        socket.setSoTimeout( 2000 );
+        final OutputStream output = socket.getOutputStream();
+        output.write( value );
+        output.flush();
+        final InputStream input = socket.getInputStream();
+        return input.read();
+    }
+
+    private void waitForClosed( final EchoChannelHandler handler, final int count )
+        throws InterruptedException
+    {
+        final long end = System.currentTimeMillis() + 2000;
+        while( handler.getClosedCount() < count && System.currentTimeMillis() < end )
+        {
+            Thread.sleep( 10 );
+        }
+    }
+
+    /**
+     * Echo handler that writes back whatever it reads, waiting
+     * for the channel to become writable if required.
+     */
+    private static class EchoChannelHandler
+        implements ChannelHandler
+    {
+        private int m_openedCount;
+        private int m_closedCount;
+
+        public synchronized void channelOpened( final ChannelContext context )
+        {
+            m_openedCount++;
+        }
+
+        public void channelReadable( final ChannelContext context )
+            throws IOException
+        {
+            final ByteBuffer buffer = context.acquireBuffer();
+            final int count = context.read( buffer );
+            if( -1 == count )
+            {
+                context.releaseBuffer( buffer );
+                context.close();
+                return;
+            }
+            buffer.flip();
+            context.setAttachment( buffer );
+            context.setReadInterest( false );
+            channelWritable( context );
+        }
+
+        public void channelWritable( final ChannelContext context )
+            throws IOException
+        {
+            final ByteBuffer buffer = (ByteBuffer)context.getAttachment();
+            context.write( buffer );
+            if( buffer.hasRemaining() )
+            {
+                context.setWriteInterest( true );
+            }
+            else
+            {
+                context.setAttachment( null );
+                context.releaseBuffer( buffer );
+                context.setWriteInterest( false );
+                context.setReadInterest( true );
+            }
+        }
+
+        public synchronized void channelClosed( final ChannelContext context )
+        {
+            final ByteBuffer buffer = (ByteBuffer)context.getAttachment();
+            if( null != buffer )
+            {
+                context.releaseBuffer( buffer );
+            }
+            m_closedCount++;
+        }
+
+        synchronized int getOpenedCount()
+        {
+            return m_openedCount;
+        }
+
+        synchronized int getClosedCount()
+        {
+            return m_closedCount;
+        }
+    }
+
+    /**
+     * Blocking handler that echoes a single byte.
+     */
+    private static class EchoRequestHandler
+        extends AbstractRequestHandler
+    {
+        protected void doPerformRequest( final Socket socket )
+            throws Exception
+        {
+            final int value = socket.getInputStream().read();
+            socket.getOutputStream().write( value );
+            socket.getOutputStream().flush();
+        }
+    }
+}
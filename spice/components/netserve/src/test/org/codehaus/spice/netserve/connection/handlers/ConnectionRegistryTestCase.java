@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.handlers;
+
+import java.net.Socket;
+import junit.framework.TestCase;
+
+/**
+ * TestCase for {@link ConnectionRegistry}.
+ */
+public class ConnectionRegistryTestCase
+    extends TestCase
+{
+    public ConnectionRegistryTestCase( final String name )
+    {
+        super( name );
+    }
+
+    public void testRegisterAndUnregister()
+        throws Exception
+    {
+        final ConnectionRegistry registry = new ConnectionRegistry( 3 );
+        final Object key1 = new Object();
+        final Object key2 = new Object();
+        registry.register( key1, "value1" );
+        registry.register( key2, "value2" );
+        assertEquals( "size", 2, registry.size() );
+        assertEquals( "get", "value1", registry.get( key1 ) );
+        assertEquals( "keys", 2, registry.getKeys().length );
+        assertEquals( "values", 2, registry.getValues().length );
+        assertEquals( "unregister", "value1", registry.unregister( key1 ) );
+        assertNull( "unregister again", registry.unregister( key1 ) );
+        assertEquals( "size after unregister", 1, registry.size() );
+    }
+
+    public void testConcurrentChurn()
+        throws Exception
+    {
+        final ConnectionRegistry registry = new ConnectionRegistry();
+        final Thread[] threads = new Thread[ 8 ];
+        for( int i = 0; i < threads.length; i++ )
+        {
+            threads[ i ] = new Thread()
+            {
+                public void run()
+                {
+                    for( int j = 0; j < 1000; j++ )
+                    {
+                        final Object key = new Object();
+                        registry.register( key, key );
+                        registry.unregister( key );
+                    }
+                    registry.register( this, this );
+                }
+            };
+            threads[ i ].start();
+        }
+        for( int i = 0; i < threads.length; i++ )
+        {
+            threads[ i ].join();
+        }
+        assertEquals( "size", threads.length, registry.size() );
+    }
+
+    public void testWaitUntilEmpty()
+        throws Exception
+    {
+        final ConnectionRegistry registry = new ConnectionRegistry();
+        final Object key = new Object();
+        registry.register( key, key );
+        assertFalse( "timed out", registry.waitUntilEmpty( 50 ) );
+
+        final Thread remover = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep( 100 );
+                }
+                catch( final InterruptedException ie )
+                {
+                }
+                registry.unregister( key );
+            }
+        };
+        remover.start();
+        final long start = System.currentTimeMillis();
+        assertTrue( "emptied", registry.waitUntilEmpty( 5000 ) );
+        assertTrue( "woken promptly", System.currentTimeMillis() - start < 2000 );
+        remover.join();
+    }
+
+    public void testActiveRequests()
+        throws Exception
+    {
+        final DelayingRequestHandler handler = new DelayingRequestHandler( 2000, true );
+        final Socket socket = new Socket();
+        final Thread thread = new Thread()
+        {
+            public void run()
+            {
+                handler.handleConnection( socket );
+            }
+        };
+        thread.start();
+        final long end = System.currentTimeMillis() + 1000;
+        while( 0 == handler.getActiveRequestCount() && System.currentTimeMillis() < end )
+        {
+            Thread.sleep( 10 );
+        }
+        assertEquals( "active", 1, handler.getActiveRequestCount() );
+        assertSame( "socket", socket, handler.getActiveRequests()[ 0 ] );
+        handler.shutdown( 1000 );
+        thread.join( 1000 );
+        assertEquals( "active after shutdown", 0, handler.getActiveRequestCount() );
+    }
+}
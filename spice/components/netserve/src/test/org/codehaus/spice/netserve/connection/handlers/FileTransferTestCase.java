@@ -0,0 +1,322 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.handlers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import junit.framework.TestCase;
+import org.codehaus.spice.netserve.connection.RequestHandler;
+import org.codehaus.spice.netserve.connection.impl.DefaultAcceptorManager;
+import org.codehaus.spice.netserve.sockets.ServerSocketFactory;
+import org.codehaus.spice.netserve.sockets.impl.ChannelServerSocketFactory;
+import org.codehaus.spice.netserve.sockets.impl.DefaultServerSocketFactory;
+
+/**
+ * TestCase for {@link FileTransfer}, {@link ByteRange} and
+ * {@link AbstractFileRequestHandler}.
+ */
+public class FileTransferTestCase
+    extends TestCase
+{
+    private static final int FILE_LENGTH = 100000;
+
+    private File m_file;
+
+    public FileTransferTestCase( final String name )
+    {
+        super( name );
+    }
+
+    protected void setUp()
+        throws Exception
+    {
+        m_file = File.createTempFile( "transfer", ".dat" );
+        final FileOutputStream output = new FileOutputStream( m_file );
+        try
+        {
+            for( int i = 0; i < FILE_LENGTH; i++ )
+            {
+                output.write( i % 251 );
+            }
+        }
+        finally
+        {
+            output.close();
+        }
+    }
+
+    protected void tearDown()
+        throws Exception
+    {
+        m_file.delete();
+    }
+
+    public void testParseRange()
+        throws Exception
+    {
+        final ByteRange range = ByteRange.parse( "bytes=10-19" );
+        assertEquals( "offset", 10, range.getOffset( 100 ) );
+        assertEquals( "length", 10, range.getLength( 100 ) );
+        assertEquals( "content range", "bytes 10-19/100", range.toContentRange( 100 ) );
+        assertEquals( "truncated length", 5, range.getLength( 15 ) );
+        assertFalse( "unsatisfiable", range.isSatisfiable( 10 ) );
+        assertEquals( "unsatisfiable content range", "bytes */10", range.toContentRange( 10 ) );
+
+        final ByteRange open = ByteRange.parse( "bytes=90-" );
+        assertEquals( "open offset", 90, open.getOffset( 100 ) );
+        assertEquals( "open length", 10, open.getLength( 100 ) );
+
+        final ByteRange suffix = ByteRange.parse( "bytes=-30" );
+        assertEquals( "suffix offset", 70, suffix.getOffset( 100 ) );
+        assertEquals( "suffix length", 30, suffix.getLength( 100 ) );
+        assertEquals( "short suffix offset", 0, suffix.getOffset( 20 ) );
+        assertEquals( "short suffix length", 20, suffix.getLength( 20 ) );
+        assertEquals( "toString", "bytes=-30", suffix.toString() );
+
+        final String[] invalid = new String[]{"10-19", "bytes=19-10", "bytes=a-b", "bytes=1-2,4-5"};
+        for( int i = 0; i < invalid.length; i++ )
+        {
+            try
+            {
+                ByteRange.parse( invalid[ i ] );
+                fail( "Expected " + invalid[ i ] + " to fail" );
+            }
+            catch( final IllegalArgumentException iae )
+            {
+            }
+        }
+    }
+
+    public void testChannelTransfer()
+        throws Exception
+    {
+        final FileHandler handler = new FileHandler();
+        runRequests( new ChannelServerSocketFactory(), handler );
+        assertEquals( "copied", 0, handler.getFileTransfer().getCopiedCount() );
+    }
+
+    public void testInstrumentedChannelTransfer()
+        throws Exception
+    {
+        final FileHandler handler = new FileHandler();
+        final InstrumentedRequestHandler instrumented =
+            new InstrumentedRequestHandler( "test", handler, new ConnectionMetricsSink()
+            {
+                public void metricsReported( final ConnectionMetrics metrics )
+                {
+                }
+            } );
+        runRequests( new ChannelServerSocketFactory(), handler, instrumented );
+        assertEquals( "copied", 0, handler.getFileTransfer().getCopiedCount() );
+        final ConnectionMetrics metrics = instrumented.getMetrics();
+        assertEquals( "connections", 3, metrics.getConnectionCount() );
+        assertEquals( "bytes out",
+                      FILE_LENGTH + 1000 + 2 + 4096,
+                      metrics.getBytesOut().getTotal() );
+    }
+
+    public void testCopyTransfer()
+        throws Exception
+    {
+        final FileHandler handler = new FileHandler();
+        runRequests( new DefaultServerSocketFactory(), handler );
+        assertEquals( "copied", 3, handler.getFileTransfer().getCopiedCount() );
+    }
+
+    public void testNonBlockingChannelRejected()
+        throws Exception
+    {
+        final ServerSocketChannel server = ServerSocketChannel.open();
+        final RandomAccessFile file = new RandomAccessFile( m_file, "r" );
+        try
+        {
+            server.socket().bind( new InetSocketAddress( InetAddress.getLocalHost(), 0 ) );
+            final SocketChannel client =
+                SocketChannel.open( new InetSocketAddress( InetAddress.getLocalHost(),
+                                                           server.socket().getLocalPort() ) );
+            try
+            {
+                client.configureBlocking( false );
+                final FileTransfer transfer = new FileTransfer();
+                try
+                {
+                    transfer.transfer( file.getChannel(), 0, FILE_LENGTH, client.socket() );
+                    fail( "Expected IllegalBlockingModeException for file" );
+                }
+                catch( final IllegalBlockingModeException ibme )
+                {
+                }
+                try
+                {
+                    final ByteBuffer[] buffers = new ByteBuffer[]{ByteBuffer.allocate( 16 )};
+                    transfer.transfer( buffers, client.socket() );
+                    fail( "Expected IllegalBlockingModeException for buffers" );
+                }
+                catch( final IllegalBlockingModeException ibme )
+                {
+                }
+                assertEquals( "transfers", 0, transfer.getTransferCount() );
+            }
+            finally
+            {
+                client.close();
+            }
+        }
+        finally
+        {
+            file.close();
+            server.close();
+        }
+    }
+
+    private void runRequests( final ServerSocketFactory factory,
+                              final FileHandler handler )
+        throws Exception
+    {
+        runRequests( factory, handler, handler );
+    }
+
+    private void runRequests( final ServerSocketFactory factory,
+                              final FileHandler handler,
+                              final RequestHandler connected )
+        throws Exception
+    {
+        final DefaultAcceptorManager manager = new DefaultAcceptorManager();
+        final ServerSocket serverSocket = factory.createServerSocket( 0 );
+        try
+        {
+            manager.connect( "test", serverSocket, connected );
+            final int port = serverSocket.getLocalPort();
+
+            final byte[] whole = request( port, FileHandler.WHOLE );
+            assertEquals( "whole length", FILE_LENGTH, whole.length );
+            assertContent( "whole", whole, 0 );
+
+            final byte[] range = request( port, FileHandler.RANGE );
+            assertEquals( "range length", 1000, range.length );
+            assertContent( "range", range, 5000 );
+
+            final byte[] buffers = request( port, FileHandler.BUFFERS );
+            assertEquals( "buffers length", 2 + 4096, buffers.length );
+            assertEquals( "header", 'O', buffers[ 0 ] );
+            assertEquals( "header", 'K', buffers[ 1 ] );
+            final byte[] mapped = new byte[ 4096 ];
+            System.arraycopy( buffers, 2, mapped, 0, mapped.length );
+            assertContent( "mapped", mapped, 8192 );
+
+            final FileTransfer transfer = handler.getFileTransfer();
+            assertEquals( "transfers", 3, transfer.getTransferCount() );
+            assertEquals( "bytes sent",
+                          FILE_LENGTH + 1000 + 2 + 4096,
+                          transfer.getBytesSent() );
+            assertTrue( "transfer time", transfer.getTransferTime() >= 0 );
+        }
+        finally
+        {
+            manager.shutdownAcceptors();
+            connected.shutdown( 2000 );
+        }
+    }
+
+    private byte[] request( final int port, final int command )
+        throws IOException
+    {
+        final Socket socket = new Socket( InetAddress.getLocalHost(), port );
+        try
+        {
+            socket.setSoTimeout( 2000 );
+            socket.getOutputStream().write( command );
+            socket.getOutputStream().flush();
+            final InputStream input = socket.getInputStream();
+            final ByteArrayOutputStream data = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[ 4096 ];
+            int count;
+            while( -1 != ( count = input.read( buffer ) ) )
+            {
+                data.write( buffer, 0, count );
+            }
+            return data.toByteArray();
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    private void assertContent( final String message,
+                                final byte[] data,
+                                final int offset )
+    {
+        for( int i = 0; i < data.length; i++ )
+        {
+            if( (byte)( ( offset + i ) % 251 ) != data[ i ] )
+            {
+                fail( message + " differs at byte " + i );
+            }
+        }
+    }
+
+    /**
+     * Handler that reads a command byte and sends the whole
+     * file, a range of it or a header and a mapped region.
+     */
+    private class FileHandler
+        extends AbstractFileRequestHandler
+    {
+        static final int WHOLE = 0;
+        static final int RANGE = 1;
+        static final int BUFFERS = 2;
+
+        FileHandler()
+        {
+            super( new FileTransfer( 512 ) );
+        }
+
+        protected void doPerformRequest( final Socket socket )
+            throws Exception
+        {
+            final int command = socket.getInputStream().read();
+            if( WHOLE == command )
+            {
+                sendFile( socket, m_file );
+            }
+            else if( RANGE == command )
+            {
+                sendFile( socket, m_file, ByteRange.parse( "bytes=5000-5999" ) );
+            }
+            else if( BUFFERS == command )
+            {
+                final RandomAccessFile file = new RandomAccessFile( m_file, "r" );
+                try
+                {
+                    final ByteBuffer header = ByteBuffer.wrap( new byte[]{'O', 'K'} );
+                    final ByteBuffer mapped =
+                        file.getChannel().map( FileChannel.MapMode.READ_ONLY, 8192, 4096 );
+                    sendBuffers( socket, new ByteBuffer[]{header, mapped} );
+                }
+                finally
+                {
+                    file.close();
+                }
+            }
+        }
+    }
+}
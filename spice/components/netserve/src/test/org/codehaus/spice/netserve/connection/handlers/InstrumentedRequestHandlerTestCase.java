@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.handlers;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+import org.codehaus.spice.netserve.connection.impl.DefaultAcceptorManager;
+import org.codehaus.spice.threadpool.impl.HistogramSnapshot;
+
+/**
+ * TestCase for {@link InstrumentedRequestHandler} and
+ * {@link ConnectionMetrics}.
+ */
+public class InstrumentedRequestHandlerTestCase
+    extends TestCase
+{
+    public InstrumentedRequestHandlerTestCase( final String name )
+    {
+        super( name );
+    }
+
+    public void testConnectionMetrics()
+        throws Exception
+    {
+        final ConnectionMetrics metrics = new ConnectionMetrics( "test" );
+        for( int i = 0; i < 99; i++ )
+        {
+            metrics.record( 1, 10, 1000, 0 );
+        }
+        metrics.record( 1, 10, 100000, 0 );
+        final HistogramSnapshot snapshot = metrics.getBytesIn();
+        assertEquals( "connections", 100, metrics.getConnectionCount() );
+        assertEquals( "count", 100, snapshot.getCount() );
+        assertEquals( "total", 199000, snapshot.getTotal() );
+        assertEquals( "max", 100000, snapshot.getMax() );
+        final long p50 = snapshot.getPercentile( 50 );
+        assertTrue( "p50 " + p50, p50 >= 1000 && p50 < 1125 );
+        assertEquals( "p100", 100000, snapshot.getPercentile( 100 ) );
+    }
+
+    public void testConnectionsAreMeasured()
+        throws Exception
+    {
+        final RecordingSink sink = new RecordingSink();
+        final ThreadPerConnectionHandler threadHandler =
+            new ThreadPerConnectionHandler( new ReplyingRequestHandler() );
+        final InstrumentedRequestHandler handler =
+            new InstrumentedRequestHandler( "test", threadHandler, sink );
+        final DefaultAcceptorManager manager = new DefaultAcceptorManager();
+        final ServerSocket serverSocket = new ServerSocket( 0 );
+        try
+        {
+            manager.connect( "test", serverSocket, handler );
+            for( int i = 0; i < 3; i++ )
+            {
+                final Socket client =
+                    new Socket( InetAddress.getLocalHost(), serverSocket.getLocalPort() );
+                client.setSoTimeout( 2000 );
+                final OutputStream output = client.getOutputStream();
+                output.write( new byte[]{1, 2, 3, 4, 5} );
+                output.flush();
+                final InputStream input = client.getInputStream();
+                int count = 0;
+                while( -1 != input.read() )
+                {
+                    count++;
+                }
+                assertEquals( "reply length", 10, count );
+                client.close();
+            }
+            waitForConnections( handler.getMetrics(), 3 );
+
+            final ConnectionMetrics metrics = handler.getMetrics();
+            assertEquals( "name", "test", metrics.getName() );
+            assertEquals( "connections", 3, metrics.getConnectionCount() );
+            assertEquals( "bytes in", 15, metrics.getBytesIn().getTotal() );
+            assertEquals( "bytes out", 30, metrics.getBytesOut().getTotal() );
+            assertEquals( "bytes out max", 10, metrics.getBytesOut().getMax() );
+            assertEquals( "dispatch count", 3, metrics.getDispatchLatency().getCount() );
+
+            handler.reportMetrics();
+            assertEquals( "reports", 1, sink.getReports().size() );
+            assertSame( "reported", metrics, sink.getReports().get( 0 ) );
+        }
+        finally
+        {
+            manager.shutdownAcceptors();
+            handler.shutdown( 2000 );
+        }
+        assertEquals( "reported on shutdown", 2, sink.getReports().size() );
+    }
+
+    public void testPeriodicReports()
+        throws Exception
+    {
+        final RecordingSink sink = new RecordingSink();
+        final InstrumentedRequestHandler handler =
+            new InstrumentedRequestHandler( "test", new MockRequestHandler(), sink, 20 );
+        try
+        {
+            final long end = System.currentTimeMillis() + 2000;
+            while( sink.getReports().size() < 2 && System.currentTimeMillis() < end )
+            {
+                Thread.sleep( 10 );
+            }
+            assertTrue( "periodic reports", sink.getReports().size() >= 2 );
+        }
+        finally
+        {
+            handler.shutdown( 1000 );
+        }
+    }
+
+    private void waitForConnections( final ConnectionMetrics metrics, final long count )
+        throws InterruptedException
+    {
+        final long end = System.currentTimeMillis() + 2000;
+        while( metrics.getConnectionCount() < count && System.currentTimeMillis() < end )
+        {
+            Thread.sleep( 10 );
+        }
+    }
+
+    /**
+     * Handler that reads 5 bytes and writes back each one twice.
+     */
+    private static class ReplyingRequestHandler
+        extends AbstractRequestHandler
+    {
+        protected void doPerformRequest( final Socket socket )
+            throws Exception
+        {
+            final InputStream input = socket.getInputStream();
+            final OutputStream output = socket.getOutputStream();
+            final byte[] bytes = new byte[ 5 ];
+            int read = 0;
+            while( read < bytes.length )
+            {
+                read += input.read( bytes, read, bytes.length - read );
+            }
+            for( int i = 0; i < bytes.length; i++ )
+            {
+                output.write( bytes[ i ] );
+            }
+            output.write( bytes );
+            output.flush();
+        }
+    }
+
+    /**
+     * Sink that records the reported metrics.
+     */
+    private static class RecordingSink
+        implements ConnectionMetricsSink
+    {
+        private final List m_reports = new ArrayList();
+
+        public synchronized void metricsReported( final ConnectionMetrics metrics )
+        {
+            m_reports.add( metrics );
+        }
+
+        synchronized List getReports()
+        {
+            return new ArrayList( m_reports );
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.handlers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import junit.framework.TestCase;
+import org.codehaus.spice.netserve.connection.impl.DefaultAcceptorManager;
+import org.codehaus.spice.netserve.sockets.impl.ChannelServerSocketFactory;
+import org.codehaus.spice.netserve.sockets.impl.DefaultServerSocketFactory;
+
+/**
+ * TestCase for {@link KeepAliveRequestHandler}.
+ */
+public class KeepAliveRequestHandlerTestCase
+    extends TestCase
+{
+    public KeepAliveRequestHandlerTestCase( final String name )
+    {
+        super( name );
+    }
+
+    public void testIdleConnectionsAreParked()
+        throws Exception
+    {
+        final IncrementingHandler handler = new IncrementingHandler( 0 );
+        final DefaultAcceptorManager manager = new DefaultAcceptorManager();
+        final ServerSocket serverSocket =
+            new ChannelServerSocketFactory().createServerSocket( 0 );
+        try
+        {
+            manager.connect( "test", serverSocket, handler );
+            final Socket[] clients = new Socket[ 8 ];
+            for( int i = 0; i < clients.length; i++ )
+            {
+                clients[ i ] =
+                    new Socket( InetAddress.getLocalHost(), serverSocket.getLocalPort() );
+                assertEquals( "first request " + i, i + 1, roundTrip( clients[ i ], i ) );
+            }
+            waitForParked( handler, clients.length );
+            waitForIdle( handler );
+            assertEquals( "parked", clients.length, handler.getParkedConnectionCount() );
+            assertEquals( "active", 0, handler.getActiveRequestCount() );
+
+            for( int i = 0; i < clients.length; i++ )
+            {
+                assertEquals( "second request " + i, i + 11, roundTrip( clients[ i ], i + 10 ) );
+            }
+            assertEquals( "last request", 'q' + 1, roundTrip( clients[ 0 ], 'q' ) );
+            assertEquals( "closed after last request", -1, clients[ 0 ].getInputStream().read() );
+            waitForParked( handler, clients.length - 1 );
+            assertEquals( "parked", clients.length - 1, handler.getParkedConnectionCount() );
+
+            manager.shutdownAcceptors();
+            handler.shutdown( 2000 );
+            assertEquals( "parked after shutdown", 0, handler.getParkedConnectionCount() );
+            for( int i = 1; i < clients.length; i++ )
+            {
+                assertEquals( "end of stream " + i, -1, clients[ i ].getInputStream().read() );
+                clients[ i ].close();
+            }
+            clients[ 0 ].close();
+        }
+        finally
+        {
+            manager.shutdownAcceptors();
+            handler.shutdown( 2000 );
+        }
+    }
+
+    public void testIdleTimeoutClosesConnection()
+        throws Exception
+    {
+        final IncrementingHandler handler = new IncrementingHandler( 100 );
+        final DefaultAcceptorManager manager = new DefaultAcceptorManager();
+        final ServerSocket serverSocket =
+            new ChannelServerSocketFactory().createServerSocket( 0 );
+        try
+        {
+            manager.connect( "test", serverSocket, handler );
+            final Socket client =
+                new Socket( InetAddress.getLocalHost(), serverSocket.getLocalPort() );
+            assertEquals( "request", 2, roundTrip( client, 1 ) );
+            final long start = System.currentTimeMillis();
+            assertEquals( "closed when idle", -1, client.getInputStream().read() );
+            assertTrue( "idle for timeout", System.currentTimeMillis() - start >= 50 );
+            assertEquals( "parked", 0, handler.getParkedConnectionCount() );
+            client.close();
+        }
+        finally
+        {
+            manager.shutdownAcceptors();
+            handler.shutdown( 2000 );
+        }
+    }
+
+    public void testDrainClosesParkedConnections()
+        throws Exception
+    {
+        final IncrementingHandler handler = new IncrementingHandler( 0 );
+        final DefaultAcceptorManager manager = new DefaultAcceptorManager();
+        final ServerSocket serverSocket =
+            new ChannelServerSocketFactory().createServerSocket( 0 );
+        try
+        {
+            manager.connect( "test", serverSocket, handler );
+            final Socket[] clients = new Socket[ 4 ];
+            for( int i = 0; i < clients.length; i++ )
+            {
+                clients[ i ] =
+                    new Socket( InetAddress.getLocalHost(), serverSocket.getLocalPort() );
+                assertEquals( "request " + i, i + 1, roundTrip( clients[ i ], i ) );
+            }
+            waitForParked( handler, clients.length );
+            assertEquals( "parked", clients.length, handler.getParkedConnectionCount() );
+
+            final long start = System.currentTimeMillis();
+            assertEquals( "activeCount", 0, manager.drain( "test", 10000 ) );
+            assertTrue( "drain waited for idle connections",
+                        System.currentTimeMillis() - start < 5000 );
+            assertEquals( "parked after drain", 0, handler.getParkedConnectionCount() );
+            for( int i = 0; i < clients.length; i++ )
+            {
+                assertEquals( "end of stream " + i, -1, clients[ i ].getInputStream().read() );
+                clients[ i ].close();
+            }
+        }
+        finally
+        {
+            manager.shutdownAcceptors();
+            handler.shutdown( 2000 );
+        }
+    }
+
+    public void testRequestEndingDuringDrainIsClosed()
+        throws Exception
+    {
+        final IncrementingHandler handler = new IncrementingHandler( 0 );
+        final DefaultAcceptorManager manager = new DefaultAcceptorManager();
+        final ServerSocket serverSocket =
+            new ChannelServerSocketFactory().createServerSocket( 0 );
+        try
+        {
+            manager.connect( "test", serverSocket, handler );
+            final Socket client =
+                new Socket( InetAddress.getLocalHost(), serverSocket.getLocalPort() );
+            client.setSoTimeout( 2000 );
+            waitForActive( handler, 1 );
+            handler.drainStarted();
+            assertEquals( "request", 2, roundTrip( client, 1 ) );
+            assertEquals( "closed after request", -1, client.getInputStream().read() );
+            assertEquals( "parked", 0, handler.getParkedConnectionCount() );
+            client.close();
+        }
+        finally
+        {
+            manager.shutdownAcceptors();
+            handler.shutdown( 2000 );
+        }
+    }
+
+    public void testSocketWithoutChannelIsDispatchedAgain()
+        throws Exception
+    {
+        final IncrementingHandler handler = new IncrementingHandler( 0 );
+        final DefaultAcceptorManager manager = new DefaultAcceptorManager();
+        final ServerSocket serverSocket =
+            new DefaultServerSocketFactory().createServerSocket( 0 );
+        try
+        {
+            manager.connect( "test", serverSocket, handler );
+            final Socket client =
+                new Socket( InetAddress.getLocalHost(), serverSocket.getLocalPort() );
+            assertEquals( "first request", 2, roundTrip( client, 1 ) );
+            assertEquals( "second request", 3, roundTrip( client, 2 ) );
+            assertEquals( "parked", 0, handler.getParkedConnectionCount() );
+            client.close();
+        }
+        finally
+        {
+            manager.shutdownAcceptors();
+            handler.shutdown( 2000 );
+        }
+    }
+
+    private int roundTrip( final Socket socket, final int value )
+        throws IOException
+    {
+        socket.setSoTimeout( 2000 );
+        final OutputStream output = socket.getOutputStream();
+        output.write( value );
+        output.flush();
+        final InputStream input = socket.getInputStream();
+        return input.read();
+    }
+
+    private void waitForParked( final KeepAliveRequestHandler handler, final int count )
+        throws InterruptedException
+    {
+        final long end = System.currentTimeMillis() + 2000;
+        while( handler.getParkedConnectionCount() != count &&
+            System.currentTimeMillis() < end )
+        {
+            Thread.sleep( 10 );
+        }
+    }
+
+    private void waitForActive( final KeepAliveRequestHandler handler, final int count )
+        throws InterruptedException
+    {
+        final long end = System.currentTimeMillis() + 2000;
+        while( count != handler.getActiveRequestCount() &&
+            System.currentTimeMillis() < end )
+        {
+            Thread.sleep( 10 );
+        }
+    }
+
+    private void waitForIdle( final KeepAliveRequestHandler handler )
+        throws InterruptedException
+    {
+        final long end = System.currentTimeMillis() + 2000;
+        while( 0 != handler.getActiveRequestCount() &&
+            System.currentTimeMillis() < end )
+        {
+            Thread.sleep( 10 );
+        }
+    }
+
+    /**
+     * Handler that reads a byte and writes back the next value,
+     * keeping the connection alive until it reads 'q'.
+     */
+    private static class IncrementingHandler
+        extends KeepAliveRequestHandler
+    {
+        IncrementingHandler( final long idleTimeout )
+        {
+            super( new MockThreadPool(), idleTimeout );
+        }
+
+        protected void doPerformRequest( final Socket socket )
+            throws Exception
+        {
+            final int value = socket.getInputStream().read();
+            if( -1 == value )
+            {
+                return;
+            }
+            final OutputStream output = socket.getOutputStream();
+            output.write( value + 1 );
+            output.flush();
+            if( 'q' != value )
+            {
+                keepAlive( socket );
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.handlers;
+
+import java.net.Socket;
+import junit.framework.TestCase;
+import com.mockobjects.dynamic.Mock;
+import org.codehaus.spice.netserve.connection.RequestHandler;
+
+/**
+ * TestCase for the ThreadPerConnectionHandler.
+ */
+public class ThreadPerConnectionHandlerTestCase
+    extends TestCase
+{
+    public void testNegativeStackSizePassedToCtor()
+        throws Exception
+    {
+        final Mock mockHandler = new Mock( RequestHandler.class );
+        final RequestHandler handler = (RequestHandler)mockHandler.proxy();
+        try
+        {
+            new ThreadPerConnectionHandler( handler, -1 );
+        }
+        catch( final IllegalArgumentException iae )
+        {
+            assertEquals( "iae.getMessage()", "stackSize", iae.getMessage() );
+            return;
+        }
+        fail( "Expected to fail due to negative stackSize passed into Ctor" );
+    }
+
+    public void testConnectionHandledInSeparateThread()
+        throws Exception
+    {
+        final DelayingRequestHandler handler =
+            new DelayingRequestHandler( 50, false );
+        final ThreadPerConnectionHandler requestHandler =
+            new ThreadPerConnectionHandler( handler );
+        requestHandler.handleConnection( new Socket() );
+        assertEquals( "isExited immediately", false, handler.isExited() );
+
+        requestHandler.shutdown( 0 );
+        assertEquals( "isExited", true, handler.isExited() );
+    }
+
+    public void testShutdownWhileThreadStillGoingButInteruptible()
+        throws Exception
+    {
+        final DelayingRequestHandler handler =
+            new DelayingRequestHandler( 2000, true );
+
+        final ThreadPerConnectionHandler requestHandler =
+            new ThreadPerConnectionHandler( handler );
+        requestHandler.handleConnection( new Socket() );
+        Thread.sleep( 50 );
+
+        requestHandler.shutdown( 50 );
+        assertEquals( "isShutdown", true, handler.isShutdown() );
+        assertEquals( "isExited", true, handler.isExited() );
+        assertEquals( "isExitDueToInterrupt", true, handler.isExitDueToInterrupt() );
+    }
+
+    public void testConnectionAfterShutdownIsNotHandled()
+        throws Exception
+    {
+        final DelayingRequestHandler handler =
+            new DelayingRequestHandler( 0, false );
+        final ThreadPerConnectionHandler requestHandler =
+            new ThreadPerConnectionHandler( handler, 0 );
+        requestHandler.shutdown( 50 );
+        requestHandler.handleConnection( new Socket() );
+        Thread.sleep( 50 );
+        assertEquals( "isExited", false, handler.isExited() );
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.impl;
+
+import java.net.Socket;
+import junit.framework.TestCase;
+
+/**
+ * TestCase for {@link ActiveConnections}.
+ */
+public class ActiveConnectionsTestCase
+   extends TestCase
+{
+   public void testClosedSocketsAreDropped()
+      throws Exception
+   {
+      final ActiveConnections connections = new ActiveConnections();
+      final Socket[] sockets = new Socket[ 100 ];
+      for ( int i = 0; i < sockets.length; i++ )
+      {
+         sockets[ i ] = new Socket();
+         connections.add( sockets[ i ] );
+         if ( 0 != i % 10 )
+         {
+            sockets[ i ].close();
+         }
+      }
+      assertEquals( "activeCount", 10, connections.getActiveCount() );
+      for ( int i = 0; i < sockets.length; i++ )
+      {
+         sockets[ i ].close();
+      }
+      assertEquals( "activeCount after close", 0, connections.getActiveCount() );
+   }
+
+   public void testAddNull()
+      throws Exception
+   {
+      try
+      {
+         new ActiveConnections().add( null );
+      }
+      catch ( final NullPointerException npe )
+      {
+         assertEquals( "npe.message", "socket", npe.getMessage() );
+         return;
+      }
+      fail( "expected NPE due to null socket" );
+   }
+}
@@ -3,6 +3,7 @@ package org.codehaus.spice.netserve.connection.impl;
 import java.io.IOException;
 import java.net.ServerSocket;
 import junit.framework.TestCase;
+import org.codehaus.spice.netserve.connection.handlers.ConnectionMetrics;
 import org.apache.avalon.framework.logger.Logger;
 import com.mockobjects.dynamic.C;
 import com.mockobjects.dynamic.Mock;
@@ -56,6 +57,43 @@ public class AvalonAcceptorMonitorTestCase
       mockLogger.verify();
    }
 
+   public void testAvalonAcceptorMonitorReportsMetrics()
+      throws Exception
+   {
+      final Mock mockLogger = new Mock( Logger.class );
+      final ConnectionMetrics metrics = new ConnectionMetrics( "MyName" );
+      metrics.record( 1, 20, 300, 4000 );
+      mockLogger.expect( "info", C.args( C.eq( metrics.toString() ) ) );
+      final Logger logger = (Logger) mockLogger.proxy();
+
+      final AvalonAcceptorMonitor monitor = new AvalonAcceptorMonitor( logger );
+      monitor.metricsReported( metrics );
+
+      mockLogger.verify();
+   }
+
+   public void testAvalonAcceptorMonitorReportsDrain()
+      throws Exception
+   {
+      final Mock mockLogger = new Mock( Logger.class );
+      final String drainingMessage =
+         "Draining Acceptor MyName, waiting for 2 connections to close.";
+      final String drainedMessage = "Drained Acceptor MyName.";
+      final String timedOutMessage =
+         "Timed out draining Acceptor MyName with 1 connections still open.";
+      mockLogger.expect( "info", C.args( C.eq( drainingMessage ) ) );
+      mockLogger.expect( "info", C.args( C.eq( drainedMessage ) ) );
+      mockLogger.expect( "warn", C.args( C.eq( timedOutMessage ), C.IS_NULL ) );
+      final Logger logger = (Logger) mockLogger.proxy();
+
+      final AvalonAcceptorMonitor monitor = new AvalonAcceptorMonitor( logger );
+      monitor.acceptorDraining( "MyName", 2 );
+      monitor.acceptorDrained( "MyName", 0 );
+      monitor.acceptorDrained( "MyName", 1 );
+
+      mockLogger.verify();
+   }
+
    public void testAvalonAcceptorMonitorPassedNullIntoCtor()
       throws Exception
    {
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.connection.impl;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import junit.framework.TestCase;
+import org.codehaus.spice.netserve.connection.RequestHandler;
+import org.codehaus.spice.netserve.sockets.impl.ChannelServerSocketFactory;
+
+/**
+ * TestCase for accepting connections from channel based
+ * ServerSockets using the shared selector.
+ */
+public class ChannelAcceptorTestCase
+    extends TestCase
+{
+    public ChannelAcceptorTestCase( final String name )
+    {
+        super( name );
+    }
+
+    public void testSelectorSharedByAcceptors()
+        throws Exception
+    {
+        final DefaultAcceptorManager manager = new DefaultAcceptorManager();
+        final RecordingAcceptorMonitor monitor = new RecordingAcceptorMonitor();
+        manager.setMonitor( monitor );
+        final ChannelServerSocketFactory factory = new ChannelServerSocketFactory();
+        final ServerSocket[] serverSockets = new ServerSocket[ 3 ];
+        final MockSocketConnectionHandler[] handlers =
+            new MockSocketConnectionHandler[ serverSockets.length ];
+        try
+        {
+            final int before = countSelectorThreads();
+            for( int i = 0; i < serverSockets.length; i++ )
+            {
+                serverSockets[ i ] = factory.createServerSocket( 0 );
+                handlers[ i ] = new MockSocketConnectionHandler();
+                manager.connect( "name" + i, serverSockets[ i ], handlers[ i ] );
+            }
+            assertEquals( "selector threads", before + 1, countSelectorThreads() );
+
+            for( int i = 0; i < serverSockets.length; i++ )
+            {
+                final Socket client =
+                    new Socket( InetAddress.getLocalHost(), serverSockets[ i ].getLocalPort() );
+                waitForSocket( handlers[ i ] );
+                client.close();
+                assertNotNull( "handler.socket " + i, handlers[ i ].getSocket() );
+            }
+            assertTrue( "listenCount", monitor.getListenCount() >= 6 );
+            assertNull( "errorAcceptingConnection", monitor.getErrorAcceptingConnection() );
+
+            manager.shutdownAcceptors();
+            for( int i = 0; i < serverSockets.length; i++ )
+            {
+                assertTrue( "serverSocket.isClosed " + i, serverSockets[ i ].isClosed() );
+            }
+            waitForSelectorThreads( before );
+            assertEquals( "selector threads post shutdown", before, countSelectorThreads() );
+        }
+        finally
+        {
+            manager.shutdownAcceptors();
+        }
+    }
+
+    public void testDisconnectDoesNotWaitForTimeout()
+        throws Exception
+    {
+        final DefaultAcceptorManager manager = new DefaultAcceptorManager();
+        manager.setSoTimeout( 10000 );
+        final ServerSocket serverSocket = new ChannelServerSocketFactory().createServerSocket( 0 );
+        manager.connect( "name", serverSocket, new MockSocketConnectionHandler() );
+        assertEquals( "soTimeout untouched", 0, serverSocket.getSoTimeout() );
+
+        final long start = System.currentTimeMillis();
+        manager.disconnect( "name" );
+        final long elapsed = System.currentTimeMillis() - start;
+        assertTrue( "disconnect took " + elapsed + "ms", elapsed < 2000 );
+        assertTrue( "serverSocket.isClosed", serverSocket.isClosed() );
+        assertEquals( "isConnected", false, manager.isConnected( "name" ) );
+    }
+
+    public void testDisconnectFromHandler()
+        throws Exception
+    {
+        final DefaultAcceptorManager manager = new DefaultAcceptorManager();
+        final ServerSocket serverSocket = new ChannelServerSocketFactory().createServerSocket( 0 );
+        final DisconnectingHandler handler = new DisconnectingHandler( manager, "name" );
+        try
+        {
+            manager.connect( "name", serverSocket, handler );
+            final Socket client =
+                new Socket( InetAddress.getLocalHost(), serverSocket.getLocalPort() );
+            client.close();
+            final long end = System.currentTimeMillis() + 2000;
+            while( !serverSocket.isClosed() && System.currentTimeMillis() < end )
+            {
+                Thread.sleep( 10 );
+            }
+            assertTrue( "serverSocket.isClosed", serverSocket.isClosed() );
+            assertEquals( "isConnected", false, manager.isConnected( "name" ) );
+        }
+        finally
+        {
+            manager.shutdownAcceptors();
+        }
+    }
+
+    public void testFailingHandlerDoesNotStopSelector()
+        throws Exception
+    {
+        final DefaultAcceptorManager manager = new DefaultAcceptorManager();
+        final RecordingAcceptorMonitor monitor = new RecordingAcceptorMonitor();
+        manager.setMonitor( monitor );
+        final ChannelServerSocketFactory factory = new ChannelServerSocketFactory();
+        final ServerSocket failingSocket = factory.createServerSocket( 0 );
+        final ServerSocket serverSocket = factory.createServerSocket( 0 );
+        final MockSocketConnectionHandler handler = new MockSocketConnectionHandler();
+        try
+        {
+            manager.connect( "failing", failingSocket, new FailingHandler() );
+            manager.connect( "name", serverSocket, handler );
+
+            final Socket failed =
+                new Socket( InetAddress.getLocalHost(), failingSocket.getLocalPort() );
+            failed.setSoTimeout( 2000 );
+            assertEquals( "failed connection closed", -1, failed.getInputStream().read() );
+            failed.close();
+            assertNotNull( "errorAcceptingConnection", monitor.getErrorAcceptingConnection() );
+
+            final Socket client =
+                new Socket( InetAddress.getLocalHost(), serverSocket.getLocalPort() );
+            waitForSocket( handler );
+            client.close();
+            assertNotNull( "handler.socket", handler.getSocket() );
+            assertEquals( "isConnected", true, manager.isConnected( "failing" ) );
+        }
+        finally
+        {
+            manager.shutdownAcceptors();
+        }
+    }
+
+    public void testConnectClosedChannel()
+        throws Exception
+    {
+        final DefaultAcceptorManager manager = new DefaultAcceptorManager();
+        final ServerSocket serverSocket = new ChannelServerSocketFactory().createServerSocket( 0 );
+        serverSocket.close();
+        try
+        {
+            manager.connect( "name", serverSocket, new MockSocketConnectionHandler() );
+            fail( "Expected connect of closed channel to fail" );
+        }
+        catch( final Exception e )
+        {
+            assertEquals( "isConnected", false, manager.isConnected( "name" ) );
+        }
+        finally
+        {
+            manager.shutdownAcceptors();
+        }
+    }
+
+    private void waitForSocket( final MockSocketConnectionHandler handler )
+        throws InterruptedException
+    {
+        final long end = System.currentTimeMillis() + 2000;
+        while( null == handler.getSocket() && System.currentTimeMillis() < end )
+        {
+            Thread.sleep( 10 );
+        }
+    }
+
+    private void waitForSelectorThreads( final int count )
+        throws InterruptedException
+    {
+        final long end = System.currentTimeMillis() + 2000;
+        while( count != countSelectorThreads() && System.currentTimeMillis() < end )
+        {
+            Thread.sleep( 10 );
+        }
+    }
+
+    private int countSelectorThreads()
+    {
+        final Thread[] threads = new Thread[ Thread.activeCount() * 2 ];
+        final int count = Thread.enumerate( threads );
+        int result = 0;
+        for( int i = 0; i < count; i++ )
+        {
+            if( "AcceptorSelector".equals( threads[ i ].getName() ) )
+            {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    private static class FailingHandler
+        implements RequestHandler
+    {
+        public void handleConnection( final Socket socket )
+        {
+            throw new IllegalStateException( "handler failed" );
+        }
+
+        public void shutdown( final long timeout )
+        {
+        }
+    }
+
+    private static class DisconnectingHandler
+        implements RequestHandler
+    {
+        private final DefaultAcceptorManager m_manager;
+        private final String m_name;
+
+        DisconnectingHandler( final DefaultAcceptorManager manager, final String name )
+        {
+            m_manager = manager;
+            m_name = name;
+        }
+
+        public void handleConnection( final Socket socket )
+        {
+            m_manager.disconnect( m_name );
+            try
+            {
+                socket.close();
+            }
+            catch( final Exception e )
+            {
+            }
+        }
+
+        public void shutdown( final long timeout )
+        {
+        }
+    }
+}
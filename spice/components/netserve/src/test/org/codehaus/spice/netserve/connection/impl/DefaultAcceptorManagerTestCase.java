@@ -12,9 +12,12 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 import junit.framework.TestCase;
+import org.codehaus.spice.netserve.connection.RequestHandler;
 
 /**
  *
@@ -241,8 +244,147 @@ public class DefaultAcceptorManagerTestCase
       fail( "expected NPE due to null handler in connect" );
    }
 
+   public void testDrainWaitsForConnections()
+      throws Exception
+   {
+      final DefaultAcceptorManager manager = new DefaultAcceptorManager();
+      final RecordingAcceptorMonitor monitor = new RecordingAcceptorMonitor();
+      manager.setMonitor( monitor );
+      manager.setSoTimeout( 10 );
+      final HoldingRequestHandler handler = new HoldingRequestHandler();
+      final ServerSocket oldSocket = new ServerSocket( 0 );
+      final ServerSocket newSocket = new ServerSocket( 0 );
+      try
+      {
+         manager.connect( "old", oldSocket, handler );
+         final Socket client =
+            new Socket( InetAddress.getLocalHost(), oldSocket.getLocalPort() );
+         final Socket accepted = handler.waitForSocket( 0 );
+         assertNotNull( "accepted", accepted );
+
+         manager.connect( "new", newSocket, handler );
+         final Thread closer = new Thread()
+         {
+            public void run()
+            {
+               try
+               {
+                  Thread.sleep( 100 );
+                  accepted.close();
+               }
+               catch( final Exception e )
+               {
+                  //Ignore
+               }
+            }
+         };
+         closer.start();
+         final long start = System.currentTimeMillis();
+         assertEquals( "activeCount", 0, manager.drain( "old", 5000 ) );
+         assertTrue( "drain ended early", System.currentTimeMillis() - start < 5000 );
+         assertEquals( "isConnected old", false, manager.isConnected( "old" ) );
+         assertEquals( "drainingCount", 1, monitor.getDrainingCount() );
+         assertEquals( "drainedActiveCount", 0, monitor.getDrainedActiveCount() );
+         client.close();
+
+         final Socket newClient =
+            new Socket( InetAddress.getLocalHost(), newSocket.getLocalPort() );
+         assertNotNull( "accepted on new port", handler.waitForSocket( 1 ) );
+         newClient.close();
+      }
+      finally
+      {
+         handler.shutdown( 0 );
+         manager.shutdownAcceptors();
+      }
+   }
+
+   public void testDrainTimesOut()
+      throws Exception
+   {
+      final DefaultAcceptorManager manager = new DefaultAcceptorManager();
+      final RecordingAcceptorMonitor monitor = new RecordingAcceptorMonitor();
+      manager.setMonitor( monitor );
+      manager.setSoTimeout( 10 );
+      manager.setDrainTimeout( 100 );
+      final HoldingRequestHandler handler = new HoldingRequestHandler();
+      final ServerSocket serverSocket = new ServerSocket( 0 );
+      try
+      {
+         manager.connect( "name", serverSocket, handler );
+         final Socket client =
+            new Socket( InetAddress.getLocalHost(), serverSocket.getLocalPort() );
+         assertNotNull( "accepted", handler.waitForSocket( 0 ) );
+         manager.shutdownAcceptors();
+         assertEquals( "isConnected", false, manager.isConnected( "name" ) );
+         assertEquals( "drainingCount", 1, monitor.getDrainingCount() );
+         assertEquals( "drainedActiveCount", 1, monitor.getDrainedActiveCount() );
+         client.close();
+      }
+      finally
+      {
+         handler.shutdown( 0 );
+      }
+   }
+
+   public void testDrainNonExistent()
+      throws Exception
+   {
+      final DefaultAcceptorManager manager = new DefaultAcceptorManager();
+      try
+      {
+         manager.drain( "noExist", 100 );
+      }
+      catch ( final IllegalArgumentException iae )
+      {
+         return;
+      }
+      fail( "expected IAE due to draining non existent acceptor" );
+   }
+
     protected void setUp() throws Exception
     {
         System.out.print( "Test: " + getName() );
     }
+
+   /**
+    * Handler that holds connections open until shutdown.
+    */
+   private static class HoldingRequestHandler
+      implements RequestHandler
+   {
+      private final List m_sockets = new ArrayList();
+
+      public synchronized void handleConnection( final Socket socket )
+      {
+         m_sockets.add( socket );
+         notifyAll();
+      }
+
+      synchronized Socket waitForSocket( final int index )
+         throws InterruptedException
+      {
+         final long end = System.currentTimeMillis() + 2000;
+         while ( m_sockets.size() <= index && System.currentTimeMillis() < end )
+         {
+            wait( 100 );
+         }
+         return ( m_sockets.size() > index ) ? (Socket)m_sockets.get( index ) : null;
+      }
+
+      public synchronized void shutdown( final long timeout )
+      {
+         for ( int i = 0; i < m_sockets.size(); i++ )
+         {
+            try
+            {
+               ( (Socket)m_sockets.get( i ) ).close();
+            }
+            catch ( final Exception e )
+            {
+               //Ignore
+            }
+         }
+      }
+   }
 }
@@ -21,6 +21,8 @@ class RecordingAcceptorMonitor
    private IOException m_errorClosingServerSocket;
    private IOException m_errorAcceptingConnection;
    private int m_listenCount;
+   private int m_drainingCount;
+   private int m_drainedActiveCount = -1;
 
    public void serverSocketListening( String name, ServerSocket serverSocket )
    {
@@ -40,6 +42,18 @@ class RecordingAcceptorMonitor
       super.errorClosingServerSocket( name, ioe );
    }
 
+   public void acceptorDraining( String name, int activeCount )
+   {
+      m_drainingCount++;
+      super.acceptorDraining( name, activeCount );
+   }
+
+   public void acceptorDrained( String name, int activeCount )
+   {
+      m_drainedActiveCount = activeCount;
+      super.acceptorDrained( name, activeCount );
+   }
+
    IOException getErrorClosingServerSocket()
    {
       return m_errorClosingServerSocket;
@@ -54,4 +68,14 @@ class RecordingAcceptorMonitor
    {
       return m_listenCount;
    }
+
+   int getDrainingCount()
+   {
+      return m_drainingCount;
+   }
+
+   int getDrainedActiveCount()
+   {
+      return m_drainedActiveCount;
+   }
 }
@@ -0,0 +1,324 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.netserve.sockets.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+import org.apache.avalon.framework.configuration.DefaultConfiguration;
+
+/**
+ * TestCase for {@link PooledSocketFactory}.
+ */
+public class PooledSocketFactoryTestCase
+    extends TestCase
+{
+    private EchoServer m_server;
+
+    public PooledSocketFactoryTestCase( final String name )
+    {
+        super( name );
+    }
+
+    protected void setUp()
+        throws Exception
+    {
+        m_server = new EchoServer();
+        m_server.start();
+    }
+
+    protected void tearDown()
+        throws Exception
+    {
+        m_server.shutdown();
+    }
+
+    public void testConnectionIsReused()
+        throws Exception
+    {
+        final PooledSocketFactory factory = new PooledSocketFactory();
+        try
+        {
+            final Socket first = factory.createSocket( getAddress(), m_server.getPort() );
+            assertEquals( "first echo", 1, roundTrip( first, 1 ) );
+            first.close();
+            assertTrue( "closed", first.isClosed() );
+            assertEquals( "idle", 1, factory.getIdleCount() );
+
+            final Socket second = factory.createSocket( getAddress(), m_server.getPort() );
+            assertEquals( "second echo", 2, roundTrip( second, 2 ) );
+            assertFalse( "open", second.isClosed() );
+            second.close();
+
+            assertEquals( "accepted", 1, m_server.getAcceptedCount() );
+            assertEquals( "hits", 1, factory.getHitCount() );
+            assertEquals( "misses", 1, factory.getMissCount() );
+            assertEquals( "evictions", 0, factory.getEvictionCount() );
+        }
+        finally
+        {
+            factory.shutdown();
+        }
+        assertEquals( "idle after shutdown", 0, factory.getIdleCount() );
+    }
+
+    public void testMaxIdle()
+        throws Exception
+    {
+        final PooledSocketFactory factory = new PooledSocketFactory();
+        factory.setMaxIdle( 2 );
+        try
+        {
+            final Socket[] sockets = new Socket[ 3 ];
+            for( int i = 0; i < sockets.length; i++ )
+            {
+                sockets[ i ] = factory.createSocket( getAddress(), m_server.getPort() );
+            }
+            for( int i = 0; i < sockets.length; i++ )
+            {
+                sockets[ i ].close();
+            }
+            assertEquals( "idle", 2, factory.getIdleCount() );
+            assertEquals( "evictions", 1, factory.getEvictionCount() );
+            assertEquals( "misses", 3, factory.getMissCount() );
+        }
+        finally
+        {
+            factory.shutdown();
+        }
+    }
+
+    public void testValidationOnBorrow()
+        throws Exception
+    {
+        final PooledSocketFactory factory = new PooledSocketFactory();
+        try
+        {
+            final Socket first = factory.createSocket( getAddress(), m_server.getPort() );
+            assertEquals( "first echo", 1, roundTrip( first, 1 ) );
+            first.close();
+            m_server.closeConnections();
+            Thread.sleep( 50 );
+
+            final Socket second = factory.createSocket( getAddress(), m_server.getPort() );
+            assertEquals( "second echo", 2, roundTrip( second, 2 ) );
+            second.close();
+            assertEquals( "validation failures", 1, factory.getValidationFailureCount() );
+            assertEquals( "hits", 0, factory.getHitCount() );
+            assertEquals( "accepted", 2, m_server.getAcceptedCount() );
+        }
+        finally
+        {
+            factory.shutdown();
+        }
+    }
+
+    public void testEvictor()
+        throws Exception
+    {
+        final PooledSocketFactory factory = new PooledSocketFactory();
+        factory.setIdleTimeout( 50 );
+        factory.setEvictionInterval( 20 );
+        try
+        {
+            factory.createSocket( getAddress(), m_server.getPort() ).close();
+            assertEquals( "idle", 1, factory.getIdleCount() );
+            final long end = System.currentTimeMillis() + 2000;
+            while( 0 != factory.getIdleCount() && System.currentTimeMillis() < end )
+            {
+                Thread.sleep( 10 );
+            }
+            assertEquals( "idle after eviction", 0, factory.getIdleCount() );
+            assertEquals( "evictions", 1, factory.getEvictionCount() );
+        }
+        finally
+        {
+            factory.shutdown();
+        }
+    }
+
+    public void testMaxLifetime()
+        throws Exception
+    {
+        final PooledSocketFactory factory = new PooledSocketFactory();
+        factory.setMaxLifetime( 50 );
+        try
+        {
+            factory.createSocket( getAddress(), m_server.getPort() ).close();
+            Thread.sleep( 100 );
+            final Socket socket = factory.createSocket( getAddress(), m_server.getPort() );
+            socket.close();
+            assertEquals( "hits", 0, factory.getHitCount() );
+            assertEquals( "misses", 2, factory.getMissCount() );
+            assertTrue( "evictions", factory.getEvictionCount() >= 1 );
+        }
+        finally
+        {
+            factory.shutdown();
+        }
+    }
+
+    public void testLocalPortIsNotPooled()
+        throws Exception
+    {
+        final PooledSocketFactory factory = new PooledSocketFactory();
+        try
+        {
+            final ServerSocket reserved = new ServerSocket( 0 );
+            final int localPort = reserved.getLocalPort();
+            reserved.close();
+            final Socket socket =
+                factory.createSocket( getAddress(), m_server.getPort(), null, localPort );
+            assertEquals( "local port", localPort, socket.getLocalPort() );
+            socket.close();
+            assertEquals( "idle", 0, factory.getIdleCount() );
+        }
+        finally
+        {
+            factory.shutdown();
+        }
+    }
+
+    public void testAvalonConfiguration()
+        throws Exception
+    {
+        final AvalonPooledSocketFactory factory = new AvalonPooledSocketFactory();
+        final DefaultConfiguration configuration = new DefaultConfiguration( "root", "" );
+        final DefaultConfiguration maxIdle = new DefaultConfiguration( "maxIdle", "" );
+        maxIdle.setValue( "0" );
+        configuration.addChild( maxIdle );
+        factory.configure( configuration );
+        try
+        {
+            factory.createSocket( getAddress(), m_server.getPort() ).close();
+            assertEquals( "idle", 0, factory.getIdleCount() );
+            assertEquals( "evictions", 1, factory.getEvictionCount() );
+        }
+        finally
+        {
+            factory.dispose();
+        }
+    }
+
+    private InetAddress getAddress()
+        throws IOException
+    {
+        return InetAddress.getLocalHost();
+    }
+
+    private int roundTrip( final Socket socket, final int value )
+        throws IOException
+    {
+        socket.setSoTimeout( 2000 );
+        final OutputStream output = socket.getOutputStream();
+        output.write( value );
+        output.flush();
+        final InputStream input = socket.getInputStream();
+        return input.read();
+    }
+
+    /**
+     * Server that echoes bytes on each connection until it is closed.
+     */
+    private static class EchoServer
+        extends Thread
+    {
+        private final ServerSocket m_serverSocket;
+        private final List m_connections = new ArrayList();
+        private int m_acceptedCount;
+
+        EchoServer()
+            throws IOException
+        {
+            m_serverSocket = new ServerSocket( 0 );
+            setDaemon( true );
+        }
+
+        int getPort()
+        {
+            return m_serverSocket.getLocalPort();
+        }
+
+        synchronized int getAcceptedCount()
+        {
+            return m_acceptedCount;
+        }
+
+        public void run()
+        {
+            try
+            {
+                while( true )
+                {
+                    final Socket socket = m_serverSocket.accept();
+                    synchronized( this )
+                    {
+                        m_acceptedCount++;
+                        m_connections.add( socket );
+                    }
+                    final Thread echo = new Thread()
+                    {
+                        public void run()
+                        {
+                            echo( socket );
+                        }
+                    };
+                    echo.setDaemon( true );
+                    echo.start();
+                }
+            }
+            catch( final IOException ioe )
+            {
+                //Server closed
+            }
+        }
+
+        void echo( final Socket socket )
+        {
+            try
+            {
+                final InputStream input = socket.getInputStream();
+                final OutputStream output = socket.getOutputStream();
+                int value;
+                while( -1 != ( value = input.read() ) )
+                {
+                    output.write( value );
+                    output.flush();
+                }
+                socket.close();
+            }
+            catch( final IOException ioe )
+            {
+                //Connection closed
+            }
+        }
+
+        synchronized void closeConnections()
+            throws IOException
+        {
+            for( int i = 0; i < m_connections.size(); i++ )
+            {
+                ( (Socket)m_connections.get( i ) ).close();
+            }
+            m_connections.clear();
+        }
+
+        void shutdown()
+            throws IOException
+        {
+            m_serverSocket.close();
+            closeConnections();
+        }
+    }
+}
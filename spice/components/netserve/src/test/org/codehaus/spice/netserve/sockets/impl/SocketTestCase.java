@@ -16,6 +16,7 @@ import java.net.Socket;
 import java.net.UnknownHostException;
 import junit.framework.TestCase;
 import org.codehaus.spice.netserve.sockets.ServerSocketFactory;
+import org.codehaus.spice.netserve.sockets.ServerSocketOptions;
 import org.codehaus.spice.netserve.sockets.SocketFactory;
 
 /**
@@ -45,6 +46,52 @@ public class SocketTestCase
         doSocketPairTest( csf, ssf );
     }
 
+    public void testChannel()
+        throws Exception
+    {
+        final SocketFactory csf = new DefaultSocketFactory();
+        final ServerSocketFactory ssf = new ChannelServerSocketFactory();
+        final ServerSocket serverSocket = ssf.createServerSocket( 0 );
+        try
+        {
+            assertNotNull( "channel", serverSocket.getChannel() );
+        }
+        finally
+        {
+            serverSocket.close();
+        }
+
+        doSocketPairTest( csf, ssf );
+    }
+
+    public void testOptions()
+        throws Exception
+    {
+        final ServerSocketOptions options = new ServerSocketOptions();
+        options.setReuseAddress( true );
+        options.setSoTimeout( 123 );
+        options.setReceiveBufferSize( 32 * 1024 );
+        final ServerSocketFactory[] factories =
+            new ServerSocketFactory[]{new DefaultServerSocketFactory(),
+                                      new ChannelServerSocketFactory()};
+        for( int i = 0; i < factories.length; i++ )
+        {
+            final ServerSocket serverSocket =
+                factories[ i ].createServerSocket( 0, 10, HOST, options );
+            try
+            {
+                assertTrue( "isBound", serverSocket.isBound() );
+                assertEquals( "address", HOST, serverSocket.getInetAddress() );
+                assertTrue( "reuseAddress", serverSocket.getReuseAddress() );
+                assertEquals( "soTimeout", 123, serverSocket.getSoTimeout() );
+            }
+            finally
+            {
+                serverSocket.close();
+            }
+        }
+    }
+
     private void doSocketPairTest( final SocketFactory csf, final ServerSocketFactory ssf ) throws IOException
     {
         try
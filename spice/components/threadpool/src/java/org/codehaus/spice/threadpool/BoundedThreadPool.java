@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool;
+
+/**
+ * A ThreadPool that limits the amount of work it will accept.
+ * When the pool is exhausted, work is handled according to the
+ * {@link RejectionPolicy} of the pool. The execute methods
+ * inherited from {@link ThreadPool} throw an IllegalStateException
+ * if the work is rejected, while the tryExecute methods report the
+ * rejection to the caller.
+ */
+public interface BoundedThreadPool
+    extends ThreadPool
+{
+    /**
+     * Run work in separate thread if the pool admits it.
+     *
+     * @param work the work to be executed.
+     * @return the ThreadControl, or null if the work was rejected
+     */
+    ThreadControl tryExecute( Runnable work );
+
+    /**
+     * Run work in separate thread if the pool admits it.
+     *
+     * @param work the work to be executed.
+     * @return the ThreadControl, or null if the work was rejected
+     */
+    ThreadControl tryExecute( Executable work );
+}
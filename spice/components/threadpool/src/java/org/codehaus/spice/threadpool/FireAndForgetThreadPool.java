@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool;
+
+/**
+ * A ThreadPool that can run work without handing back a
+ * {@link ThreadControl}. The work can not be joined or
+ * interrupted and any exception it throws is reported to the
+ * pool rather than to the caller. In return the pool need not
+ * allocate anything to track the work.
+ */
+public interface FireAndForgetThreadPool
+    extends ThreadPool
+{
+    /**
+     * Run work in separate thread without tracking it.
+     *
+     * @param work the work to be executed.
+     * @return true if the work was admitted, false if it was rejected
+     */
+    boolean executeAndForget( Runnable work );
+
+    /**
+     * Run work in separate thread without tracking it.
+     *
+     * @param work the work to be executed.
+     * @return true if the work was admitted, false if it was rejected
+     */
+    boolean executeAndForget( Executable work );
+}
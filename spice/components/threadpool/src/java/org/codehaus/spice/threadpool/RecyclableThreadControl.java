@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool;
+
+/**
+ * A ThreadControl that the pool may reuse for later work once the
+ * client has called {@link #release()} and the work it was issued
+ * for has finished. A control that is never released is simply not
+ * reused. Every time the control is reused its generation is
+ * incremented. The methods inherited from {@link ThreadControl}
+ * act on the current generation, so code that may still hold the
+ * control after it has been released should record
+ * {@link #getGeneration()} before the release and use the methods
+ * that take a generation, which treat a recycled control as
+ * finished work.
+ */
+public interface RecyclableThreadControl
+    extends ThreadControl
+{
+    /**
+     * Return the generation of the work currently associated with control.
+     *
+     * @return the current generation
+     */
+    int getGeneration();
+
+    /**
+     * Allow the pool to reuse control once the work has finished.
+     * The generation returned by {@link #getGeneration()} remains
+     * stable until release is called.
+     */
+    void release();
+
+    /**
+     * Return true if control is still associated with
+     * the work issued as specified generation.
+     *
+     * @param generation the generation
+     * @return true if control has not been recycled since
+     */
+    boolean isValid( int generation );
+
+    /**
+     * Wait for specified time for the work issued as specified
+     * generation to complete. Returns immediately if the control
+     * has since been recycled.
+     *
+     * @param generation the generation
+     * @param milliSeconds the duration in milliseconds to wait until the thread has finished work
+     * @throws InterruptedException if another thread has interrupted the current thread.
+     */
+    void join( int generation, long milliSeconds )
+        throws InterruptedException;
+
+    /**
+     * Interrupt the work issued as specified generation.
+     * Does nothing if the control has since been recycled.
+     *
+     * @param generation the generation
+     * @throws SecurityException if caller does not have permission to call interupt()
+     */
+    void interrupt( int generation )
+        throws SecurityException;
+
+    /**
+     * Determine if the work issued as specified generation has finished.
+     *
+     * @param generation the generation
+     * @return true if work is finished or control has since been recycled
+     */
+    boolean isFinished( int generation );
+
+    /**
+     * Retrieve throwable that caused the work issued as specified
+     * generation to cease execution.
+     *
+     * @param generation the generation
+     * @return the throwable that caused thread to finish execution
+     * @throws IllegalStateException if isValid( generation ) == false
+     */
+    Throwable getThrowable( int generation )
+        throws IllegalStateException;
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool;
+
+/**
+ * The policy a {@link BoundedThreadPool} applies to work that
+ * is submitted when the pool has no worker available and its
+ * pending work limit has been reached.
+ */
+public final class RejectionPolicy
+{
+    /**
+     * Reject the work immediately.
+     */
+    public static final RejectionPolicy FAIL_FAST = new RejectionPolicy( "fail-fast" );
+
+    /**
+     * Execute the work in the thread that submitted it. This slows
+     * down submitters to the rate at which the pool can keep up.
+     */
+    public static final RejectionPolicy CALLER_RUNS = new RejectionPolicy( "caller-runs" );
+
+    /**
+     * Block the submitter until the work can be accepted or the
+     * block timeout of the pool expires, then reject the work.
+     */
+    public static final RejectionPolicy BLOCK = new RejectionPolicy( "block" );
+
+    /**
+     * The name of policy as used in configuration files.
+     */
+    private final String m_name;
+
+    /**
+     * Create policy with specified name.
+     *
+     * @param name the name of policy
+     */
+    private RejectionPolicy( final String name )
+    {
+        m_name = name;
+    }
+
+    /**
+     * Return the name of policy as used in configuration files.
+     *
+     * @return the name of policy
+     */
+    public String getName()
+    {
+        return m_name;
+    }
+
+    /**
+     * Return the name of policy.
+     *
+     * @return the name of policy
+     */
+    public String toString()
+    {
+        return m_name;
+    }
+
+    /**
+     * Return the policy with specified name.
+     *
+     * @param name the name of policy
+     * @return the policy
+     * @throws IllegalArgumentException if no policy with that name exists
+     */
+    public static RejectionPolicy getPolicy( final String name )
+    {
+        if( null == name )
+        {
+            throw new NullPointerException( "name" );
+        }
+        else if( FAIL_FAST.getName().equals( name ) )
+        {
+            return FAIL_FAST;
+        }
+        else if( CALLER_RUNS.getName().equals( name ) )
+        {
+            return CALLER_RUNS;
+        }
+        else if( BLOCK.getName().equals( name ) )
+        {
+            return BLOCK;
+        }
+        else
+        {
+            throw new IllegalArgumentException( "Unknown rejection policy " + name );
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool;
+
+/**
+ * A ThreadPoolMonitor that is also notified about individual
+ * tasks. Pools only time tasks if their monitor implements
+ * this interface so that other monitors do not pay for it.
+ */
+public interface TaskThreadPoolMonitor
+    extends ThreadPoolMonitor
+{
+    /**
+     * Notify monitor that a task has finished executing.
+     *
+     * @param thread the thread that executed task
+     * @param queueWait the time in milliseconds between task being
+     *        submitted and it starting to execute
+     * @param runTime the time in milliseconds task took to execute
+     * @param throwable the throwable that caused task to fail, or null
+     */
+    void taskCompleted( Thread thread,
+                        long queueWait,
+                        long runTime,
+                        Throwable throwable );
+
+    /**
+     * Notify monitor that the pool rejected a task because
+     * it could not admit it. This is reported even if the
+     * rejection policy then runs the task in the caller.
+     */
+    void taskRejected();
+}
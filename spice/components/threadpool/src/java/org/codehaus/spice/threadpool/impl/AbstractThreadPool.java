@@ -7,13 +7,12 @@
  */
 package org.codehaus.spice.threadpool.impl;
 
+import org.codehaus.spice.threadpool.BoundedThreadPool;
+import org.codehaus.spice.threadpool.FireAndForgetThreadPool;
+import org.codehaus.spice.threadpool.RejectionPolicy;
 import org.codehaus.spice.threadpool.ThreadPool;
 import org.codehaus.spice.threadpool.ThreadControl;
 import org.codehaus.spice.threadpool.Executable;
-import java.util.Set;
-import java.util.HashSet;
-import java.util.Collections;
-import java.util.Iterator;
 
 /**
  * This is the base class of all ThreadPools.
@@ -25,12 +24,19 @@ import java.util.Iterator;
  * @phoenix.service type="ThreadPool"
  */
 public abstract class AbstractThreadPool
-    implements ThreadPool
+    implements ThreadPool, BoundedThreadPool, FireAndForgetThreadPool
 {
     /**
-     * The set of threads that are currently in use.
+     * The first of the threads that are currently in use. The threads
+     * are linked through the workers themselves so that tracking them
+     * does not allocate.
      */
-    private Set m_inUse = Collections.synchronizedSet( new HashSet() );
+    private WorkerThread m_inUse;
+
+    /**
+     * The lock guarding the list of threads in use.
+     */
+    private final Object m_inUseLock = new Object();
 
     /**
      * The thread group associated with pool.
@@ -65,6 +71,24 @@ public abstract class AbstractThreadPool
      */
     private int m_disposeTime = 100;
 
+    /**
+     * The policy applied when no worker is available, or
+     * null if the pool creates extra workers instead.
+     */
+    private RejectionPolicy m_rejectionPolicy;
+
+    /**
+     * The maximum time in milliseconds a submitter waits for a
+     * worker under the BLOCK policy. 0 waits indefinetly.
+     */
+    private long m_blockTimeout;
+
+    /**
+     * True if workers should reuse their ThreadControl
+     * once it has been released by the client.
+     */
+    private boolean m_pooledControls;
+
     /**
      * Destroy a worker thread by scheduling it for shutdown.
      *
@@ -111,7 +135,12 @@ public abstract class AbstractThreadPool
      */
     public ThreadControl execute( final Runnable work )
     {
-        return execute( new ExecutableRunnable( work ) );
+        final ThreadControl control = tryExecute( work );
+        if( null == control )
+        {
+            throw new IllegalStateException( "ThreadPool " + m_name + " rejected work" );
+        }
+        return control;
     }
 
     /**
@@ -119,15 +148,251 @@ public abstract class AbstractThreadPool
      *
      * @param work the work
      * @return the ThreadControl
+     * @throws IllegalStateException if the work was rejected
      */
     public ThreadControl execute( final Executable work )
     {
+        final ThreadControl control = tryExecute( work );
+        if( null == control )
+        {
+            throw new IllegalStateException( "ThreadPool " + m_name + " rejected work" );
+        }
+        return control;
+    }
+
+    /**
+     * Run work in separate thread if the pool admits it.
+     *
+     * @param work the work to be executed.
+     * @return the ThreadControl, or null if the work was rejected
+     */
+    public ThreadControl tryExecute( final Runnable work )
+    {
+        if( null == work )
+        {
+            throw new NullPointerException( "work" );
+        }
+        final long submitTime = getSubmitTime();
         final WorkerThread worker = getWorker();
-        worker.setPriority( m_priority );
-        m_inUse.add( worker );
+        if( null == worker )
+        {
+            return rejectWork( new ExecutableRunnable( work ) );
+        }
+        activateWorker( worker, submitTime );
         return worker.execute( work );
     }
 
+    /**
+     * Execute some executable work in a thread if a
+     * worker can be retrieved from the pool.
+     *
+     * @param work the work
+     * @return the ThreadControl, or null if the work was rejected
+     */
+    public ThreadControl tryExecute( final Executable work )
+    {
+        if( null == work )
+        {
+            throw new NullPointerException( "work" );
+        }
+        final long submitTime = getSubmitTime();
+        final WorkerThread worker = getWorker();
+        if( null == worker )
+        {
+            return rejectWork( work );
+        }
+        activateWorker( worker, submitTime );
+        return worker.execute( work );
+    }
+
+    /**
+     * Run work in separate thread without tracking it.
+     *
+     * @param work the work to be executed.
+     * @return true if the work was admitted, false if it was rejected
+     */
+    public boolean executeAndForget( final Runnable work )
+    {
+        if( null == work )
+        {
+            throw new NullPointerException( "work" );
+        }
+        final long submitTime = getSubmitTime();
+        final WorkerThread worker = getWorker();
+        if( null == worker )
+        {
+            return rejectDetachedWork( new ExecutableRunnable( work ) );
+        }
+        activateWorker( worker, submitTime );
+        worker.executeAndForget( work );
+        return true;
+    }
+
+    /**
+     * Run work in separate thread without tracking it.
+     *
+     * @param work the work to be executed.
+     * @return true if the work was admitted, false if it was rejected
+     */
+    public boolean executeAndForget( final Executable work )
+    {
+        if( null == work )
+        {
+            throw new NullPointerException( "work" );
+        }
+        final long submitTime = getSubmitTime();
+        final WorkerThread worker = getWorker();
+        if( null == worker )
+        {
+            return rejectDetachedWork( work );
+        }
+        activateWorker( worker, submitTime );
+        worker.executeAndForget( work );
+        return true;
+    }
+
+    /**
+     * Return the time work is submitted if work is being
+     * monitored, else 0.
+     *
+     * @return the submit time
+     */
+    private long getSubmitTime()
+    {
+        return isMonitoringWork() ? System.currentTimeMillis() : 0;
+    }
+
+    /**
+     * Prepare a worker retrieved from pool for work.
+     *
+     * @param worker the worker
+     * @param submitTime the time work was submitted, 0 if not monitored
+     */
+    private void activateWorker( final WorkerThread worker, final long submitTime )
+    {
+        worker.setPriority( m_priority );
+        worker.setSubmitTime( submitTime );
+        synchronized( m_inUseLock )
+        {
+            worker.m_previousInUse = null;
+            worker.m_nextInUse = m_inUse;
+            if( null != m_inUse )
+            {
+                m_inUse.m_previousInUse = worker;
+            }
+            m_inUse = worker;
+        }
+    }
+
+    /**
+     * Handle work for which no worker could be retrieved
+     * according to the rejection policy.
+     *
+     * @param work the work
+     * @return the control if work was run by caller, else null
+     */
+    private ThreadControl rejectWork( final Executable work )
+    {
+        workRejected();
+        if( RejectionPolicy.CALLER_RUNS == m_rejectionPolicy )
+        {
+            return QueuedWork.executeInCaller( work );
+        }
+        return null;
+    }
+
+    /**
+     * Handle untracked work for which no worker could be
+     * retrieved according to the rejection policy.
+     *
+     * @param work the work
+     * @return true if work was run by caller, false if it was rejected
+     */
+    private boolean rejectDetachedWork( final Executable work )
+    {
+        final ThreadControl control = rejectWork( work );
+        if( null == control )
+        {
+            return false;
+        }
+        final Throwable throwable = control.getThrowable();
+        if( null != throwable )
+        {
+            detachedWorkFailed( throwable );
+        }
+        return true;
+    }
+
+    /**
+     * Return true if the time taken by each bit of work should be
+     * measured and reported via {@link #workCompleted}. Subclasses
+     * may overide to enable monitoring.
+     *
+     * @return true if work is monitored
+     */
+    protected boolean isMonitoringWork()
+    {
+        return false;
+    }
+
+    /**
+     * Notify pool that a bit of work has finished. Only
+     * called if {@link #isMonitoringWork()} returns true.
+     *
+     * @param worker the worker that executed work
+     * @param queueWait the time between work being submitted and starting
+     * @param runTime the time work took to execute
+     * @param throwable the throwable that caused work to fail, or null
+     */
+    protected void workCompleted( final WorkerThread worker,
+                                  final long queueWait,
+                                  final long runTime,
+                                  final Throwable throwable )
+    {
+    }
+
+    /**
+     * Notify pool that no worker could be retrieved for work.
+     * Subclasses may overide to report the rejection.
+     */
+    protected void workRejected()
+    {
+    }
+
+    /**
+     * Notify pool that work that was executed without
+     * a ThreadControl failed. Subclasses may overide to
+     * report the failure.
+     *
+     * @param throwable the cause of failure
+     */
+    protected void detachedWorkFailed( final Throwable throwable )
+    {
+    }
+
+    /**
+     * Return true if workers should reuse their ThreadControl
+     * once it has been released by the client.
+     *
+     * @return true if ThreadControls are pooled
+     */
+    protected boolean isPooledControls()
+    {
+        return m_pooledControls;
+    }
+
+    /**
+     * Set flag indicating whether workers should reuse their
+     * ThreadControl once it has been released by the client. The
+     * controls returned by pool then implement RecyclableThreadControl.
+     *
+     * @param pooledControls true if ThreadControls should be pooled
+     */
+    protected void setPooledControls( final boolean pooledControls )
+    {
+        m_pooledControls = pooledControls;
+    }
+
     /**
      * Helper method that attempts to shutdown all
      * threads that originated from this pool and are
@@ -135,15 +400,18 @@ public abstract class AbstractThreadPool
      */
     protected void shutdownInUseThreads()
     {
-        synchronized( m_inUse )
+        synchronized( m_inUseLock )
         {
-            final Iterator iterator = m_inUse.iterator();
-            while( iterator.hasNext() )
+            WorkerThread worker = m_inUse;
+            m_inUse = null;
+            while( null != worker )
             {
-                final WorkerThread worker = (WorkerThread)iterator.next();
+                final WorkerThread next = worker.m_nextInUse;
+                worker.m_previousInUse = null;
+                worker.m_nextInUse = null;
                 destroyWorker( worker );
+                worker = next;
             }
-            m_inUse.clear();
         }
     }
 
@@ -249,6 +517,49 @@ public abstract class AbstractThreadPool
         m_disposeTime = disposeTime;
     }
 
+    /**
+     * Return the policy applied when no worker is available.
+     *
+     * @return the policy, or null if the pool creates extra workers instead
+     */
+    protected RejectionPolicy getRejectionPolicy()
+    {
+        return m_rejectionPolicy;
+    }
+
+    /**
+     * Set the policy applied when no worker is available.
+     *
+     * @param rejectionPolicy the policy, or null if the pool should
+     *        create extra workers instead
+     */
+    protected void setRejectionPolicy( final RejectionPolicy rejectionPolicy )
+    {
+        m_rejectionPolicy = rejectionPolicy;
+    }
+
+    /**
+     * Return the maximum time in milliseconds a submitter
+     * waits for a worker under the BLOCK policy.
+     *
+     * @return the block timeout in milliseconds
+     */
+    protected long getBlockTimeout()
+    {
+        return m_blockTimeout;
+    }
+
+    /**
+     * Set the maximum time in milliseconds a submitter waits for
+     * a worker under the BLOCK policy. 0 waits indefinetly.
+     *
+     * @param blockTimeout the block timeout in milliseconds
+     */
+    protected void setBlockTimeout( final long blockTimeout )
+    {
+        m_blockTimeout = blockTimeout;
+    }
+
     /**
      * Return the WorkerThread to management by the ThreadPool object.
      *
@@ -256,14 +567,33 @@ public abstract class AbstractThreadPool
      */
     protected void threadCompleted( final WorkerThread worker )
     {
-        m_inUse.remove( worker );
+        synchronized( m_inUseLock )
+        {
+            final WorkerThread previous = worker.m_previousInUse;
+            final WorkerThread next = worker.m_nextInUse;
+            if( null != previous )
+            {
+                previous.m_nextInUse = next;
+            }
+            else if( m_inUse == worker )
+            {
+                m_inUse = next;
+            }
+            if( null != next )
+            {
+                next.m_previousInUse = previous;
+            }
+            worker.m_previousInUse = null;
+            worker.m_nextInUse = null;
+        }
         releaseWorker( worker );
     }
 
     /**
      * Retrieve a worker thread from pool.
      *
-     * @return the worker thread retrieved from pool
+     * @return the worker thread retrieved from pool, or
+     *         null if the pool is exhausted
      */
     protected abstract WorkerThread getWorker();
 
@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.impl;
+
+/**
+ * Periodically samples the utilization of a {@link CommonsThreadPool}
+ * and grows or shrinks the number of workers it allows between a
+ * lower and upper bound.
+ *
+ * <p>Utilization is the percentage of allowed workers that are active.
+ * The pool grows when utilization is at or above the grow threshold,
+ * or when submitters are waiting for a worker. It shrinks when
+ * utilization is at or below the shrink threshold and nobody is
+ * waiting. To avoid reacting to short bursts the same condition must
+ * be seen on a number of consecutive samples (the hysteresis) before
+ * the pool is resized. Each resize changes the limit by a quarter,
+ * or by at least one worker. When growing it also adds at least as
+ * many workers as there are waiting submitters.</p>
+ */
+final class AdaptiveSizingController
+    implements Runnable
+{
+    /**
+     * The pool being sized.
+     */
+    private final CommonsThreadPool m_pool;
+
+    /**
+     * The minimum number of workers.
+     */
+    private final int m_minThreads;
+
+    /**
+     * The maximum number of workers.
+     */
+    private final int m_maxThreads;
+
+    /**
+     * The time in milliseconds between samples.
+     */
+    private final long m_sampleInterval;
+
+    /**
+     * The utilization percentage at or above which pool grows.
+     */
+    private final int m_growUtilization;
+
+    /**
+     * The utilization percentage at or below which pool shrinks.
+     */
+    private final int m_shrinkUtilization;
+
+    /**
+     * The number of consecutive samples required to resize.
+     */
+    private final int m_hysteresis;
+
+    /**
+     * The number of consecutive samples that asked to grow pool.
+     */
+    private int m_busySamples;
+
+    /**
+     * The number of consecutive samples that asked to shrink pool.
+     */
+    private int m_quietSamples;
+
+    /**
+     * Set to true when controller should stop.
+     */
+    private boolean m_stopped;
+
+    /**
+     * The thread sampling the pool.
+     */
+    private Thread m_thread;
+
+    /**
+     * Create a controller for specified pool.
+     *
+     * @param pool the pool
+     * @param minThreads the minimum number of workers
+     * @param maxThreads the maximum number of workers
+     * @param sampleInterval the time in milliseconds between samples
+     * @param growUtilization the utilization percentage at or above which pool grows
+     * @param shrinkUtilization the utilization percentage at or below which pool shrinks
+     * @param hysteresis the number of consecutive samples required to resize
+     */
+    AdaptiveSizingController( final CommonsThreadPool pool,
+                              final int minThreads,
+                              final int maxThreads,
+                              final long sampleInterval,
+                              final int growUtilization,
+                              final int shrinkUtilization,
+                              final int hysteresis )
+    {
+        if( minThreads < 1 || maxThreads < minThreads )
+        {
+            throw new IllegalArgumentException( "minThreads=" + minThreads +
+                                                " maxThreads=" + maxThreads );
+        }
+        if( sampleInterval < 1 )
+        {
+            throw new IllegalArgumentException( "sampleInterval" );
+        }
+        if( shrinkUtilization < 0 ||
+            growUtilization > 100 ||
+            shrinkUtilization >= growUtilization )
+        {
+            throw new IllegalArgumentException( "growUtilization=" + growUtilization +
+                                                " shrinkUtilization=" + shrinkUtilization );
+        }
+        if( hysteresis < 1 )
+        {
+            throw new IllegalArgumentException( "hysteresis" );
+        }
+        m_pool = pool;
+        m_minThreads = minThreads;
+        m_maxThreads = maxThreads;
+        m_sampleInterval = sampleInterval;
+        m_growUtilization = growUtilization;
+        m_shrinkUtilization = shrinkUtilization;
+        m_hysteresis = hysteresis;
+    }
+
+    /**
+     * Start the thread sampling the pool.
+     *
+     * @param group the thread group of thread
+     * @param name the name of thread
+     */
+    synchronized void start( final ThreadGroup group, final String name )
+    {
+        m_thread = new Thread( group, this, name );
+        m_thread.setDaemon( true );
+        m_thread.start();
+    }
+
+    /**
+     * Stop the thread sampling the pool.
+     */
+    void stop()
+    {
+        final Thread thread;
+        synchronized( this )
+        {
+            m_stopped = true;
+            notifyAll();
+            thread = m_thread;
+        }
+        if( null != thread && Thread.currentThread() != thread )
+        {
+            try
+            {
+                thread.join( m_sampleInterval );
+            }
+            catch( final InterruptedException ie )
+            {
+                //Ignore
+            }
+        }
+    }
+
+    /**
+     * Sample the pool until stopped.
+     */
+    public void run()
+    {
+        while( waitForNextSample() )
+        {
+            sample();
+        }
+    }
+
+    /**
+     * Sample the pool once and resize it if required.
+     */
+    void sample()
+    {
+        final int limit = m_pool.getWorkerLimit();
+        final int next = nextLimit( limit,
+                                    m_pool.getActiveCount(),
+                                    m_pool.getPendingCount() );
+        if( next != limit )
+        {
+            m_pool.setWorkerLimit( next );
+        }
+    }
+
+    /**
+     * Determine the worker limit after a sample.
+     *
+     * @param limit the current worker limit
+     * @param active the number of active workers
+     * @param pending the number of submitters waiting for a worker
+     * @return the new worker limit
+     */
+    synchronized int nextLimit( final int limit, final int active, final int pending )
+    {
+        final int utilization = ( limit <= 0 ) ? 100 : active * 100 / limit;
+        if( pending > 0 || utilization >= m_growUtilization )
+        {
+            m_quietSamples = 0;
+            m_busySamples++;
+            if( m_busySamples >= m_hysteresis && limit < m_maxThreads )
+            {
+                m_busySamples = 0;
+                final int step = Math.max( getStep( limit ), pending );
+                return Math.min( m_maxThreads, limit + step );
+            }
+        }
+        else if( utilization <= m_shrinkUtilization )
+        {
+            m_busySamples = 0;
+            m_quietSamples++;
+            if( m_quietSamples >= m_hysteresis && limit > m_minThreads )
+            {
+                m_quietSamples = 0;
+                final int target = Math.max( active, limit - getStep( limit ) );
+                return Math.max( m_minThreads, target );
+            }
+        }
+        else
+        {
+            m_busySamples = 0;
+            m_quietSamples = 0;
+        }
+        return limit;
+    }
+
+    /**
+     * Return the number of workers to add or remove when resizing.
+     *
+     * @param limit the current worker limit
+     * @return the number of workers
+     */
+    private int getStep( final int limit )
+    {
+        return Math.max( 1, limit / 4 );
+    }
+
+    /**
+     * Wait until it is time to take next sample.
+     *
+     * @return false if controller has been stopped
+     */
+    private synchronized boolean waitForNextSample()
+    {
+        final long end = System.currentTimeMillis() + m_sampleInterval;
+        while( !m_stopped )
+        {
+            final long remaining = end - System.currentTimeMillis();
+            if( remaining <= 0 )
+            {
+                return true;
+            }
+            try
+            {
+                wait( remaining );
+            }
+            catch( final InterruptedException ie )
+            {
+                //Ignore
+            }
+        }
+        return false;
+    }
+}
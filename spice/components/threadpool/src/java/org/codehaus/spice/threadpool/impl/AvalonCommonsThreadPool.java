@@ -16,6 +16,7 @@ import org.apache.avalon.framework.activity.Initializable;
 import org.apache.avalon.framework.activity.Disposable;
 import org.apache.avalon.framework.container.ContainerUtil;
 import org.apache.commons.pool.impl.GenericObjectPool;
+import org.codehaus.spice.threadpool.RejectionPolicy;
 
 /**
  * The AvalonCommonsThreadPool wraps the CommonsThreadPool for
@@ -83,6 +84,38 @@ public class AvalonCommonsThreadPool
             configuration.getChild( "max-threads" ).getValueAsInteger( 10 );
         config.maxIdle = configuration.getChild( "max-idle" ).
             getValueAsInteger( config.maxActive / 2 );
+
+        final String policy =
+            configuration.getChild( "rejection-policy" ).getValue( null );
+        if( null != policy )
+        {
+            try
+            {
+                setRejectionPolicy( RejectionPolicy.getPolicy( policy ) );
+            }
+            catch( final IllegalArgumentException iae )
+            {
+                throw new ConfigurationException( iae.getMessage(), iae );
+            }
+        }
+        setBlockTimeout( configuration.getChild( "block-timeout" ).
+                         getValueAsLong( 0 ) );
+        setMaxPending( configuration.getChild( "max-pending" ).
+                       getValueAsInteger( 0 ) );
+        setPooledControls( configuration.getChild( "pooled-controls" ).
+                           getValueAsBoolean( false ) );
+        setAdaptiveSizing( configuration.getChild( "adaptive-sizing" ).
+                           getValueAsBoolean( false ) );
+        setMinThreads( configuration.getChild( "min-threads" ).
+                       getValueAsInteger( 1 ) );
+        setSampleInterval( configuration.getChild( "sample-interval" ).
+                           getValueAsLong( 1000 ) );
+        setGrowUtilization( configuration.getChild( "grow-utilization" ).
+                            getValueAsInteger( 90 ) );
+        setShrinkUtilization( configuration.getChild( "shrink-utilization" ).
+                              getValueAsInteger( 50 ) );
+        setHysteresis( configuration.getChild( "hysteresis" ).
+                       getValueAsInteger( 3 ) );
     }
 
     /**
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.impl;
+
+import org.apache.avalon.framework.activity.Disposable;
+import org.apache.avalon.framework.activity.Initializable;
+import org.apache.avalon.framework.configuration.Configurable;
+import org.apache.avalon.framework.configuration.Configuration;
+import org.apache.avalon.framework.configuration.ConfigurationException;
+import org.apache.avalon.framework.container.ContainerUtil;
+import org.apache.avalon.framework.logger.LogEnabled;
+import org.apache.avalon.framework.logger.Logger;
+import org.codehaus.spice.threadpool.RejectionPolicy;
+
+/**
+ * The AvalonWorkStealingThreadPool wraps the WorkStealingThreadPool for
+ * Avalon-compatible systems.
+ *
+ * @phoenix.service type="ThreadPool"
+ */
+public class AvalonWorkStealingThreadPool
+    extends WorkStealingThreadPool
+    implements LogEnabled, Configurable, Initializable, Disposable
+{
+    /**
+     * The logger for component.
+     */
+    private Logger m_logger;
+
+    /**
+     * Set the logger for component.
+     *
+     * @param logger the logger for component.
+     */
+    public void enableLogging( final Logger logger )
+    {
+        m_logger = logger;
+    }
+
+    /**
+     * Configure the pool. See class javadocs for example.
+     *
+     * @param configuration the configuration object
+     * @throws ConfigurationException if malformed configuration
+     * @phoenix.configuration
+     *    type="http://relaxng.org/ns/structure/1.0"
+     *    location="WorkStealingThreadPool-schema.xml"
+     */
+    public void configure( final Configuration configuration )
+        throws ConfigurationException
+    {
+        final String name =
+            configuration.getChild( "name" ).getValue();
+        setName( name );
+        final int priority =
+            configuration.getChild( "priority" ).getValueAsInteger( Thread.NORM_PRIORITY );
+        setPriority( priority );
+        final boolean isDaemon =
+            configuration.getChild( "is-daemon" ).getValueAsBoolean( false );
+        setDaemon( isDaemon );
+
+        setMaxThreads( configuration.getChild( "max-threads" ).
+                       getValueAsInteger( Runtime.getRuntime().availableProcessors() ) );
+        setQueueSize( configuration.getChild( "queue-size" ).
+                      getValueAsInteger( 1000 ) );
+
+        final String policy =
+            configuration.getChild( "rejection-policy" ).getValue( null );
+        if( null != policy )
+        {
+            try
+            {
+                setRejectionPolicy( RejectionPolicy.getPolicy( policy ) );
+            }
+            catch( final IllegalArgumentException iae )
+            {
+                throw new ConfigurationException( iae.getMessage(), iae );
+            }
+        }
+        setBlockTimeout( configuration.getChild( "block-timeout" ).
+                         getValueAsLong( 0 ) );
+    }
+
+    /**
+     * Initialize the monitor then initialize parent class.
+     */
+    public void initialize()
+        throws Exception
+    {
+        final AvalonLoggerThreadPoolMonitor monitor = new AvalonLoggerThreadPoolMonitor();
+        ContainerUtil.enableLogging( monitor, m_logger );
+        setMonitor( monitor );
+        setup();
+    }
+
+    public void dispose()
+    {
+        shutdown();
+    }
+}
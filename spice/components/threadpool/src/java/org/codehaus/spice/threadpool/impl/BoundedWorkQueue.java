@@ -0,0 +1,366 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.impl;
+
+/**
+ * A bounded FIFO queue backed by a fixed size ring buffer.
+ * Submitting and retrieving items never allocates and the
+ * critical sections consist of a couple of array and index
+ * updates. Waiting threads are only notified when there is
+ * actually someone waiting.
+ */
+final class BoundedWorkQueue
+{
+    /**
+     * The ring buffer of queued items.
+     */
+    private final Object[] m_items;
+
+    /**
+     * Index of the next item to be taken.
+     */
+    private int m_takeIndex;
+
+    /**
+     * Index of the next slot to be filled.
+     */
+    private int m_putIndex;
+
+    /**
+     * Number of items currently in queue.
+     */
+    private int m_count;
+
+    /**
+     * Number of threads waiting for an item.
+     */
+    private int m_waitingTakers;
+
+    /**
+     * Number of threads waiting for a free slot.
+     */
+    private int m_waitingPutters;
+
+    /**
+     * Set to true when queue is closed.
+     */
+    private boolean m_closed;
+
+    /**
+     * Create a queue with specified capacity.
+     *
+     * @param capacity the maximum number of items in queue
+     */
+    BoundedWorkQueue( final int capacity )
+    {
+        if( capacity < 1 )
+        {
+            throw new IllegalArgumentException( "capacity" );
+        }
+        m_items = new Object[ capacity ];
+    }
+
+    /**
+     * Add an item to the tail of the queue. If the queue
+     * is full then wait up to the specified timeout for space
+     * to become available. A timeout of 0 will wait indefinetly.
+     *
+     * @param item the item
+     * @param timeout the maximum time to wait in milliseconds
+     * @return true if item was added, false if timed out
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IllegalStateException if queue has been closed
+     */
+    synchronized boolean put( final Object item, final long timeout )
+        throws InterruptedException
+    {
+        if( null == item )
+        {
+            throw new NullPointerException( "item" );
+        }
+        if( m_count == m_items.length )
+        {
+            final long end = System.currentTimeMillis() + timeout;
+            m_waitingPutters++;
+            try
+            {
+                while( !m_closed && m_count == m_items.length )
+                {
+                    if( 0 == timeout )
+                    {
+                        wait();
+                    }
+                    else
+                    {
+                        final long remaining = end - System.currentTimeMillis();
+                        if( remaining <= 0 )
+                        {
+                            return false;
+                        }
+                        wait( remaining );
+                    }
+                }
+            }
+            catch( final InterruptedException ie )
+            {
+                //Pass on any notification we may have consumed
+                notify();
+                throw ie;
+            }
+            finally
+            {
+                m_waitingPutters--;
+            }
+        }
+        return offer( item );
+    }
+
+    /**
+     * Add an item to the tail of the queue, waiting up to the
+     * specified timeout for space like {@link #put(Object, long)}
+     * but continuing to wait if the calling thread is interrupted.
+     * The interrupted status of the thread is restored on return.
+     *
+     * @param item the item
+     * @param timeout the maximum time to wait in milliseconds, 0 waits indefinetly
+     * @return true if item was added, false if timed out
+     * @throws IllegalStateException if queue has been closed
+     */
+    boolean putUninterruptibly( final Object item, final long timeout )
+    {
+        final long end = System.currentTimeMillis() + timeout;
+        boolean interrupted = false;
+        try
+        {
+            while( true )
+            {
+                long remaining = 0;
+                if( 0 != timeout )
+                {
+                    remaining = end - System.currentTimeMillis();
+                    if( remaining <= 0 )
+                    {
+                        return offer( item );
+                    }
+                }
+                try
+                {
+                    return put( item, remaining );
+                }
+                catch( final InterruptedException ie )
+                {
+                    interrupted = true;
+                }
+            }
+        }
+        finally
+        {
+            if( interrupted )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Add an item to the tail of the queue if there is space
+     * available, without waiting.
+     *
+     * @param item the item
+     * @return true if item was added, false if queue is full
+     * @throws IllegalStateException if queue has been closed
+     */
+    synchronized boolean offer( final Object item )
+    {
+        if( null == item )
+        {
+            throw new NullPointerException( "item" );
+        }
+        if( m_closed )
+        {
+            throw new IllegalStateException( "Queue closed" );
+        }
+        if( m_count == m_items.length )
+        {
+            return false;
+        }
+        m_items[ m_putIndex ] = item;
+        m_putIndex = next( m_putIndex );
+        m_count++;
+        if( 0 != m_waitingTakers )
+        {
+            signal( m_waitingPutters );
+        }
+        return true;
+    }
+
+    /**
+     * Retrieve and remove the item at head of queue, waiting
+     * up to specified timeout if the queue is empty. A timeout
+     * of 0 will wait indefinetly.
+     *
+     * @param timeout the maximum time to wait in milliseconds
+     * @return the item or null if timed out or queue closed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized Object take( final long timeout )
+        throws InterruptedException
+    {
+        if( 0 == m_count )
+        {
+            final long end = System.currentTimeMillis() + timeout;
+            m_waitingTakers++;
+            try
+            {
+                while( !m_closed && 0 == m_count )
+                {
+                    if( 0 == timeout )
+                    {
+                        wait();
+                    }
+                    else
+                    {
+                        final long remaining = end - System.currentTimeMillis();
+                        if( remaining <= 0 )
+                        {
+                            return null;
+                        }
+                        wait( remaining );
+                    }
+                }
+            }
+            catch( final InterruptedException ie )
+            {
+                //Pass on any notification we may have consumed
+                notify();
+                throw ie;
+            }
+            finally
+            {
+                m_waitingTakers--;
+            }
+        }
+        return poll();
+    }
+
+    /**
+     * Retrieve and remove the item at head of queue
+     * without waiting if the queue is empty.
+     *
+     * @return the item or null if queue is empty
+     */
+    synchronized Object poll()
+    {
+        if( 0 == m_count )
+        {
+            return null;
+        }
+        final Object item = m_items[ m_takeIndex ];
+        m_items[ m_takeIndex ] = null;
+        m_takeIndex = next( m_takeIndex );
+        m_count--;
+        if( 0 != m_waitingPutters )
+        {
+            signal( m_waitingTakers );
+        }
+        return item;
+    }
+
+    /**
+     * Close the queue, waking up all waiting threads and
+     * returning any items that were still queued.
+     *
+     * @return the items that were still queued
+     */
+    synchronized Object[] close()
+    {
+        m_closed = true;
+        final Object[] pending = new Object[ m_count ];
+        for( int i = 0; i < pending.length; i++ )
+        {
+            pending[ i ] = m_items[ m_takeIndex ];
+            m_items[ m_takeIndex ] = null;
+            m_takeIndex = next( m_takeIndex );
+        }
+        m_count = 0;
+        m_putIndex = m_takeIndex;
+        notifyAll();
+        return pending;
+    }
+
+    /**
+     * Return the number of items in queue.
+     *
+     * @return the number of items in queue.
+     */
+    synchronized int size()
+    {
+        return m_count;
+    }
+
+    /**
+     * Return the maximum number of items queue can hold.
+     *
+     * @return the maximum number of items queue can hold.
+     */
+    int getCapacity()
+    {
+        return m_items.length;
+    }
+
+    /**
+     * Return the number of threads waiting to take an item.
+     *
+     * @return the number of threads waiting to take an item.
+     */
+    synchronized int getWaitingTakers()
+    {
+        return m_waitingTakers;
+    }
+
+    /**
+     * Return true if queue has been closed.
+     *
+     * @return true if queue has been closed.
+     */
+    synchronized boolean isClosed()
+    {
+        return m_closed;
+    }
+
+    /**
+     * Wake up a waiting thread. If threads of the other kind are
+     * waiting on the monitor then all threads need to be woken up
+     * as notify() may otherwise select the wrong kind of thread.
+     *
+     * @param otherWaiters the number of waiting threads of the other kind
+     */
+    private void signal( final int otherWaiters )
+    {
+        if( 0 == otherWaiters )
+        {
+            notify();
+        }
+        else
+        {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Return the index after specified index.
+     *
+     * @param index the index
+     * @return the next index
+     */
+    private int next( final int index )
+    {
+        final int next = index + 1;
+        return ( next == m_items.length ) ? 0 : next;
+    }
+}
@@ -7,8 +7,11 @@
  */
 package org.codehaus.spice.threadpool.impl;
 
+import java.util.NoSuchElementException;
 import org.apache.commons.pool.PoolableObjectFactory;
 import org.apache.commons.pool.impl.GenericObjectPool;
+import org.codehaus.spice.threadpool.RejectionPolicy;
+import org.codehaus.spice.threadpool.TaskThreadPoolMonitor;
 import org.codehaus.spice.threadpool.ThreadPool;
 import org.codehaus.spice.threadpool.ThreadPoolMonitor;
 
@@ -24,9 +27,41 @@ import org.codehaus.spice.threadpool.ThreadPoolMonitor;
  *   &lt;resource-limiting&gt;false&lt;/resource-limiting&gt; &lt;!-- will pool block when max threads reached? --&gt;
  *   &lt;max-threads&gt;10&lt;/max-threads&gt;
  *   &lt;max-idle&gt;5&lt;/max-idle&gt; &lt;!-- maximum number of idle threads --&gt;
+ *   &lt;rejection-policy&gt;block&lt;/rejection-policy&gt; &lt;!-- fail-fast, caller-runs or block --&gt;
+ *   &lt;block-timeout&gt;1000&lt;/block-timeout&gt; &lt;!-- max wait for a thread, 0 waits forever --&gt;
+ *   &lt;max-pending&gt;100&lt;/max-pending&gt; &lt;!-- max submitters waiting for a thread, 0 for no limit --&gt;
+ *   &lt;pooled-controls&gt;false&lt;/pooled-controls&gt; &lt;!-- reuse released ThreadControls? --&gt;
+ *   &lt;adaptive-sizing&gt;false&lt;/adaptive-sizing&gt; &lt;!-- adapt worker limit to utilization? --&gt;
+ *   &lt;min-threads&gt;1&lt;/min-threads&gt; &lt;!-- lower bound of worker limit --&gt;
+ *   &lt;sample-interval&gt;1000&lt;/sample-interval&gt; &lt;!-- ms between utilization samples --&gt;
+ *   &lt;grow-utilization&gt;90&lt;/grow-utilization&gt; &lt;!-- percentage active at which pool grows --&gt;
+ *   &lt;shrink-utilization&gt;50&lt;/shrink-utilization&gt; &lt;!-- percentage active at which pool shrinks --&gt;
+ *   &lt;hysteresis&gt;3&lt;/hysteresis&gt; &lt;!-- consecutive samples required to resize --&gt;
  * &lt;/config&gt;
  * </pre>
  *
+ * <p>If a rejection-policy is specified the pool never grows
+ * beyond max-threads, regardless of resource-limiting. Work
+ * that is rejected causes execute() to throw an
+ * IllegalStateException and tryExecute() to return null.</p>
+ *
+ * <p>If pooled-controls is true the ThreadControls returned by the
+ * pool implement RecyclableThreadControl and each worker reuses its
+ * control once the client has released it, so that submitting work
+ * does not allocate a new control. Clients that do not need a control
+ * at all can use executeAndForget(). Neither makes submitting work
+ * allocation free: returning a worker to the underlying commons-pool
+ * GenericObjectPool still allocates an entry for its idle list on
+ * every task. Use AllocationBenchmark from the tests to measure the
+ * cost of each way of submitting work.</p>
+ *
+ * <p>If adaptive-sizing is true the pool starts out allowing
+ * min-threads workers and an {@link AdaptiveSizingController}
+ * raises or lowers the limit, up to max-threads, according to the
+ * measured utilization. The limit is only enforced if the pool is
+ * bounded by resource-limiting or a rejection-policy; otherwise it
+ * only bounds the number of idle workers kept.</p>
+ *
  * @author Peter Donald
  * @version $Revision: 1.2 $ $Date: 2004-03-21 23:42:58 $
  */
@@ -56,12 +91,80 @@ public class CommonsThreadPool
      */
     private ThreadPoolMonitor m_monitor;
 
+    /**
+     * The monitor if it wants to be notified about
+     * individual tasks, else null.
+     */
+    private TaskThreadPoolMonitor m_taskMonitor;
+
+    /**
+     * The maximum number of submitters that may be waiting
+     * for a worker under the BLOCK policy. 0 for no limit.
+     */
+    private int m_maxPending;
+
+    /**
+     * The number of submitters waiting for a worker.
+     */
+    private int m_pending;
+
+    /**
+     * True if the number of workers should adapt to utilization.
+     */
+    private boolean m_adaptiveSizing;
+
+    /**
+     * The minimum number of workers when sizing adaptively.
+     */
+    private int m_minThreads = 1;
+
+    /**
+     * The time in milliseconds between utilization samples.
+     */
+    private long m_sampleInterval = 1000;
+
+    /**
+     * The utilization percentage at or above which pool grows.
+     */
+    private int m_growUtilization = 90;
+
+    /**
+     * The utilization percentage at or below which pool shrinks.
+     */
+    private int m_shrinkUtilization = 50;
+
+    /**
+     * The number of consecutive samples required to resize pool.
+     */
+    private int m_hysteresis = 3;
+
+    /**
+     * The configured maximum number of idle workers.
+     */
+    private int m_idleCeiling;
+
+    /**
+     * The controller sizing the pool, null if not sizing adaptively.
+     */
+    private AdaptiveSizingController m_controller;
+
    /**
      * Initialize the underlying pool.
      */
     public void setup()
     {
         setThreadGroup( Thread.currentThread().getThreadGroup() );
+        final RejectionPolicy policy = getRejectionPolicy();
+        if( RejectionPolicy.BLOCK == policy )
+        {
+            final long timeout = getBlockTimeout();
+            m_config.whenExhaustedAction = GenericObjectPool.WHEN_EXHAUSTED_BLOCK;
+            m_config.maxWait = ( 0 == timeout ) ? -1 : timeout;
+        }
+        else if( null != policy )
+        {
+            m_config.whenExhaustedAction = GenericObjectPool.WHEN_EXHAUSTED_FAIL;
+        }
         m_monitor.newThreadPool( getName(),
                                  getPriority(),
                                  isDaemon(),
@@ -69,6 +172,21 @@ public class CommonsThreadPool
                                  m_config.maxIdle );
         m_pool = new GenericObjectPool( this, m_config );
         setDisposeTime( 100 );
+
+        if( m_adaptiveSizing )
+        {
+            m_idleCeiling = m_config.maxIdle;
+            m_controller =
+                new AdaptiveSizingController( this,
+                                              m_minThreads,
+                                              m_config.maxActive,
+                                              m_sampleInterval,
+                                              m_growUtilization,
+                                              m_shrinkUtilization,
+                                              m_hysteresis );
+            setWorkerLimit( m_minThreads );
+            m_controller.start( getThreadGroup(), getName() + " Sizing Controller" );
+        }
     }
 
     /**
@@ -76,6 +194,10 @@ public class CommonsThreadPool
      */
     public void shutdown()
     {
+        if( null != m_controller )
+        {
+            m_controller.stop();
+        }
         shutdownInUseThreads();
         m_disposed = true;
         try
@@ -92,21 +214,122 @@ public class CommonsThreadPool
     /**
      * Retrieve a worker thread from pool.
      *
-     * @return the worker thread retrieved from pool
+     * @return the worker thread retrieved from pool, or
+     *         null if the pool is exhausted
      */
     protected WorkerThread getWorker()
     {
+        //Only submitters that may have to wait for a worker count as pending
+        final boolean mayWait = !isWorkerAvailable();
+        if( mayWait && !enterPending() )
+        {
+            return null;
+        }
         try
         {
             final WorkerThread worker = (WorkerThread)m_pool.borrowObject();
             m_monitor.threadRetrieved( worker );
             return worker;
         }
+        catch( final NoSuchElementException nsee )
+        {
+            //Pool exhausted so leave it to rejection policy
+            return null;
+        }
         catch( final Exception e )
         {
             m_monitor.unexpectedError( "Retrieving thread from pool", e );
-            return createWorker();
+            return null;
+        }
+        finally
+        {
+            if( mayWait )
+            {
+                exitPending();
+            }
+        }
+    }
+
+    /**
+     * Determine whether a worker can be retrieved from pool without
+     * waiting. The answer may be out of date by the time the worker
+     * is retrieved.
+     *
+     * @return true if a worker is idle or another may be created
+     */
+    private boolean isWorkerAvailable()
+    {
+        final int maxActive = m_pool.getMaxActive();
+        return m_pool.getNumIdle() > 0 ||
+            maxActive < 0 ||
+            m_pool.getNumActive() < maxActive;
+    }
+
+    /**
+     * Register a submitter that may wait for a worker.
+     *
+     * @return false if too many submitters are already waiting
+     */
+    private synchronized boolean enterPending()
+    {
+        if( 0 != m_maxPending && m_pending >= m_maxPending )
+        {
+            return false;
         }
+        m_pending++;
+        return true;
+    }
+
+    /**
+     * Deregister a submitter that may have waited for a worker.
+     */
+    private synchronized void exitPending()
+    {
+        m_pending--;
+    }
+
+    /**
+     * Return the number of submitters waiting for a worker.
+     *
+     * @return the number of submitters waiting for a worker
+     */
+    synchronized int getPendingCount()
+    {
+        return m_pending;
+    }
+
+    /**
+     * Return the number of workers currently executing work.
+     *
+     * @return the number of active workers
+     */
+    int getActiveCount()
+    {
+        return m_pool.getNumActive();
+    }
+
+    /**
+     * Return the maximum number of workers currently allowed.
+     *
+     * @return the worker limit
+     */
+    int getWorkerLimit()
+    {
+        return m_pool.getMaxActive();
+    }
+
+    /**
+     * Change the maximum number of workers allowed. The maximum number
+     * of idle workers is lowered with it but never raised above the
+     * configured max-idle. Idle workers above the new limit are
+     * discarded as they are returned to the pool.
+     *
+     * @param limit the worker limit
+     */
+    void setWorkerLimit( final int limit )
+    {
+        m_pool.setMaxActive( limit );
+        m_pool.setMaxIdle( Math.min( m_idleCeiling, limit ) );
     }
 
     /**
@@ -140,6 +363,56 @@ public class CommonsThreadPool
         }
     }
 
+    /**
+     * Report failure of work executed without a ThreadControl to monitor.
+     *
+     * @param throwable the cause of failure
+     */
+    protected void detachedWorkFailed( final Throwable throwable )
+    {
+        m_monitor.unexpectedError( "Detached work failed", throwable );
+    }
+
+    /**
+     * Time work if monitor wants to be notified about tasks.
+     *
+     * @return true if work is monitored
+     */
+    protected boolean isMonitoringWork()
+    {
+        return null != m_taskMonitor;
+    }
+
+    /**
+     * Report completion of work to monitor.
+     *
+     * @param worker the worker that executed work
+     * @param queueWait the time between work being submitted and starting
+     * @param runTime the time work took to execute
+     * @param throwable the throwable that caused work to fail, or null
+     */
+    protected void workCompleted( final WorkerThread worker,
+                                  final long queueWait,
+                                  final long runTime,
+                                  final Throwable throwable )
+    {
+        if( null != m_taskMonitor )
+        {
+            m_taskMonitor.taskCompleted( worker, queueWait, runTime, throwable );
+        }
+    }
+
+    /**
+     * Report rejection of work to monitor.
+     */
+    protected void workRejected()
+    {
+        if( null != m_taskMonitor )
+        {
+            m_taskMonitor.taskRejected();
+        }
+    }
+
     /**
      * Overide creation of worker to add logging.
      *
@@ -219,6 +492,79 @@ public class CommonsThreadPool
         return m_config;
     }
 
+    /**
+     * Set the maximum number of submitters that may be waiting
+     * for a worker under the BLOCK policy.
+     *
+     * @param maxPending the maximum number of waiting submitters, 0 for no limit
+     */
+    protected void setMaxPending( final int maxPending )
+    {
+        m_maxPending = maxPending;
+    }
+
+    /**
+     * Set flag indicating whether the number of workers should adapt
+     * to utilization between min-threads and max-threads.
+     *
+     * @param adaptiveSizing true to size pool adaptively
+     */
+    protected void setAdaptiveSizing( final boolean adaptiveSizing )
+    {
+        m_adaptiveSizing = adaptiveSizing;
+    }
+
+    /**
+     * Set the minimum number of workers when sizing adaptively.
+     *
+     * @param minThreads the minimum number of workers
+     */
+    protected void setMinThreads( final int minThreads )
+    {
+        m_minThreads = minThreads;
+    }
+
+    /**
+     * Set the time between utilization samples when sizing adaptively.
+     *
+     * @param sampleInterval the time in milliseconds between samples
+     */
+    protected void setSampleInterval( final long sampleInterval )
+    {
+        m_sampleInterval = sampleInterval;
+    }
+
+    /**
+     * Set the utilization percentage at or above which pool grows.
+     *
+     * @param growUtilization the utilization percentage
+     */
+    protected void setGrowUtilization( final int growUtilization )
+    {
+        m_growUtilization = growUtilization;
+    }
+
+    /**
+     * Set the utilization percentage at or below which pool shrinks.
+     *
+     * @param shrinkUtilization the utilization percentage
+     */
+    protected void setShrinkUtilization( final int shrinkUtilization )
+    {
+        m_shrinkUtilization = shrinkUtilization;
+    }
+
+    /**
+     * Set the number of consecutive samples that must agree
+     * before pool is resized.
+     *
+     * @param hysteresis the number of samples
+     */
+    protected void setHysteresis( final int hysteresis )
+    {
+        m_hysteresis = hysteresis;
+    }
+
     /**
      * Set the Monitor to use to notify of changes in the Pool.
      *
@@ -227,5 +573,13 @@ public class CommonsThreadPool
     protected final void setMonitor( final ThreadPoolMonitor monitor )
     {
         m_monitor = monitor;
+        if( monitor instanceof TaskThreadPoolMonitor )
+        {
+            m_taskMonitor = (TaskThreadPoolMonitor)monitor;
+        }
+        else
+        {
+            m_taskMonitor = null;
+        }
     }
 }
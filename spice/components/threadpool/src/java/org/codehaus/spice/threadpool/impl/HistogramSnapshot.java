@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.impl;
+
+/**
+ * An immutable copy of the values recorded by a
+ * {@link StripedHistogram}. Bucket <i>i</i> holds the values below
+ * {@link #getBucketLimit(int)} that did not fit in bucket <i>i-1</i>.
+ * The durations recorded by {@link MetricsThreadPoolMonitor} are in
+ * milliseconds.
+ */
+public final class HistogramSnapshot
+{
+    private final long[] m_buckets;
+    private final int m_subBucketBits;
+    private final long m_count;
+    private final long m_total;
+    private final long m_max;
+
+    HistogramSnapshot( final long[] buckets,
+                       final int subBucketBits,
+                       final long count,
+                       final long total,
+                       final long max )
+    {
+        m_buckets = buckets;
+        m_subBucketBits = subBucketBits;
+        m_count = count;
+        m_total = total;
+        m_max = max;
+    }
+
+    /**
+     * Return the number of recorded values.
+     *
+     * @return the number of recorded values
+     */
+    public long getCount()
+    {
+        return m_count;
+    }
+
+    /**
+     * Return the sum of recorded values.
+     *
+     * @return the sum of recorded values
+     */
+    public long getTotal()
+    {
+        return m_total;
+    }
+
+    /**
+     * Return the mean of recorded values.
+     *
+     * @return the mean, or 0 if no values were recorded
+     */
+    public double getMean()
+    {
+        return ( 0 == m_count ) ? 0 : (double)m_total / m_count;
+    }
+
+    /**
+     * Return the largest recorded value.
+     *
+     * @return the largest recorded value
+     */
+    public long getMax()
+    {
+        return m_max;
+    }
+
+    /**
+     * Return the number of buckets.
+     *
+     * @return the number of buckets
+     */
+    public int getBucketCount()
+    {
+        return m_buckets.length;
+    }
+
+    /**
+     * Return the number of values in specified bucket.
+     *
+     * @param bucket the index of bucket
+     * @return the number of values in bucket
+     */
+    public long getBucketValue( final int bucket )
+    {
+        return m_buckets[ bucket ];
+    }
+
+    /**
+     * Return the exclusive upper limit of values in specified bucket.
+     *
+     * @param bucket the index of bucket
+     * @return the limit, Long.MAX_VALUE for the last bucket
+     */
+    public long getBucketLimit( final int bucket )
+    {
+        return StripedHistogram.getBucketLimit( bucket, m_subBucketBits );
+    }
+
+    /**
+     * Return an upper bound for the specified percentile of values.
+     * The result is the largest value that fits in the bucket the
+     * percentile falls in, capped at the largest recorded value.
+     *
+     * @param percentile the percentile between 0 and 100
+     * @return the upper bound, or 0 if no values were recorded
+     */
+    public long getPercentile( final double percentile )
+    {
+        if( percentile < 0 || percentile > 100 )
+        {
+            throw new IllegalArgumentException( "percentile" );
+        }
+        final double target = m_count * percentile / 100;
+        long seen = 0;
+        for( int i = 0; i < m_buckets.length; i++ )
+        {
+            seen += m_buckets[ i ];
+            if( 0 != m_buckets[ i ] && seen >= target )
+            {
+                return Math.min( getBucketLimit( i ) - 1, m_max );
+            }
+        }
+        return m_max;
+    }
+
+    public String toString()
+    {
+        return "count=" + m_count + " mean=" + getMean() +
+            " p50<=" + getPercentile( 50 ) +
+            " p99<=" + getPercentile( 99 ) +
+            " max=" + m_max;
+    }
+}
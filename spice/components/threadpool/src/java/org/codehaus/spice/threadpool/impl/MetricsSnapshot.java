@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.impl;
+
+/**
+ * An immutable copy of the metrics gathered by a
+ * {@link MetricsThreadPoolMonitor} at a point in time.
+ */
+public final class MetricsSnapshot
+{
+    private final long m_time;
+    private final int m_threadCount;
+    private final int m_activeCount;
+    private final int m_peakActiveCount;
+    private final long m_completedCount;
+    private final long m_failedCount;
+    private final long m_rejectedCount;
+    private final HistogramSnapshot m_queueWait;
+    private final HistogramSnapshot m_runTime;
+
+    MetricsSnapshot( final long time,
+                     final int threadCount,
+                     final int activeCount,
+                     final int peakActiveCount,
+                     final long completedCount,
+                     final long failedCount,
+                     final long rejectedCount,
+                     final HistogramSnapshot queueWait,
+                     final HistogramSnapshot runTime )
+    {
+        m_time = time;
+        m_threadCount = threadCount;
+        m_activeCount = activeCount;
+        m_peakActiveCount = peakActiveCount;
+        m_completedCount = completedCount;
+        m_failedCount = failedCount;
+        m_rejectedCount = rejectedCount;
+        m_queueWait = queueWait;
+        m_runTime = runTime;
+    }
+
+    /**
+     * Return the time snapshot was taken.
+     *
+     * @return the time snapshot was taken, as per System.currentTimeMillis()
+     */
+    public long getTime()
+    {
+        return m_time;
+    }
+
+    /**
+     * Return the number of live threads in pool.
+     *
+     * @return the number of live threads in pool
+     */
+    public int getThreadCount()
+    {
+        return m_threadCount;
+    }
+
+    /**
+     * Return the number of threads executing work.
+     *
+     * @return the number of threads executing work
+     */
+    public int getActiveCount()
+    {
+        return m_activeCount;
+    }
+
+    /**
+     * Return the number of live threads not executing work.
+     *
+     * @return the number of idle threads
+     */
+    public int getIdleCount()
+    {
+        return Math.max( 0, m_threadCount - m_activeCount );
+    }
+
+    /**
+     * Return the largest number of threads that
+     * were executing work at the same time.
+     *
+     * @return the peak number of active threads
+     */
+    public int getPeakActiveCount()
+    {
+        return m_peakActiveCount;
+    }
+
+    /**
+     * Return the number of tasks that finished, including failed tasks.
+     *
+     * @return the number of tasks that finished
+     */
+    public long getCompletedCount()
+    {
+        return m_completedCount;
+    }
+
+    /**
+     * Return the number of tasks that terminated with a throwable.
+     *
+     * @return the number of tasks that failed
+     */
+    public long getFailedCount()
+    {
+        return m_failedCount;
+    }
+
+    /**
+     * Return the number of tasks the pool could not admit.
+     *
+     * @return the number of rejected tasks
+     */
+    public long getRejectedCount()
+    {
+        return m_rejectedCount;
+    }
+
+    /**
+     * Return the histogram of time tasks waited before starting.
+     *
+     * @return the queue wait histogram
+     */
+    public HistogramSnapshot getQueueWait()
+    {
+        return m_queueWait;
+    }
+
+    /**
+     * Return the histogram of time tasks took to execute.
+     *
+     * @return the run time histogram
+     */
+    public HistogramSnapshot getRunTime()
+    {
+        return m_runTime;
+    }
+
+    public String toString()
+    {
+        return "threads=" + m_threadCount +
+            " active=" + m_activeCount +
+            " idle=" + getIdleCount() +
+            " peak=" + m_peakActiveCount +
+            " completed=" + m_completedCount +
+            " failed=" + m_failedCount +
+            " rejected=" + m_rejectedCount +
+            " queueWait(ms)=[" + m_queueWait + "]" +
+            " runTime(ms)=[" + m_runTime + "]";
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.impl;
+
+import org.codehaus.spice.threadpool.TaskThreadPoolMonitor;
+import org.codehaus.spice.threadpool.ThreadPoolMonitor;
+
+/**
+ * A ThreadPoolMonitor that gathers metrics about a pool. It records
+ * histograms of the time tasks spend waiting to start and executing,
+ * counts completed, failed and rejected tasks and keeps gauges of the
+ * live, active and peak active threads. All events are also passed on
+ * to an optional delegate monitor, such as a logging monitor.
+ *
+ * <p>The counters and histograms are striped so that workers
+ * reporting at the same time rarely contend with each other or with a
+ * management thread calling {@link #getSnapshot()}. The active gauge
+ * and its peak are kept together under one lock, costing two updates
+ * per task, so that the reported peak is exact.</p>
+ */
+public class MetricsThreadPoolMonitor
+    implements TaskThreadPoolMonitor
+{
+    /**
+     * The monitor events are passed on to (May be null).
+     */
+    private final ThreadPoolMonitor m_delegate;
+
+    private final StripedCounter m_completed = new StripedCounter();
+    private final StripedCounter m_failed = new StripedCounter();
+    private final StripedCounter m_rejected = new StripedCounter();
+    private final StripedHistogram m_queueWait = new StripedHistogram();
+    private final StripedHistogram m_runTime = new StripedHistogram();
+
+    private final StripedCounter m_threadCount = new StripedCounter();
+
+    /**
+     * Lock guarding the active gauge and its peak.
+     */
+    private final Object m_activeLock = new Object();
+    private int m_activeCount;
+    private int m_peakActiveCount;
+
+    /**
+     * Create a monitor that only gathers metrics.
+     */
+    public MetricsThreadPoolMonitor()
+    {
+        this( null );
+    }
+
+    /**
+     * Create a monitor that gathers metrics and passes
+     * events on to specified monitor.
+     *
+     * @param delegate the monitor to pass events on to (May be null)
+     */
+    public MetricsThreadPoolMonitor( final ThreadPoolMonitor delegate )
+    {
+        m_delegate = delegate;
+    }
+
+    /**
+     * Return a snapshot of the current metrics.
+     *
+     * @return the snapshot
+     */
+    public MetricsSnapshot getSnapshot()
+    {
+        final int activeCount;
+        final int peakActiveCount;
+        synchronized( m_activeLock )
+        {
+            activeCount = m_activeCount;
+            peakActiveCount = m_peakActiveCount;
+        }
+        return new MetricsSnapshot( System.currentTimeMillis(),
+                                    (int)m_threadCount.get(),
+                                    activeCount,
+                                    peakActiveCount,
+                                    m_completed.get(),
+                                    m_failed.get(),
+                                    m_rejected.get(),
+                                    m_queueWait.snapshot(),
+                                    m_runTime.snapshot() );
+    }
+
+    public void newThreadPool( final String name,
+                               final int priority,
+                               final boolean daemon,
+                               final int maxActive,
+                               final int maxIdle )
+    {
+        if( null != m_delegate )
+        {
+            m_delegate.newThreadPool( name, priority, daemon, maxActive, maxIdle );
+        }
+    }
+
+    public void threadRetrieved( final Thread thread )
+    {
+        synchronized( m_activeLock )
+        {
+            m_activeCount++;
+            if( m_activeCount > m_peakActiveCount )
+            {
+                m_peakActiveCount = m_activeCount;
+            }
+        }
+        if( null != m_delegate )
+        {
+            m_delegate.threadRetrieved( thread );
+        }
+    }
+
+    public void threadReturned( final Thread thread )
+    {
+        synchronized( m_activeLock )
+        {
+            m_activeCount--;
+        }
+        if( null != m_delegate )
+        {
+            m_delegate.threadReturned( thread );
+        }
+    }
+
+    public void threadCreated( final Thread thread )
+    {
+        m_threadCount.increment();
+        if( null != m_delegate )
+        {
+            m_delegate.threadCreated( thread );
+        }
+    }
+
+    public void threadDisposing( final Thread thread )
+    {
+        m_threadCount.add( -1 );
+        if( null != m_delegate )
+        {
+            m_delegate.threadDisposing( thread );
+        }
+    }
+
+    public void unexpectedError( final String message,
+                                 final Throwable t )
+    {
+        if( null != m_delegate )
+        {
+            m_delegate.unexpectedError( message, t );
+        }
+    }
+
+    public void taskCompleted( final Thread thread,
+                               final long queueWait,
+                               final long runTime,
+                               final Throwable throwable )
+    {
+        m_completed.increment();
+        if( null != throwable )
+        {
+            m_failed.increment();
+        }
+        m_queueWait.record( queueWait );
+        m_runTime.record( runTime );
+        if( m_delegate instanceof TaskThreadPoolMonitor )
+        {
+            ( (TaskThreadPoolMonitor)m_delegate ).
+                taskCompleted( thread, queueWait, runTime, throwable );
+        }
+    }
+
+    public void taskRejected()
+    {
+        m_rejected.increment();
+        if( m_delegate instanceof TaskThreadPoolMonitor )
+        {
+            ( (TaskThreadPoolMonitor)m_delegate ).taskRejected();
+        }
+    }
+}
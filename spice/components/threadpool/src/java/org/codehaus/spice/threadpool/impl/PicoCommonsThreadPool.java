@@ -8,6 +8,7 @@
 package org.codehaus.spice.threadpool.impl;
 
 import org.apache.commons.pool.impl.GenericObjectPool;
+import org.codehaus.spice.threadpool.RejectionPolicy;
 import org.codehaus.spice.threadpool.ThreadPoolMonitor;
 
 /**
@@ -65,6 +66,46 @@ public class PicoCommonsThreadPool
         }
     }
 
+    public static class WithMonitorAndBoundedConfig
+        extends PicoCommonsThreadPool
+    {
+        public WithMonitorAndBoundedConfig( final ThreadPoolMonitor monitor,
+                                            final String name,
+                                            final int priority,
+                                            final boolean isDaemon,
+                                            final int maxActiveThreads,
+                                            final int maxIdleThreads,
+                                            final RejectionPolicy rejectionPolicy,
+                                            final long blockTimeout,
+                                            final int maxPending )
+        {
+            super( monitor, name, priority, isDaemon, maxActiveThreads, maxIdleThreads,
+                   rejectionPolicy, blockTimeout, maxPending );
+        }
+    }
+
+    public static class WithMonitorAndAdaptiveConfig
+        extends PicoCommonsThreadPool
+    {
+        public WithMonitorAndAdaptiveConfig( final ThreadPoolMonitor monitor,
+                                             final String name,
+                                             final int priority,
+                                             final boolean isDaemon,
+                                             final int minThreads,
+                                             final int maxThreads,
+                                             final RejectionPolicy rejectionPolicy,
+                                             final long blockTimeout,
+                                             final long sampleInterval,
+                                             final int growUtilization,
+                                             final int shrinkUtilization,
+                                             final int hysteresis )
+        {
+            super( monitor, name, priority, isDaemon, minThreads, maxThreads,
+                   rejectionPolicy, blockTimeout, sampleInterval,
+                   growUtilization, shrinkUtilization, hysteresis );
+        }
+    }
+
     /**
      * Constructor
      *
@@ -97,6 +138,79 @@ public class PicoCommonsThreadPool
         setup();
     }
 
+    /**
+     * Constructor for a pool that never grows beyond maxActiveThreads.
+     *
+     */
+    protected PicoCommonsThreadPool( final ThreadPoolMonitor monitor,
+                                     final String name,
+                                     final int priority,
+                                     final boolean isDaemon,
+                                     final int maxActiveThreads,
+                                     final int maxIdleThreads,
+                                     final RejectionPolicy rejectionPolicy,
+                                     final long blockTimeout,
+                                     final int maxPending )
+    {
+        if( null == rejectionPolicy )
+        {
+            throw new NullPointerException( "rejectionPolicy" );
+        }
+        setMonitor( monitor );
+        setName( name );
+        setPriority( priority );
+        setDaemon( isDaemon );
+        setRejectionPolicy( rejectionPolicy );
+        setBlockTimeout( blockTimeout );
+        setMaxPending( maxPending );
+
+        final GenericObjectPool.Config config = getCommonsConfig();
+        config.maxActive = maxActiveThreads;
+        config.maxIdle = maxIdleThreads;
+        setup();
+    }
+
+    /**
+     * Constructor for a pool that adapts the number of workers
+     * to utilization between minThreads and maxThreads.
+     *
+     */
+    protected PicoCommonsThreadPool( final ThreadPoolMonitor monitor,
+                                     final String name,
+                                     final int priority,
+                                     final boolean isDaemon,
+                                     final int minThreads,
+                                     final int maxThreads,
+                                     final RejectionPolicy rejectionPolicy,
+                                     final long blockTimeout,
+                                     final long sampleInterval,
+                                     final int growUtilization,
+                                     final int shrinkUtilization,
+                                     final int hysteresis )
+    {
+        if( null == rejectionPolicy )
+        {
+            throw new NullPointerException( "rejectionPolicy" );
+        }
+        setMonitor( monitor );
+        setName( name );
+        setPriority( priority );
+        setDaemon( isDaemon );
+        setRejectionPolicy( rejectionPolicy );
+        setBlockTimeout( blockTimeout );
+        setAdaptiveSizing( true );
+        setMinThreads( minThreads );
+        setSampleInterval( sampleInterval );
+        setGrowUtilization( growUtilization );
+        setShrinkUtilization( shrinkUtilization );
+        setHysteresis( hysteresis );
+
+        final GenericObjectPool.Config config = getCommonsConfig();
+        config.maxActive = maxThreads;
+        config.maxIdle = maxThreads;
+        setup();
+    }
+
     /**
      * Make sure that finalize results in disposal
      * of the system.
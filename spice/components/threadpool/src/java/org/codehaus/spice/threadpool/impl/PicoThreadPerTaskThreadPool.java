@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.impl;
+
+import org.codehaus.spice.threadpool.ThreadPoolMonitor;
+
+/**
+ * The PicoThreadPerTaskThreadPool wraps the ThreadPerTaskThreadPool for
+ * Pico-compatible systems.
+ */
+public class PicoThreadPerTaskThreadPool
+    extends ThreadPerTaskThreadPool
+{
+    public static class Default
+        extends PicoThreadPerTaskThreadPool
+    {
+        public Default()
+        {
+            super( new NullThreadPoolMonitor(),
+                   "Default ThreadPool",
+                   Thread.NORM_PRIORITY,
+                   false,
+                   64 * 1024 );
+        }
+    }
+
+    public static class WithMonitor
+        extends PicoThreadPerTaskThreadPool
+    {
+        public WithMonitor( final ThreadPoolMonitor monitor )
+        {
+            super( monitor,
+                   "Default ThreadPool",
+                   Thread.NORM_PRIORITY,
+                   false,
+                   64 * 1024 );
+        }
+    }
+
+    public static class WithMonitorAndConfig
+        extends PicoThreadPerTaskThreadPool
+    {
+        public WithMonitorAndConfig( final ThreadPoolMonitor monitor,
+                                     final String name,
+                                     final int priority,
+                                     final boolean isDaemon,
+                                     final long stackSize )
+        {
+            super( monitor, name, priority, isDaemon, stackSize );
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     */
+    protected PicoThreadPerTaskThreadPool( final ThreadPoolMonitor monitor,
+                                          final String name,
+                                          final int priority,
+                                          final boolean isDaemon,
+                                          final long stackSize )
+    {
+        setMonitor( monitor );
+        setName( name );
+        setPriority( priority );
+        setDaemon( isDaemon );
+        setStackSize( stackSize );
+        setup();
+    }
+
+    /**
+     * Make sure that finalize results in disposal
+     * of the system.
+     */
+    protected void finalize()
+    {
+        shutdown();
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.impl;
+
+import org.codehaus.spice.threadpool.RejectionPolicy;
+import org.codehaus.spice.threadpool.ThreadPoolMonitor;
+
+/**
+ * The PicoWorkQueueThreadPool wraps the WorkQueueThreadPool for
+ * Pico-compatible systems.
+ */
+public class PicoWorkQueueThreadPool
+    extends WorkQueueThreadPool
+{
+    public static class Default
+        extends PicoWorkQueueThreadPool
+    {
+        public Default()
+        {
+            super( new NullThreadPoolMonitor(),
+                   "Default ThreadPool",
+                   Thread.NORM_PRIORITY,
+                   false,
+                   5,
+                   10,
+                   1000,
+                   60 * 1000 );
+        }
+    }
+
+    public static class WithMonitor
+        extends PicoWorkQueueThreadPool
+    {
+        public WithMonitor( final ThreadPoolMonitor monitor )
+        {
+            super( monitor,
+                   "Default ThreadPool",
+                   Thread.NORM_PRIORITY,
+                   false,
+                   5,
+                   10,
+                   1000,
+                   60 * 1000 );
+        }
+    }
+
+    public static class WithMonitorAndConfig
+        extends PicoWorkQueueThreadPool
+    {
+        public WithMonitorAndConfig( final ThreadPoolMonitor monitor,
+                                     final String name,
+                                     final int priority,
+                                     final boolean isDaemon,
+                                     final int minThreads,
+                                     final int maxThreads,
+                                     final int queueSize,
+                                     final long keepAliveTime )
+        {
+            super( monitor, name, priority, isDaemon,
+                   minThreads, maxThreads, queueSize, keepAliveTime );
+        }
+    }
+
+    public static class WithMonitorAndBoundedConfig
+        extends PicoWorkQueueThreadPool
+    {
+        public WithMonitorAndBoundedConfig( final ThreadPoolMonitor monitor,
+                                            final String name,
+                                            final int priority,
+                                            final boolean isDaemon,
+                                            final int minThreads,
+                                            final int maxThreads,
+                                            final int queueSize,
+                                            final long keepAliveTime,
+                                            final RejectionPolicy rejectionPolicy,
+                                            final long blockTimeout )
+        {
+            super( monitor, name, priority, isDaemon,
+                   minThreads, maxThreads, queueSize, keepAliveTime );
+            setRejectionPolicy( rejectionPolicy );
+            setBlockTimeout( blockTimeout );
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     */
+    protected PicoWorkQueueThreadPool( final ThreadPoolMonitor monitor,
+                                       final String name,
+                                       final int priority,
+                                       final boolean isDaemon,
+                                       final int minThreads,
+                                       final int maxThreads,
+                                       final int queueSize,
+                                       final long keepAliveTime )
+    {
+        setMonitor( monitor );
+        setName( name );
+        setPriority( priority );
+        setDaemon( isDaemon );
+        setMinThreads( minThreads );
+        setMaxThreads( maxThreads );
+        setQueueSize( queueSize );
+        setKeepAliveTime( keepAliveTime );
+        setup();
+    }
+
+    /**
+     * Make sure that finalize results in disposal
+     * of the system.
+     */
+    protected void finalize()
+    {
+        shutdown();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.impl;
+
+import org.codehaus.spice.threadpool.RejectionPolicy;
+import org.codehaus.spice.threadpool.ThreadPoolMonitor;
+
+/**
+ * The PicoWorkStealingThreadPool wraps the WorkStealingThreadPool for
+ * Pico-compatible systems.
+ */
+public class PicoWorkStealingThreadPool
+    extends WorkStealingThreadPool
+{
+    public static class Default
+        extends PicoWorkStealingThreadPool
+    {
+        public Default()
+        {
+            super( new NullThreadPoolMonitor(),
+                   "Default ThreadPool",
+                   Thread.NORM_PRIORITY,
+                   false,
+                   Runtime.getRuntime().availableProcessors(),
+                   1000 );
+        }
+    }
+
+    public static class WithMonitor
+        extends PicoWorkStealingThreadPool
+    {
+        public WithMonitor( final ThreadPoolMonitor monitor )
+        {
+            super( monitor,
+                   "Default ThreadPool",
+                   Thread.NORM_PRIORITY,
+                   false,
+                   Runtime.getRuntime().availableProcessors(),
+                   1000 );
+        }
+    }
+
+    public static class WithMonitorAndConfig
+        extends PicoWorkStealingThreadPool
+    {
+        public WithMonitorAndConfig( final ThreadPoolMonitor monitor,
+                                     final String name,
+                                     final int priority,
+                                     final boolean isDaemon,
+                                     final int maxThreads,
+                                     final int queueSize )
+        {
+            super( monitor, name, priority, isDaemon, maxThreads, queueSize );
+        }
+    }
+
+    public static class WithMonitorAndBoundedConfig
+        extends PicoWorkStealingThreadPool
+    {
+        public WithMonitorAndBoundedConfig( final ThreadPoolMonitor monitor,
+                                            final String name,
+                                            final int priority,
+                                            final boolean isDaemon,
+                                            final int maxThreads,
+                                            final int queueSize,
+                                            final RejectionPolicy rejectionPolicy,
+                                            final long blockTimeout )
+        {
+            super( monitor, name, priority, isDaemon,
+                   maxThreads, queueSize );
+            setRejectionPolicy( rejectionPolicy );
+            setBlockTimeout( blockTimeout );
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     */
+    protected PicoWorkStealingThreadPool( final ThreadPoolMonitor monitor,
+                                          final String name,
+                                          final int priority,
+                                          final boolean isDaemon,
+                                          final int maxThreads,
+                                          final int queueSize )
+    {
+        setMonitor( monitor );
+        setName( name );
+        setPriority( priority );
+        setDaemon( isDaemon );
+        setMaxThreads( maxThreads );
+        setQueueSize( queueSize );
+        setup();
+    }
+
+    /**
+     * Make sure that finalize results in disposal
+     * of the system.
+     */
+    protected void finalize()
+    {
+        shutdown();
+    }
+}
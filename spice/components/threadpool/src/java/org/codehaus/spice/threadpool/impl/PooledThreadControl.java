@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.impl;
+
+import org.codehaus.spice.threadpool.RecyclableThreadControl;
+
+/**
+ * A ThreadControl owned by a single WorkerThread that the
+ * worker reuses for its next bit of work once the client
+ * has released it.
+ */
+final class PooledThreadControl
+    implements RecyclableThreadControl
+{
+    ///Thread that this control is associated with, null when finished
+    private Thread m_thread;
+
+    ///Throwable that caused thread to terminate
+    private Throwable m_throwable;
+
+    ///The generation of current work
+    private int m_generation;
+
+    ///True if client has released control
+    private boolean m_released;
+
+    /**
+     * Associate control with new work executed by thread.
+     *
+     * @param thread the thread executing the work
+     */
+    synchronized void reset( final Thread thread )
+    {
+        m_generation++;
+        m_thread = thread;
+        m_throwable = null;
+        m_released = false;
+    }
+
+    /**
+     * Return true if control may be reused.
+     *
+     * @return true if control has been released and work has finished
+     */
+    synchronized boolean isReusable()
+    {
+        return m_released && null == m_thread;
+    }
+
+    /**
+     * Method called by thread to release control.
+     *
+     * @param throwable Throwable that caused thread to complete (may be null)
+     */
+    synchronized void finish( final Throwable throwable )
+    {
+        m_thread = null;
+        m_throwable = throwable;
+        notifyAll();
+    }
+
+    /**
+     * @see RecyclableThreadControl#getGeneration()
+     */
+    public synchronized int getGeneration()
+    {
+        return m_generation;
+    }
+
+    /**
+     * @see RecyclableThreadControl#release()
+     */
+    public synchronized void release()
+    {
+        m_released = true;
+    }
+
+    /**
+     * @see RecyclableThreadControl#isValid(int)
+     */
+    public synchronized boolean isValid( final int generation )
+    {
+        return generation == m_generation;
+    }
+
+    /**
+     * @see org.codehaus.spice.threadpool.ThreadControl#join(long)
+     */
+    public void join( final long milliSeconds )
+        throws InterruptedException
+    {
+        join( getGeneration(), milliSeconds );
+    }
+
+    /**
+     * @see RecyclableThreadControl#join(int, long)
+     */
+    public synchronized void join( final int generation, final long milliSeconds )
+        throws InterruptedException
+    {
+        final long end = System.currentTimeMillis() + milliSeconds;
+        while( !isFinished( generation ) )
+        {
+            final long now = System.currentTimeMillis();
+            if( now >= end )
+            {
+                break;
+            }
+            wait( end - now );
+        }
+    }
+
+    /**
+     * @see org.codehaus.spice.threadpool.ThreadControl#interrupt()
+     */
+    public void interrupt()
+    {
+        interrupt( getGeneration() );
+    }
+
+    /**
+     * @see RecyclableThreadControl#interrupt(int)
+     */
+    public synchronized void interrupt( final int generation )
+    {
+        if( !isFinished( generation ) )
+        {
+            m_thread.interrupt();
+        }
+    }
+
+    /**
+     * @see org.codehaus.spice.threadpool.ThreadControl#isFinished()
+     */
+    public synchronized boolean isFinished()
+    {
+        return null == m_thread;
+    }
+
+    /**
+     * @see RecyclableThreadControl#isFinished(int)
+     */
+    public synchronized boolean isFinished( final int generation )
+    {
+        return generation != m_generation || null == m_thread;
+    }
+
+    /**
+     * @see org.codehaus.spice.threadpool.ThreadControl#getThrowable()
+     */
+    public synchronized Throwable getThrowable()
+    {
+        return m_throwable;
+    }
+
+    /**
+     * @see RecyclableThreadControl#getThrowable(int)
+     */
+    public synchronized Throwable getThrowable( final int generation )
+    {
+        if( generation != m_generation )
+        {
+            throw new IllegalStateException( "ThreadControl has been recycled" );
+        }
+        return m_throwable;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.impl;
+
+/**
+ * A worker thread that repeatedly pulls work from the queue of
+ * a {@link WorkQueueThreadPool} until it is told to retire or
+ * the pool is shutdown.
+ */
+class QueueWorkerThread
+    extends Thread
+{
+    /**
+     * The thread pool this thread is associated with.
+     */
+    private final WorkQueueThreadPool m_pool;
+
+    /**
+     * The name of thread.
+     */
+    private final String m_name;
+
+    /**
+     * The priority work is executed at.
+     */
+    private final int m_priority;
+
+    /**
+     * Create a worker for specified pool.
+     *
+     * @param pool the pool
+     * @param group the thread group
+     * @param name the name of worker
+     * @param priority the priority work is executed at
+     */
+    QueueWorkerThread( final WorkQueueThreadPool pool,
+                       final ThreadGroup group,
+                       final String name,
+                       final int priority )
+    {
+        super( group, name );
+        if( null == pool )
+        {
+            throw new NullPointerException( "pool" );
+        }
+        m_pool = pool;
+        m_name = name;
+        m_priority = priority;
+        setPriority( priority );
+    }
+
+    /**
+     * The main execution loop.
+     */
+    public final void run()
+    {
+        try
+        {
+            while( true )
+            {
+                final QueuedWork entry = m_pool.nextWork( this );
+                if( null == entry )
+                {
+                    return;
+                }
+                execute( entry );
+            }
+        }
+        finally
+        {
+            m_pool.workerExited( this );
+        }
+    }
+
+    /**
+     * Execute a single piece of work.
+     *
+     * @param entry the work
+     */
+    private void execute( final QueuedWork entry )
+    {
+        entry.start( this );
+        final long startTime = m_pool.workStarted( this );
+        Throwable throwable = null;
+        try
+        {
+            preExecute();
+            entry.getWork().execute();
+        }
+        catch( final ThreadDeath threadDeath )
+        {
+            throwable = threadDeath;
+            // This is to let the thread death propagate to the runtime
+            // enviroment to let it know it must kill this worker
+            throw threadDeath;
+        }
+        catch( final Throwable t )
+        {
+            throwable = t;
+        }
+        finally
+        {
+            m_pool.workFinished( this, entry, startTime, throwable );
+            entry.finish( throwable );
+            postExecute();
+        }
+    }
+
+    /**
+     * Restore the state of the thread before each bit of "work"
+     * as the previous work may have altered it.
+     */
+    protected void preExecute()
+    {
+        if( !m_name.equals( getName() ) )
+        {
+            setName( m_name );
+        }
+        if( m_priority != getPriority() )
+        {
+            setPriority( m_priority );
+        }
+    }
+
+    /**
+     * Make sure that an interrupt directed at the last bit of
+     * "work" does not leak into the next one.
+     */
+    protected void postExecute()
+    {
+        Thread.interrupted();
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.impl;
+
+import org.codehaus.spice.threadpool.Executable;
+import org.codehaus.spice.threadpool.ThreadControl;
+
+/**
+ * An entry in the work queue of a {@link WorkQueueThreadPool}.
+ * The entry doubles as the ThreadControl for the work so that
+ * only a single object is created per submission.
+ *
+ * <p>As the work may still be sitting in the queue when
+ * {@link #interrupt()} is called, the interrupt is remembered
+ * and delivered to the worker thread as soon as it picks up
+ * the work.</p>
+ */
+class QueuedWork
+    implements ThreadControl
+{
+    ///The work to execute
+    private final Executable m_work;
+
+    ///Thread executing the work, null if queued or finished
+    private Thread m_thread;
+
+    ///True if work has finished or was discarded
+    private boolean m_finished;
+
+    ///True if interrupt() was called before work started
+    private boolean m_interruptPending;
+
+    ///True if interrupt() was delivered to the thread executing work
+    private boolean m_interruptDelivered;
+
+    ///Throwable that caused work to terminate
+    private Throwable m_throwable;
+
+    ///Time work was submitted, 0 if not monitored
+    private long m_submitTime;
+
+    /**
+     * Create entry for specified work.
+     *
+     * @param work the work
+     */
+    QueuedWork( final Executable work )
+    {
+        if( null == work )
+        {
+            throw new NullPointerException( "work" );
+        }
+        m_work = work;
+    }
+
+    /**
+     * Execute work in the current thread. Used to run work
+     * that was rejected under the CALLER_RUNS policy.
+     *
+     * @param work the work
+     * @return the control for the finished work
+     */
+    static QueuedWork executeInCaller( final Executable work )
+    {
+        final QueuedWork entry = new QueuedWork( work );
+        entry.start( Thread.currentThread() );
+        Throwable throwable = null;
+        try
+        {
+            work.execute();
+        }
+        catch( final ThreadDeath threadDeath )
+        {
+            throwable = threadDeath;
+            throw threadDeath;
+        }
+        catch( final Throwable t )
+        {
+            throwable = t;
+        }
+        finally
+        {
+            entry.finish( throwable );
+        }
+        return entry;
+    }
+
+    /**
+     * Return the work to execute.
+     *
+     * @return the work to execute.
+     */
+    Executable getWork()
+    {
+        return m_work;
+    }
+
+    /**
+     * Return the time work was submitted.
+     *
+     * @return the time work was submitted, 0 if not monitored
+     */
+    long getSubmitTime()
+    {
+        return m_submitTime;
+    }
+
+    /**
+     * Set the time work was submitted. Must be
+     * called before work is placed on queue.
+     *
+     * @param submitTime the time work was submitted
+     */
+    void setSubmitTime( final long submitTime )
+    {
+        m_submitTime = submitTime;
+    }
+
+    /**
+     * Wait for specified time for thread to complete it's work.
+     *
+     * @param milliSeconds the duration in milliseconds to wait until the thread has finished work
+     * @throws IllegalStateException if isValid() == false
+     * @throws InterruptedException if another thread has interrupted the current thread.
+     *         The interrupted status of the current thread is cleared when this exception
+     *         is thrown.
+     */
+    public synchronized void join( final long milliSeconds )
+        throws IllegalStateException, InterruptedException
+    {
+        final long start = System.currentTimeMillis();
+        final long end = start + milliSeconds;
+        while( !m_finished )
+        {
+            final long now = System.currentTimeMillis();
+            if( now >= end )
+            {
+                break;
+            }
+            final long remaining = end - now;
+            wait( remaining );
+        }
+    }
+
+    /**
+     * Call Thread.interrupt() on thread executing work. If the work
+     * has not started yet the thread will be interrupted when it does.
+     *
+     * @throws IllegalStateException if isValid() == false
+     * @throws SecurityException if caller does not have permission to call interupt()
+     */
+    public synchronized void interrupt()
+        throws IllegalStateException, SecurityException
+    {
+        if( m_finished )
+        {
+            return;
+        }
+        if( null != m_thread )
+        {
+            m_interruptDelivered = true;
+            m_thread.interrupt();
+        }
+        else
+        {
+            m_interruptPending = true;
+        }
+    }
+
+    /**
+     * Determine if thread has finished execution
+     *
+     * @return true if thread is finished, false otherwise
+     */
+    public synchronized boolean isFinished()
+    {
+        return m_finished;
+    }
+
+    /**
+     * Retrieve throwable that caused thread to cease execution.
+     * Only valid when true == isFinished()
+     *
+     * @return the throwable that caused thread to finish execution
+     */
+    public synchronized Throwable getThrowable()
+    {
+        return m_throwable;
+    }
+
+    /**
+     * Method called by worker when it starts executing work.
+     *
+     * @param thread the worker thread
+     */
+    synchronized void start( final Thread thread )
+    {
+        m_thread = thread;
+        if( m_interruptPending )
+        {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Return true if an interrupt was delivered to the thread
+     * executing work since this method was last called.
+     *
+     * @return true if an interrupt was delivered
+     */
+    synchronized boolean takeInterruptDelivered()
+    {
+        final boolean delivered = m_interruptDelivered;
+        m_interruptDelivered = false;
+        return delivered;
+    }
+
+    /**
+     * Method called by worker to release control.
+     *
+     * @param throwable Throwable that caused thread to complete (may be null)
+     */
+    synchronized void finish( final Throwable throwable )
+    {
+        m_thread = null;
+        m_finished = true;
+        m_throwable = throwable;
+        notifyAll();
+    }
+}
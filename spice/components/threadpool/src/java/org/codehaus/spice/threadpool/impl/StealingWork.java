@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.impl;
+
+import org.codehaus.spice.threadpool.Executable;
+
+/**
+ * Work submitted to a {@link WorkStealingThreadPool}. When a
+ * worker of the pool joins the work it executes other pending
+ * work while waiting instead of blocking, so that work waiting
+ * on the work it submitted can not starve the pool.
+ */
+final class StealingWork
+    extends QueuedWork
+{
+    /**
+     * The maximum time in milliseconds a joining worker
+     * sleeps when there is no other work to execute.
+     */
+    private static final long HELP_WAIT = 10;
+
+    /**
+     * The pool work was submitted to.
+     */
+    private final WorkStealingThreadPool m_pool;
+
+    /**
+     * Create entry for specified work.
+     *
+     * @param pool the pool
+     * @param work the work
+     */
+    StealingWork( final WorkStealingThreadPool pool, final Executable work )
+    {
+        super( work );
+        m_pool = pool;
+    }
+
+    /**
+     * Wait for specified time for thread to complete it's work.
+     * If called by a worker of the pool then other work is
+     * executed while waiting.
+     *
+     * @param milliSeconds the duration in milliseconds to wait until the thread has finished work
+     * @throws IllegalStateException if isValid() == false
+     * @throws InterruptedException if another thread has interrupted the current thread.
+     *         The interrupted status of the current thread is cleared when this exception
+     *         is thrown.
+     */
+    public void join( final long milliSeconds )
+        throws IllegalStateException, InterruptedException
+    {
+        final StealingWorkerThread worker = m_pool.getCurrentWorker();
+        if( null == worker )
+        {
+            super.join( milliSeconds );
+            return;
+        }
+
+        final long end = System.currentTimeMillis() + milliSeconds;
+        while( !isFinished() )
+        {
+            if( Thread.interrupted() )
+            {
+                throw new InterruptedException();
+            }
+            final long remaining = end - System.currentTimeMillis();
+            if( remaining <= 0 )
+            {
+                return;
+            }
+            final QueuedWork other = m_pool.findWork( worker );
+            if( null != other )
+            {
+                worker.execute( other );
+            }
+            else
+            {
+                super.join( Math.min( remaining, HELP_WAIT ) );
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.impl;
+
+/**
+ * A worker of a {@link WorkStealingThreadPool}. The worker owns
+ * one of the deques of the pool and keeps executing work from its
+ * own deque, the shared queue or the deques of other workers until
+ * the pool is shutdown.
+ */
+class StealingWorkerThread
+    extends Thread
+{
+    /**
+     * The thread pool this thread is associated with.
+     */
+    private final WorkStealingThreadPool m_pool;
+
+    /**
+     * The index of the deque owned by worker.
+     */
+    private final int m_index;
+
+    /**
+     * The name of thread.
+     */
+    private final String m_name;
+
+    /**
+     * The priority work is executed at.
+     */
+    private final int m_priority;
+
+    /**
+     * The work being executed, null between work.
+     */
+    private QueuedWork m_current;
+
+    /**
+     * Create a worker for specified pool.
+     *
+     * @param pool the pool
+     * @param index the index of the deque owned by worker
+     * @param group the thread group
+     * @param name the name of worker
+     * @param priority the priority work is executed at
+     */
+    StealingWorkerThread( final WorkStealingThreadPool pool,
+                          final int index,
+                          final ThreadGroup group,
+                          final String name,
+                          final int priority )
+    {
+        super( group, name );
+        if( null == pool )
+        {
+            throw new NullPointerException( "pool" );
+        }
+        m_pool = pool;
+        m_index = index;
+        m_name = name;
+        m_priority = priority;
+        setPriority( priority );
+    }
+
+    /**
+     * Return the pool worker is associated with.
+     *
+     * @return the pool worker is associated with.
+     */
+    WorkStealingThreadPool getPool()
+    {
+        return m_pool;
+    }
+
+    /**
+     * Return the index of the deque owned by worker.
+     *
+     * @return the index of the deque owned by worker.
+     */
+    int getIndex()
+    {
+        return m_index;
+    }
+
+    /**
+     * The main execution loop.
+     */
+    public final void run()
+    {
+        try
+        {
+            while( true )
+            {
+                final QueuedWork entry = m_pool.nextWork( this );
+                if( null == entry )
+                {
+                    return;
+                }
+                execute( entry );
+            }
+        }
+        finally
+        {
+            m_pool.workerExited( this );
+        }
+    }
+
+    /**
+     * Execute a single piece of work. May be called
+     * recursively while work is joining other work.
+     *
+     * @param entry the work
+     */
+    void execute( final QueuedWork entry )
+    {
+        final QueuedWork outer = m_current;
+        if( null == outer )
+        {
+            executeEntry( entry );
+            return;
+        }
+
+        //the work being joined must still see interrupts aimed
+        //at it, both earlier ones and those that arrive while
+        //the helped work runs and postExecute() clears them
+        final boolean interrupted = isInterrupted();
+        outer.takeInterruptDelivered();
+        try
+        {
+            executeEntry( entry );
+        }
+        finally
+        {
+            m_current = outer;
+            if( interrupted || outer.takeInterruptDelivered() )
+            {
+                interrupt();
+            }
+        }
+    }
+
+    private void executeEntry( final QueuedWork entry )
+    {
+        m_current = entry;
+        entry.start( this );
+        Throwable throwable = null;
+        try
+        {
+            preExecute();
+            entry.getWork().execute();
+        }
+        catch( final ThreadDeath threadDeath )
+        {
+            throwable = threadDeath;
+            // This is to let the thread death propagate to the runtime
+            // enviroment to let it know it must kill this worker
+            throw threadDeath;
+        }
+        catch( final Throwable t )
+        {
+            throwable = t;
+        }
+        finally
+        {
+            entry.finish( throwable );
+            postExecute();
+            m_current = null;
+        }
+    }
+
+    /**
+     * Restore the state of the thread before each bit of "work"
+     * as the previous work may have altered it.
+     */
+    protected void preExecute()
+    {
+        if( !m_name.equals( getName() ) )
+        {
+            setName( m_name );
+        }
+        if( m_priority != getPriority() )
+        {
+            setPriority( m_priority );
+        }
+    }
+
+    /**
+     * Make sure that an interrupt directed at the last bit of
+     * "work" does not leak into the next one.
+     */
+    protected void postExecute()
+    {
+        Thread.interrupted();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.impl;
+
+/**
+ * A counter that is split into a number of stripes, each with its
+ * own lock. Threads update the stripe selected by their identity so
+ * that concurrent updates rarely contend, while reading the counter
+ * sums all stripes.
+ */
+final class StripedCounter
+{
+    /**
+     * The stripes of counter.
+     */
+    private final Cell[] m_cells;
+
+    /**
+     * Create a counter with stripes for the available processors.
+     */
+    StripedCounter()
+    {
+        m_cells = new Cell[ stripeCount() ];
+        for( int i = 0; i < m_cells.length; i++ )
+        {
+            m_cells[ i ] = new Cell();
+        }
+    }
+
+    /**
+     * Add one to counter.
+     */
+    void increment()
+    {
+        add( 1 );
+    }
+
+    /**
+     * Add specified amount to counter.
+     *
+     * @param amount the amount
+     */
+    void add( final long amount )
+    {
+        final Cell cell = m_cells[ stripe( m_cells.length ) ];
+        synchronized( cell )
+        {
+            cell.m_value += amount;
+        }
+    }
+
+    /**
+     * Return the current value of counter.
+     *
+     * @return the current value of counter
+     */
+    long get()
+    {
+        long value = 0;
+        for( int i = 0; i < m_cells.length; i++ )
+        {
+            final Cell cell = m_cells[ i ];
+            synchronized( cell )
+            {
+                value += cell.m_value;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Return the number of stripes to use. This is the number
+     * of processors rounded up to a power of two.
+     *
+     * @return the number of stripes
+     */
+    static int stripeCount()
+    {
+        final int processors = Runtime.getRuntime().availableProcessors();
+        int count = 1;
+        while( count < processors )
+        {
+            count <<= 1;
+        }
+        return count;
+    }
+
+    /**
+     * Return the stripe to be used by the current thread.
+     *
+     * @param stripes the number of stripes, a power of two
+     * @return the index of stripe
+     */
+    static int stripe( final int stripes )
+    {
+        return stripe( Thread.currentThread(), stripes );
+    }
+
+    /**
+     * Return the stripe to be used by specified thread.
+     *
+     * @param thread the thread
+     * @param stripes the number of stripes, a power of two
+     * @return the index of stripe
+     */
+    static int stripe( final Thread thread, final int stripes )
+    {
+        final int hash = System.identityHashCode( thread );
+        return ( hash ^ ( hash >>> 16 ) ) & ( stripes - 1 );
+    }
+
+    /**
+     * A single stripe of counter.
+     */
+    private static final class Cell
+    {
+        long m_value;
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.impl;
+
+/**
+ * A histogram of non-negative values, such as durations or byte
+ * counts, with exponentially sized buckets.
+ *
+ * <p>By default bucket 0 counts the value 0 and bucket <i>i</i>
+ * counts values from 2<sup>i-1</sup> up to but not including
+ * 2<sup>i</sup>. For finer resolution each power of two can be split
+ * into 2<sup>subBucketBits</sup> linear sub-buckets, as in an HDR
+ * histogram, so that a value is recorded to within
+ * 1/2<sup>subBucketBits</sup> of its size whether it is 5 or 5
+ * million. Values below 2<sup>subBucketBits</sup> are recorded
+ * exactly.</p>
+ *
+ * <p>Like {@link StripedCounter} the histogram is split into stripes
+ * that are updated independently, so threads recording at the same
+ * time rarely contend. Taking a snapshot sums all stripes.</p>
+ */
+public final class StripedHistogram
+{
+    /**
+     * The largest number of sub-bucket bits supported.
+     */
+    public static final int MAX_SUB_BUCKET_BITS = 8;
+
+    /**
+     * The number of bits in a sub-bucket index.
+     */
+    private final int m_subBucketBits;
+
+    /**
+     * The number of buckets in histogram.
+     */
+    private final int m_bucketCount;
+
+    /**
+     * The stripes of histogram.
+     */
+    private final Stripe[] m_stripes;
+
+    /**
+     * Create a histogram with one bucket per power of two.
+     */
+    public StripedHistogram()
+    {
+        this( 0 );
+    }
+
+    /**
+     * Create a histogram that splits each power of two into
+     * 2<sup>subBucketBits</sup> sub-buckets.
+     *
+     * @param subBucketBits the number of bits in a sub-bucket index,
+     *        between 0 and {@link #MAX_SUB_BUCKET_BITS}
+     */
+    public StripedHistogram( final int subBucketBits )
+    {
+        if( subBucketBits < 0 || subBucketBits > MAX_SUB_BUCKET_BITS )
+        {
+            throw new IllegalArgumentException( "subBucketBits" );
+        }
+        m_subBucketBits = subBucketBits;
+        m_bucketCount = getBucketCount( subBucketBits );
+        m_stripes = new Stripe[ StripedCounter.stripeCount() ];
+        for( int i = 0; i < m_stripes.length; i++ )
+        {
+            m_stripes[ i ] = new Stripe( m_bucketCount );
+        }
+    }
+
+    /**
+     * Record a value. Negative values are recorded as 0.
+     *
+     * @param value the value
+     */
+    public void record( final long value )
+    {
+        final long recorded = Math.max( 0, value );
+        final int bucket = bucketFor( recorded, m_subBucketBits );
+        final Stripe stripe = m_stripes[ StripedCounter.stripe( m_stripes.length ) ];
+        synchronized( stripe )
+        {
+            stripe.m_buckets[ bucket ]++;
+            stripe.m_count++;
+            stripe.m_total += recorded;
+            if( recorded > stripe.m_max )
+            {
+                stripe.m_max = recorded;
+            }
+        }
+    }
+
+    /**
+     * Return a snapshot of the values recorded so far.
+     *
+     * @return the snapshot
+     */
+    public HistogramSnapshot snapshot()
+    {
+        final long[] buckets = new long[ m_bucketCount ];
+        long count = 0;
+        long total = 0;
+        long max = 0;
+        for( int i = 0; i < m_stripes.length; i++ )
+        {
+            final Stripe stripe = m_stripes[ i ];
+            synchronized( stripe )
+            {
+                for( int j = 0; j < m_bucketCount; j++ )
+                {
+                    buckets[ j ] += stripe.m_buckets[ j ];
+                }
+                count += stripe.m_count;
+                total += stripe.m_total;
+                max = Math.max( max, stripe.m_max );
+            }
+        }
+        return new HistogramSnapshot( buckets, m_subBucketBits, count, total, max );
+    }
+
+    /**
+     * Return the number of buckets for specified number of
+     * sub-bucket bits.
+     *
+     * @param subBucketBits the number of bits in a sub-bucket index
+     * @return the number of buckets
+     */
+    static int getBucketCount( final int subBucketBits )
+    {
+        final int subBuckets = 1 << subBucketBits;
+        return subBuckets + ( 63 - subBucketBits ) * subBuckets;
+    }
+
+    /**
+     * Return the bucket that specified value falls into.
+     *
+     * @param value the non-negative value
+     * @param subBucketBits the number of bits in a sub-bucket index
+     * @return the index of bucket
+     */
+    static int bucketFor( final long value, final int subBucketBits )
+    {
+        final int subBuckets = 1 << subBucketBits;
+        if( value < subBuckets )
+        {
+            return (int)value;
+        }
+        final int shift = highestBit( value ) - subBucketBits;
+        final int subBucket = (int)( value >>> shift ) & ( subBuckets - 1 );
+        return subBuckets + shift * subBuckets + subBucket;
+    }
+
+    /**
+     * Return the exclusive upper limit of specified bucket.
+     *
+     * @param bucket the index of bucket
+     * @param subBucketBits the number of bits in a sub-bucket index
+     * @return the limit, Long.MAX_VALUE for the last bucket
+     */
+    static long getBucketLimit( final int bucket, final int subBucketBits )
+    {
+        if( bucket >= getBucketCount( subBucketBits ) - 1 )
+        {
+            return Long.MAX_VALUE;
+        }
+        final int subBuckets = 1 << subBucketBits;
+        final int next = bucket + 1;
+        if( next < subBuckets )
+        {
+            return next;
+        }
+        final int shift = ( next - subBuckets ) / subBuckets;
+        final int subBucket = ( next - subBuckets ) % subBuckets;
+        return (long)( subBuckets + subBucket ) << shift;
+    }
+
+    /**
+     * Return the index of the highest bit set in a positive value.
+     *
+     * @param value the value
+     * @return the index of highest bit
+     */
+    private static int highestBit( final long value )
+    {
+        long remaining = value;
+        int bit = 0;
+        if( 0 != ( remaining >>> 32 ) )
+        {
+            remaining >>>= 32;
+            bit += 32;
+        }
+        if( 0 != ( remaining >>> 16 ) )
+        {
+            remaining >>>= 16;
+            bit += 16;
+        }
+        if( 0 != ( remaining >>> 8 ) )
+        {
+            remaining >>>= 8;
+            bit += 8;
+        }
+        if( 0 != ( remaining >>> 4 ) )
+        {
+            remaining >>>= 4;
+            bit += 4;
+        }
+        if( 0 != ( remaining >>> 2 ) )
+        {
+            remaining >>>= 2;
+            bit += 2;
+        }
+        if( 0 != ( remaining >>> 1 ) )
+        {
+            bit += 1;
+        }
+        return bit;
+    }
+
+    /**
+     * A single stripe of histogram.
+     */
+    private static final class Stripe
+    {
+        final long[] m_buckets;
+        long m_count;
+        long m_total;
+        long m_max;
+
+        Stripe( final int bucketCount )
+        {
+            m_buckets = new long[ bucketCount ];
+        }
+    }
+}
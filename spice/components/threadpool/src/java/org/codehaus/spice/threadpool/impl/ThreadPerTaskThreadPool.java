@@ -0,0 +1,333 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.impl;
+
+import java.util.HashSet;
+import java.util.Set;
+import org.codehaus.spice.threadpool.Executable;
+import org.codehaus.spice.threadpool.ThreadControl;
+import org.codehaus.spice.threadpool.ThreadPool;
+import org.codehaus.spice.threadpool.ThreadPoolMonitor;
+
+/**
+ * The ThreadPerTaskThreadPool is a ThreadPool that starts a new
+ * short lived thread for every bit of work rather than reusing
+ * worker threads. The threads are created with a small stack so
+ * that work which spends most of its time blocked (such as
+ * reading from a socket) can be run in the thousands without
+ * reserving a full sized stack for each of them. Note that the
+ * stack size is only a hint and some virtual machines ignore it.
+ *
+ * <p>A sample configuration for this component is;</p>
+ * <pre>
+ * &lt;config&gt;
+ *   &lt;name&gt;MyThreadPool&lt;/name&gt; &lt;!-- base name of all threads --&gt;
+ *   &lt;priority&gt;5&lt;/priority&gt; &lt;!-- set to default priority --&gt;
+ *   &lt;is-daemon&gt;false&lt;/is-daemon&gt; &lt;!-- are threads daemon threads? --&gt;
+ *   &lt;stack-size&gt;65536&lt;/stack-size&gt; &lt;!-- stack size in bytes, 0 for platform default --&gt;
+ * &lt;/config&gt;
+ * </pre>
+ */
+public class ThreadPerTaskThreadPool
+    implements ThreadPool
+{
+    /**
+     * The work that is currently executing.
+     */
+    private final Set m_active = new HashSet();
+
+    /**
+     * A Running number that indicates the number
+     * of threads created by pool.
+     */
+    private int m_level;
+
+    /**
+     * The thread group associated with pool.
+     */
+    private ThreadGroup m_threadGroup;
+
+    /**
+     * The name of the thread pool.
+     * Used in naming threads.
+     */
+    private String m_name;
+
+    /**
+     * The priorty of the threads created by pool.
+     */
+    private int m_priority = Thread.NORM_PRIORITY;
+
+    /**
+     * A flag indicating whether the pool should create daemon threads.
+     */
+    private boolean m_isDaemon;
+
+    /**
+     * The requested stack size of threads in bytes.
+     * 0 uses the default of the virtual machine.
+     */
+    private long m_stackSize = 64 * 1024;
+
+    /**
+     * The maximum amount of time that will be spent disposing a thread.
+     */
+    private int m_disposeTime = 100;
+
+    /**
+     * Flag indicating whether pool has been shutdown.
+     */
+    private boolean m_shutdown;
+
+    /**
+     * The monitor that receives notifications of
+     * changes in pool.
+     */
+    private ThreadPoolMonitor m_monitor = new NullThreadPoolMonitor();
+
+    /**
+     * Setup the pool.
+     */
+    public void setup()
+    {
+        if( m_stackSize < 0 )
+        {
+            throw new IllegalArgumentException( "stack-size=" + m_stackSize );
+        }
+        m_threadGroup = Thread.currentThread().getThreadGroup();
+        m_monitor.newThreadPool( m_name,
+                                 m_priority,
+                                 m_isDaemon,
+                                 Integer.MAX_VALUE,
+                                 0 );
+    }
+
+    /**
+     * Shutdown the pool, interrupting all work that is still executing.
+     */
+    public void shutdown()
+    {
+        final TaskThread[] threads;
+        synchronized( m_active )
+        {
+            m_shutdown = true;
+            threads = (TaskThread[])m_active.toArray( new TaskThread[ m_active.size() ] );
+        }
+        for( int i = 0; i < threads.length; i++ )
+        {
+            threads[ i ].interrupt();
+        }
+        for( int i = 0; i < threads.length; i++ )
+        {
+            try
+            {
+                threads[ i ].join( m_disposeTime );
+            }
+            catch( final InterruptedException ie )
+            {
+                //Ignore
+            }
+        }
+    }
+
+    /**
+     * Run work in separate thread.
+     * Return a valid ThreadControl to control work thread.
+     *
+     * @param work the work to be executed.
+     * @return the ThreadControl
+     */
+    public ThreadControl execute( final Runnable work )
+    {
+        return execute( new ExecutableRunnable( work ) );
+    }
+
+    /**
+     * Start a new thread to execute work.
+     * Return a valid ThreadControl to control work thread.
+     *
+     * @param work the work to be executed.
+     * @return the ThreadControl
+     * @throws IllegalStateException if the pool has been shutdown
+     */
+    public ThreadControl execute( final Executable work )
+    {
+        final QueuedWork entry = new QueuedWork( work );
+        final TaskThread thread;
+        synchronized( m_active )
+        {
+            if( m_shutdown )
+            {
+                throw new IllegalStateException( "ThreadPool " + m_name + " has been shutdown" );
+            }
+            final String name = m_name + " Task #" + m_level++;
+            thread = new TaskThread( m_threadGroup, entry, name, m_stackSize );
+            m_active.add( thread );
+        }
+        thread.setPriority( m_priority );
+        thread.setDaemon( m_isDaemon );
+        m_monitor.threadCreated( thread );
+        boolean started = false;
+        try
+        {
+            thread.start();
+            started = true;
+        }
+        finally
+        {
+            //The thread never ran so it has to be removed here
+            if( !started )
+            {
+                taskCompleted( thread );
+                m_monitor.threadDisposing( thread );
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Return the number of threads executing work.
+     *
+     * @return the number of threads executing work.
+     */
+    public int getActiveCount()
+    {
+        synchronized( m_active )
+        {
+            return m_active.size();
+        }
+    }
+
+    /**
+     * Get the name used for thread pool.
+     * (Used in naming threads).
+     *
+     * @return the thread pool name
+     */
+    protected String getName()
+    {
+        return m_name;
+    }
+
+    /**
+     * Set the name used for thread pool.
+     * Used in naming threads.
+     *
+     * @param name the thread pool name
+     */
+    protected void setName( final String name )
+    {
+        m_name = name;
+    }
+
+    /**
+     * Set the priorty of threads created for pool.
+     *
+     * @param priority the priorty of threads created for pool.
+     */
+    protected void setPriority( final int priority )
+    {
+        m_priority = priority;
+    }
+
+    /**
+     * Set flag indicating whether daemon threads should be created by pool.
+     *
+     * @param daemon flag indicating whether daemon threads should be created by pool.
+     */
+    protected void setDaemon( final boolean daemon )
+    {
+        m_isDaemon = daemon;
+    }
+
+    /**
+     * Set the requested stack size of threads in bytes.
+     *
+     * @param stackSize the stack size, 0 for the default of the virtual machine.
+     */
+    protected void setStackSize( final long stackSize )
+    {
+        m_stackSize = stackSize;
+    }
+
+    /**
+     * Set the maximum amount of time that will be spent disposing a thread.
+     *
+     * @param disposeTime the maximum amount of time that will be spent disposing a thread.
+     */
+    protected void setDisposeTime( final int disposeTime )
+    {
+        m_disposeTime = disposeTime;
+    }
+
+    /**
+     * Set the Monitor to use to notify of changes in the Pool.
+     *
+     * @param monitor the Monitor to use to notify of changes in the Pool.
+     */
+    protected final void setMonitor( final ThreadPoolMonitor monitor )
+    {
+        m_monitor = monitor;
+    }
+
+    /**
+     * Method called by thread when its work is complete.
+     *
+     * @param thread the thread
+     */
+    void taskCompleted( final TaskThread thread )
+    {
+        synchronized( m_active )
+        {
+            m_active.remove( thread );
+        }
+    }
+
+    /**
+     * A thread that executes a single bit of work.
+     */
+    private final class TaskThread
+        extends Thread
+    {
+        private final QueuedWork m_entry;
+
+        TaskThread( final ThreadGroup group,
+                    final QueuedWork entry,
+                    final String name,
+                    final long stackSize )
+        {
+            super( group, null, name, stackSize );
+            m_entry = entry;
+        }
+
+        public void run()
+        {
+            m_entry.start( this );
+            Throwable throwable = null;
+            try
+            {
+                m_entry.getWork().execute();
+            }
+            catch( final ThreadDeath threadDeath )
+            {
+                throwable = threadDeath;
+                throw threadDeath;
+            }
+            catch( final Throwable t )
+            {
+                throwable = t;
+            }
+            finally
+            {
+                taskCompleted( this );
+                m_monitor.threadDisposing( this );
+                m_entry.finish( throwable );
+            }
+        }
+    }
+}
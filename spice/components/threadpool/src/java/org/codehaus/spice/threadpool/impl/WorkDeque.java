@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.impl;
+
+/**
+ * A double ended queue of work owned by a single worker of a
+ * {@link WorkStealingThreadPool}. The owner pushes and pops work
+ * at the tail (most recently submitted work first) while other
+ * workers steal from the head (oldest work first). The monitor of
+ * a deque is only ever contended by its owner and a thief, never
+ * by the pool as a whole.
+ */
+final class WorkDeque
+{
+    /**
+     * The initial capacity of deque.
+     */
+    private static final int INITIAL_CAPACITY = 32;
+
+    /**
+     * The circular buffer of work.
+     */
+    private Object[] m_items = new Object[ INITIAL_CAPACITY ];
+
+    /**
+     * Index of the oldest item.
+     */
+    private int m_head;
+
+    /**
+     * Number of items in deque.
+     */
+    private int m_count;
+
+    /**
+     * Add work to the tail of deque, growing deque if required.
+     *
+     * @param item the work
+     */
+    synchronized void push( final Object item )
+    {
+        if( m_count == m_items.length )
+        {
+            final Object[] items = new Object[ m_items.length * 2 ];
+            for( int i = 0; i < m_count; i++ )
+            {
+                items[ i ] = m_items[ ( m_head + i ) % m_items.length ];
+            }
+            m_items = items;
+            m_head = 0;
+        }
+        m_items[ ( m_head + m_count ) % m_items.length ] = item;
+        m_count++;
+    }
+
+    /**
+     * Remove the most recently pushed work. Called by owner.
+     *
+     * @return the work or null if deque is empty
+     */
+    synchronized Object pop()
+    {
+        if( 0 == m_count )
+        {
+            return null;
+        }
+        m_count--;
+        final int index = ( m_head + m_count ) % m_items.length;
+        final Object item = m_items[ index ];
+        m_items[ index ] = null;
+        return item;
+    }
+
+    /**
+     * Remove the oldest work. Called by other workers.
+     *
+     * @return the work or null if deque is empty
+     */
+    synchronized Object steal()
+    {
+        if( 0 == m_count )
+        {
+            return null;
+        }
+        final Object item = m_items[ m_head ];
+        m_items[ m_head ] = null;
+        m_head = ( m_head + 1 ) % m_items.length;
+        m_count--;
+        return item;
+    }
+
+    /**
+     * Remove and return all work in deque.
+     *
+     * @return all work in deque
+     */
+    synchronized Object[] drain()
+    {
+        final Object[] items = new Object[ m_count ];
+        for( int i = 0; i < items.length; i++ )
+        {
+            items[ i ] = steal();
+        }
+        return items;
+    }
+
+    /**
+     * Return the number of bits of work in deque.
+     *
+     * @return the number of bits of work in deque.
+     */
+    synchronized int size()
+    {
+        return m_count;
+    }
+}
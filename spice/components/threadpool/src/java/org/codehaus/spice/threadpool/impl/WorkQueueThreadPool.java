@@ -0,0 +1,629 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.codehaus.spice.threadpool.BoundedThreadPool;
+import org.codehaus.spice.threadpool.Executable;
+import org.codehaus.spice.threadpool.RejectionPolicy;
+import org.codehaus.spice.threadpool.TaskThreadPoolMonitor;
+import org.codehaus.spice.threadpool.ThreadControl;
+import org.codehaus.spice.threadpool.ThreadPool;
+import org.codehaus.spice.threadpool.ThreadPoolMonitor;
+
+/**
+ * The WorkQueueThreadPool is a ThreadPool in which a set of long
+ * lived workers pull work from a shared bounded queue. Unlike the
+ * {@link CommonsThreadPool} there is no borrowing and returning of
+ * worker threads per request, submitting work is just a matter of
+ * adding it to the queue.
+ *
+ * <p>The pool keeps <tt>min-threads</tt> workers alive at all
+ * times and will grow up to <tt>max-threads</tt> workers when
+ * work is queued and no worker is idle. Workers above the minimum
+ * retire after being idle for <tt>keep-alive</tt> milliseconds, or
+ * never retire if it is 0. Setting <tt>min-threads</tt> equal to <tt>max-threads</tt>
+ * results in a fixed size pool. When the queue is full the
+ * work is handled according to the rejection-policy, by default
+ * the submitting thread blocks until space becomes available. A
+ * sample configuration for this component is;</p>
+ * <pre>
+ * &lt;config&gt;
+ *   &lt;name&gt;MyThreadPool&lt;/name&gt; &lt;!-- base name of all threads --&gt;
+ *   &lt;priority&gt;5&lt;/priority&gt; &lt;!-- set to default priority --&gt;
+ *   &lt;is-daemon&gt;false&lt;/is-daemon&gt; &lt;!-- are threads daemon threads? --&gt;
+ *   &lt;min-threads&gt;2&lt;/min-threads&gt; &lt;!-- workers kept alive when idle --&gt;
+ *   &lt;max-threads&gt;10&lt;/max-threads&gt;
+ *   &lt;queue-size&gt;1000&lt;/queue-size&gt; &lt;!-- maximum amount of queued work --&gt;
+ *   &lt;keep-alive&gt;60000&lt;/keep-alive&gt; &lt;!-- idle time before worker retires, 0 never retires --&gt;
+ *   &lt;rejection-policy&gt;block&lt;/rejection-policy&gt; &lt;!-- fail-fast, caller-runs or block --&gt;
+ *   &lt;block-timeout&gt;0&lt;/block-timeout&gt; &lt;!-- max wait for space in queue, 0 waits forever --&gt;
+ * &lt;/config&gt;
+ * </pre>
+ */
+public class WorkQueueThreadPool
+    implements ThreadPool, BoundedThreadPool
+{
+    /**
+     * The queue of work waiting for a worker.
+     */
+    private BoundedWorkQueue m_queue;
+
+    /**
+     * The list of live workers. Only accessed when workers are
+     * created or exit and never when work is submitted.
+     */
+    private final List m_workers = new ArrayList();
+
+    /**
+     * The number of live workers.
+     */
+    private volatile int m_workerCount;
+
+    /**
+     * A Running number that indicates the number
+     * of threads created by pool.
+     */
+    private int m_level;
+
+    /**
+     * The thread group associated with pool.
+     */
+    private ThreadGroup m_threadGroup;
+
+    /**
+     * The name of the thread pool.
+     * Used in naming threads.
+     */
+    private String m_name;
+
+    /**
+     * The priorty of the threads created by pool.
+     */
+    private int m_priority = Thread.NORM_PRIORITY;
+
+    /**
+     * A flag indicating whether the pool should create daemon threads.
+     */
+    private boolean m_isDaemon;
+
+    /**
+     * The number of workers kept alive even when idle.
+     */
+    private int m_minThreads = 1;
+
+    /**
+     * The maximum number of workers.
+     */
+    private int m_maxThreads = 10;
+
+    /**
+     * The maximum number of queued bits of work.
+     */
+    private int m_queueSize = 1000;
+
+    /**
+     * The time in milliseconds an idle worker above the
+     * minimum waits for work before retiring. 0 waits indefinetly.
+     */
+    private long m_keepAliveTime = 60 * 1000;
+
+    /**
+     * The maximum amount of time that will be spent disposing a thread.
+     */
+    private int m_disposeTime = 100;
+
+    /**
+     * The policy applied to work submitted while the queue is full.
+     */
+    private RejectionPolicy m_rejectionPolicy = RejectionPolicy.BLOCK;
+
+    /**
+     * The maximum time in milliseconds a submitter waits for space
+     * in queue under the BLOCK policy. 0 waits indefinetly.
+     */
+    private long m_blockTimeout;
+
+    /**
+     * Flag indicating whether pool has been shutdown.
+     */
+    private volatile boolean m_shutdown;
+
+    /**
+     * The monitor that receives notifications of
+     * changes in pool.
+     */
+    private ThreadPoolMonitor m_monitor = new NullThreadPoolMonitor();
+
+    /**
+     * The monitor if it wants to be notified about
+     * individual tasks, else null.
+     */
+    private TaskThreadPoolMonitor m_taskMonitor;
+
+    /**
+     * Create the queue and start the minimum number of workers.
+     */
+    public void setup()
+    {
+        if( m_minThreads < 0 || m_maxThreads < 1 || m_minThreads > m_maxThreads )
+        {
+            final String message =
+                "Invalid thread limits min-threads=" + m_minThreads +
+                " max-threads=" + m_maxThreads;
+            throw new IllegalArgumentException( message );
+        }
+        m_threadGroup = Thread.currentThread().getThreadGroup();
+        m_monitor.newThreadPool( m_name,
+                                 m_priority,
+                                 m_isDaemon,
+                                 m_maxThreads,
+                                 m_minThreads );
+        m_queue = new BoundedWorkQueue( m_queueSize );
+        synchronized( m_workers )
+        {
+            for( int i = 0; i < m_minThreads; i++ )
+            {
+                startWorker();
+            }
+        }
+    }
+
+    /**
+     * Shutdown all threads associated with pool. Work that has not
+     * started yet is discarded and finishes with an InterruptedException.
+     */
+    public void shutdown()
+    {
+        m_shutdown = true;
+        final Object[] pending = m_queue.close();
+        for( int i = 0; i < pending.length; i++ )
+        {
+            final QueuedWork entry = (QueuedWork)pending[ i ];
+            entry.finish( new InterruptedException( "ThreadPool shutdown" ) );
+        }
+
+        final QueueWorkerThread[] workers;
+        synchronized( m_workers )
+        {
+            workers = (QueueWorkerThread[])m_workers.
+                toArray( new QueueWorkerThread[ m_workers.size() ] );
+        }
+        for( int i = 0; i < workers.length; i++ )
+        {
+            workers[ i ].interrupt();
+        }
+        for( int i = 0; i < workers.length; i++ )
+        {
+            try
+            {
+                workers[ i ].join( m_disposeTime );
+            }
+            catch( final InterruptedException ie )
+            {
+                //Ignore
+            }
+        }
+    }
+
+    /**
+     * Run work in separate thread.
+     * Return a valid ThreadControl to control work thread.
+     *
+     * @param work the work to be executed.
+     * @return the ThreadControl
+     */
+    public ThreadControl execute( final Runnable work )
+    {
+        return execute( new ExecutableRunnable( work ) );
+    }
+
+    /**
+     * Place work on the queue to be executed by a worker.
+     * Return a valid ThreadControl to control work thread.
+     *
+     * @param work the work to be executed.
+     * @return the ThreadControl
+     * @throws IllegalStateException if the pool has been shutdown
+     *         or the work was rejected
+     */
+    public ThreadControl execute( final Executable work )
+    {
+        final ThreadControl control = tryExecute( work );
+        if( null == control )
+        {
+            throw new IllegalStateException( "ThreadPool " + m_name + " rejected work" );
+        }
+        return control;
+    }
+
+    /**
+     * Run work in separate thread if the pool admits it.
+     *
+     * @param work the work to be executed.
+     * @return the ThreadControl, or null if the work was rejected
+     */
+    public ThreadControl tryExecute( final Runnable work )
+    {
+        return tryExecute( new ExecutableRunnable( work ) );
+    }
+
+    /**
+     * Place work on the queue to be executed by a worker if
+     * the queue admits it according to the rejection policy.
+     *
+     * @param work the work to be executed.
+     * @return the ThreadControl, or null if the work was rejected
+     * @throws IllegalStateException if the pool has been shutdown
+     */
+    public ThreadControl tryExecute( final Executable work )
+    {
+        final QueuedWork entry = new QueuedWork( work );
+        if( null != m_taskMonitor )
+        {
+            entry.setSubmitTime( System.currentTimeMillis() );
+        }
+        if( enqueue( entry ) )
+        {
+            return entry;
+        }
+
+        if( null != m_taskMonitor )
+        {
+            m_taskMonitor.taskRejected();
+        }
+        if( RejectionPolicy.CALLER_RUNS == m_rejectionPolicy )
+        {
+            return QueuedWork.executeInCaller( work );
+        }
+        else
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Add entry to queue according to the rejection policy
+     * and make sure that there is a worker to pick it up.
+     *
+     * @param entry the entry
+     * @return true if entry was added to queue
+     */
+    private boolean enqueue( final QueuedWork entry )
+    {
+        if( m_shutdown )
+        {
+            throw new IllegalStateException( "ThreadPool " + m_name + " has been shutdown" );
+        }
+        final boolean queued;
+        if( RejectionPolicy.BLOCK == m_rejectionPolicy )
+        {
+            queued = m_queue.putUninterruptibly( entry, m_blockTimeout );
+        }
+        else
+        {
+            queued = m_queue.offer( entry );
+        }
+        if( queued &&
+            m_workerCount < m_maxThreads &&
+            0 == m_queue.getWaitingTakers() )
+        {
+            addWorkerIfNeeded();
+        }
+        return queued;
+    }
+
+    /**
+     * Start a new worker if there is queued work and
+     * the pool has not reached its maximum size.
+     */
+    private void addWorkerIfNeeded()
+    {
+        synchronized( m_workers )
+        {
+            if( !m_shutdown &&
+                m_workerCount < m_maxThreads &&
+                m_queue.size() > m_queue.getWaitingTakers() )
+            {
+                startWorker();
+            }
+        }
+    }
+
+    /**
+     * Create a worker and start it up.
+     * Must be called while holding lock on m_workers.
+     */
+    private void startWorker()
+    {
+        final String name = m_name + " Worker #" + m_level++;
+        final QueueWorkerThread worker =
+            new QueueWorkerThread( this, m_threadGroup, name, m_priority );
+        worker.setDaemon( m_isDaemon );
+        m_workers.add( worker );
+        m_workerCount++;
+        worker.start();
+        m_monitor.threadCreated( worker );
+    }
+
+    /**
+     * Retrieve the next bit of work for worker, waiting if there
+     * is none. Returns null if the worker should exit.
+     *
+     * @param worker the worker
+     * @return the work or null if worker should exit
+     */
+    QueuedWork nextWork( final QueueWorkerThread worker )
+    {
+        while( !m_shutdown )
+        {
+            final QueuedWork entry;
+            try
+            {
+                entry = (QueuedWork)m_queue.take( m_keepAliveTime );
+            }
+            catch( final InterruptedException ie )
+            {
+                continue;
+            }
+            if( null != entry )
+            {
+                return entry;
+            }
+            if( retire( worker ) )
+            {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Method called by worker when it starts executing work.
+     *
+     * @param worker the worker
+     * @return the start time if work is monitored, else 0
+     */
+    long workStarted( final QueueWorkerThread worker )
+    {
+        m_monitor.threadRetrieved( worker );
+        return ( null != m_taskMonitor ) ? System.currentTimeMillis() : 0;
+    }
+
+    /**
+     * Method called by worker when it has finished executing work.
+     *
+     * @param worker the worker
+     * @param entry the work
+     * @param startTime the time returned by {@link #workStarted}
+     * @param throwable the throwable that caused work to fail, or null
+     */
+    void workFinished( final QueueWorkerThread worker,
+                       final QueuedWork entry,
+                       final long startTime,
+                       final Throwable throwable )
+    {
+        if( null != m_taskMonitor )
+        {
+            final long endTime = System.currentTimeMillis();
+            m_taskMonitor.taskCompleted( worker,
+                                         startTime - entry.getSubmitTime(),
+                                         endTime - startTime,
+                                         throwable );
+        }
+        m_monitor.threadReturned( worker );
+    }
+
+    /**
+     * Remove an idle worker from pool if the pool is above its
+     * minimum size and there is no queued work. The worker is
+     * removed as it is chosen so that workers timing out together
+     * can not take the pool below the minimum.
+     *
+     * @param worker the worker
+     * @return true if the worker was removed and should exit
+     */
+    private boolean retire( final QueueWorkerThread worker )
+    {
+        synchronized( m_workers )
+        {
+            if( m_workerCount > m_minThreads && 0 == m_queue.size() )
+            {
+                m_workers.remove( worker );
+                m_workerCount--;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Method called by worker when it exits, either
+     * because it retired or because work killed it.
+     *
+     * @param worker the worker
+     */
+    void workerExited( final QueueWorkerThread worker )
+    {
+        m_monitor.threadDisposing( worker );
+        synchronized( m_workers )
+        {
+            //A retired worker has already been removed
+            if( m_workers.remove( worker ) )
+            {
+                m_workerCount--;
+            }
+            if( !m_shutdown &&
+                m_workerCount < m_maxThreads &&
+                ( m_workerCount < m_minThreads || m_queue.size() > 0 ) )
+            {
+                //Replace worker killed by work, or pick up work
+                //queued while a worker retired
+                startWorker();
+            }
+        }
+    }
+
+    /**
+     * Return the number of live workers.
+     *
+     * @return the number of live workers.
+     */
+    public int getWorkerCount()
+    {
+        return m_workerCount;
+    }
+
+    /**
+     * Return the number of bits of work waiting for a worker.
+     *
+     * @return the number of bits of work waiting for a worker.
+     */
+    public int getQueueDepth()
+    {
+        return m_queue.size();
+    }
+
+    /**
+     * Get the name used for thread pool.
+     * (Used in naming threads).
+     *
+     * @return the thread pool name
+     */
+    protected String getName()
+    {
+        return m_name;
+    }
+
+    /**
+     * Set the name used for thread pool.
+     * Used in naming threads.
+     *
+     * @param name the thread pool name
+     */
+    protected void setName( final String name )
+    {
+        m_name = name;
+    }
+
+    /**
+     * Set the priorty of threads created for pool.
+     *
+     * @param priority the priorty of threads created for pool.
+     */
+    protected void setPriority( final int priority )
+    {
+        m_priority = priority;
+    }
+
+    /**
+     * Set flag indicating whether daemon threads should be created by pool.
+     *
+     * @param daemon flag indicating whether daemon threads should be created by pool.
+     */
+    protected void setDaemon( final boolean daemon )
+    {
+        m_isDaemon = daemon;
+    }
+
+    /**
+     * Set the number of workers kept alive even when idle.
+     *
+     * @param minThreads the number of workers kept alive even when idle.
+     */
+    protected void setMinThreads( final int minThreads )
+    {
+        m_minThreads = minThreads;
+    }
+
+    /**
+     * Set the maximum number of workers.
+     *
+     * @param maxThreads the maximum number of workers.
+     */
+    protected void setMaxThreads( final int maxThreads )
+    {
+        m_maxThreads = maxThreads;
+    }
+
+    /**
+     * Set the maximum number of queued bits of work.
+     *
+     * @param queueSize the maximum number of queued bits of work.
+     */
+    protected void setQueueSize( final int queueSize )
+    {
+        m_queueSize = queueSize;
+    }
+
+    /**
+     * Set the time in milliseconds an idle worker above the
+     * minimum waits for work before retiring. If 0 workers
+     * wait indefinetly and never retire.
+     *
+     * @param keepAliveTime the keep alive time in milliseconds
+     */
+    protected void setKeepAliveTime( final long keepAliveTime )
+    {
+        m_keepAliveTime = keepAliveTime;
+    }
+
+    /**
+     * Set the maximum amount of time that will be spent disposing a thread.
+     *
+     * @param disposeTime the maximum amount of time that will be spent disposing a thread.
+     */
+    protected void setDisposeTime( final int disposeTime )
+    {
+        m_disposeTime = disposeTime;
+    }
+
+    /**
+     * Set the policy applied to work submitted while the queue is full.
+     *
+     * @param rejectionPolicy the policy
+     */
+    protected void setRejectionPolicy( final RejectionPolicy rejectionPolicy )
+    {
+        if( null == rejectionPolicy )
+        {
+            throw new NullPointerException( "rejectionPolicy" );
+        }
+        m_rejectionPolicy = rejectionPolicy;
+    }
+
+    /**
+     * Set the maximum time in milliseconds a submitter waits for
+     * space in queue under the BLOCK policy. 0 waits indefinetly.
+     *
+     * @param blockTimeout the block timeout in milliseconds
+     */
+    protected void setBlockTimeout( final long blockTimeout )
+    {
+        m_blockTimeout = blockTimeout;
+    }
+
+    /**
+     * Set the Monitor to use to notify of changes in the Pool.
+     *
+     * @param monitor the Monitor to use to notify of changes in the Pool.
+     */
+    protected final void setMonitor( final ThreadPoolMonitor monitor )
+    {
+        m_monitor = monitor;
+        if( monitor instanceof TaskThreadPoolMonitor )
+        {
+            m_taskMonitor = (TaskThreadPoolMonitor)monitor;
+        }
+        else
+        {
+            m_taskMonitor = null;
+        }
+    }
+}
@@ -0,0 +1,605 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.impl;
+
+import org.codehaus.spice.threadpool.BoundedThreadPool;
+import org.codehaus.spice.threadpool.Executable;
+import org.codehaus.spice.threadpool.RejectionPolicy;
+import org.codehaus.spice.threadpool.ThreadControl;
+import org.codehaus.spice.threadpool.ThreadPool;
+import org.codehaus.spice.threadpool.ThreadPoolMonitor;
+
+/**
+ * The WorkStealingThreadPool is a fixed size ThreadPool in which
+ * every worker owns a deque of work. Work submitted by a worker of
+ * the pool (ie work that splits itself into smaller bits of work)
+ * is pushed onto the deque of that worker and is executed most
+ * recent first, which keeps related work on the same thread. Work
+ * submitted from outside the pool goes to a shared bounded queue.
+ * A worker that runs out of work first looks at the shared queue
+ * and then steals the oldest work from the deques of the other
+ * workers.
+ *
+ * <p>When a worker calls {@link ThreadControl#join(long)} on work
+ * that has not finished it executes other pending work while it
+ * waits rather than blocking, so work can wait on the work it
+ * submitted without exhausting the pool.</p>
+ *
+ * <p>Work submitted from outside the pool while the shared queue
+ * is full is handled according to the rejection-policy. Work
+ * submitted by a worker is never rejected. A sample configuration
+ * for this component is;</p>
+ * <pre>
+ * &lt;config&gt;
+ *   &lt;name&gt;MyThreadPool&lt;/name&gt; &lt;!-- base name of all threads --&gt;
+ *   &lt;priority&gt;5&lt;/priority&gt; &lt;!-- set to default priority --&gt;
+ *   &lt;is-daemon&gt;false&lt;/is-daemon&gt; &lt;!-- are threads daemon threads? --&gt;
+ *   &lt;max-threads&gt;4&lt;/max-threads&gt; &lt;!-- number of workers --&gt;
+ *   &lt;queue-size&gt;1000&lt;/queue-size&gt; &lt;!-- maximum amount of work submitted from outside pool --&gt;
+ *   &lt;rejection-policy&gt;block&lt;/rejection-policy&gt; &lt;!-- fail-fast, caller-runs or block --&gt;
+ *   &lt;block-timeout&gt;0&lt;/block-timeout&gt; &lt;!-- max wait for space in queue, 0 waits forever --&gt;
+ * &lt;/config&gt;
+ * </pre>
+ */
+public class WorkStealingThreadPool
+    implements ThreadPool, BoundedThreadPool
+{
+    /**
+     * The time in milliseconds an idle worker sleeps
+     * before rescanning deques for work.
+     */
+    private static final long IDLE_WAIT = 1000;
+
+    /**
+     * The queue of work submitted from outside the pool.
+     */
+    private BoundedWorkQueue m_submissions;
+
+    /**
+     * The deques of work, one per worker. A deque
+     * outlives the worker if work kills the worker.
+     */
+    private WorkDeque[] m_deques;
+
+    /**
+     * The workers indexed by deque they own.
+     */
+    private StealingWorkerThread[] m_workers;
+
+    /**
+     * Lock that idle workers wait upon.
+     */
+    private final Object m_idleLock = new Object();
+
+    /**
+     * The number of workers waiting on idle lock.
+     */
+    private volatile int m_idleCount;
+
+    /**
+     * A Running number that indicates the number
+     * of threads created by pool.
+     */
+    private int m_level;
+
+    /**
+     * The thread group associated with pool.
+     */
+    private ThreadGroup m_threadGroup;
+
+    /**
+     * The name of the thread pool.
+     * Used in naming threads.
+     */
+    private String m_name;
+
+    /**
+     * The priorty of the threads created by pool.
+     */
+    private int m_priority = Thread.NORM_PRIORITY;
+
+    /**
+     * A flag indicating whether the pool should create daemon threads.
+     */
+    private boolean m_isDaemon;
+
+    /**
+     * The number of workers.
+     */
+    private int m_maxThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The maximum number of bits of work submitted from
+     * outside the pool that may be waiting for a worker.
+     */
+    private int m_queueSize = 1000;
+
+    /**
+     * The maximum amount of time that will be spent disposing a thread.
+     */
+    private int m_disposeTime = 100;
+
+    /**
+     * The policy applied to work submitted from outside the pool
+     * while the shared queue is full.
+     */
+    private RejectionPolicy m_rejectionPolicy = RejectionPolicy.BLOCK;
+
+    /**
+     * The maximum time in milliseconds a submitter waits for space
+     * in queue under the BLOCK policy. 0 waits indefinetly.
+     */
+    private long m_blockTimeout;
+
+    /**
+     * Flag indicating whether pool has been shutdown.
+     */
+    private volatile boolean m_shutdown;
+
+    /**
+     * The monitor that receives notifications of
+     * changes in pool.
+     */
+    private ThreadPoolMonitor m_monitor = new NullThreadPoolMonitor();
+
+    /**
+     * Create the deques and start the workers.
+     */
+    public void setup()
+    {
+        if( m_maxThreads < 1 )
+        {
+            final String message =
+                "Invalid thread limit max-threads=" + m_maxThreads;
+            throw new IllegalArgumentException( message );
+        }
+        m_threadGroup = Thread.currentThread().getThreadGroup();
+        m_monitor.newThreadPool( m_name,
+                                 m_priority,
+                                 m_isDaemon,
+                                 m_maxThreads,
+                                 m_maxThreads );
+        m_submissions = new BoundedWorkQueue( m_queueSize );
+        m_deques = new WorkDeque[ m_maxThreads ];
+        m_workers = new StealingWorkerThread[ m_maxThreads ];
+        synchronized( m_workers )
+        {
+            //every deque must exist before a worker can steal from it
+            for( int i = 0; i < m_maxThreads; i++ )
+            {
+                m_deques[ i ] = new WorkDeque();
+            }
+            for( int i = 0; i < m_maxThreads; i++ )
+            {
+                startWorker( i );
+            }
+        }
+    }
+
+    /**
+     * Shutdown all threads associated with pool. Work that has not
+     * started yet is discarded and finishes with an InterruptedException.
+     */
+    public void shutdown()
+    {
+        m_shutdown = true;
+        discard( m_submissions.close() );
+        for( int i = 0; i < m_deques.length; i++ )
+        {
+            discard( m_deques[ i ].drain() );
+        }
+
+        final StealingWorkerThread[] workers;
+        synchronized( m_workers )
+        {
+            workers = (StealingWorkerThread[])m_workers.clone();
+        }
+        for( int i = 0; i < workers.length; i++ )
+        {
+            m_monitor.threadDisposing( workers[ i ] );
+            workers[ i ].interrupt();
+        }
+        synchronized( m_idleLock )
+        {
+            m_idleLock.notifyAll();
+        }
+        for( int i = 0; i < workers.length; i++ )
+        {
+            try
+            {
+                workers[ i ].join( m_disposeTime );
+            }
+            catch( final InterruptedException ie )
+            {
+                //Ignore
+            }
+        }
+    }
+
+    /**
+     * Finish work that will never be executed.
+     *
+     * @param pending the work
+     */
+    private void discard( final Object[] pending )
+    {
+        for( int i = 0; i < pending.length; i++ )
+        {
+            final QueuedWork entry = (QueuedWork)pending[ i ];
+            entry.finish( new InterruptedException( "ThreadPool shutdown" ) );
+        }
+    }
+
+    /**
+     * Run work in separate thread.
+     * Return a valid ThreadControl to control work thread.
+     *
+     * @param work the work to be executed.
+     * @return the ThreadControl
+     */
+    public ThreadControl execute( final Runnable work )
+    {
+        return execute( new ExecutableRunnable( work ) );
+    }
+
+    /**
+     * Schedule work for execution.
+     * Return a valid ThreadControl to control work thread.
+     *
+     * @param work the work to be executed.
+     * @return the ThreadControl
+     * @throws IllegalStateException if the pool has been shutdown
+     *         or the work was rejected
+     */
+    public ThreadControl execute( final Executable work )
+    {
+        final ThreadControl control = tryExecute( work );
+        if( null == control )
+        {
+            throw new IllegalStateException( "ThreadPool " + m_name + " rejected work" );
+        }
+        return control;
+    }
+
+    /**
+     * Run work in separate thread if the pool admits it.
+     *
+     * @param work the work to be executed.
+     * @return the ThreadControl, or null if the work was rejected
+     */
+    public ThreadControl tryExecute( final Runnable work )
+    {
+        return tryExecute( new ExecutableRunnable( work ) );
+    }
+
+    /**
+     * Schedule work for execution. If called by a worker of this
+     * pool the work is added to the deque of that worker, otherwise
+     * it is added to the shared queue according to the rejection policy.
+     *
+     * @param work the work to be executed.
+     * @return the ThreadControl, or null if the work was rejected
+     * @throws IllegalStateException if the pool has been shutdown
+     */
+    public ThreadControl tryExecute( final Executable work )
+    {
+        final StealingWork entry = new StealingWork( this, work );
+        if( m_shutdown )
+        {
+            throw new IllegalStateException( "ThreadPool " + m_name + " has been shutdown" );
+        }
+        final StealingWorkerThread worker = getCurrentWorker();
+        if( null != worker )
+        {
+            m_deques[ worker.getIndex() ].push( entry );
+        }
+        else if( !submit( entry ) )
+        {
+            if( RejectionPolicy.CALLER_RUNS == m_rejectionPolicy )
+            {
+                return QueuedWork.executeInCaller( work );
+            }
+            return null;
+        }
+        if( 0 != m_idleCount )
+        {
+            synchronized( m_idleLock )
+            {
+                m_idleLock.notify();
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Add entry to shared queue according to the rejection policy.
+     *
+     * @param entry the entry
+     * @return true if entry was added to queue
+     */
+    private boolean submit( final QueuedWork entry )
+    {
+        if( RejectionPolicy.BLOCK == m_rejectionPolicy )
+        {
+            return m_submissions.putUninterruptibly( entry, m_blockTimeout );
+        }
+        else
+        {
+            return m_submissions.offer( entry );
+        }
+    }
+
+    /**
+     * Return the current thread if it is a worker
+     * of this pool, else return null.
+     *
+     * @return the current worker or null
+     */
+    StealingWorkerThread getCurrentWorker()
+    {
+        final Thread thread = Thread.currentThread();
+        if( thread instanceof StealingWorkerThread )
+        {
+            final StealingWorkerThread worker = (StealingWorkerThread)thread;
+            if( this == worker.getPool() )
+            {
+                return worker;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Create a worker for specified deque and start it up.
+     * Must be called while holding lock on m_workers.
+     *
+     * @param index the index of deque
+     */
+    private void startWorker( final int index )
+    {
+        final String name = m_name + " Worker #" + m_level++;
+        final StealingWorkerThread worker =
+            new StealingWorkerThread( this, index, m_threadGroup, name, m_priority );
+        worker.setDaemon( m_isDaemon );
+        m_workers[ index ] = worker;
+        worker.start();
+        m_monitor.threadCreated( worker );
+    }
+
+    /**
+     * Find work for worker without waiting. The worker looks
+     * at its own deque, then the shared queue and then tries
+     * to steal from the other workers.
+     *
+     * @param worker the worker
+     * @return the work or null if there is none
+     */
+    QueuedWork findWork( final StealingWorkerThread worker )
+    {
+        final int index = worker.getIndex();
+        Object entry = m_deques[ index ].pop();
+        if( null != entry )
+        {
+            return (QueuedWork)entry;
+        }
+        entry = m_submissions.poll();
+        if( null != entry )
+        {
+            return (QueuedWork)entry;
+        }
+        final int count = m_deques.length;
+        for( int i = 1; i < count; i++ )
+        {
+            entry = m_deques[ ( index + i ) % count ].steal();
+            if( null != entry )
+            {
+                return (QueuedWork)entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Retrieve the next bit of work for worker, waiting if there
+     * is none. Returns null if the worker should exit.
+     *
+     * @param worker the worker
+     * @return the work or null if worker should exit
+     */
+    QueuedWork nextWork( final StealingWorkerThread worker )
+    {
+        while( !m_shutdown )
+        {
+            final QueuedWork entry = findWork( worker );
+            if( null != entry )
+            {
+                return entry;
+            }
+            synchronized( m_idleLock )
+            {
+                m_idleCount++;
+                try
+                {
+                    //Rescan after registering as idle so that
+                    //a submitter either sees us or we see its work
+                    final QueuedWork rescan = findWork( worker );
+                    if( null != rescan )
+                    {
+                        return rescan;
+                    }
+                    if( !m_shutdown )
+                    {
+                        m_idleLock.wait( IDLE_WAIT );
+                    }
+                }
+                catch( final InterruptedException ie )
+                {
+                    //Ignore and check shutdown flag
+                }
+                finally
+                {
+                    m_idleCount--;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Method called by worker when it exits, either
+     * because the pool is shutdown or because work killed it.
+     *
+     * @param worker the worker
+     */
+    void workerExited( final StealingWorkerThread worker )
+    {
+        synchronized( m_workers )
+        {
+            if( !m_shutdown && worker == m_workers[ worker.getIndex() ] )
+            {
+                //Replace worker killed by work
+                startWorker( worker.getIndex() );
+            }
+        }
+    }
+
+    /**
+     * Return the number of workers.
+     *
+     * @return the number of workers.
+     */
+    public int getWorkerCount()
+    {
+        return m_maxThreads;
+    }
+
+    /**
+     * Return the number of bits of work waiting for a worker,
+     * both in the shared queue and in the deques of workers.
+     *
+     * @return the number of bits of work waiting for a worker.
+     */
+    public int getQueueDepth()
+    {
+        int depth = m_submissions.size();
+        for( int i = 0; i < m_deques.length; i++ )
+        {
+            depth += m_deques[ i ].size();
+        }
+        return depth;
+    }
+
+    /**
+     * Get the name used for thread pool.
+     * (Used in naming threads).
+     *
+     * @return the thread pool name
+     */
+    protected String getName()
+    {
+        return m_name;
+    }
+
+    /**
+     * Set the name used for thread pool.
+     * Used in naming threads.
+     *
+     * @param name the thread pool name
+     */
+    protected void setName( final String name )
+    {
+        m_name = name;
+    }
+
+    /**
+     * Set the priorty of threads created for pool.
+     *
+     * @param priority the priorty of threads created for pool.
+     */
+    protected void setPriority( final int priority )
+    {
+        m_priority = priority;
+    }
+
+    /**
+     * Set flag indicating whether daemon threads should be created by pool.
+     *
+     * @param daemon flag indicating whether daemon threads should be created by pool.
+     */
+    protected void setDaemon( final boolean daemon )
+    {
+        m_isDaemon = daemon;
+    }
+
+    /**
+     * Set the number of workers.
+     *
+     * @param maxThreads the number of workers.
+     */
+    protected void setMaxThreads( final int maxThreads )
+    {
+        m_maxThreads = maxThreads;
+    }
+
+    /**
+     * Set the maximum number of bits of work submitted from
+     * outside the pool that may be waiting for a worker.
+     *
+     * @param queueSize the maximum number of queued bits of work.
+     */
+    protected void setQueueSize( final int queueSize )
+    {
+        m_queueSize = queueSize;
+    }
+
+    /**
+     * Set the maximum amount of time that will be spent disposing a thread.
+     *
+     * @param disposeTime the maximum amount of time that will be spent disposing a thread.
+     */
+    protected void setDisposeTime( final int disposeTime )
+    {
+        m_disposeTime = disposeTime;
+    }
+
+    /**
+     * Set the policy applied to work submitted from outside the pool
+     * while the shared queue is full.
+     *
+     * @param rejectionPolicy the policy
+     */
+    protected void setRejectionPolicy( final RejectionPolicy rejectionPolicy )
+    {
+        if( null == rejectionPolicy )
+        {
+            throw new NullPointerException( "rejectionPolicy" );
+        }
+        m_rejectionPolicy = rejectionPolicy;
+    }
+
+    /**
+     * Set the maximum time in milliseconds a submitter waits for
+     * space in queue under the BLOCK policy. 0 waits indefinetly.
+     *
+     * @param blockTimeout the block timeout in milliseconds
+     */
+    protected void setBlockTimeout( final long blockTimeout )
+    {
+        m_blockTimeout = blockTimeout;
+    }
+
+    /**
+     * Set the Monitor to use to notify of changes in the Pool.
+     *
+     * @param monitor the Monitor to use to notify of changes in the Pool.
+     */
+    protected final void setMonitor( final ThreadPoolMonitor monitor )
+    {
+        m_monitor = monitor;
+    }
+}
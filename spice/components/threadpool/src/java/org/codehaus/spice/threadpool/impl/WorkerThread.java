@@ -28,17 +28,46 @@ public class WorkerThread
      */
     private Executable m_work;
 
+    /**
+     * The runnable work currently associated with worker. Used
+     * instead of m_work to avoid wrapping Runnables (May be null).
+     */
+    private Runnable m_runnable;
+
     /**
      * The thread control associated with current work.
-     * Should be null if work is null.
+     * Null if there is no work or the work is detached
+     * or uses the pooled control.
      */
     private DefaultThreadControl m_threadControl;
 
+    /**
+     * The reusable thread control of worker (May be null).
+     */
+    private PooledThreadControl m_pooledControl;
+
+    /**
+     * True if current work is controlled by m_pooledControl.
+     */
+    private boolean m_usesPooledControl;
+
+    /**
+     * The time current work was submitted, 0 if work is not monitored.
+     */
+    private long m_submitTime;
+
     /**
      * True if this thread is alive and not scheduled for shutdown.
      */
     private boolean m_alive;
 
+    /**
+     * The previous and next workers in the list of workers in use
+     * kept by pool. Only accessed while holding the pool's in use lock.
+     */
+    WorkerThread m_previousInUse;
+    WorkerThread m_nextInUse;
+
     /**
      * The name of thread.
      */
@@ -90,11 +119,20 @@ public class WorkerThread
 
             debug( "running." );
 
+            final long submitTime = m_submitTime;
+            final long startTime = ( 0 != submitTime ) ? System.currentTimeMillis() : 0;
             Throwable throwable = null;
             try
             {
                 preExecute();
-                m_work.execute();
+                if( null != m_work )
+                {
+                    m_work.execute();
+                }
+                else
+                {
+                    m_runnable.run();
+                }
             }
             catch( final ThreadDeath threadDeath )
             {
@@ -113,9 +151,15 @@ public class WorkerThread
             finally
             {
                 debug( "done." );
-                m_work = null;
-                m_threadControl.finish( throwable );
-                m_threadControl = null;
+                if( 0 != submitTime )
+                {
+                    final long endTime = System.currentTimeMillis();
+                    m_pool.workCompleted( this,
+                                          startTime - submitTime,
+                                          endTime - startTime,
+                                          throwable );
+                }
+                finishWork( throwable );
                 postExecute();
             }
 
@@ -132,6 +176,42 @@ public class WorkerThread
         }
     }
 
+    /**
+     * Clear the current work and notify whoever is tracking it.
+     *
+     * @param throwable Throwable that caused work to complete (may be null)
+     */
+    private synchronized void finishWork( final Throwable throwable )
+    {
+        m_work = null;
+        m_runnable = null;
+        if( null != m_threadControl )
+        {
+            m_threadControl.finish( throwable );
+            m_threadControl = null;
+        }
+        else if( m_usesPooledControl )
+        {
+            m_pooledControl.finish( throwable );
+            m_usesPooledControl = false;
+        }
+        else if( null != throwable )
+        {
+            m_pool.detachedWorkFailed( throwable );
+        }
+    }
+
+    /**
+     * Set the time the next bit of work was submitted. Must be
+     * called before the work is passed to execute().
+     *
+     * @param submitTime the submit time, 0 if work is not monitored
+     */
+    void setSubmitTime( final long submitTime )
+    {
+        m_submitTime = submitTime;
+    }
+
     /**
      * Implement this method to replace thread back into pool.
      */
@@ -176,7 +256,7 @@ public class WorkerThread
         synchronized( this )
         {
             final long start = System.currentTimeMillis();
-            while( null != m_work )
+            while( hasWork() )
             {
                 final long now = System.currentTimeMillis();
                 final long diff = now - start;
@@ -205,12 +285,72 @@ public class WorkerThread
     protected synchronized ThreadControl execute( final Executable work )
     {
         m_work = work;
-        m_threadControl = new DefaultThreadControl( this );
+        return startWork();
+    }
+
+    /**
+     * Set the <tt>Runnable</tt> code this <tt>Worker</tt> must
+     * execute and <i>notifies</i> its thread to do it.
+     */
+    protected synchronized ThreadControl execute( final Runnable work )
+    {
+        m_runnable = work;
+        return startWork();
+    }
 
+    /**
+     * Set the <tt>Work</tt> code this <tt>Worker</tt> must execute
+     * and <i>notifies</i> its thread to do it without tracking it.
+     */
+    protected synchronized void executeAndForget( final Executable work )
+    {
+        m_work = work;
         debug( "notifying this worker." );
         notify();
+    }
 
-        return m_threadControl;
+    /**
+     * Set the <tt>Runnable</tt> code this <tt>Worker</tt> must execute
+     * and <i>notifies</i> its thread to do it without tracking it.
+     */
+    protected synchronized void executeAndForget( final Runnable work )
+    {
+        m_runnable = work;
+        debug( "notifying this worker." );
+        notify();
+    }
+
+    /**
+     * Create the control for the work just set and
+     * <i>notifies</i> the thread to execute it.
+     * Must be called while holding lock on worker.
+     *
+     * @return the control for the work
+     */
+    private ThreadControl startWork()
+    {
+        final ThreadControl control;
+        if( m_pool.isPooledControls() )
+        {
+            if( null == m_pooledControl || !m_pooledControl.isReusable() )
+            {
+                //Client still holds on to previous control
+                m_pooledControl = new PooledThreadControl();
+            }
+            m_pooledControl.reset( this );
+            m_usesPooledControl = true;
+            control = m_pooledControl;
+        }
+        else
+        {
+            m_threadControl = new DefaultThreadControl( this );
+            control = m_threadControl;
+        }
+
+        debug( "notifying this worker." );
+        notify();
+
+        return control;
     }
 
     /**
@@ -233,7 +373,7 @@ public class WorkerThread
      */
     private synchronized void waitUntilCondition( final boolean hasWork )
     {
-        while( hasWork == ( null == m_work ) )
+        while( hasWork != hasWork() )
         {
             try
             {
@@ -247,6 +387,17 @@ public class WorkerThread
         }
     }
 
+    /**
+     * Return true if worker has work to execute.
+     * Must be called while holding lock on worker.
+     *
+     * @return true if worker has work to execute
+     */
+    private boolean hasWork()
+    {
+        return null != m_work || null != m_runnable;
+    }
+
     /**
      * Write a debug message.
      * A Noop oin this implementation. Subclasses can overide
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.benchmark;
+
+import org.codehaus.spice.threadpool.RejectionPolicy;
+import org.codehaus.spice.threadpool.ThreadPool;
+import org.codehaus.spice.threadpool.impl.CommonsThreadPool;
+import org.codehaus.spice.threadpool.impl.PicoCommonsThreadPool;
+
+/**
+ * Creates CommonsThreadPools with the specified number of
+ * active and idle threads. Submitters block when all
+ * threads are active.
+ */
+public class CommonsThreadPoolFactory
+    implements ThreadPoolFactory
+{
+    private final int m_maxActive;
+    private final int m_maxIdle;
+
+    public CommonsThreadPoolFactory( final int maxActive, final int maxIdle )
+    {
+        m_maxActive = maxActive;
+        m_maxIdle = maxIdle;
+    }
+
+    public String getDescription()
+    {
+        return "commons(maxActive=" + m_maxActive + ",maxIdle=" + m_maxIdle + ")";
+    }
+
+    public ThreadPool createThreadPool()
+    {
+        return new PicoCommonsThreadPool.WithMonitorAndBoundedConfig( new SilentThreadPoolMonitor(),
+                                                                      "benchmark",
+                                                                      Thread.NORM_PRIORITY,
+                                                                      true,
+                                                                      m_maxActive,
+                                                                      m_maxIdle,
+                                                                      RejectionPolicy.BLOCK,
+                                                                      0,
+                                                                      0 );
+    }
+
+    public void disposeThreadPool( final ThreadPool threadPool )
+    {
+        ( (CommonsThreadPool)threadPool ).shutdown();
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.benchmark;
+
+import org.codehaus.spice.threadpool.ThreadPool;
+import org.codehaus.spice.threadpool.impl.PicoThreadPerTaskThreadPool;
+import org.codehaus.spice.threadpool.impl.ThreadPerTaskThreadPool;
+
+/**
+ * Creates ThreadPerTaskThreadPools with the specified stack size.
+ */
+public class ThreadPerTaskThreadPoolFactory
+    implements ThreadPoolFactory
+{
+    private final long m_stackSize;
+
+    public ThreadPerTaskThreadPoolFactory( final long stackSize )
+    {
+        m_stackSize = stackSize;
+    }
+
+    public String getDescription()
+    {
+        return "pertask(stackSize=" + m_stackSize + ")";
+    }
+
+    public ThreadPool createThreadPool()
+    {
+        return new PicoThreadPerTaskThreadPool.WithMonitorAndConfig( new SilentThreadPoolMonitor(),
+                                                                     "benchmark",
+                                                                     Thread.NORM_PRIORITY,
+                                                                     true,
+                                                                     m_stackSize );
+    }
+
+    public void disposeThreadPool( final ThreadPool threadPool )
+    {
+        ( (ThreadPerTaskThreadPool)threadPool ).shutdown();
+    }
+}
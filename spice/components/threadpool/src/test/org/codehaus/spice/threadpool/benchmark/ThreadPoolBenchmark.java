@@ -0,0 +1,358 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.codehaus.spice.threadpool.ThreadControl;
+import org.codehaus.spice.threadpool.ThreadPool;
+
+/**
+ * Measures the cost of dispatching work to a ThreadPool. For each
+ * pool the benchmark reports
+ *
+ * <ul>
+ *   <li>the mean and maximum latency between submitting a task and the
+ *   task starting to run, with 1, 4, 16 and 64 concurrent submitters.</li>
+ *   <li>the number of tasks completed per second with the same number of
+ *   submitters.</li>
+ *   <li>the mean and maximum latency between a task finishing and a
+ *   thread waiting in ThreadControl.join() waking up.</li>
+ * </ul>
+ *
+ * <p>Run from the command line with the test classpath:</p>
+ *
+ * <pre>
+ * java org.codehaus.spice.threadpool.benchmark.ThreadPoolBenchmark [tasksPerSubmitter]
+ * </pre>
+ *
+ * <p>Pools are created through {@link ThreadPoolFactory} instances so
+ * other ThreadPool implementations can be compared by adding a factory
+ * in {@link #createFactories()}. Times are measured with
+ * System.currentTimeMillis() so individual latencies are only accurate
+ * to the resolution of the system clock, though the means over many
+ * tasks are still meaningful.</p>
+ */
+public class ThreadPoolBenchmark
+{
+    /**
+     * The number of concurrent submitters to measure.
+     */
+    private static final int[] SUBMITTERS = new int[]{1, 4, 16, 64};
+
+    /**
+     * The number of join() round trips to measure.
+     */
+    private static final int JOIN_ITERATIONS = 1000;
+
+    private final int m_tasksPerSubmitter;
+
+    public ThreadPoolBenchmark( final int tasksPerSubmitter )
+    {
+        m_tasksPerSubmitter = tasksPerSubmitter;
+    }
+
+    public static void main( final String[] args )
+        throws Exception
+    {
+        final int tasksPerSubmitter = ( args.length > 0 ) ? Integer.parseInt( args[ 0 ] ) : 2000;
+        final ThreadPoolBenchmark benchmark = new ThreadPoolBenchmark( tasksPerSubmitter );
+        final List factories = createFactories();
+        for( int i = 0; i < factories.size(); i++ )
+        {
+            benchmark.run( (ThreadPoolFactory)factories.get( i ) );
+        }
+    }
+
+    /**
+     * Create the factories for pools to compare. This includes
+     * a number of maxActive/maxIdle combinations for the
+     * CommonsThreadPool.
+     *
+     * @return the list of ThreadPoolFactory objects
+     */
+    public static List createFactories()
+    {
+        final int processors = Runtime.getRuntime().availableProcessors();
+        final List factories = new ArrayList();
+        factories.add( new CommonsThreadPoolFactory( 1, 1 ) );
+        factories.add( new CommonsThreadPoolFactory( processors, 1 ) );
+        factories.add( new CommonsThreadPoolFactory( processors, processors ) );
+        factories.add( new CommonsThreadPoolFactory( 16, 4 ) );
+        factories.add( new CommonsThreadPoolFactory( 64, 64 ) );
+        factories.add( new WorkQueueThreadPoolFactory( processors, 1024 ) );
+        factories.add( new WorkStealingThreadPoolFactory( processors, 1024 ) );
+        factories.add( new ThreadPerTaskThreadPoolFactory( 64 * 1024 ) );
+        return factories;
+    }
+
+    /**
+     * Run all measurements against pools created by
+     * specified factory and print the results.
+     *
+     * @param factory the factory
+     */
+    public void run( final ThreadPoolFactory factory )
+        throws Exception
+    {
+        System.out.println( factory.getDescription() );
+        for( int i = 0; i < SUBMITTERS.length; i++ )
+        {
+            //Warm up
+            measureDispatch( factory, SUBMITTERS[ i ] );
+
+            final LatencyRecorder latency = new LatencyRecorder();
+            final double throughput = measureDispatch( factory, SUBMITTERS[ i ], latency );
+            System.out.println( "  submitters=" + SUBMITTERS[ i ] +
+                                " submit-to-start mean=" + latency.getMean() + "ms" +
+                                " max=" + latency.getMax() + "ms" +
+                                " throughput=" + (long)throughput + " tasks/s" );
+        }
+        final LatencyRecorder wakeup = measureJoinWakeup( factory );
+        System.out.println( "  join wake-up mean=" + wakeup.getMean() + "ms" +
+                            " max=" + wakeup.getMax() + "ms" );
+    }
+
+    /**
+     * Submit tasks from specified number of concurrent submitters
+     * without recording latency.
+     *
+     * @param factory the factory for pool
+     * @param submitters the number of submitters
+     * @return the number of tasks completed per second
+     */
+    public double measureDispatch( final ThreadPoolFactory factory,
+                                   final int submitters )
+        throws Exception
+    {
+        return measureDispatch( factory, submitters, new LatencyRecorder() );
+    }
+
+    /**
+     * Submit tasks from specified number of concurrent submitters,
+     * recording the time it took for each task to start.
+     *
+     * @param factory the factory for pool
+     * @param submitters the number of submitters
+     * @param latency the recorder for submit-to-start latency
+     * @return the number of tasks completed per second
+     */
+    public double measureDispatch( final ThreadPoolFactory factory,
+                                   final int submitters,
+                                   final LatencyRecorder latency )
+        throws Exception
+    {
+        final ThreadPool threadPool = factory.createThreadPool();
+        try
+        {
+            final Gate gate = new Gate();
+            final Thread[] threads = new Thread[ submitters ];
+            for( int i = 0; i < submitters; i++ )
+            {
+                threads[ i ] = new Submitter( threadPool, gate, latency, m_tasksPerSubmitter );
+                threads[ i ].start();
+            }
+
+            final long start = System.currentTimeMillis();
+            gate.open();
+            latency.waitFor( (long)submitters * m_tasksPerSubmitter );
+            final long end = System.currentTimeMillis();
+
+            for( int i = 0; i < submitters; i++ )
+            {
+                threads[ i ].join();
+            }
+            final long elapsed = Math.max( 1, end - start );
+            return latency.getCount() * 1000.0 / elapsed;
+        }
+        finally
+        {
+            factory.disposeThreadPool( threadPool );
+        }
+    }
+
+    /**
+     * Repeatedly submit a task and join on its ThreadControl, recording
+     * the time between the task finishing and join() returning.
+     *
+     * @param factory the factory for pool
+     * @return the recorded wake-up latencies
+     */
+    public LatencyRecorder measureJoinWakeup( final ThreadPoolFactory factory )
+        throws Exception
+    {
+        final ThreadPool threadPool = factory.createThreadPool();
+        try
+        {
+            final LatencyRecorder wakeup = new LatencyRecorder();
+            final FinishingTask task = new FinishingTask();
+            for( int i = 0; i < JOIN_ITERATIONS; i++ )
+            {
+                final ThreadControl control = threadPool.execute( task );
+                control.join( 10000 );
+                final long now = System.currentTimeMillis();
+                if( !control.isFinished() )
+                {
+                    throw new IllegalStateException( "Task did not finish" );
+                }
+                wakeup.record( now - task.getFinishTime() );
+            }
+            return wakeup;
+        }
+        finally
+        {
+            factory.disposeThreadPool( threadPool );
+        }
+    }
+
+    /**
+     * Records latencies and counts completed tasks.
+     */
+    public static class LatencyRecorder
+    {
+        private long m_count;
+        private long m_total;
+        private long m_max;
+
+        public synchronized void record( final long latency )
+        {
+            m_count++;
+            m_total += latency;
+            if( latency > m_max )
+            {
+                m_max = latency;
+            }
+            notifyAll();
+        }
+
+        public synchronized long getCount()
+        {
+            return m_count;
+        }
+
+        public synchronized double getMean()
+        {
+            return ( 0 == m_count ) ? 0 : (double)m_total / m_count;
+        }
+
+        public synchronized long getMax()
+        {
+            return m_max;
+        }
+
+        synchronized void waitFor( final long count )
+            throws InterruptedException
+        {
+            while( m_count < count )
+            {
+                wait();
+            }
+        }
+    }
+
+    /**
+     * Used to release all submitters at the same time.
+     */
+    private static class Gate
+    {
+        private boolean m_open;
+
+        synchronized void open()
+        {
+            m_open = true;
+            notifyAll();
+        }
+
+        synchronized void pass()
+            throws InterruptedException
+        {
+            while( !m_open )
+            {
+                wait();
+            }
+        }
+    }
+
+    /**
+     * Thread that submits a number of tasks to pool.
+     */
+    private static class Submitter
+        extends Thread
+    {
+        private final ThreadPool m_threadPool;
+        private final Gate m_gate;
+        private final LatencyRecorder m_latency;
+        private final int m_tasks;
+
+        Submitter( final ThreadPool threadPool,
+                   final Gate gate,
+                   final LatencyRecorder latency,
+                   final int tasks )
+        {
+            m_threadPool = threadPool;
+            m_gate = gate;
+            m_latency = latency;
+            m_tasks = tasks;
+            setDaemon( true );
+        }
+
+        public void run()
+        {
+            try
+            {
+                m_gate.pass();
+                for( int i = 0; i < m_tasks; i++ )
+                {
+                    m_threadPool.execute( new DispatchTask( m_latency ) );
+                }
+            }
+            catch( final InterruptedException ie )
+            {
+            }
+        }
+    }
+
+    /**
+     * Task that records the time it took to start.
+     */
+    private static class DispatchTask
+        implements Runnable
+    {
+        private final LatencyRecorder m_latency;
+        private final long m_submitTime = System.currentTimeMillis();
+
+        DispatchTask( final LatencyRecorder latency )
+        {
+            m_latency = latency;
+        }
+
+        public void run()
+        {
+            m_latency.record( System.currentTimeMillis() - m_submitTime );
+        }
+    }
+
+    /**
+     * Task that records the time it finished.
+     */
+    private static class FinishingTask
+        implements Runnable
+    {
+        private long m_finishTime;
+
+        public synchronized void run()
+        {
+            m_finishTime = System.currentTimeMillis();
+        }
+
+        synchronized long getFinishTime()
+        {
+            return m_finishTime;
+        }
+    }
+}
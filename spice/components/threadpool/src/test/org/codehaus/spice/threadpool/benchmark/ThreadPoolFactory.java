@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.benchmark;
+
+import org.codehaus.spice.threadpool.ThreadPool;
+
+/**
+ * Factory used by {@link ThreadPoolBenchmark} to create the
+ * ThreadPool under test. To compare a new ThreadPool
+ * implementation add a factory for it to the benchmark.
+ */
+public interface ThreadPoolFactory
+{
+    /**
+     * Return a short description of pool and its
+     * configuration used when reporting results.
+     *
+     * @return the description
+     */
+    String getDescription();
+
+    /**
+     * Create and start a new ThreadPool.
+     *
+     * @return the ThreadPool
+     * @throws Exception if unable to create pool
+     */
+    ThreadPool createThreadPool()
+        throws Exception;
+
+    /**
+     * Shutdown a ThreadPool created by this factory.
+     *
+     * @param threadPool the ThreadPool
+     * @throws Exception if unable to shutdown pool
+     */
+    void disposeThreadPool( ThreadPool threadPool )
+        throws Exception;
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.benchmark;
+
+import org.codehaus.spice.threadpool.ThreadPool;
+import org.codehaus.spice.threadpool.impl.PicoWorkQueueThreadPool;
+import org.codehaus.spice.threadpool.impl.WorkQueueThreadPool;
+
+/**
+ * Creates WorkQueueThreadPools with a fixed number
+ * of threads and the specified queue size.
+ */
+public class WorkQueueThreadPoolFactory
+    implements ThreadPoolFactory
+{
+    private final int m_threads;
+    private final int m_queueSize;
+
+    public WorkQueueThreadPoolFactory( final int threads, final int queueSize )
+    {
+        m_threads = threads;
+        m_queueSize = queueSize;
+    }
+
+    public String getDescription()
+    {
+        return "workqueue(threads=" + m_threads + ",queueSize=" + m_queueSize + ")";
+    }
+
+    public ThreadPool createThreadPool()
+    {
+        return new PicoWorkQueueThreadPool.WithMonitorAndConfig( new SilentThreadPoolMonitor(),
+                                                                 "benchmark",
+                                                                 Thread.NORM_PRIORITY,
+                                                                 true,
+                                                                 m_threads,
+                                                                 m_threads,
+                                                                 m_queueSize,
+                                                                 60000 );
+    }
+
+    public void disposeThreadPool( final ThreadPool threadPool )
+    {
+        ( (WorkQueueThreadPool)threadPool ).shutdown();
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.benchmark;
+
+import org.codehaus.spice.threadpool.ThreadPool;
+import org.codehaus.spice.threadpool.impl.PicoWorkStealingThreadPool;
+import org.codehaus.spice.threadpool.impl.WorkStealingThreadPool;
+
+/**
+ * Creates WorkStealingThreadPools with the specified
+ * number of workers and submission queue size.
+ */
+public class WorkStealingThreadPoolFactory
+    implements ThreadPoolFactory
+{
+    private final int m_threads;
+    private final int m_queueSize;
+
+    public WorkStealingThreadPoolFactory( final int threads, final int queueSize )
+    {
+        m_threads = threads;
+        m_queueSize = queueSize;
+    }
+
+    public String getDescription()
+    {
+        return "workstealing(threads=" + m_threads + ",queueSize=" + m_queueSize + ")";
+    }
+
+    public ThreadPool createThreadPool()
+    {
+        return new PicoWorkStealingThreadPool.WithMonitorAndConfig( new SilentThreadPoolMonitor(),
+                                                                    "benchmark",
+                                                                    Thread.NORM_PRIORITY,
+                                                                    true,
+                                                                    m_threads,
+                                                                    m_queueSize );
+    }
+
+    public void disposeThreadPool( final ThreadPool threadPool )
+    {
+        ( (WorkStealingThreadPool)threadPool ).shutdown();
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.impl;
+
+import junit.framework.TestCase;
+import org.apache.avalon.framework.configuration.DefaultConfiguration;
+import org.apache.avalon.framework.container.ContainerUtil;
+import org.apache.avalon.framework.logger.ConsoleLogger;
+import org.codehaus.spice.threadpool.Executable;
+import org.codehaus.spice.threadpool.RejectionPolicy;
+
+/**
+ * TestCase for adaptive sizing of the CommonsThreadPool.
+ */
+public class AdaptiveSizingTestCase
+    extends TestCase
+{
+    public AdaptiveSizingTestCase( final String name )
+    {
+        super( name );
+    }
+
+    public void testGrowRequiresConsecutiveSamples()
+        throws Exception
+    {
+        final AdaptiveSizingController controller =
+            new AdaptiveSizingController( null, 1, 16, 1000, 90, 50, 2 );
+        assertEquals( "first busy sample", 4, controller.nextLimit( 4, 4, 0 ) );
+        assertEquals( "second busy sample", 5, controller.nextLimit( 4, 4, 0 ) );
+        assertEquals( "reset by steady sample", 5, controller.nextLimit( 5, 4, 0 ) );
+        assertEquals( "first busy sample", 5, controller.nextLimit( 5, 5, 0 ) );
+        assertEquals( "steady sample", 5, controller.nextLimit( 5, 4, 0 ) );
+        assertEquals( "first busy sample", 5, controller.nextLimit( 5, 5, 6 ) );
+        assertEquals( "grows by waiting submitters", 11, controller.nextLimit( 5, 5, 6 ) );
+        controller.nextLimit( 11, 11, 100 );
+        assertEquals( "capped at max", 16, controller.nextLimit( 11, 11, 100 ) );
+    }
+
+    public void testShrinkRequiresConsecutiveSamples()
+        throws Exception
+    {
+        final AdaptiveSizingController controller =
+            new AdaptiveSizingController( null, 2, 16, 1000, 90, 50, 2 );
+        assertEquals( "first quiet sample", 12, controller.nextLimit( 12, 1, 0 ) );
+        assertEquals( "second quiet sample", 9, controller.nextLimit( 12, 1, 0 ) );
+        assertEquals( "first quiet sample", 9, controller.nextLimit( 9, 0, 0 ) );
+        assertEquals( "reset by busy sample", 9, controller.nextLimit( 9, 9, 0 ) );
+        assertEquals( "first quiet sample", 9, controller.nextLimit( 9, 0, 0 ) );
+        assertEquals( "second quiet sample", 7, controller.nextLimit( 9, 0, 0 ) );
+        controller.nextLimit( 2, 0, 0 );
+        assertEquals( "capped at min", 2, controller.nextLimit( 2, 0, 0 ) );
+    }
+
+    public void testInvalidSettings()
+        throws Exception
+    {
+        try
+        {
+            new AdaptiveSizingController( null, 4, 2, 1000, 90, 50, 2 );
+            fail( "Expected max < min to fail" );
+        }
+        catch( final IllegalArgumentException iae )
+        {
+        }
+        try
+        {
+            new AdaptiveSizingController( null, 1, 2, 1000, 50, 90, 2 );
+            fail( "Expected shrink >= grow to fail" );
+        }
+        catch( final IllegalArgumentException iae )
+        {
+        }
+    }
+
+    public void testPoolAdaptsToLoad()
+        throws Exception
+    {
+        final PicoCommonsThreadPool threadPool =
+            new PicoCommonsThreadPool.WithMonitorAndAdaptiveConfig( new NullThreadPoolMonitor(),
+                                                                    "testThreadPool",
+                                                                    Thread.NORM_PRIORITY,
+                                                                    false,
+                                                                    1,
+                                                                    4,
+                                                                    RejectionPolicy.BLOCK,
+                                                                    0,
+                                                                    20,
+                                                                    75,
+                                                                    25,
+                                                                    1 );
+        final Work[] work = new Work[ 4 ];
+        final Thread[] submitters = new Thread[ work.length ];
+        try
+        {
+            assertEquals( "initial limit", 1, threadPool.getWorkerLimit() );
+            for( int i = 0; i < work.length; i++ )
+            {
+                final Work bit = new Work( true, 0, null );
+                work[ i ] = bit;
+                submitters[ i ] = new Thread()
+                {
+                    public void run()
+                    {
+                        threadPool.execute( (Executable)bit );
+                    }
+                };
+                submitters[ i ].start();
+            }
+            for( int i = 0; i < submitters.length; i++ )
+            {
+                submitters[ i ].join( 2000 );
+            }
+            assertEquals( "grown limit", 4, threadPool.getWorkerLimit() );
+            assertEquals( "active", 4, threadPool.getActiveCount() );
+
+            for( int i = 0; i < work.length; i++ )
+            {
+                work[ i ].unlock();
+            }
+            waitForLimit( threadPool, 1 );
+            assertEquals( "shrunk limit", 1, threadPool.getWorkerLimit() );
+        }
+        finally
+        {
+            for( int i = 0; i < work.length; i++ )
+            {
+                if( null != work[ i ] )
+                {
+                    work[ i ].unlock();
+                }
+            }
+            threadPool.shutdown();
+        }
+    }
+
+    public void testAvalonConfiguration()
+        throws Exception
+    {
+        final AvalonCommonsThreadPool threadPool = new AvalonCommonsThreadPool();
+        ContainerUtil.enableLogging( threadPool, new ConsoleLogger( ConsoleLogger.LEVEL_DISABLED ) );
+        final DefaultConfiguration configuration = new DefaultConfiguration( "root", "" );
+        addChild( configuration, "name", "testThreadPool" );
+        addChild( configuration, "max-threads", "8" );
+        addChild( configuration, "rejection-policy", "block" );
+        addChild( configuration, "adaptive-sizing", "true" );
+        addChild( configuration, "min-threads", "2" );
+        addChild( configuration, "sample-interval", "50" );
+        ContainerUtil.configure( threadPool, configuration );
+        ContainerUtil.initialize( threadPool );
+        try
+        {
+            assertEquals( "initial limit", 2, threadPool.getWorkerLimit() );
+        }
+        finally
+        {
+            ContainerUtil.shutdown( threadPool );
+        }
+    }
+
+    private void waitForLimit( final CommonsThreadPool threadPool, final int limit )
+        throws InterruptedException
+    {
+        final long end = System.currentTimeMillis() + 2000;
+        while( limit != threadPool.getWorkerLimit() &&
+            System.currentTimeMillis() < end )
+        {
+            Thread.sleep( 10 );
+        }
+    }
+
+    private void addChild( final DefaultConfiguration configuration,
+                           final String name,
+                           final String value )
+    {
+        final DefaultConfiguration child = new DefaultConfiguration( name, "" );
+        child.setValue( value );
+        configuration.addChild( child );
+    }
+}
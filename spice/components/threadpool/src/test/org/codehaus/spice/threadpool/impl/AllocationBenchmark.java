@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.impl;
+
+import org.codehaus.spice.threadpool.RecyclableThreadControl;
+import org.codehaus.spice.threadpool.RejectionPolicy;
+import org.codehaus.spice.threadpool.ThreadControl;
+
+/**
+ * Measures the approximate number of bytes allocated per task
+ * submitted to a CommonsThreadPool when using the different ways
+ * of submitting work. Run from the command line with the test
+ * classpath:
+ *
+ * <pre>
+ * java org.codehaus.spice.threadpool.impl.AllocationBenchmark [tasksPerBatch] [batches]
+ * </pre>
+ *
+ * <p>Allocation is estimated from the growth of used heap over a
+ * batch of tasks. Batches during which a garbage collection
+ * occured are discarded so the numbers are only approximate and
+ * include any allocation made by the pool itself.</p>
+ */
+public class AllocationBenchmark
+{
+    private static final String WRAPPED = "wrapped";
+    private static final String TRACKED = "tracked";
+    private static final String POOLED = "pooled";
+    private static final String FORGET = "forget";
+
+    private final int m_tasksPerBatch;
+    private final int m_batches;
+    private final CountingTask m_task = new CountingTask();
+
+    public AllocationBenchmark( final int tasksPerBatch, final int batches )
+    {
+        m_tasksPerBatch = tasksPerBatch;
+        m_batches = batches;
+    }
+
+    public static void main( final String[] args )
+        throws Exception
+    {
+        final int tasksPerBatch = ( args.length > 0 ) ? Integer.parseInt( args[ 0 ] ) : 10000;
+        final int batches = ( args.length > 1 ) ? Integer.parseInt( args[ 1 ] ) : 50;
+        final AllocationBenchmark benchmark = new AllocationBenchmark( tasksPerBatch, batches );
+        benchmark.run( WRAPPED );
+        benchmark.run( TRACKED );
+        benchmark.run( POOLED );
+        benchmark.run( FORGET );
+    }
+
+    /**
+     * Run benchmark for specified submission mode and
+     * print the result.
+     *
+     * @param mode the submission mode
+     */
+    public void run( final String mode )
+        throws Exception
+    {
+        final PicoCommonsThreadPool threadPool =
+            new PicoCommonsThreadPool.WithMonitorAndBoundedConfig( new NullThreadPoolMonitor(),
+                                                                   "benchmark",
+                                                                   Thread.NORM_PRIORITY,
+                                                                   true,
+                                                                   1,
+                                                                   1,
+                                                                   RejectionPolicy.BLOCK,
+                                                                   0,
+                                                                   0 );
+        threadPool.setPooledControls( POOLED == mode );
+        try
+        {
+            //Warm up
+            runBatch( threadPool, mode );
+
+            final Runtime runtime = Runtime.getRuntime();
+            long allocated = 0;
+            int measured = 0;
+            for( int i = 0; i < m_batches; i++ )
+            {
+                final long before = runtime.totalMemory() - runtime.freeMemory();
+                runBatch( threadPool, mode );
+                final long after = runtime.totalMemory() - runtime.freeMemory();
+                if( after >= before )
+                {
+                    allocated += after - before;
+                    measured++;
+                }
+            }
+
+            if( 0 == measured )
+            {
+                System.out.println( mode + ": no batch completed without a collection" );
+            }
+            else
+            {
+                final long perTask = allocated / ( (long)measured * m_tasksPerBatch );
+                System.out.println( mode + ": ~" + perTask + " bytes/task (" +
+                                    measured + "/" + m_batches + " batches measured)" );
+            }
+        }
+        finally
+        {
+            threadPool.shutdown();
+        }
+    }
+
+    /**
+     * Submit a batch of tasks and wait for them to complete.
+     *
+     * @param threadPool the pool
+     * @param mode the submission mode
+     */
+    private void runBatch( final AbstractThreadPool threadPool, final String mode )
+        throws InterruptedException
+    {
+        final long target = m_task.getCount() + m_tasksPerBatch;
+        for( int i = 0; i < m_tasksPerBatch; i++ )
+        {
+            if( WRAPPED == mode )
+            {
+                //How Runnables were submitted before they were executed directly
+                threadPool.execute( new ExecutableRunnable( m_task ) );
+            }
+            else if( TRACKED == mode )
+            {
+                threadPool.execute( m_task );
+            }
+            else if( POOLED == mode )
+            {
+                final ThreadControl control = threadPool.execute( m_task );
+                ( (RecyclableThreadControl)control ).release();
+            }
+            else
+            {
+                threadPool.executeAndForget( m_task );
+            }
+        }
+        m_task.waitFor( target );
+    }
+
+    /**
+     * A task that does nothing but count its executions.
+     */
+    private static class CountingTask
+        implements Runnable
+    {
+        private long m_count;
+
+        public synchronized void run()
+        {
+            m_count++;
+            notifyAll();
+        }
+
+        synchronized long getCount()
+        {
+            return m_count;
+        }
+
+        synchronized void waitFor( final long count )
+            throws InterruptedException
+        {
+            while( m_count < count )
+            {
+                wait();
+            }
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.impl;
+
+import junit.framework.TestCase;
+import org.apache.avalon.framework.configuration.ConfigurationException;
+import org.apache.avalon.framework.configuration.DefaultConfiguration;
+import org.apache.avalon.framework.container.ContainerUtil;
+import org.apache.avalon.framework.logger.ConsoleLogger;
+import org.codehaus.spice.threadpool.Executable;
+import org.codehaus.spice.threadpool.RejectionPolicy;
+import org.codehaus.spice.threadpool.ThreadControl;
+
+/**
+ * TestCase for admission control in the CommonsThreadPool.
+ */
+public class BoundedCommonsThreadPoolTestCase
+    extends TestCase
+{
+    public BoundedCommonsThreadPoolTestCase( final String name )
+    {
+        super( name );
+    }
+
+    public void testRejectionPolicyByName()
+        throws Exception
+    {
+        assertSame( RejectionPolicy.FAIL_FAST, RejectionPolicy.getPolicy( "fail-fast" ) );
+        assertSame( RejectionPolicy.CALLER_RUNS, RejectionPolicy.getPolicy( "caller-runs" ) );
+        assertSame( RejectionPolicy.BLOCK, RejectionPolicy.getPolicy( "block" ) );
+        try
+        {
+            RejectionPolicy.getPolicy( "grow" );
+            fail( "Expected unknown policy to fail" );
+        }
+        catch( final IllegalArgumentException iae )
+        {
+        }
+    }
+
+    public void testFailFastDoesNotGrowPool()
+        throws Exception
+    {
+        final PicoCommonsThreadPool threadPool =
+            createThreadPool( RejectionPolicy.FAIL_FAST, 0, 0 );
+        final Work blocker = new Work( true, 0, null );
+        try
+        {
+            assertNotNull( "first admitted", threadPool.tryExecute( (Executable)blocker ) );
+            assertNull( "second rejected", threadPool.tryExecute( (Executable)new Work( false, 0, null ) ) );
+            try
+            {
+                threadPool.execute( (Executable)new Work( false, 0, null ) );
+                fail( "Expected execute to fail when rejected" );
+            }
+            catch( final IllegalStateException ise )
+            {
+            }
+        }
+        finally
+        {
+            blocker.unlock();
+            threadPool.shutdown();
+        }
+    }
+
+    public void testCallerRuns()
+        throws Exception
+    {
+        final PicoCommonsThreadPool threadPool =
+            createThreadPool( RejectionPolicy.CALLER_RUNS, 0, 0 );
+        final Work blocker = new Work( true, 0, null );
+        try
+        {
+            threadPool.execute( (Executable)blocker );
+            final Work work = new Work( false, 0, new Exception() );
+            final ThreadControl control = threadPool.tryExecute( (Executable)work );
+            assertNotNull( "admitted", control );
+            assertEquals( "isFinished", true, control.isFinished() );
+            assertEquals( "isDone", true, work.isDone() );
+            assertEquals( "getThrowable", work.getException(), control.getThrowable() );
+        }
+        finally
+        {
+            blocker.unlock();
+            threadPool.shutdown();
+        }
+    }
+
+    public void testBlockTimesOut()
+        throws Exception
+    {
+        final PicoCommonsThreadPool threadPool =
+            createThreadPool( RejectionPolicy.BLOCK, 50, 0 );
+        final Work blocker = new Work( true, 0, null );
+        try
+        {
+            threadPool.execute( (Executable)blocker );
+            final long start = System.currentTimeMillis();
+            assertNull( "rejected", threadPool.tryExecute( (Executable)new Work( false, 0, null ) ) );
+            assertTrue( "waited", System.currentTimeMillis() - start >= 40 );
+        }
+        finally
+        {
+            blocker.unlock();
+            threadPool.shutdown();
+        }
+    }
+
+    public void testBlockAdmitsWhenWorkerReturned()
+        throws Exception
+    {
+        final PicoCommonsThreadPool threadPool =
+            createThreadPool( RejectionPolicy.BLOCK, 2000, 0 );
+        final Work first = new Work( false, 100, null );
+        try
+        {
+            threadPool.execute( (Executable)first );
+            final Work second = new Work( false, 0, null );
+            final ThreadControl control = threadPool.tryExecute( (Executable)second );
+            assertNotNull( "admitted", control );
+            control.join( 1000 );
+            assertEquals( "isDone", true, second.isDone() );
+        }
+        finally
+        {
+            threadPool.shutdown();
+        }
+    }
+
+    public void testMaxPendingRejectsExtraWaiters()
+        throws Exception
+    {
+        final PicoCommonsThreadPool threadPool =
+            createThreadPool( RejectionPolicy.BLOCK, 0, 1 );
+        final Work blocker = new Work( true, 0, null );
+        try
+        {
+            threadPool.execute( (Executable)blocker );
+            final ThreadControl[] waiting = new ThreadControl[ 1 ];
+            final Thread waiter = new Thread()
+            {
+                public void run()
+                {
+                    waiting[ 0 ] = threadPool.tryExecute( (Executable)new Work( false, 0, null ) );
+                }
+            };
+            waiter.start();
+            Thread.sleep( 50 );
+            assertNull( "rejected", threadPool.tryExecute( (Executable)new Work( false, 0, null ) ) );
+
+            blocker.unlock();
+            waiter.join( 1000 );
+            assertNotNull( "waiter admitted", waiting[ 0 ] );
+        }
+        finally
+        {
+            blocker.unlock();
+            threadPool.shutdown();
+        }
+    }
+
+    public void testSubmittersGivenIdleWorkerAreNotPending()
+        throws Exception
+    {
+        final PicoCommonsThreadPool threadPool =
+            new PicoCommonsThreadPool.WithMonitorAndBoundedConfig( new NullThreadPoolMonitor(),
+                                                                   "testThreadPool",
+                                                                   Thread.NORM_PRIORITY,
+                                                                   false,
+                                                                   4,
+                                                                   4,
+                                                                   RejectionPolicy.BLOCK,
+                                                                   0,
+                                                                   0 );
+        final Throwable[] failure = new Throwable[ 1 ];
+        final Thread[] submitters = new Thread[ 2 ];
+        try
+        {
+            for( int i = 0; i < submitters.length; i++ )
+            {
+                submitters[ i ] = new Thread()
+                {
+                    public void run()
+                    {
+                        try
+                        {
+                            for( int j = 0; j < 2000; j++ )
+                            {
+                                threadPool.execute( (Executable)new Work( false, 0, null ) ).join( 1000 );
+                            }
+                        }
+                        catch( final Throwable t )
+                        {
+                            failure[ 0 ] = t;
+                        }
+                    }
+                };
+                submitters[ i ].start();
+            }
+            for( int i = 0; i < submitters.length; i++ )
+            {
+                while( submitters[ i ].isAlive() )
+                {
+                    assertEquals( "pending", 0, threadPool.getPendingCount() );
+                }
+            }
+            assertNull( "Submitter failed: " + failure[ 0 ], failure[ 0 ] );
+        }
+        finally
+        {
+            threadPool.shutdown();
+        }
+    }
+
+    public void testAvalonConfiguration()
+        throws Exception
+    {
+        final AvalonCommonsThreadPool threadPool = new AvalonCommonsThreadPool();
+        ContainerUtil.enableLogging( threadPool, new ConsoleLogger( ConsoleLogger.LEVEL_DISABLED ) );
+        final DefaultConfiguration configuration = createConfiguration( "fail-fast" );
+        ContainerUtil.configure( threadPool, configuration );
+        ContainerUtil.initialize( threadPool );
+        final Work blocker = new Work( true, 0, null );
+        try
+        {
+            threadPool.execute( (Executable)blocker );
+            assertNull( "rejected", threadPool.tryExecute( (Executable)new Work( false, 0, null ) ) );
+        }
+        finally
+        {
+            blocker.unlock();
+            ContainerUtil.shutdown( threadPool );
+        }
+    }
+
+    public void testAvalonConfigurationWithUnknownPolicy()
+        throws Exception
+    {
+        final AvalonCommonsThreadPool threadPool = new AvalonCommonsThreadPool();
+        try
+        {
+            ContainerUtil.configure( threadPool, createConfiguration( "grow" ) );
+            fail( "Expected unknown policy to fail" );
+        }
+        catch( final ConfigurationException ce )
+        {
+        }
+    }
+
+    private DefaultConfiguration createConfiguration( final String policy )
+    {
+        final DefaultConfiguration configuration = new DefaultConfiguration( "root", "" );
+        addChild( configuration, "name", "testThreadPool" );
+        addChild( configuration, "priority", "5" );
+        addChild( configuration, "is-daemon", "false" );
+        addChild( configuration, "resource-limiting", "false" );
+        addChild( configuration, "max-threads", "1" );
+        addChild( configuration, "max-idle", "1" );
+        addChild( configuration, "rejection-policy", policy );
+        return configuration;
+    }
+
+    private void addChild( final DefaultConfiguration configuration,
+                           final String name,
+                           final String value )
+    {
+        final DefaultConfiguration child = new DefaultConfiguration( name, "" );
+        child.setValue( value );
+        configuration.addChild( child );
+    }
+
+    private PicoCommonsThreadPool createThreadPool( final RejectionPolicy policy,
+                                                    final long blockTimeout,
+                                                    final int maxPending )
+    {
+        return new PicoCommonsThreadPool.WithMonitorAndBoundedConfig( new NullThreadPoolMonitor(),
+                                                                      "testThreadPool",
+                                                                      Thread.NORM_PRIORITY,
+                                                                      false,
+                                                                      1,
+                                                                      1,
+                                                                      policy,
+                                                                      blockTimeout,
+                                                                      maxPending );
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.impl;
+
+import junit.framework.TestCase;
+import org.codehaus.spice.threadpool.Executable;
+import org.codehaus.spice.threadpool.RejectionPolicy;
+import org.codehaus.spice.threadpool.ThreadControl;
+
+/**
+ * TestCase for the MetricsThreadPoolMonitor.
+ */
+public class MetricsThreadPoolMonitorTestCase
+    extends TestCase
+{
+    public MetricsThreadPoolMonitorTestCase( final String name )
+    {
+        super( name );
+    }
+
+    public void testBuckets()
+        throws Exception
+    {
+        assertEquals( 0, StripedHistogram.bucketFor( 0, 0 ) );
+        assertEquals( 1, StripedHistogram.bucketFor( 1, 0 ) );
+        assertEquals( 2, StripedHistogram.bucketFor( 2, 0 ) );
+        assertEquals( 2, StripedHistogram.bucketFor( 3, 0 ) );
+        assertEquals( 3, StripedHistogram.bucketFor( 4, 0 ) );
+        assertEquals( 10, StripedHistogram.bucketFor( 1000, 0 ) );
+        assertEquals( 1024, StripedHistogram.getBucketLimit( 10, 0 ) );
+        assertEquals( StripedHistogram.getBucketCount( 0 ) - 1,
+                      StripedHistogram.bucketFor( Long.MAX_VALUE, 0 ) );
+    }
+
+    public void testSubBuckets()
+        throws Exception
+    {
+        for( int i = 0; i < 8; i++ )
+        {
+            assertEquals( "exact " + i, i, StripedHistogram.bucketFor( i, 3 ) );
+        }
+        assertEquals( 8, StripedHistogram.bucketFor( 8, 3 ) );
+        assertEquals( 15, StripedHistogram.bucketFor( 15, 3 ) );
+        assertEquals( 16, StripedHistogram.bucketFor( 16, 3 ) );
+        assertEquals( 16, StripedHistogram.bucketFor( 17, 3 ) );
+        assertEquals( StripedHistogram.getBucketCount( 3 ) - 1,
+                      StripedHistogram.bucketFor( Long.MAX_VALUE, 3 ) );
+        final long[] values = new long[]{9, 100, 1000, 123456, 987654321L};
+        for( int i = 0; i < values.length; i++ )
+        {
+            final int bucket = StripedHistogram.bucketFor( values[ i ], 3 );
+            final long start = StripedHistogram.getBucketLimit( bucket - 1, 3 );
+            final long end = StripedHistogram.getBucketLimit( bucket, 3 ) - 1;
+            assertTrue( "start " + values[ i ], start <= values[ i ] );
+            assertTrue( "end " + values[ i ], end >= values[ i ] );
+            assertTrue( "precision " + values[ i ], ( end - start ) * 8 <= start );
+        }
+    }
+
+    public void testHistogramSnapshot()
+        throws Exception
+    {
+        final StripedHistogram histogram = new StripedHistogram();
+        for( int i = 0; i < 99; i++ )
+        {
+            histogram.record( 0 );
+        }
+        histogram.record( 100 );
+        final HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals( "count", 100, snapshot.getCount() );
+        assertEquals( "total", 100, snapshot.getTotal() );
+        assertEquals( "max", 100, snapshot.getMax() );
+        assertEquals( "bucket 0", 99, snapshot.getBucketValue( 0 ) );
+        assertEquals( "bucket 7", 1, snapshot.getBucketValue( 7 ) );
+        assertEquals( "p50", 0, snapshot.getPercentile( 50 ) );
+        assertEquals( "p100", 100, snapshot.getPercentile( 100 ) );
+    }
+
+    public void testStripedCounter()
+        throws Exception
+    {
+        final StripedCounter counter = new StripedCounter();
+        final Thread[] threads = new Thread[ 4 ];
+        for( int i = 0; i < threads.length; i++ )
+        {
+            threads[ i ] = new Thread()
+            {
+                public void run()
+                {
+                    for( int j = 0; j < 1000; j++ )
+                    {
+                        counter.increment();
+                    }
+                }
+            };
+            threads[ i ].start();
+        }
+        for( int i = 0; i < threads.length; i++ )
+        {
+            threads[ i ].join();
+        }
+        assertEquals( 4000, counter.get() );
+    }
+
+    public void testActiveGaugeRaisedAndLoweredByDifferentThreads()
+        throws Exception
+    {
+        final MetricsThreadPoolMonitor monitor = new MetricsThreadPoolMonitor();
+        final Thread worker1 = new Thread();
+        final Thread worker2 = new Thread();
+        monitor.threadRetrieved( worker1 );
+        monitor.threadRetrieved( worker2 );
+        assertEquals( "active", 2, monitor.getSnapshot().getActiveCount() );
+
+        final Thread returner = new Thread()
+        {
+            public void run()
+            {
+                monitor.threadReturned( worker1 );
+                monitor.threadReturned( worker2 );
+            }
+        };
+        returner.start();
+        returner.join();
+        monitor.threadRetrieved( worker1 );
+        monitor.threadReturned( worker1 );
+
+        final MetricsSnapshot snapshot = monitor.getSnapshot();
+        assertEquals( "active", 0, snapshot.getActiveCount() );
+        assertEquals( "peak", 2, snapshot.getPeakActiveCount() );
+    }
+
+    public void testPeakIsExact()
+        throws Exception
+    {
+        final MetricsThreadPoolMonitor monitor = new MetricsThreadPoolMonitor();
+        for( int i = 0; i < 16; i++ )
+        {
+            final Thread worker = new Thread();
+            monitor.threadRetrieved( worker );
+            monitor.threadReturned( worker );
+        }
+        assertEquals( "peak", 1, monitor.getSnapshot().getPeakActiveCount() );
+    }
+
+    public void testCommonsThreadPoolMetrics()
+        throws Exception
+    {
+        final MetricsThreadPoolMonitor delegate = new MetricsThreadPoolMonitor();
+        final MetricsThreadPoolMonitor monitor = new MetricsThreadPoolMonitor( delegate );
+        final PicoCommonsThreadPool threadPool =
+            new PicoCommonsThreadPool.WithMonitorAndBoundedConfig( monitor,
+                                                                   "testThreadPool",
+                                                                   Thread.NORM_PRIORITY,
+                                                                   false,
+                                                                   1,
+                                                                   1,
+                                                                   RejectionPolicy.BLOCK,
+                                                                   0,
+                                                                   0 );
+        try
+        {
+            for( int i = 0; i < 5; i++ )
+            {
+                threadPool.execute( (Runnable)new Work( false, 0, null ) );
+            }
+            final ThreadControl control =
+                threadPool.execute( (Executable)new Work( false, 20, new Exception() ) );
+            control.join( 1000 );
+            waitForIdle( monitor );
+
+            final MetricsSnapshot snapshot = monitor.getSnapshot();
+            assertEquals( "completed", 6, snapshot.getCompletedCount() );
+            assertEquals( "failed", 1, snapshot.getFailedCount() );
+            assertEquals( "rejected", 0, snapshot.getRejectedCount() );
+            assertEquals( "threads", 1, snapshot.getThreadCount() );
+            assertEquals( "idle", 1, snapshot.getIdleCount() );
+            assertEquals( "peak", 1, snapshot.getPeakActiveCount() );
+            assertEquals( "queueWait count", 6, snapshot.getQueueWait().getCount() );
+            assertTrue( "runTime max", snapshot.getRunTime().getMax() >= 15 );
+            assertEquals( "delegate completed", 6, delegate.getSnapshot().getCompletedCount() );
+        }
+        finally
+        {
+            threadPool.shutdown();
+        }
+    }
+
+    public void testCommonsThreadPoolRejections()
+        throws Exception
+    {
+        final MetricsThreadPoolMonitor monitor = new MetricsThreadPoolMonitor();
+        final PicoCommonsThreadPool threadPool =
+            new PicoCommonsThreadPool.WithMonitorAndBoundedConfig( monitor,
+                                                                   "testThreadPool",
+                                                                   Thread.NORM_PRIORITY,
+                                                                   false,
+                                                                   1,
+                                                                   1,
+                                                                   RejectionPolicy.FAIL_FAST,
+                                                                   0,
+                                                                   0 );
+        final Work blocker = new Work( true, 0, null );
+        try
+        {
+            threadPool.execute( (Executable)blocker );
+            assertNull( threadPool.tryExecute( (Executable)new Work( false, 0, null ) ) );
+            assertFalse( threadPool.executeAndForget( (Runnable)new Work( false, 0, null ) ) );
+
+            final MetricsSnapshot snapshot = monitor.getSnapshot();
+            assertEquals( "rejected", 2, snapshot.getRejectedCount() );
+            assertEquals( "active", 1, snapshot.getActiveCount() );
+        }
+        finally
+        {
+            blocker.unlock();
+            threadPool.shutdown();
+        }
+    }
+
+    public void testWorkQueueThreadPoolMetrics()
+        throws Exception
+    {
+        final MetricsThreadPoolMonitor monitor = new MetricsThreadPoolMonitor();
+        final PicoWorkQueueThreadPool threadPool =
+            new PicoWorkQueueThreadPool.WithMonitorAndBoundedConfig( monitor,
+                                                                     "testThreadPool",
+                                                                     Thread.NORM_PRIORITY,
+                                                                     false,
+                                                                     1,
+                                                                     1,
+                                                                     1,
+                                                                     1000,
+                                                                     RejectionPolicy.FAIL_FAST,
+                                                                     0 );
+        final Work blocker = new Work( true, 0, null );
+        try
+        {
+            threadPool.execute( (Executable)blocker );
+            waitForActive( monitor, 1 );
+            final ThreadControl queued = threadPool.execute( (Executable)new Work( false, 0, null ) );
+            assertNull( "rejected", threadPool.tryExecute( (Executable)new Work( false, 0, null ) ) );
+            Thread.sleep( 100 );
+            blocker.unlock();
+            queued.join( 1000 );
+            waitForIdle( monitor );
+
+            final MetricsSnapshot snapshot = monitor.getSnapshot();
+            assertEquals( "completed", 2, snapshot.getCompletedCount() );
+            assertEquals( "rejected", 1, snapshot.getRejectedCount() );
+            assertEquals( "threads", 1, snapshot.getThreadCount() );
+            assertEquals( "peak", 1, snapshot.getPeakActiveCount() );
+            assertTrue( "queueWait max", snapshot.getQueueWait().getMax() >= 50 );
+        }
+        finally
+        {
+            blocker.unlock();
+            threadPool.shutdown();
+        }
+        assertEquals( "threads after shutdown", 0, monitor.getSnapshot().getThreadCount() );
+    }
+
+    private void waitForIdle( final MetricsThreadPoolMonitor monitor )
+        throws InterruptedException
+    {
+        waitForActive( monitor, 0 );
+    }
+
+    private void waitForActive( final MetricsThreadPoolMonitor monitor, final int active )
+        throws InterruptedException
+    {
+        final long end = System.currentTimeMillis() + 1000;
+        while( active != monitor.getSnapshot().getActiveCount() &&
+            System.currentTimeMillis() < end )
+        {
+            Thread.sleep( 5 );
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.impl;
+
+import junit.framework.TestCase;
+import org.apache.avalon.framework.configuration.DefaultConfiguration;
+import org.apache.avalon.framework.container.ContainerUtil;
+import org.apache.avalon.framework.logger.ConsoleLogger;
+import org.codehaus.spice.threadpool.Executable;
+import org.codehaus.spice.threadpool.RecyclableThreadControl;
+import org.codehaus.spice.threadpool.RejectionPolicy;
+import org.codehaus.spice.threadpool.ThreadControl;
+import org.codehaus.spice.threadpool.ThreadPoolMonitor;
+
+/**
+ * TestCase for pooled ThreadControls and fire-and-forget execution.
+ */
+public class PooledControlsTestCase
+    extends TestCase
+{
+    public PooledControlsTestCase( final String name )
+    {
+        super( name );
+    }
+
+    public void testControlsNotPooledByDefault()
+        throws Exception
+    {
+        final PicoCommonsThreadPool threadPool =
+            createThreadPool( new NullThreadPoolMonitor(), false );
+        try
+        {
+            final ThreadControl control = threadPool.execute( (Executable)new Work( false, 0, null ) );
+            assertFalse( "recyclable", control instanceof RecyclableThreadControl );
+            control.join( 1000 );
+            assertTrue( "isFinished", control.isFinished() );
+        }
+        finally
+        {
+            threadPool.shutdown();
+        }
+    }
+
+    public void testReleasedControlIsReused()
+        throws Exception
+    {
+        final PicoCommonsThreadPool threadPool =
+            createThreadPool( new NullThreadPoolMonitor(), true );
+        try
+        {
+            final Work work = new Work( false, 0, new Exception() );
+            final RecyclableThreadControl first =
+                (RecyclableThreadControl)threadPool.execute( (Executable)work );
+            final int generation = first.getGeneration();
+            first.join( generation, 1000 );
+            assertTrue( "isFinished", first.isFinished( generation ) );
+            assertEquals( "getThrowable", work.getException(), first.getThrowable( generation ) );
+            first.release();
+
+            final Work blocker = new Work( true, 0, null );
+            final RecyclableThreadControl second =
+                (RecyclableThreadControl)threadPool.execute( (Executable)blocker );
+            try
+            {
+                assertSame( "reused", first, second );
+                assertFalse( "stale generation valid", second.isValid( generation ) );
+                assertTrue( "stale generation finished", second.isFinished( generation ) );
+                assertFalse( "current generation finished", second.isFinished( second.getGeneration() ) );
+                try
+                {
+                    second.getThrowable( generation );
+                    fail( "Expected stale generation to fail" );
+                }
+                catch( final IllegalStateException ise )
+                {
+                }
+            }
+            finally
+            {
+                blocker.unlock();
+            }
+            second.join( 1000 );
+            assertTrue( "isFinished", second.isFinished() );
+            assertNull( "getThrowable", second.getThrowable() );
+        }
+        finally
+        {
+            threadPool.shutdown();
+        }
+    }
+
+    public void testUnreleasedControlIsNotReused()
+        throws Exception
+    {
+        final PicoCommonsThreadPool threadPool =
+            createThreadPool( new NullThreadPoolMonitor(), true );
+        try
+        {
+            final RecyclableThreadControl first =
+                (RecyclableThreadControl)threadPool.execute( (Executable)new Work( false, 0, null ) );
+            final int generation = first.getGeneration();
+            first.join( 1000 );
+
+            final RecyclableThreadControl second =
+                (RecyclableThreadControl)threadPool.execute( (Executable)new Work( false, 0, null ) );
+            second.join( 1000 );
+            assertNotSame( "reused", first, second );
+            assertTrue( "first still valid", first.isValid( generation ) );
+            assertTrue( "isFinished", second.isFinished() );
+        }
+        finally
+        {
+            threadPool.shutdown();
+        }
+    }
+
+    public void testExecuteAndForget()
+        throws Exception
+    {
+        final RecordingThreadPoolMonitor monitor = new RecordingThreadPoolMonitor();
+        final PicoCommonsThreadPool threadPool = createThreadPool( monitor, false );
+        try
+        {
+            final Work work = new Work( false, 0, null );
+            assertTrue( "admitted", threadPool.executeAndForget( (Runnable)work ) );
+            final Work failing = new Work( false, 0, new Exception() );
+            assertTrue( "admitted", threadPool.executeAndForget( (Executable)failing ) );
+            assertSame( "reported", failing.getException(), monitor.waitForError( 1000 ) );
+            assertTrue( "isDone", work.isDone() );
+        }
+        finally
+        {
+            threadPool.shutdown();
+        }
+    }
+
+    public void testAvalonConfiguration()
+        throws Exception
+    {
+        final AvalonCommonsThreadPool threadPool = new AvalonCommonsThreadPool();
+        ContainerUtil.enableLogging( threadPool, new ConsoleLogger( ConsoleLogger.LEVEL_DISABLED ) );
+        final DefaultConfiguration configuration = new DefaultConfiguration( "root", "" );
+        addChild( configuration, "name", "testThreadPool" );
+        addChild( configuration, "pooled-controls", "true" );
+        ContainerUtil.configure( threadPool, configuration );
+        ContainerUtil.initialize( threadPool );
+        try
+        {
+            assertTrue( "isPooledControls", threadPool.isPooledControls() );
+            final ThreadControl control = threadPool.execute( (Executable)new Work( false, 0, null ) );
+            assertTrue( "recyclable", control instanceof RecyclableThreadControl );
+        }
+        finally
+        {
+            ContainerUtil.shutdown( threadPool );
+        }
+    }
+
+    private void addChild( final DefaultConfiguration configuration,
+                           final String name,
+                           final String value )
+    {
+        final DefaultConfiguration child = new DefaultConfiguration( name, "" );
+        child.setValue( value );
+        configuration.addChild( child );
+    }
+
+    private PicoCommonsThreadPool createThreadPool( final ThreadPoolMonitor monitor,
+                                                    final boolean pooledControls )
+    {
+        final PicoCommonsThreadPool threadPool =
+            new PicoCommonsThreadPool.WithMonitorAndBoundedConfig( monitor,
+                                                                   "testThreadPool",
+                                                                   Thread.NORM_PRIORITY,
+                                                                   false,
+                                                                   1,
+                                                                   1,
+                                                                   RejectionPolicy.BLOCK,
+                                                                   0,
+                                                                   0 );
+        threadPool.setPooledControls( pooledControls );
+        return threadPool;
+    }
+
+    /**
+     * Monitor that records the last unexpected error.
+     */
+    private static class RecordingThreadPoolMonitor
+        extends NullThreadPoolMonitor
+    {
+        private Throwable m_error;
+
+        public synchronized void unexpectedError( final String message,
+                                                  final Throwable t )
+        {
+            m_error = t;
+            notifyAll();
+        }
+
+        synchronized Throwable waitForError( final long timeout )
+            throws InterruptedException
+        {
+            if( null == m_error )
+            {
+                wait( timeout );
+            }
+            return m_error;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.impl;
+
+import java.io.InputStream;
+import junit.framework.TestCase;
+import org.apache.avalon.framework.configuration.DefaultConfiguration;
+import org.apache.avalon.framework.container.ContainerUtil;
+import org.apache.avalon.framework.logger.ConsoleLogger;
+import org.codehaus.spice.configkit.ConfigValidator;
+import org.codehaus.spice.configkit.ConfigValidatorFactory;
+import org.codehaus.spice.configkit.ValidateException;
+import org.codehaus.spice.threadpool.Executable;
+import org.codehaus.spice.threadpool.ThreadControl;
+import org.xml.sax.ErrorHandler;
+
+/**
+ * TestCase for the ThreadPerTaskThreadPool.
+ */
+public class ThreadPerTaskThreadPoolTestCase
+    extends TestCase
+{
+    public ThreadPerTaskThreadPoolTestCase( final String name )
+    {
+        super( name );
+    }
+
+    public void testSchemaValidation()
+        throws Exception
+    {
+        final InputStream schema =
+            getClass().getResourceAsStream( "ThreadPerTaskThreadPool-schema.xml" );
+        assertNotNull( "Schema file", schema );
+        final ConfigValidator validator =
+            ConfigValidatorFactory.create( "http://relaxng.org/ns/structure/1.0", schema );
+        final InputStream config =
+            getClass().getResourceAsStream( "pertask-config.xml" );
+        try
+        {
+            validator.validate( config, (ErrorHandler)null );
+        }
+        catch( ValidateException e )
+        {
+            fail( "Unexpected validation failure: " + e );
+        }
+    }
+
+    public void testManyBlockedTasks()
+        throws Exception
+    {
+        final ThreadPerTaskThreadPool threadPool = createThreadPool();
+        try
+        {
+            final Work[] works = new Work[ 200 ];
+            final ThreadControl[] controls = new ThreadControl[ works.length ];
+            for( int i = 0; i < works.length; i++ )
+            {
+                works[ i ] = new Work( true, 0, null );
+                controls[ i ] = threadPool.execute( (Executable)works[ i ] );
+            }
+            assertEquals( "getActiveCount", works.length, threadPool.getActiveCount() );
+            for( int i = 0; i < works.length; i++ )
+            {
+                works[ i ].unlock();
+                controls[ i ].join( 1000 );
+                assertEquals( "isFinished", true, controls[ i ].isFinished() );
+                assertEquals( "isDone", true, works[ i ].isDone() );
+            }
+            assertEquals( "getActiveCount when done", 0, threadPool.getActiveCount() );
+        }
+        finally
+        {
+            threadPool.shutdown();
+        }
+    }
+
+    public void testWorkThrowsException()
+        throws Exception
+    {
+        final ThreadPerTaskThreadPool threadPool = createThreadPool();
+        try
+        {
+            final Work work = new Work( false, 10, new Exception() );
+            final ThreadControl control = threadPool.execute( (Executable)work );
+            control.join( 1000 );
+            assertEquals( "isFinished", true, control.isFinished() );
+            assertEquals( "getThrowable", work.getException(), control.getThrowable() );
+        }
+        finally
+        {
+            threadPool.shutdown();
+        }
+    }
+
+    public void testInterrupt()
+        throws Exception
+    {
+        final ThreadPerTaskThreadPool threadPool = createThreadPool();
+        try
+        {
+            final Work work = new Work( false, 2000, null );
+            final ThreadControl control = threadPool.execute( (Executable)work );
+            control.interrupt();
+            control.join( 1000 );
+            assertEquals( "isFinished", true, control.isFinished() );
+            assertEquals( "isInterupted", true, work.isInterupted() );
+        }
+        finally
+        {
+            threadPool.shutdown();
+        }
+    }
+
+    public void testShutdownInterruptsWork()
+        throws Exception
+    {
+        final ThreadPerTaskThreadPool threadPool = createThreadPool();
+        final Work work = new Work( false, 2000, null );
+        final ThreadControl control = threadPool.execute( (Executable)work );
+        Thread.sleep( 50 );
+        threadPool.shutdown();
+        assertEquals( "isFinished", true, control.isFinished() );
+        assertEquals( "isInterupted", true, work.isInterupted() );
+        try
+        {
+            threadPool.execute( (Executable)new Work( false, 0, null ) );
+            fail( "Expected execute to fail after shutdown" );
+        }
+        catch( final IllegalStateException ise )
+        {
+        }
+    }
+
+    public void testThreadDisposedWhenTaskCompletes()
+        throws Exception
+    {
+        final MetricsThreadPoolMonitor monitor = new MetricsThreadPoolMonitor();
+        final ThreadPerTaskThreadPool threadPool =
+            new PicoThreadPerTaskThreadPool.WithMonitorAndConfig( monitor,
+                                                                  "testThreadPool",
+                                                                  Thread.NORM_PRIORITY,
+                                                                  false,
+                                                                  64 * 1024 );
+        try
+        {
+            for( int i = 0; i < 10; i++ )
+            {
+                threadPool.execute( (Executable)new Work( false, 0, null ) ).join( 1000 );
+            }
+            assertEquals( "threadCount", 0, monitor.getSnapshot().getThreadCount() );
+            assertEquals( "activeCount", 0, threadPool.getActiveCount() );
+        }
+        finally
+        {
+            threadPool.shutdown();
+        }
+        assertEquals( "threadCount after shutdown", 0, monitor.getSnapshot().getThreadCount() );
+    }
+
+    public void testAvalonThreadPool()
+        throws Exception
+    {
+        final AvalonThreadPerTaskThreadPool threadPool = new AvalonThreadPerTaskThreadPool();
+        ContainerUtil.enableLogging( threadPool, new ConsoleLogger( ConsoleLogger.LEVEL_DISABLED ) );
+        final DefaultConfiguration configuration = new DefaultConfiguration( "root", "" );
+        addChild( configuration, "name", "testThreadPool" );
+        addChild( configuration, "priority", "5" );
+        addChild( configuration, "is-daemon", "false" );
+        addChild( configuration, "stack-size", "0" );
+        ContainerUtil.configure( threadPool, configuration );
+        ContainerUtil.initialize( threadPool );
+        try
+        {
+            final Work work = new Work( false, 0, null );
+            threadPool.execute( (Executable)work ).join( 1000 );
+            assertEquals( "isDone", true, work.isDone() );
+        }
+        finally
+        {
+            ContainerUtil.shutdown( threadPool );
+        }
+    }
+
+    private void addChild( final DefaultConfiguration configuration,
+                           final String name,
+                           final String value )
+    {
+        final DefaultConfiguration child = new DefaultConfiguration( name, "" );
+        child.setValue( value );
+        configuration.addChild( child );
+    }
+
+    private ThreadPerTaskThreadPool createThreadPool()
+    {
+        return new PicoThreadPerTaskThreadPool.WithMonitorAndConfig( new NullThreadPoolMonitor(),
+                                                                     "testThreadPool",
+                                                                     Thread.NORM_PRIORITY,
+                                                                     false,
+                                                                     64 * 1024 );
+    }
+}
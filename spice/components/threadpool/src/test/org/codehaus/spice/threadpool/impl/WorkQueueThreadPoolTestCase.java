@@ -0,0 +1,420 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.impl;
+
+import java.io.InputStream;
+import junit.framework.TestCase;
+import org.apache.avalon.framework.configuration.DefaultConfiguration;
+import org.apache.avalon.framework.container.ContainerUtil;
+import org.apache.avalon.framework.logger.ConsoleLogger;
+import org.codehaus.spice.configkit.ConfigValidator;
+import org.codehaus.spice.configkit.ConfigValidatorFactory;
+import org.codehaus.spice.configkit.ValidateException;
+import org.codehaus.spice.threadpool.Executable;
+import org.codehaus.spice.threadpool.RejectionPolicy;
+import org.codehaus.spice.threadpool.ThreadControl;
+import org.xml.sax.ErrorHandler;
+
+/**
+ * TestCase for the WorkQueueThreadPool.
+ */
+public class WorkQueueThreadPoolTestCase
+    extends TestCase
+{
+    public WorkQueueThreadPoolTestCase( final String name )
+    {
+        super( name );
+    }
+
+    public void testSchemaValidation()
+        throws Exception
+    {
+        final InputStream schema =
+            getClass().getResourceAsStream( "WorkQueueThreadPool-schema.xml" );
+        assertNotNull( "Schema file", schema );
+        final ConfigValidator validator =
+            ConfigValidatorFactory.create( "http://relaxng.org/ns/structure/1.0", schema );
+        final InputStream config =
+            getClass().getResourceAsStream( "workqueue-config.xml" );
+        try
+        {
+            validator.validate( config, (ErrorHandler)null );
+        }
+        catch( ValidateException e )
+        {
+            fail( "Unexpected validation failure: " + e );
+        }
+    }
+
+    public void testWorkCompletes()
+        throws Exception
+    {
+        final WorkQueueThreadPool threadPool = createThreadPool( 1, 2 );
+        try
+        {
+            final Work work = new Work( true, 0, null );
+            final ThreadControl control = threadPool.execute( (Executable)work );
+            control.join( 20 );
+            assertEquals( "isFinished while locked", false, control.isFinished() );
+            work.unlock();
+            control.join( 1000 );
+            assertEquals( "isFinished", true, control.isFinished() );
+            assertEquals( "isDone", true, work.isDone() );
+            assertNull( "getThrowable", control.getThrowable() );
+
+            final Work runnable = new Work( false, 0, null );
+            threadPool.execute( (Runnable)runnable ).join( 1000 );
+            assertEquals( "runnable isDone", true, runnable.isDone() );
+        }
+        finally
+        {
+            threadPool.shutdown();
+        }
+    }
+
+    public void testWorkThrowsException()
+        throws Exception
+    {
+        final WorkQueueThreadPool threadPool = createThreadPool( 1, 1 );
+        try
+        {
+            final Work work = new Work( false, 10, new Exception() );
+            final ThreadControl control = threadPool.execute( (Executable)work );
+            control.join( 1000 );
+            assertEquals( "isFinished", true, control.isFinished() );
+            assertEquals( "getThrowable", work.getException(), control.getThrowable() );
+        }
+        finally
+        {
+            threadPool.shutdown();
+        }
+    }
+
+    public void testWorkerKilledByThreadDeathIsReplaced()
+        throws Exception
+    {
+        final WorkQueueThreadPool threadPool = createThreadPool( 1, 1 );
+        try
+        {
+            final Work work = new Work( false, 10, new ThreadDeath() );
+            final ThreadControl control = threadPool.execute( (Executable)work );
+            control.join( 1000 );
+            assertEquals( "getThrowable", work.getException(), control.getThrowable() );
+
+            final Work next = new Work( false, 0, null );
+            final ThreadControl nextControl = threadPool.execute( (Executable)next );
+            nextControl.join( 1000 );
+            assertEquals( "next isFinished", true, nextControl.isFinished() );
+            assertEquals( "getWorkerCount", 1, threadPool.getWorkerCount() );
+        }
+        finally
+        {
+            threadPool.shutdown();
+        }
+    }
+
+    public void testInterruptBeforeWorkStarted()
+        throws Exception
+    {
+        final WorkQueueThreadPool threadPool = createThreadPool( 1, 1 );
+        try
+        {
+            final Work blocker = new Work( true, 0, null );
+            threadPool.execute( (Executable)blocker );
+            Thread.sleep( 50 );
+            final Work queued = new Work( false, 2000, null );
+            final ThreadControl control = threadPool.execute( (Executable)queued );
+            assertEquals( "getQueueDepth", 1, threadPool.getQueueDepth() );
+
+            control.interrupt();
+            blocker.unlock();
+            control.join( 1000 );
+            assertEquals( "isFinished", true, control.isFinished() );
+            assertEquals( "isInterupted", true, queued.isInterupted() );
+        }
+        finally
+        {
+            threadPool.shutdown();
+        }
+    }
+
+    public void testPoolGrowsAndShrinks()
+        throws Exception
+    {
+        final WorkQueueThreadPool threadPool = createThreadPool( 0, 3 );
+        threadPool.setKeepAliveTime( 50 );
+        try
+        {
+            assertEquals( "getWorkerCount at start", 0, threadPool.getWorkerCount() );
+            final Work[] works = new Work[ 3 ];
+            final ThreadControl[] controls = new ThreadControl[ works.length ];
+            for( int i = 0; i < works.length; i++ )
+            {
+                works[ i ] = new Work( true, 0, null );
+                controls[ i ] = threadPool.execute( (Executable)works[ i ] );
+            }
+            Thread.sleep( 100 );
+            assertEquals( "getWorkerCount when busy", 3, threadPool.getWorkerCount() );
+
+            for( int i = 0; i < works.length; i++ )
+            {
+                works[ i ].unlock();
+                controls[ i ].join( 1000 );
+            }
+            Thread.sleep( 500 );
+            assertEquals( "getWorkerCount when idle", 0, threadPool.getWorkerCount() );
+        }
+        finally
+        {
+            threadPool.shutdown();
+        }
+    }
+
+    public void testIdleWorkersRetireOnlyToMinimum()
+        throws Exception
+    {
+        final CreationCountingMonitor monitor = new CreationCountingMonitor();
+        final WorkQueueThreadPool threadPool =
+            new PicoWorkQueueThreadPool.WithMonitorAndConfig( monitor,
+                                                              "testThreadPool",
+                                                              Thread.NORM_PRIORITY,
+                                                              false,
+                                                              2,
+                                                              8,
+                                                              10,
+                                                              50 );
+        try
+        {
+            final Work[] works = new Work[ 8 ];
+            final ThreadControl[] controls = new ThreadControl[ works.length ];
+            for( int i = 0; i < works.length; i++ )
+            {
+                works[ i ] = new Work( true, 0, null );
+                controls[ i ] = threadPool.execute( (Executable)works[ i ] );
+                //Let an idle worker take the work before the next is queued
+                Thread.sleep( 20 );
+            }
+            Thread.sleep( 100 );
+            assertEquals( "getWorkerCount when busy", 8, threadPool.getWorkerCount() );
+
+            for( int i = 0; i < works.length; i++ )
+            {
+                works[ i ].unlock();
+            }
+            for( int i = 0; i < works.length; i++ )
+            {
+                controls[ i ].join( 1000 );
+            }
+            Thread.sleep( 500 );
+            assertEquals( "getWorkerCount when idle", 2, threadPool.getWorkerCount() );
+            assertEquals( "workers created", 8, monitor.getCreatedCount() );
+        }
+        finally
+        {
+            threadPool.shutdown();
+        }
+    }
+
+    public void testZeroKeepAliveNeverRetires()
+        throws Exception
+    {
+        final WorkQueueThreadPool threadPool = createThreadPool( 0, 2 );
+        threadPool.setKeepAliveTime( 0 );
+        try
+        {
+            final Work[] works = new Work[ 2 ];
+            final ThreadControl[] controls = new ThreadControl[ works.length ];
+            for( int i = 0; i < works.length; i++ )
+            {
+                works[ i ] = new Work( true, 0, null );
+                controls[ i ] = threadPool.execute( (Executable)works[ i ] );
+            }
+            Thread.sleep( 100 );
+            for( int i = 0; i < works.length; i++ )
+            {
+                works[ i ].unlock();
+                controls[ i ].join( 1000 );
+            }
+            Thread.sleep( 200 );
+            assertEquals( "getWorkerCount when idle", 2, threadPool.getWorkerCount() );
+        }
+        finally
+        {
+            threadPool.shutdown();
+        }
+    }
+
+    public void testShutdownDiscardsQueuedWork()
+        throws Exception
+    {
+        final WorkQueueThreadPool threadPool = createThreadPool( 1, 1 );
+        final Work blocker = new Work( true, 0, null );
+        threadPool.execute( (Executable)blocker );
+        final Work queued = new Work( false, 0, null );
+        final ThreadControl control = threadPool.execute( (Executable)queued );
+
+        threadPool.shutdown();
+        blocker.unlock();
+        assertEquals( "isFinished", true, control.isFinished() );
+        assertTrue( "getThrowable", control.getThrowable() instanceof InterruptedException );
+        assertEquals( "isDone", false, queued.isDone() );
+        try
+        {
+            threadPool.execute( (Executable)new Work( false, 0, null ) );
+            fail( "Expected execute to fail after shutdown" );
+        }
+        catch( final IllegalStateException ise )
+        {
+        }
+    }
+
+    public void testFailFastWhenQueueFull()
+        throws Exception
+    {
+        final WorkQueueThreadPool threadPool =
+            createBoundedThreadPool( RejectionPolicy.FAIL_FAST, 0 );
+        final Work blocker = new Work( true, 0, null );
+        try
+        {
+            threadPool.execute( (Executable)blocker );
+            Thread.sleep( 50 );
+            assertNotNull( "queued", threadPool.tryExecute( (Executable)new Work( false, 0, null ) ) );
+            assertNull( "rejected", threadPool.tryExecute( (Executable)new Work( false, 0, null ) ) );
+            assertEquals( "getWorkerCount", 1, threadPool.getWorkerCount() );
+        }
+        finally
+        {
+            blocker.unlock();
+            threadPool.shutdown();
+        }
+    }
+
+    public void testCallerRunsWhenQueueFull()
+        throws Exception
+    {
+        final WorkQueueThreadPool threadPool =
+            createBoundedThreadPool( RejectionPolicy.CALLER_RUNS, 0 );
+        final Work blocker = new Work( true, 0, null );
+        try
+        {
+            threadPool.execute( (Executable)blocker );
+            Thread.sleep( 50 );
+            threadPool.execute( (Executable)new Work( false, 0, null ) );
+            final Work work = new Work( false, 0, null );
+            final ThreadControl control = threadPool.tryExecute( (Executable)work );
+            assertEquals( "isFinished", true, control.isFinished() );
+            assertEquals( "isDone", true, work.isDone() );
+        }
+        finally
+        {
+            blocker.unlock();
+            threadPool.shutdown();
+        }
+    }
+
+    public void testBlockTimesOutWhenQueueFull()
+        throws Exception
+    {
+        final WorkQueueThreadPool threadPool =
+            createBoundedThreadPool( RejectionPolicy.BLOCK, 50 );
+        final Work blocker = new Work( true, 0, null );
+        try
+        {
+            threadPool.execute( (Executable)blocker );
+            Thread.sleep( 50 );
+            threadPool.execute( (Executable)new Work( false, 0, null ) );
+            final long start = System.currentTimeMillis();
+            assertNull( "rejected", threadPool.tryExecute( (Executable)new Work( false, 0, null ) ) );
+            assertTrue( "waited", System.currentTimeMillis() - start >= 40 );
+        }
+        finally
+        {
+            blocker.unlock();
+            threadPool.shutdown();
+        }
+    }
+
+    public void testAvalonThreadPool()
+        throws Exception
+    {
+        final AvalonWorkQueueThreadPool threadPool = new AvalonWorkQueueThreadPool();
+        ContainerUtil.enableLogging( threadPool, new ConsoleLogger( ConsoleLogger.LEVEL_DISABLED ) );
+        final DefaultConfiguration configuration = new DefaultConfiguration( "root", "" );
+        addChild( configuration, "name", "testThreadPool" );
+        addChild( configuration, "priority", "5" );
+        addChild( configuration, "is-daemon", "false" );
+        addChild( configuration, "min-threads", "2" );
+        addChild( configuration, "max-threads", "3" );
+        ContainerUtil.configure( threadPool, configuration );
+        ContainerUtil.initialize( threadPool );
+        try
+        {
+            assertEquals( "getWorkerCount", 2, threadPool.getWorkerCount() );
+            final Work work = new Work( false, 0, null );
+            threadPool.execute( (Executable)work ).join( 1000 );
+            assertEquals( "isDone", true, work.isDone() );
+        }
+        finally
+        {
+            ContainerUtil.shutdown( threadPool );
+        }
+    }
+
+    private void addChild( final DefaultConfiguration configuration,
+                           final String name,
+                           final String value )
+    {
+        final DefaultConfiguration child = new DefaultConfiguration( name, "" );
+        child.setValue( value );
+        configuration.addChild( child );
+    }
+
+    private WorkQueueThreadPool createBoundedThreadPool( final RejectionPolicy policy,
+                                                        final long blockTimeout )
+    {
+        return new PicoWorkQueueThreadPool.WithMonitorAndBoundedConfig( new NullThreadPoolMonitor(),
+                                                                        "testThreadPool",
+                                                                        Thread.NORM_PRIORITY,
+                                                                        false,
+                                                                        1,
+                                                                        1,
+                                                                        1,
+                                                                        1000,
+                                                                        policy,
+                                                                        blockTimeout );
+    }
+
+    private WorkQueueThreadPool createThreadPool( final int minThreads,
+                                                  final int maxThreads )
+    {
+        return new PicoWorkQueueThreadPool.WithMonitorAndConfig( new NullThreadPoolMonitor(),
+                                                                 "testThreadPool",
+                                                                 Thread.NORM_PRIORITY,
+                                                                 false,
+                                                                 minThreads,
+                                                                 maxThreads,
+                                                                 10,
+                                                                 1000 );
+    }
+
+    private static class CreationCountingMonitor
+        extends NullThreadPoolMonitor
+    {
+        private int m_createdCount;
+
+        public synchronized void threadCreated( final Thread thread )
+        {
+            m_createdCount++;
+        }
+
+        synchronized int getCreatedCount()
+        {
+            return m_createdCount;
+        }
+    }
+}
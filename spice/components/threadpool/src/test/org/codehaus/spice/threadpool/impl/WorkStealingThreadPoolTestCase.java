@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) The Spice Group. All rights reserved.
+ *
+ * This software is published under the terms of the Spice
+ * Software License version 1.1, a copy of which has been included
+ * with this distribution in the LICENSE.txt file.
+ */
+package org.codehaus.spice.threadpool.impl;
+
+import java.io.InputStream;
+import junit.framework.TestCase;
+import org.apache.avalon.framework.configuration.DefaultConfiguration;
+import org.apache.avalon.framework.container.ContainerUtil;
+import org.apache.avalon.framework.logger.ConsoleLogger;
+import org.codehaus.spice.configkit.ConfigValidator;
+import org.codehaus.spice.configkit.ConfigValidatorFactory;
+import org.codehaus.spice.configkit.ValidateException;
+import org.codehaus.spice.threadpool.Executable;
+import org.codehaus.spice.threadpool.ThreadControl;
+import org.xml.sax.ErrorHandler;
+
+/**
+ * TestCase for the WorkStealingThreadPool.
+ */
+public class WorkStealingThreadPoolTestCase
+    extends TestCase
+{
+    public WorkStealingThreadPoolTestCase( final String name )
+    {
+        super( name );
+    }
+
+    public void testSchemaValidation()
+        throws Exception
+    {
+        final InputStream schema =
+            getClass().getResourceAsStream( "WorkStealingThreadPool-schema.xml" );
+        assertNotNull( "Schema file", schema );
+        final ConfigValidator validator =
+            ConfigValidatorFactory.create( "http://relaxng.org/ns/structure/1.0", schema );
+        final InputStream config =
+            getClass().getResourceAsStream( "stealing-config.xml" );
+        try
+        {
+            validator.validate( config, (ErrorHandler)null );
+        }
+        catch( ValidateException e )
+        {
+            fail( "Unexpected validation failure: " + e );
+        }
+    }
+
+    public void testWorkCompletes()
+        throws Exception
+    {
+        final WorkStealingThreadPool threadPool = createThreadPool( 2 );
+        try
+        {
+            final Work work = new Work( true, 0, null );
+            final ThreadControl control = threadPool.execute( (Executable)work );
+            control.join( 20 );
+            assertEquals( "isFinished while locked", false, control.isFinished() );
+            work.unlock();
+            control.join( 1000 );
+            assertEquals( "isFinished", true, control.isFinished() );
+            assertEquals( "isDone", true, work.isDone() );
+            assertNull( "getThrowable", control.getThrowable() );
+
+            final Work runnable = new Work( false, 0, null );
+            threadPool.execute( (Runnable)runnable ).join( 1000 );
+            assertEquals( "runnable isDone", true, runnable.isDone() );
+        }
+        finally
+        {
+            threadPool.shutdown();
+        }
+    }
+
+    public void testNestedJoinDoesNotStarveSingleWorker()
+        throws Exception
+    {
+        final WorkStealingThreadPool threadPool = createThreadPool( 1 );
+        try
+        {
+            final Fibonacci fibonacci = new Fibonacci( threadPool, 12 );
+            final ThreadControl control = threadPool.execute( (Executable)fibonacci );
+            control.join( 5000 );
+            assertEquals( "isFinished", true, control.isFinished() );
+            assertNull( "getThrowable", control.getThrowable() );
+            assertEquals( "result", 144, fibonacci.getResult() );
+        }
+        finally
+        {
+            threadPool.shutdown();
+        }
+    }
+
+    public void testIdleWorkerStealsLocalWork()
+        throws Exception
+    {
+        final WorkStealingThreadPool threadPool = createThreadPool( 2 );
+        try
+        {
+            final Work child = new Work( false, 0, null );
+            final Work blocker = new Work( true, 0, null );
+            final ThreadControl[] childControl = new ThreadControl[ 1 ];
+            final ThreadControl control = threadPool.execute( new Executable()
+            {
+                public void execute()
+                    throws Exception
+                {
+                    //Push child on the local deque then block
+                    //so that only another worker can run it
+                    childControl[ 0 ] = threadPool.execute( (Executable)child );
+                    blocker.execute();
+                }
+            } );
+            Thread.sleep( 100 );
+            assertNotNull( "child submitted", childControl[ 0 ] );
+            childControl[ 0 ].join( 1000 );
+            assertEquals( "child isDone", true, child.isDone() );
+            assertEquals( "parent isFinished", false, control.isFinished() );
+
+            blocker.unlock();
+            control.join( 1000 );
+            assertEquals( "parent isFinished", true, control.isFinished() );
+        }
+        finally
+        {
+            threadPool.shutdown();
+        }
+    }
+
+    public void testInterruptWhileHelpingReachesJoiningWork()
+        throws Exception
+    {
+        final WorkStealingThreadPool threadPool = createThreadPool( 1 );
+        try
+        {
+            final boolean[] state = new boolean[ 3 ];
+            final Executable helped = new Executable()
+            {
+                public void execute()
+                {
+                    synchronized( state )
+                    {
+                        state[ 0 ] = true;
+                        state.notifyAll();
+                        while( !state[ 1 ] )
+                        {
+                            try
+                            {
+                                state.wait( 10 );
+                            }
+                            catch( final InterruptedException ie )
+                            {
+                                //keep running like work that ignores interrupts
+                            }
+                        }
+                    }
+                }
+            };
+            final ThreadControl control = threadPool.execute( new Executable()
+            {
+                public void execute()
+                    throws Exception
+                {
+                    //the only worker helps by running the child itself
+                    threadPool.execute( helped ).join( 5000 );
+                    state[ 2 ] = Thread.interrupted();
+                }
+            } );
+            synchronized( state )
+            {
+                while( !state[ 0 ] )
+                {
+                    state.wait( 1000 );
+                }
+            }
+            control.interrupt();
+            synchronized( state )
+            {
+                state[ 1 ] = true;
+            }
+            control.join( 5000 );
+            assertEquals( "isFinished", true, control.isFinished() );
+            assertEquals( "joining work interrupted", true, state[ 2 ] );
+        }
+        finally
+        {
+            threadPool.shutdown();
+        }
+    }
+
+    public void testWorkerKilledByThreadDeathIsReplaced()
+        throws Exception
+    {
+        final WorkStealingThreadPool threadPool = createThreadPool( 1 );
+        try
+        {
+            final Work work = new Work( false, 10, new ThreadDeath() );
+            final ThreadControl control = threadPool.execute( (Executable)work );
+            control.join( 1000 );
+            assertEquals( "getThrowable", work.getException(), control.getThrowable() );
+
+            final Work next = new Work( false, 0, null );
+            final ThreadControl nextControl = threadPool.execute( (Executable)next );
+            nextControl.join( 1000 );
+            assertEquals( "next isFinished", true, nextControl.isFinished() );
+        }
+        finally
+        {
+            threadPool.shutdown();
+        }
+    }
+
+    public void testShutdownDiscardsQueuedWork()
+        throws Exception
+    {
+        final WorkStealingThreadPool threadPool = createThreadPool( 1 );
+        final Work blocker = new Work( true, 0, null );
+        threadPool.execute( (Executable)blocker );
+        Thread.sleep( 50 );
+        final Work queued = new Work( false, 0, null );
+        final ThreadControl control = threadPool.execute( (Executable)queued );
+        assertEquals( "getQueueDepth", 1, threadPool.getQueueDepth() );
+
+        threadPool.shutdown();
+        blocker.unlock();
+        assertEquals( "isFinished", true, control.isFinished() );
+        assertTrue( "getThrowable", control.getThrowable() instanceof InterruptedException );
+        assertEquals( "isDone", false, queued.isDone() );
+        try
+        {
+            threadPool.execute( (Executable)new Work( false, 0, null ) );
+            fail( "Expected execute to fail after shutdown" );
+        }
+        catch( final IllegalStateException ise )
+        {
+        }
+    }
+
+    public void testAvalonThreadPool()
+        throws Exception
+    {
+        final AvalonWorkStealingThreadPool threadPool = new AvalonWorkStealingThreadPool();
+        ContainerUtil.enableLogging( threadPool, new ConsoleLogger( ConsoleLogger.LEVEL_DISABLED ) );
+        final DefaultConfiguration configuration = new DefaultConfiguration( "root", "" );
+        addChild( configuration, "name", "testThreadPool" );
+        addChild( configuration, "priority", "5" );
+        addChild( configuration, "is-daemon", "false" );
+        addChild( configuration, "max-threads", "3" );
+        ContainerUtil.configure( threadPool, configuration );
+        ContainerUtil.initialize( threadPool );
+        try
+        {
+            assertEquals( "getWorkerCount", 3, threadPool.getWorkerCount() );
+            final Work work = new Work( false, 0, null );
+            threadPool.execute( (Executable)work ).join( 1000 );
+            assertEquals( "isDone", true, work.isDone() );
+        }
+        finally
+        {
+            ContainerUtil.shutdown( threadPool );
+        }
+    }
+
+    private void addChild( final DefaultConfiguration configuration,
+                           final String name,
+                           final String value )
+    {
+        final DefaultConfiguration child = new DefaultConfiguration( name, "" );
+        child.setValue( value );
+        configuration.addChild( child );
+    }
+
+    private WorkStealingThreadPool createThreadPool( final int maxThreads )
+    {
+        return new PicoWorkStealingThreadPool.WithMonitorAndConfig( new NullThreadPoolMonitor(),
+                                                                    "testThreadPool",
+                                                                    Thread.NORM_PRIORITY,
+                                                                    false,
+                                                                    maxThreads,
+                                                                    10 );
+    }
+
+    /**
+     * Work that computes a fibonacci number by submitting
+     * and joining work for the two smaller numbers.
+     */
+    private static class Fibonacci
+        implements Executable
+    {
+        private final WorkStealingThreadPool m_pool;
+        private final int m_n;
+        private int m_result;
+
+        Fibonacci( final WorkStealingThreadPool pool, final int n )
+        {
+            m_pool = pool;
+            m_n = n;
+        }
+
+        public void execute()
+            throws Exception
+        {
+            if( m_n < 2 )
+            {
+                m_result = m_n;
+                return;
+            }
+            final Fibonacci first = new Fibonacci( m_pool, m_n - 1 );
+            final Fibonacci second = new Fibonacci( m_pool, m_n - 2 );
+            final ThreadControl firstControl = m_pool.execute( (Executable)first );
+            final ThreadControl secondControl = m_pool.execute( (Executable)second );
+            secondControl.join( 5000 );
+            firstControl.join( 5000 );
+            m_result = first.getResult() + second.getResult();
+        }
+
+        synchronized int getResult()
+        {
+            return m_result;
+        }
+    }
+}